@@ -0,0 +1,123 @@
+--
+-- Copyright © 2016-2022 The Thingsboard Authors
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+CREATE TABLE IF NOT EXISTS ts_block
+(
+    entity_id uuid   NOT NULL,
+    key       int    NOT NULL,
+    block_ts  bigint NOT NULL,
+    cnt       int    NOT NULL,
+    data      bytea  NOT NULL,
+    CONSTRAINT ts_block_pkey PRIMARY KEY (entity_id, key, block_ts)
+);
+
+CREATE TABLE IF NOT EXISTS ts_rollup
+(
+    entity_id   uuid             NOT NULL,
+    key         int              NOT NULL,
+    granularity bigint           NOT NULL,
+    ts          bigint           NOT NULL,
+    bool_cnt    bigint           NOT NULL,
+    str_cnt     bigint           NOT NULL,
+    json_cnt    bigint           NOT NULL,
+    long_cnt    bigint           NOT NULL,
+    dbl_cnt     bigint           NOT NULL,
+    long_sum    bigint           NOT NULL,
+    dbl_sum     double precision NOT NULL,
+    long_min    bigint,
+    long_max    bigint,
+    dbl_min     double precision,
+    dbl_max     double precision,
+    CONSTRAINT ts_rollup_pkey PRIMARY KEY (entity_id, key, granularity, ts)
+);
+
+CREATE TABLE IF NOT EXISTS ts_rollup_state
+(
+    name   varchar(255) NOT NULL,
+    long_v bigint       NOT NULL,
+    CONSTRAINT ts_rollup_state_pkey PRIMARY KEY (name)
+);
+
+CREATE OR REPLACE FUNCTION delete_entity_records_from_ts_table(table_name varchar, ts_column varchar, tenant_id uuid,
+                                                               customer_id uuid, ttl bigint, OUT deleted bigint) AS
+$$
+BEGIN
+    EXECUTE format(
+            'WITH deleted AS (DELETE FROM %I WHERE entity_id IN (SELECT %L::uuid UNION ALL SELECT device.id FROM device WHERE tenant_id = %L and customer_id = %L UNION ALL SELECT asset.id FROM asset WHERE tenant_id = %L and customer_id = %L) AND %I < %L::bigint RETURNING *) SELECT count(*) FROM deleted',
+            table_name, customer_id, tenant_id, customer_id, tenant_id, customer_id, ts_column, ttl) into deleted;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Same TTL resolution as cleanup_timeseries_by_ttl for the tables derived from ts_kv (ts_block, ts_rollup).
+-- The row is removed when ts_column + ts_offset is older than the TTL, e.g. the block duration makes the whole block expire.
+CREATE OR REPLACE PROCEDURE cleanup_ts_table_by_ttl(IN table_name varchar, IN ts_column varchar, IN ts_offset bigint,
+                                                    IN null_uuid uuid, IN system_ttl bigint, INOUT deleted bigint)
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    tenant_cursor CURSOR FOR select tenant.id as tenant_id
+                             from tenant;
+    tenant_id_record     uuid;
+    customer_id_record   uuid;
+    tenant_ttl           bigint;
+    customer_ttl         bigint;
+    deleted_for_entities bigint;
+    tenant_ttl_ts        bigint;
+    customer_ttl_ts      bigint;
+BEGIN
+    OPEN tenant_cursor;
+    FETCH tenant_cursor INTO tenant_id_record;
+    WHILE FOUND
+        LOOP
+            EXECUTE format(
+                    'select attribute_kv.long_v from attribute_kv where attribute_kv.entity_id = %L and attribute_kv.attribute_key = %L',
+                    tenant_id_record, 'TTL') INTO tenant_ttl;
+            if tenant_ttl IS NULL THEN
+                tenant_ttl := system_ttl;
+            END IF;
+            tenant_ttl_ts := NULL;
+            IF tenant_ttl > 0 THEN
+                tenant_ttl_ts := (EXTRACT(EPOCH FROM current_timestamp) * 1000 - tenant_ttl::bigint * 1000)::bigint - ts_offset;
+                deleted_for_entities := delete_entity_records_from_ts_table(table_name, ts_column, tenant_id_record, null_uuid, tenant_ttl_ts);
+                deleted := deleted + deleted_for_entities;
+                RAISE NOTICE '% rows removed from % where tenant_id = %', deleted_for_entities, table_name, tenant_id_record;
+            END IF;
+            FOR customer_id_record IN
+                SELECT customer.id AS customer_id FROM customer WHERE customer.tenant_id = tenant_id_record
+                LOOP
+                    EXECUTE format(
+                            'select attribute_kv.long_v from attribute_kv where attribute_kv.entity_id = %L and attribute_kv.attribute_key = %L',
+                            customer_id_record, 'TTL') INTO customer_ttl;
+                    IF customer_ttl IS NULL THEN
+                        customer_ttl_ts := tenant_ttl_ts;
+                    ELSIF customer_ttl > 0 THEN
+                        customer_ttl_ts :=
+                                (EXTRACT(EPOCH FROM current_timestamp) * 1000 - customer_ttl::bigint * 1000)::bigint - ts_offset;
+                    ELSE
+                        customer_ttl_ts := NULL;
+                    END IF;
+                    IF customer_ttl_ts IS NOT NULL AND customer_ttl_ts > 0 THEN
+                        deleted_for_entities :=
+                                delete_entity_records_from_ts_table(table_name, ts_column, tenant_id_record,
+                                                                    customer_id_record, customer_ttl_ts);
+                        deleted := deleted + deleted_for_entities;
+                        RAISE NOTICE '% rows removed from % where tenant_id = % and customer_id = %', deleted_for_entities, table_name, tenant_id_record, customer_id_record;
+                    END IF;
+                END LOOP;
+            FETCH tenant_cursor INTO tenant_id_record;
+        END LOOP;
+END
+$$;
@@ -86,6 +86,7 @@ import org.thingsboard.server.service.profile.TbDeviceProfileCache;
 import org.thingsboard.server.service.rpc.TbCoreDeviceRpcService;
 import org.thingsboard.server.service.rpc.TbRpcService;
 import org.thingsboard.server.service.rpc.TbRuleEngineDeviceRpcService;
+import org.thingsboard.server.service.rule.TbRuleNodeDebugEventService;
 import org.thingsboard.server.service.script.JsInvokeService;
 import org.thingsboard.server.service.session.DeviceSessionCacheService;
 import org.thingsboard.server.service.sms.SmsExecutorService;
@@ -206,6 +207,10 @@ public class ActorSystemContext {
     @Getter
     private EventService eventService;
 
+    @Autowired
+    @Getter
+    private TbRuleNodeDebugEventService ruleNodeDebugEventService;
+
     @Autowired
     @Getter
     private RelationService relationService;
@@ -524,14 +529,15 @@ public class ActorSystemContext {
     }
 
     private void persistDebugAsync(TenantId tenantId, EntityId entityId, String type, TbMsg tbMsg, String relationType, Throwable error, String failureMessage) {
-        if (checkLimits(tenantId, tbMsg, error)) {
+        boolean isError = error != null || failureMessage != null;
+        if (ruleNodeDebugEventService.isDebugEventAllowed(entityId, tbMsg, isError) && checkLimits(tenantId, tbMsg, error)) {
             try {
                 Event event = new Event();
                 event.setTenantId(tenantId);
                 event.setEntityId(entityId);
                 event.setType(DataConstants.DEBUG_RULE_NODE);
 
-                String metadata = mapper.writeValueAsString(tbMsg.getMetaData().getData());
+                String metadata = mapper.writeValueAsString(ruleNodeDebugEventService.truncateMetadata(tbMsg.getMetaData().getData()));
 
                 ObjectNode node = mapper.createObjectNode()
                         .put("type", type)
@@ -542,7 +548,7 @@ public class ActorSystemContext {
                         .put("msgType", tbMsg.getType())
                         .put("dataType", tbMsg.getDataType().name())
                         .put("relationType", relationType)
-                        .put("data", tbMsg.getData())
+                        .put("data", ruleNodeDebugEventService.truncatePayload(tbMsg.getData()))
                         .put("metadata", metadata);
 
                 if (error != null) {
@@ -552,7 +558,7 @@ public class ActorSystemContext {
                 }
 
                 event.setBody(node);
-                ListenableFuture<Void> future = eventService.saveAsync(event);
+                ListenableFuture<Void> future = ruleNodeDebugEventService.saveDebugEvent(event);
                 Futures.addCallback(future, new FutureCallback<Void>() {
                     @Override
                     public void onSuccess(@Nullable Void event) {
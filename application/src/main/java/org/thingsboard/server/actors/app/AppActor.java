@@ -98,6 +98,7 @@ public class AppActor extends ContextAwareActor {
                 onQueueToRuleEngineMsg((QueueToRuleEngineMsg) msg);
                 break;
             case TRANSPORT_TO_DEVICE_ACTOR_MSG:
+            case DEVICE_SESSIONS_ACTIVITY_TO_DEVICE_ACTOR_MSG:
                 onToDeviceActorMsg((TenantAwareMsg) msg, false);
                 break;
             case DEVICE_ATTRIBUTES_UPDATE_TO_DEVICE_ACTOR_MSG:
@@ -211,7 +212,7 @@ public class AppActor extends ContextAwareActor {
 
     private TbActorRef getOrCreateTenantActor(TenantId tenantId) {
         return ctx.getOrCreateChildActor(new TbEntityActorId(tenantId),
-                () -> DefaultActorService.TENANT_DISPATCHER_NAME,
+                () -> systemContext.getActorService().getDispatcherName(tenantId, DefaultActorService.TENANT_DISPATCHER_NAME),
                 () -> new TenantActor.ActorCreator(systemContext, tenantId));
     }
 
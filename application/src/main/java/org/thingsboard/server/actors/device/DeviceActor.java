@@ -30,6 +30,7 @@ import org.thingsboard.server.common.msg.timeout.DeviceActorServerSideRpcTimeout
 import org.thingsboard.server.service.rpc.FromDeviceRpcResponseActorMsg;
 import org.thingsboard.server.service.rpc.RemoveRpcActorMsg;
 import org.thingsboard.server.service.rpc.ToDeviceRpcRequestActorMsg;
+import org.thingsboard.server.service.transport.msg.DeviceSessionsActivityMsg;
 import org.thingsboard.server.service.transport.msg.TransportToDeviceActorMsgWrapper;
 
 @Slf4j
@@ -61,6 +62,9 @@ public class DeviceActor extends ContextAwareActor {
             case TRANSPORT_TO_DEVICE_ACTOR_MSG:
                 processor.process(ctx, (TransportToDeviceActorMsgWrapper) msg);
                 break;
+            case DEVICE_SESSIONS_ACTIVITY_TO_DEVICE_ACTOR_MSG:
+                processor.processSessionsActivity((DeviceSessionsActivityMsg) msg);
+                break;
             case DEVICE_ATTRIBUTES_UPDATE_TO_DEVICE_ACTOR_MSG:
                 processor.processAttributesUpdate(ctx, (DeviceAttributesEventNotificationMsg) msg);
                 break;
@@ -166,7 +166,7 @@ public class RuleChainActorMessageProcessor extends ComponentMsgProcessor<RuleCh
 
     private TbActorRef createRuleNodeActor(TbActorCtx ctx, RuleNode ruleNode) {
         return ctx.getOrCreateChildActor(new TbEntityActorId(ruleNode.getId()),
-                () -> DefaultActorService.RULE_DISPATCHER_NAME,
+                () -> systemContext.getActorService().getDispatcherName(tenantId, DefaultActorService.RULE_DISPATCHER_NAME),
                 () -> new RuleNodeActor.ActorCreator(systemContext, tenantId, entityId, ruleChainName, ruleNode.getId()));
     }
 
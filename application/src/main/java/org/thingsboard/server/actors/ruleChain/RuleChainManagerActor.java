@@ -83,7 +83,7 @@ public abstract class RuleChainManagerActor extends ContextAwareActor {
 
     protected TbActorRef getOrCreateActor(RuleChainId ruleChainId, Function<RuleChainId, RuleChain> provider) {
         return ctx.getOrCreateChildActor(new TbEntityActorId(ruleChainId),
-                () -> DefaultActorService.RULE_DISPATCHER_NAME,
+                () -> systemContext.getActorService().getDispatcherName(tenantId, DefaultActorService.RULE_DISPATCHER_NAME),
                 () -> {
                     RuleChain ruleChain = provider.apply(ruleChainId);
                     return new RuleChainActor.ActorCreator(systemContext, tenantId, ruleChain);
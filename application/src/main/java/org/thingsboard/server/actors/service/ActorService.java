@@ -15,7 +15,18 @@
  */
 package org.thingsboard.server.actors.service;
 
+import org.thingsboard.server.common.data.id.TenantId;
+
 public interface ActorService {
 
+    /**
+     * Returns the own dispatcher of the tenant if the actor dispatcher pool size is set in the tenant profile, or the shared dispatcher otherwise.
+     */
+    String getDispatcherName(TenantId tenantId, String sharedDispatcherName);
+
+    /**
+     * Destroys the own dispatcher of the tenant, unless it was replaced by another dispatcher or is still used by a recreated tenant actor.
+     */
+    void releaseDispatcher(TenantId tenantId, String dispatcherName);
 
 }
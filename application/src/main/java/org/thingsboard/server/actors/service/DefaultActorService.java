@@ -21,6 +21,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.thingsboard.common.util.ThingsBoardExecutors;
 import org.thingsboard.common.util.ThingsBoardThreadFactory;
@@ -29,17 +30,28 @@ import org.thingsboard.server.actors.DefaultTbActorSystem;
 import org.thingsboard.server.actors.TbActorRef;
 import org.thingsboard.server.actors.TbActorSystem;
 import org.thingsboard.server.actors.TbActorSystemSettings;
+import org.thingsboard.server.actors.TbEntityActorId;
 import org.thingsboard.server.actors.app.AppActor;
 import org.thingsboard.server.actors.app.AppInitMsg;
 import org.thingsboard.server.actors.stats.StatsActor;
+import org.thingsboard.server.common.data.TenantProfile;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.tenant.profile.DefaultTenantProfileConfiguration;
 import org.thingsboard.server.common.msg.queue.PartitionChangeMsg;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.queue.discovery.TbApplicationEventListener;
 import org.thingsboard.server.queue.discovery.event.PartitionChangeEvent;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @Slf4j
@@ -53,6 +65,9 @@ public class DefaultActorService extends TbApplicationEventListener<PartitionCha
     @Autowired
     private ActorSystemContext actorContext;
 
+    @Autowired
+    private StatsFactory statsFactory;
+
     private TbActorSystem system;
 
     private TbActorRef appActor;
@@ -78,6 +93,14 @@ public class DefaultActorService extends TbApplicationEventListener<PartitionCha
     @Value("${actors.system.rule_dispatcher_pool_size:4}")
     private int ruleDispatcherSize;
 
+    @Value("${actors.system.tenant_dispatcher_max_pool_size:4}")
+    private int tenantDispatcherMaxPoolSize;
+
+    private final Map<TenantId, TenantDispatcher> tenantDispatchers = new ConcurrentHashMap<>();
+    private final Map<TenantId, TenantDispatcherStats> tenantDispatcherStats = new ConcurrentHashMap<>();
+    private final Set<TenantId> sharedDispatcherTenants = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger tenantDispatcherSeq = new AtomicInteger();
+
     @PostConstruct
     public void initActorSystem() {
         log.info("Initializing actor system.");
@@ -113,6 +136,132 @@ public class DefaultActorService extends TbApplicationEventListener<PartitionCha
         }
     }
 
+    @Override
+    public String getDispatcherName(TenantId tenantId, String sharedDispatcherName) {
+        if (tenantId == null || TenantId.SYS_TENANT_ID.equals(tenantId)) {
+            return sharedDispatcherName;
+        }
+        TenantDispatcher tenantDispatcher = tenantDispatchers.get(tenantId);
+        if (tenantDispatcher != null) {
+            return tenantDispatcher.name;
+        }
+        // the tenant profile cache may load the profile from the database, so it is not queried while holding the lock
+        int poolSize = getTenantDispatcherPoolSize(tenantId);
+        synchronized (this) {
+            tenantDispatcher = tenantDispatchers.get(tenantId);
+            if (tenantDispatcher == null) {
+                if (poolSize <= 0) {
+                    sharedDispatcherTenants.add(tenantId);
+                    return sharedDispatcherName;
+                }
+                String dispatcherName = "tenant-" + tenantId.getId() + "-dispatcher-" + tenantDispatcherSeq.incrementAndGet();
+                TenantDispatcherExecutor executor = new TenantDispatcherExecutor(dispatcherName, poolSize);
+                system.createDispatcher(dispatcherName, executor);
+                tenantDispatcher = new TenantDispatcher(dispatcherName, executor, System.nanoTime());
+                tenantDispatchers.put(tenantId, tenantDispatcher);
+                log.info("[{}] Created tenant dispatcher [{}] with pool size {}", tenantId, dispatcherName, poolSize);
+            }
+            return tenantDispatcher.name;
+        }
+    }
+
+    @Override
+    public synchronized void releaseDispatcher(TenantId tenantId, String dispatcherName) {
+        if (system.getActor(new TbEntityActorId(tenantId)) != null) {
+            // the tenant actor was recreated before the old one was destroyed, so the new actors still use the dispatcher
+            log.debug("[{}] Tenant actor is registered, keeping tenant dispatcher", tenantId);
+            return;
+        }
+        TenantDispatcher tenantDispatcher = tenantDispatchers.get(tenantId);
+        if (tenantDispatcher == null) {
+            sharedDispatcherTenants.remove(tenantId);
+        } else if (tenantDispatcher.name.equals(dispatcherName)) {
+            destroyTenantDispatcher(tenantId);
+        } else {
+            // the dispatcher was already replaced, e.g. after a restart of the tenant actor, and is used by the new actors
+            log.debug("[{}] Tenant dispatcher [{}] was replaced by [{}], keeping it", tenantId, dispatcherName, tenantDispatcher.name);
+        }
+    }
+
+    private void destroyTenantDispatcher(TenantId tenantId) {
+        TenantDispatcher tenantDispatcher = tenantDispatchers.remove(tenantId);
+        if (tenantDispatcher != null) {
+            // the pending tasks, including the destroy of the tenant actors, are completed before the pool is terminated
+            system.destroyDispatcher(tenantDispatcher.name);
+            TenantDispatcherStats stats = tenantDispatcherStats.get(tenantId);
+            if (stats != null) {
+                stats.reset();
+            }
+            log.info("[{}] Released tenant dispatcher [{}]", tenantId, tenantDispatcher.name);
+        }
+    }
+
+    /**
+     * Stops the tenant actor together with its child actors, so they are recreated on the dispatcher that matches the tenant profile
+     * when the next message for the tenant arrives. Otherwise, a switch between the shared and the own dispatcher would split
+     * the actors of the tenant across the pools.
+     */
+    private synchronized void restartTenantActor(TenantId tenantId) {
+        log.info("[{}] Restarting tenant actor to apply the actor dispatcher pool size change", tenantId);
+        sharedDispatcherTenants.remove(tenantId);
+        system.stop(new TbEntityActorId(tenantId));
+        destroyTenantDispatcher(tenantId);
+    }
+
+    @Scheduled(fixedDelayString = "${actors.system.tenant_dispatcher_stats_print_interval_ms:60000}")
+    public void updateTenantDispatchers() {
+        List<TenantId> tenantsToRestart = new ArrayList<>();
+        tenantDispatchers.forEach((tenantId, tenantDispatcher) -> {
+            TenantDispatcherExecutor executor = tenantDispatcher.executor;
+            long ts = System.nanoTime();
+            long busyNanos = executor.getBusyNanos();
+            int poolSize = executor.getMaximumPoolSize();
+            long elapsedNanos = ts - tenantDispatcher.lastStatsTs;
+            int utilization = elapsedNanos > 0 ? (int) Math.min(100, (busyNanos - tenantDispatcher.lastBusyNanos) * 100 / (elapsedNanos * poolSize)) : 0;
+            int queueSize = executor.getQueue().size();
+            tenantDispatcher.lastStatsTs = ts;
+            tenantDispatcher.lastBusyNanos = busyNanos;
+
+            TenantDispatcherStats stats = tenantDispatcherStats.computeIfAbsent(tenantId, this::createTenantDispatcherStats);
+            stats.utilization.set(utilization);
+            stats.queueSize.set(queueSize);
+            log.info("[{}] Tenant dispatcher stats: pool size [{}], utilization [{}%], queue size [{}], tasks [{}]",
+                    tenantId, poolSize, utilization, queueSize, executor.getCompletedTaskCount());
+
+            int profilePoolSize = getTenantDispatcherPoolSize(tenantId);
+            if (profilePoolSize <= 0) {
+                tenantsToRestart.add(tenantId);
+            } else if (profilePoolSize != poolSize) {
+                log.info("[{}] Resizing tenant dispatcher from {} to {} threads", tenantId, poolSize, profilePoolSize);
+                executor.resize(profilePoolSize);
+            }
+        });
+        sharedDispatcherTenants.forEach(tenantId -> {
+            if (system.getActor(new TbEntityActorId(tenantId)) == null) {
+                sharedDispatcherTenants.remove(tenantId);
+            } else if (getTenantDispatcherPoolSize(tenantId) > 0) {
+                tenantsToRestart.add(tenantId);
+            }
+        });
+        tenantsToRestart.forEach(this::restartTenantActor);
+    }
+
+    private int getTenantDispatcherPoolSize(TenantId tenantId) {
+        TenantProfile tenantProfile = actorContext.getTenantProfileCache().get(tenantId);
+        if (tenantProfile == null) {
+            return 0;
+        }
+        int poolSize = tenantProfile.getProfileConfiguration().map(DefaultTenantProfileConfiguration::getActorDispatcherPoolSize).orElse(0);
+        return tenantDispatcherMaxPoolSize > 0 ? Math.min(poolSize, tenantDispatcherMaxPoolSize) : poolSize;
+    }
+
+    private TenantDispatcherStats createTenantDispatcherStats(TenantId tenantId) {
+        String tenantIdStr = tenantId.getId().toString();
+        return new TenantDispatcherStats(
+                statsFactory.createGauge("tenantDispatcherUtilization", new AtomicInteger(), "tenantId", tenantIdStr),
+                statsFactory.createGauge("tenantDispatcherQueueSize", new AtomicInteger(), "tenantId", tenantIdStr));
+    }
+
     @EventListener(ApplicationReadyEvent.class)
     @Order(value = 2)
     public void onApplicationEvent(ApplicationReadyEvent applicationReadyEvent) {
@@ -135,4 +284,32 @@ public class DefaultActorService extends TbApplicationEventListener<PartitionCha
         }
     }
 
+    private static class TenantDispatcher {
+        private final String name;
+        private final TenantDispatcherExecutor executor;
+        private long lastStatsTs;
+        private long lastBusyNanos;
+
+        private TenantDispatcher(String name, TenantDispatcherExecutor executor, long createdTs) {
+            this.name = name;
+            this.executor = executor;
+            this.lastStatsTs = createdTs;
+        }
+    }
+
+    private static class TenantDispatcherStats {
+        private final AtomicInteger utilization;
+        private final AtomicInteger queueSize;
+
+        private TenantDispatcherStats(AtomicInteger utilization, AtomicInteger queueSize) {
+            this.utilization = utilization;
+            this.queueSize = queueSize;
+        }
+
+        private void reset() {
+            utilization.set(0);
+            queueSize.set(0);
+        }
+    }
+
 }
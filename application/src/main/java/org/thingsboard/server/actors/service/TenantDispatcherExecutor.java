@@ -0,0 +1,68 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors.service;
+
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size executor of the own actor dispatcher of a tenant. Keeps track of the time spent in the tasks,
+ * so the utilization of the pool can be reported per tenant.
+ */
+class TenantDispatcherExecutor extends ThreadPoolExecutor {
+
+    private final ThreadLocal<Long> taskStartTs = new ThreadLocal<>();
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    TenantDispatcherExecutor(String name, int poolSize) {
+        super(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), ThingsBoardThreadFactory.forName(name));
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        taskStartTs.set(System.nanoTime());
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        Long startTs = taskStartTs.get();
+        if (startTs != null) {
+            busyNanos.addAndGet(System.nanoTime() - startTs);
+            taskStartTs.remove();
+        }
+        super.afterExecute(r, t);
+    }
+
+    long getBusyNanos() {
+        return busyNanos.get();
+    }
+
+    synchronized void resize(int poolSize) {
+        if (poolSize > getMaximumPoolSize()) {
+            setMaximumPoolSize(poolSize);
+            setCorePoolSize(poolSize);
+        } else if (poolSize < getMaximumPoolSize()) {
+            setCorePoolSize(poolSize);
+            setMaximumPoolSize(poolSize);
+        }
+    }
+
+}
@@ -115,6 +115,7 @@ public class TenantActor extends RuleChainManagerActor {
     @Override
     public void destroy() {
         log.info("[{}] Stopping tenant actor.", tenantId);
+        systemContext.getActorService().releaseDispatcher(tenantId, ctx.getDispatcherId());
     }
 
     @Override
@@ -154,6 +155,7 @@ public class TenantActor extends RuleChainManagerActor {
                 onQueueToRuleEngineMsg((QueueToRuleEngineMsg) msg);
                 break;
             case TRANSPORT_TO_DEVICE_ACTOR_MSG:
+            case DEVICE_SESSIONS_ACTIVITY_TO_DEVICE_ACTOR_MSG:
                 onToDeviceActorMsg((DeviceAwareMsg) msg, false);
                 break;
             case DEVICE_ATTRIBUTES_UPDATE_TO_DEVICE_ACTOR_MSG:
@@ -275,7 +277,7 @@ public class TenantActor extends RuleChainManagerActor {
 
     private TbActorRef getOrCreateDeviceActor(DeviceId deviceId) {
         return ctx.getOrCreateChildActor(new TbEntityActorId(deviceId),
-                () -> DefaultActorService.DEVICE_DISPATCHER_NAME,
+                () -> systemContext.getActorService().getDispatcherName(tenantId, DefaultActorService.DEVICE_DISPATCHER_NAME),
                 () -> new DeviceActorCreator(systemContext, tenantId, deviceId));
     }
 
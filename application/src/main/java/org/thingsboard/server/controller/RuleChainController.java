@@ -71,6 +71,7 @@ import org.thingsboard.server.dao.event.EventService;
 import org.thingsboard.server.queue.util.TbCoreComponent;
 import org.thingsboard.server.service.install.InstallScripts;
 import org.thingsboard.server.service.rule.TbRuleChainService;
+import org.thingsboard.server.service.rule.TbRuleNodeDebugEventService;
 import org.thingsboard.server.service.script.JsInvokeService;
 import org.thingsboard.server.service.script.RuleNodeJsScriptEngine;
 import org.thingsboard.server.service.security.permission.Operation;
@@ -155,6 +156,9 @@ public class RuleChainController extends BaseController {
     @Autowired
     private JsInvokeService jsInvokeService;
 
+    @Autowired
+    private TbRuleNodeDebugEventService ruleNodeDebugEventService;
+
     @Autowired(required = false)
     private ActorSystemContext actorContext;
 
@@ -511,7 +515,10 @@ public class RuleChainController extends BaseController {
             RuleNodeId ruleNodeId = new RuleNodeId(toUUID(strRuleNodeId));
             checkRuleNode(ruleNodeId, Operation.READ);
             TenantId tenantId = getCurrentUser().getTenantId();
-            List<Event> events = eventService.findLatestEvents(tenantId, ruleNodeId, DataConstants.DEBUG_RULE_NODE, 2);
+            List<Event> events = ruleNodeDebugEventService.findRecentDebugEvents(tenantId, ruleNodeId, 2);
+            if (events.isEmpty()) {
+                events = eventService.findLatestEvents(tenantId, ruleNodeId, DataConstants.DEBUG_RULE_NODE, 2);
+            }
             JsonNode result = null;
             if (events != null) {
                 for (Event event : events) {
@@ -528,6 +535,28 @@ public class RuleChainController extends BaseController {
         }
     }
 
+    @ApiOperation(value = "Get recent debug events (getRecentRuleNodeDebugEvents)",
+            notes = "Gets the latest debug events of the specified Rule Node from the in-memory buffer of the server, newest first. " +
+                    "Does not query the database. Returns empty list if the buffer is disabled " +
+                    "or the rule node does not process messages on this server. " + TENANT_AUTHORITY_PARAGRAPH)
+    @PreAuthorize("hasAnyAuthority('TENANT_ADMIN')")
+    @RequestMapping(value = "/ruleNode/{ruleNodeId}/debugEvents", params = {"limit"}, method = RequestMethod.GET)
+    @ResponseBody
+    public List<Event> getRecentRuleNodeDebugEvents(
+            @ApiParam(value = RULE_NODE_ID_PARAM_DESCRIPTION)
+            @PathVariable(RULE_NODE_ID) String strRuleNodeId,
+            @ApiParam(value = "Maximum number of events to return", required = true)
+            @RequestParam int limit) throws ThingsboardException {
+        checkParameter(RULE_NODE_ID, strRuleNodeId);
+        try {
+            RuleNodeId ruleNodeId = new RuleNodeId(toUUID(strRuleNodeId));
+            checkRuleNode(ruleNodeId, Operation.READ);
+            return ruleNodeDebugEventService.findRecentDebugEvents(getCurrentUser().getTenantId(), ruleNodeId, limit);
+        } catch (Exception e) {
+            throw handleException(e);
+        }
+    }
+
 
     @ApiOperation(value = "Test JavaScript function",
             notes = TEST_JS_FUNCTION + TENANT_AUTHORITY_PARAGRAPH)
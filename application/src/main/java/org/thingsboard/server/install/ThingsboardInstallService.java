@@ -216,6 +216,9 @@ public class ThingsboardInstallService {
                             dataUpdateService.updateData("3.3.2");
                         case "3.3.3":
                             log.info("Upgrading ThingsBoard from version 3.3.3 to 3.3.4 ...");
+                            if (databaseTsUpgradeService != null) {
+                                databaseTsUpgradeService.upgradeDatabase("3.3.3");
+                            }
                             databaseEntitiesUpgradeService.upgradeDatabase("3.3.3");
                             log.info("Updating system data...");
                             systemDataLoaderService.updateSystemWidgets();
@@ -36,11 +36,13 @@ import org.thingsboard.server.common.data.kv.AttributeKvEntry;
 import org.thingsboard.server.common.data.kv.DataType;
 import org.thingsboard.server.common.data.kv.KvEntry;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.data.plugin.ComponentLifecycleEvent;
 import org.thingsboard.server.common.msg.TbMsg;
 import org.thingsboard.server.common.msg.TbMsgDataType;
 import org.thingsboard.server.common.msg.TbMsgMetaData;
 import org.thingsboard.server.dao.audit.AuditLogService;
 import org.thingsboard.server.queue.util.TbCoreComponent;
+import org.thingsboard.server.service.subscription.TbEntityDataSubscriptionService;
 import org.thingsboard.server.cluster.TbClusterService;
 
 import java.util.List;
@@ -54,6 +56,7 @@ import java.util.stream.Collectors;
 public class EntityActionService {
     private final TbClusterService tbClusterService;
     private final AuditLogService auditLogService;
+    private final TbEntityDataSubscriptionService entityDataSubscriptionService;
 
     private static final ObjectMapper json = new ObjectMapper();
 
@@ -219,11 +222,36 @@ public class EntityActionService {
         }
         if (e == null) {
             pushEntityActionToRuleEngine(entityId, entity, user.getTenantId(), customerId, actionType, user, additionalInfo);
+            notifyEntityDataSubscriptions(user.getTenantId(), entityId, actionType);
         }
         auditLogService.logEntityAction(user.getTenantId(), customerId, user.getId(), user.getName(), entityId, entity, actionType, e, additionalInfo);
     }
 
 
+    /**
+     * Notifies the dynamic queries of this node. The queries of the other nodes receive the lifecycle events
+     * of the entities that are broadcast to the cluster, e.g. devices, and refresh on the full refresh interval otherwise.
+     */
+    private void notifyEntityDataSubscriptions(TenantId tenantId, EntityId entityId, ActionType actionType) {
+        ComponentLifecycleEvent event;
+        switch (actionType) {
+            case ADDED:
+                event = ComponentLifecycleEvent.CREATED;
+                break;
+            case DELETED:
+                event = ComponentLifecycleEvent.DELETED;
+                break;
+            case UPDATED:
+            case ASSIGNED_TO_CUSTOMER:
+            case UNASSIGNED_FROM_CUSTOMER:
+                event = ComponentLifecycleEvent.UPDATED;
+                break;
+            default:
+                return;
+        }
+        entityDataSubscriptionService.onEntityLifecycleEvent(tenantId, entityId, event);
+    }
+
     private <T> T extractParameter(Class<T> clazz, int index, Object... additionalInfo) {
         T result = null;
         if (additionalInfo != null && additionalInfo.length > index) {
@@ -29,8 +29,11 @@ import org.thingsboard.server.service.importing.AbstractBulkImportService;
 import org.thingsboard.server.service.importing.BulkImportColumnType;
 import org.thingsboard.server.service.security.model.SecurityUser;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @TbCoreComponent
@@ -71,6 +74,14 @@ public class AssetBulkImportService extends AbstractBulkImportService<Asset> {
                 .orElseGet(Asset::new);
     }
 
+    @Override
+    protected Map<String, Asset> findOrCreateEntities(TenantId tenantId, List<String> names) {
+        Map<String, Asset> assets = assetService.findAssetsByTenantIdAndNames(tenantId, names).stream()
+                .collect(Collectors.toMap(Asset::getName, Function.identity()));
+        names.forEach(name -> assets.computeIfAbsent(name, n -> new Asset()));
+        return assets;
+    }
+
     @Override
     protected void setOwners(Asset entity, SecurityUser user) {
         entity.setTenantId(user.getTenantId());
@@ -56,12 +56,15 @@ import org.thingsboard.server.service.security.model.SecurityUser;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @TbCoreComponent
@@ -127,6 +130,14 @@ public class DeviceBulkImportService extends AbstractBulkImportService<Device> {
                 .orElseGet(Device::new);
     }
 
+    @Override
+    protected Map<String, Device> findOrCreateEntities(TenantId tenantId, List<String> names) {
+        Map<String, Device> devices = deviceService.findDevicesByTenantIdAndNames(tenantId, names).stream()
+                .collect(Collectors.toMap(Device::getName, Function.identity()));
+        names.forEach(name -> devices.computeIfAbsent(name, n -> new Device()));
+        return devices;
+    }
+
     @Override
     protected void setOwners(Device entity, SecurityUser user) {
         entity.setTenantId(user.getTenantId());
@@ -16,13 +16,17 @@
 package org.thingsboard.server.service.importing;
 
 import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import lombok.Data;
 import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.thingsboard.common.util.DonAsynchron;
@@ -45,7 +49,6 @@ import org.thingsboard.server.controller.BaseController;
 import org.thingsboard.server.dao.tenant.TbTenantProfileCache;
 import org.thingsboard.server.service.action.EntityActionService;
 import org.thingsboard.server.service.importing.BulkImportRequest.ColumnMapping;
-import org.thingsboard.server.service.security.AccessValidator;
 import org.thingsboard.server.service.security.model.SecurityUser;
 import org.thingsboard.server.service.security.permission.AccessControlService;
 import org.thingsboard.server.service.security.permission.Operation;
@@ -59,11 +62,18 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -71,6 +81,7 @@ import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+@Slf4j
 public abstract class AbstractBulkImportService<E extends HasId<? extends EntityId> & HasTenantId> {
     @Autowired
     private TelemetrySubscriptionService tsSubscriptionService;
@@ -79,10 +90,11 @@ public abstract class AbstractBulkImportService<E extends HasId<? extends Entity
     @Autowired
     private AccessControlService accessControlService;
     @Autowired
-    private AccessValidator accessValidator;
-    @Autowired
     private EntityActionService entityActionService;
 
+    @Value("${bulk_import.batch_size:500}")
+    private int batchSize;
+
     private static ThreadPoolExecutor executor;
 
     @PostConstruct
@@ -96,48 +108,118 @@ public abstract class AbstractBulkImportService<E extends HasId<? extends Entity
     }
 
     public final BulkImportResult<E> processBulkImport(BulkImportRequest request, SecurityUser user, Consumer<ImportedEntityInfo<E>> onEntityImported) throws Exception {
-        List<EntityData> entitiesData = parseData(request);
-
         BulkImportResult<E> result = new BulkImportResult<>();
-        CountDownLatch completionLatch = new CountDownLatch(entitiesData.size());
-
         SecurityContext securityContext = SecurityContextHolder.getContext();
+        long tenantTtl = getTenantTtl(user.getTenantId());
+        // the lines of the next batch are submitted while the previous batch is still saved, up to this many lines at once
+        int maxLinesInFlight = batchSize * 2;
+        Semaphore linesInFlight = new Semaphore(maxLinesInFlight);
+        Map<String, ListenableFuture<ImportedEntityInfo<E>>> namesInFlight = new ConcurrentHashMap<>();
 
-        entitiesData.forEach(entityData -> DonAsynchron.submit(() -> {
-                    SecurityContextHolder.setContext(securityContext);
+        List<ColumnMapping> columnsMappings = request.getMapping().getColumns();
+        boolean header = request.getMapping().getHeader();
+        AtomicInteger linesCounter = new AtomicInteger(0);
+        List<EntityData> batch = new ArrayList<>(batchSize);
+        Set<String> batchNames = new HashSet<>();
 
-                    ImportedEntityInfo<E> importedEntityInfo =  saveEntity(entityData.getFields(), user);
-                    E entity = importedEntityInfo.getEntity();
+        CsvUtils.parseCsv(request.getFile(), request.getMapping().getDelimiter(), record -> {
+            int lineNumber = linesCounter.incrementAndGet();
+            if (header && lineNumber == 1) {
+                return;
+            }
+            EntityData entityData = toEntityData(record, columnsMappings, lineNumber);
+            String name = entityData.getFields().get(BulkImportColumnType.NAME);
+            // lines with the same name are never saved concurrently, the latter one goes to the next batch
+            if (batch.size() >= batchSize || (name != null && batchNames.contains(name))) {
+                processBatch(batch, user, securityContext, tenantTtl, onEntityImported, result, linesInFlight, namesInFlight);
+                batch.clear();
+                batchNames.clear();
+            }
+            if (name != null) {
+                batchNames.add(name);
+            }
+            batch.add(entityData);
+        });
+        if (!batch.isEmpty()) {
+            processBatch(batch, user, securityContext, tenantTtl, onEntityImported, result, linesInFlight, namesInFlight);
+        }
+        linesInFlight.acquire(maxLinesInFlight);
+        return result;
+    }
 
-                    onEntityImported.accept(importedEntityInfo);
-                    saveKvs(user, entity, entityData.getKvs());
+    @SneakyThrows
+    private void processBatch(List<EntityData> batch, SecurityUser user, SecurityContext securityContext, long tenantTtl,
+                              Consumer<ImportedEntityInfo<E>> onEntityImported, BulkImportResult<E> result,
+                              Semaphore linesInFlight, Map<String, ListenableFuture<ImportedEntityInfo<E>>> namesInFlight) {
+        List<String> names = batch.stream()
+                .map(entityData -> entityData.getFields().get(BulkImportColumnType.NAME))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        // the entity created by a line of the previous batch must be found by the lookup instead of being created once again
+        for (String name : names) {
+            ListenableFuture<ImportedEntityInfo<E>> previousLine = namesInFlight.get(name);
+            if (previousLine != null) {
+                try {
+                    previousLine.get();
+                } catch (ExecutionException e) {
+                    // already reported as the error of that line
+                }
+            }
+        }
+        Map<String, E> entities;
+        try {
+            entities = names.isEmpty() ? Collections.emptyMap() : findOrCreateEntities(user.getTenantId(), names);
+        } catch (Exception e) {
+            log.warn("[{}] Failed to find the {} entities of the batch, falling back to the lookup per line", user.getTenantId(), getEntityType(), e);
+            entities = Collections.emptyMap();
+        }
+        Map<String, E> batchEntities = entities;
+
+        for (EntityData entityData : batch) {
+            String name = entityData.getFields().get(BulkImportColumnType.NAME);
+            linesInFlight.acquire();
+            ListenableFuture<ImportedEntityInfo<E>> future = DonAsynchron.submit(() -> {
+                        SecurityContextHolder.setContext(securityContext);
+
+                        E entity = name != null ? batchEntities.get(name) : null;
+                        if (entity == null) {
+                            entity = findOrCreateEntity(user.getTenantId(), name);
+                        }
+                        ImportedEntityInfo<E> importedEntityInfo = saveEntity(entity, entityData.getFields(), user);
+
+                        onEntityImported.accept(importedEntityInfo);
+                        saveKvs(user, importedEntityInfo.getEntity(), entityData.getKvs(), tenantTtl);
+
+                        return importedEntityInfo;
+                    },
+                    importedEntityInfo -> {
+                        if (importedEntityInfo.isUpdated()) {
+                            result.getUpdated().incrementAndGet();
+                        } else {
+                            result.getCreated().incrementAndGet();
+                        }
+                        linesInFlight.release();
+                    },
+                    throwable -> {
+                        result.getErrors().incrementAndGet();
+                        result.getErrorsList().add(String.format("Line %d: %s", entityData.getLineNumber(), ExceptionUtils.getRootCauseMessage(throwable)));
+                        linesInFlight.release();
+                    },
+                    executor);
+            if (name != null) {
+                namesInFlight.put(name, future);
+                future.addListener(() -> namesInFlight.remove(name, future), MoreExecutors.directExecutor());
+            }
+        }
 
-                    return importedEntityInfo;
-                },
-                importedEntityInfo -> {
-                    if (importedEntityInfo.isUpdated()) {
-                        result.getUpdated().incrementAndGet();
-                    } else {
-                        result.getCreated().incrementAndGet();
-                    }
-                    completionLatch.countDown();
-                },
-                throwable -> {
-                    result.getErrors().incrementAndGet();
-                    result.getErrorsList().add(String.format("Line %d: %s", entityData.getLineNumber(), ExceptionUtils.getRootCauseMessage(throwable)));
-                    completionLatch.countDown();
-                },
-                executor));
-
-        completionLatch.await();
-        return result;
+        log.debug("[{}] Bulk import of {} entities: {} created, {} updated, {} errors so far", user.getTenantId(), getEntityType(),
+                result.getCreated().get(), result.getUpdated().get(), result.getErrors().get());
     }
 
     @SneakyThrows
-    private ImportedEntityInfo<E> saveEntity(Map<BulkImportColumnType, String> fields, SecurityUser user) {
+    private ImportedEntityInfo<E> saveEntity(E entity, Map<BulkImportColumnType, String> fields, SecurityUser user) {
         ImportedEntityInfo<E> importedEntityInfo = new ImportedEntityInfo<>();
 
-        E entity = findOrCreateEntity(user.getTenantId(), fields.get(BulkImportColumnType.NAME));
         if (entity.getId() != null) {
             importedEntityInfo.setOldEntity((E) entity.getClass().getConstructor(entity.getClass()).newInstance(entity));
             importedEntityInfo.setUpdated(true);
@@ -154,6 +236,15 @@ public abstract class AbstractBulkImportService<E extends HasId<? extends Entity
         return importedEntityInfo;
     }
 
+    /**
+     * Finds the entities for the batch of unique names with as few queries as possible.
+     * The returned map contains an entity for each of the names, a new one if the entity does not exist yet.
+     */
+    protected Map<String, E> findOrCreateEntities(TenantId tenantId, List<String> names) {
+        Map<String, E> entities = new HashMap<>();
+        names.forEach(name -> entities.put(name, findOrCreateEntity(tenantId, name)));
+        return entities;
+    }
 
     protected abstract E findOrCreateEntity(TenantId tenantId, String name);
 
@@ -166,7 +257,12 @@ public abstract class AbstractBulkImportService<E extends HasId<? extends Entity
     protected abstract EntityType getEntityType();
 
 
-    private void saveKvs(SecurityUser user, E entity, Map<ColumnMapping, ParsedValue> data) {
+    private long getTenantTtl(TenantId tenantId) {
+        TenantProfile tenantProfile = tenantProfileCache.get(tenantId);
+        return TimeUnit.DAYS.toSeconds(((DefaultTenantProfileConfiguration) tenantProfile.getProfileData().getConfiguration()).getDefaultStorageTtlDays());
+    }
+
+    private void saveKvs(SecurityUser user, E entity, Map<ColumnMapping, ParsedValue> data, long tenantTtl) {
         Arrays.stream(BulkImportColumnType.values())
                 .filter(BulkImportColumnType::isKv)
                 .map(kvType -> {
@@ -183,35 +279,34 @@ public abstract class AbstractBulkImportService<E extends HasId<? extends Entity
                     if (kvType == BulkImportColumnType.SHARED_ATTRIBUTE || kvType == BulkImportColumnType.SERVER_ATTRIBUTE) {
                         saveAttributes(user, entity, kvsEntry, kvType);
                     } else {
-                        saveTelemetry(user, entity, kvsEntry);
+                        saveTelemetry(user, entity, kvsEntry, tenantTtl);
                     }
                 });
     }
 
     @SneakyThrows
-    private void saveTelemetry(SecurityUser user, E entity, Map.Entry<BulkImportColumnType, JsonObject> kvsEntry) {
+    private void saveTelemetry(SecurityUser user, E entity, Map.Entry<BulkImportColumnType, JsonObject> kvsEntry, long tenantTtl) {
         List<TsKvEntry> timeseries = JsonConverter.convertToTelemetry(kvsEntry.getValue(), System.currentTimeMillis())
                 .entrySet().stream()
                 .flatMap(entry -> entry.getValue().stream().map(kvEntry -> new BasicTsKvEntry(entry.getKey(), kvEntry)))
                 .collect(Collectors.toList());
 
-        accessValidator.validateEntityAndCallback(user, Operation.WRITE_TELEMETRY, entity.getId(), (result, tenantId, entityId) -> {
-            TenantProfile tenantProfile = tenantProfileCache.get(tenantId);
-            long tenantTtl = TimeUnit.DAYS.toSeconds(((DefaultTenantProfileConfiguration) tenantProfile.getProfileData().getConfiguration()).getDefaultStorageTtlDays());
-            tsSubscriptionService.saveAndNotify(tenantId, user.getCustomerId(), entityId, timeseries, tenantTtl, new FutureCallback<Void>() {
-                @Override
-                public void onSuccess(@Nullable Void tmp) {
-                    entityActionService.logEntityAction(user, (UUIDBased & EntityId) entityId, null, null,
-                            ActionType.TIMESERIES_UPDATED, null, timeseries);
-                }
+        // the entity is already loaded, so the permission is checked against it instead of fetching it once again
+        accessControlService.checkPermission(user, Resource.of(getEntityType()), Operation.WRITE_TELEMETRY, entity.getId(), entity);
+        EntityId entityId = entity.getId();
+        tsSubscriptionService.saveAndNotify(entity.getTenantId(), user.getCustomerId(), entityId, timeseries, tenantTtl, new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(@Nullable Void tmp) {
+                entityActionService.logEntityAction(user, (UUIDBased & EntityId) entityId, null, null,
+                        ActionType.TIMESERIES_UPDATED, null, timeseries);
+            }
 
-                @Override
-                public void onFailure(Throwable t) {
-                    entityActionService.logEntityAction(user, (UUIDBased & EntityId) entityId, null, null,
-                            ActionType.TIMESERIES_UPDATED, BaseController.toException(t), timeseries);
-                    throw new RuntimeException(t);
-                }
-            });
+            @Override
+            public void onFailure(Throwable t) {
+                entityActionService.logEntityAction(user, (UUIDBased & EntityId) entityId, null, null,
+                        ActionType.TIMESERIES_UPDATED, BaseController.toException(t), timeseries);
+                throw new RuntimeException(t);
+            }
         });
     }
 
@@ -220,55 +315,42 @@ public abstract class AbstractBulkImportService<E extends HasId<? extends Entity
         String scope = kvType.getKey();
         List<AttributeKvEntry> attributes = new ArrayList<>(JsonConverter.convertToAttributes(kvsEntry.getValue()));
 
-        accessValidator.validateEntityAndCallback(user, Operation.WRITE_ATTRIBUTES, entity.getId(), (result, tenantId, entityId) -> {
-            tsSubscriptionService.saveAndNotify(tenantId, entityId, scope, attributes, new FutureCallback<>() {
+        accessControlService.checkPermission(user, Resource.of(getEntityType()), Operation.WRITE_ATTRIBUTES, entity.getId(), entity);
+        EntityId entityId = entity.getId();
+        tsSubscriptionService.saveAndNotify(entity.getTenantId(), entityId, scope, attributes, new FutureCallback<>() {
 
-                @Override
-                public void onSuccess(Void unused) {
-                    entityActionService.logEntityAction(user, (UUIDBased & EntityId) entityId, null,
-                            null, ActionType.ATTRIBUTES_UPDATED, null, scope, attributes);
-                }
+            @Override
+            public void onSuccess(Void unused) {
+                entityActionService.logEntityAction(user, (UUIDBased & EntityId) entityId, null,
+                        null, ActionType.ATTRIBUTES_UPDATED, null, scope, attributes);
+            }
 
-                @Override
-                public void onFailure(Throwable throwable) {
-                    entityActionService.logEntityAction(user, (UUIDBased & EntityId) entityId, null,
-                            null, ActionType.ATTRIBUTES_UPDATED, BaseController.toException(throwable),
-                            scope, attributes);
-                    throw new RuntimeException(throwable);
-                }
+            @Override
+            public void onFailure(Throwable throwable) {
+                entityActionService.logEntityAction(user, (UUIDBased & EntityId) entityId, null,
+                        null, ActionType.ATTRIBUTES_UPDATED, BaseController.toException(throwable),
+                        scope, attributes);
+                throw new RuntimeException(throwable);
+            }
 
-            });
         });
     }
 
-    private List<EntityData> parseData(BulkImportRequest request) throws Exception {
-        List<List<String>> records = CsvUtils.parseCsv(request.getFile(), request.getMapping().getDelimiter());
-        AtomicInteger linesCounter = new AtomicInteger(0);
-
-        if (request.getMapping().getHeader()) {
-            records.remove(0);
-            linesCounter.incrementAndGet();
-        }
-
-        List<ColumnMapping> columnsMappings = request.getMapping().getColumns();
-        return records.stream()
-                .map(record -> {
-                    EntityData entityData = new EntityData();
-                    Stream.iterate(0, i -> i < record.size(), i -> i + 1)
-                            .map(i -> Map.entry(columnsMappings.get(i), record.get(i)))
-                            .filter(entry -> StringUtils.isNotEmpty(entry.getValue()))
-                            .forEach(entry -> {
-                                if (!entry.getKey().getType().isKv()) {
-                                    entityData.getFields().put(entry.getKey().getType(), entry.getValue());
-                                } else {
-                                    Map.Entry<DataType, Object> castResult = TypeCastUtil.castValue(entry.getValue());
-                                    entityData.getKvs().put(entry.getKey(), new ParsedValue(castResult.getValue(), castResult.getKey()));
-                                }
-                            });
-                    entityData.setLineNumber(linesCounter.incrementAndGet());
-                    return entityData;
-                })
-                .collect(Collectors.toList());
+    private EntityData toEntityData(List<String> record, List<ColumnMapping> columnsMappings, int lineNumber) {
+        EntityData entityData = new EntityData();
+        Stream.iterate(0, i -> i < record.size(), i -> i + 1)
+                .map(i -> Map.entry(columnsMappings.get(i), record.get(i)))
+                .filter(entry -> StringUtils.isNotEmpty(entry.getValue()))
+                .forEach(entry -> {
+                    if (!entry.getKey().getType().isKv()) {
+                        entityData.getFields().put(entry.getKey().getType(), entry.getValue());
+                    } else {
+                        Map.Entry<DataType, Object> castResult = TypeCastUtil.castValue(entry.getValue());
+                        entityData.getKvs().put(entry.getKey(), new ParsedValue(castResult.getValue(), castResult.getKey()));
+                    }
+                });
+        entityData.setLineNumber(lineNumber);
+        return entityData;
     }
 
     @PreDestroy
@@ -28,20 +28,24 @@ import org.thingsboard.common.util.JacksonUtil;
 import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.actors.ActorSystemContext;
 import org.thingsboard.server.common.data.alarm.Alarm;
+import org.thingsboard.server.common.data.id.DeviceId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.rpc.RpcError;
 import org.thingsboard.server.common.msg.MsgType;
 import org.thingsboard.server.common.msg.TbActorMsg;
+import org.thingsboard.server.common.msg.plugin.ComponentLifecycleMsg;
 import org.thingsboard.server.common.msg.queue.ServiceType;
 import org.thingsboard.server.common.msg.queue.TbCallback;
 import org.thingsboard.server.common.msg.rpc.FromDeviceRpcResponse;
 import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.common.transport.util.DataDecodingEncodingService;
 import org.thingsboard.server.dao.tenant.TbTenantProfileCache;
+import org.thingsboard.server.gen.transport.TransportProtos.DeviceActivityBatchMsgProto;
 import org.thingsboard.server.gen.transport.TransportProtos.DeviceStateServiceMsgProto;
 import org.thingsboard.server.gen.transport.TransportProtos.EdgeNotificationMsgProto;
 import org.thingsboard.server.gen.transport.TransportProtos.FromDeviceRPCResponseProto;
 import org.thingsboard.server.gen.transport.TransportProtos.LocalSubscriptionServiceMsgProto;
+import org.thingsboard.server.gen.transport.TransportProtos.SubscriptionInfoProto;
 import org.thingsboard.server.gen.transport.TransportProtos.SubscriptionMgrMsgProto;
 import org.thingsboard.server.gen.transport.TransportProtos.TbAlarmDeleteProto;
 import org.thingsboard.server.gen.transport.TransportProtos.TbAlarmUpdateProto;
@@ -70,13 +74,18 @@ import org.thingsboard.server.service.rpc.TbCoreDeviceRpcService;
 import org.thingsboard.server.service.rpc.ToDeviceRpcRequestActorMsg;
 import org.thingsboard.server.service.state.DeviceStateService;
 import org.thingsboard.server.service.subscription.SubscriptionManagerService;
+import org.thingsboard.server.service.subscription.TbEntityDataSubscriptionService;
 import org.thingsboard.server.service.subscription.TbLocalSubscriptionService;
 import org.thingsboard.server.service.subscription.TbSubscriptionUtils;
+import org.thingsboard.server.service.transport.msg.DeviceSessionsActivityMsg;
 import org.thingsboard.server.service.transport.msg.TransportToDeviceActorMsgWrapper;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -108,6 +117,7 @@ public class DefaultTbCoreConsumerService extends AbstractConsumerService<ToCore
 
     private final TbQueueConsumer<TbProtoQueueMsg<ToCoreMsg>> mainConsumer;
     private final DeviceStateService stateService;
+    private final TbEntityDataSubscriptionService entityDataSubscriptionService;
     private final TbApiUsageStateService statsService;
     private final TbLocalSubscriptionService localSubscriptionService;
     private final SubscriptionManagerService subscriptionManagerService;
@@ -135,7 +145,8 @@ public class DefaultTbCoreConsumerService extends AbstractConsumerService<ToCore
                                         TbTenantProfileCache tenantProfileCache,
                                         TbApiUsageStateService apiUsageStateService,
                                         EdgeNotificationService edgeNotificationService,
-                                        OtaPackageStateService firmwareStateService) {
+                                        OtaPackageStateService firmwareStateService,
+                                        TbEntityDataSubscriptionService entityDataSubscriptionService) {
         super(actorContext, encodingService, tenantProfileCache, deviceProfileCache, apiUsageStateService, tbCoreQueueFactory.createToCoreNotificationsMsgConsumer());
         this.mainConsumer = tbCoreQueueFactory.createToCoreMsgConsumer();
         this.usageStatsConsumer = tbCoreQueueFactory.createToUsageStatsServiceMsgConsumer();
@@ -148,6 +159,7 @@ public class DefaultTbCoreConsumerService extends AbstractConsumerService<ToCore
         this.stats = new TbCoreConsumerStats(statsFactory);
         this.statsService = statsService;
         this.firmwareStateService = firmwareStateService;
+        this.entityDataSubscriptionService = entityDataSubscriptionService;
     }
 
     @PostConstruct
@@ -225,6 +237,9 @@ public class DefaultTbCoreConsumerService extends AbstractConsumerService<ToCore
                                 } else if (toCoreMsg.hasDeviceStateServiceMsg()) {
                                     log.trace("[{}] Forwarding message to state service {}", id, toCoreMsg.getDeviceStateServiceMsg());
                                     forwardToStateService(toCoreMsg.getDeviceStateServiceMsg(), callback);
+                                } else if (toCoreMsg.hasDeviceActivityBatchMsg()) {
+                                    log.trace("[{}] Forwarding device activity of {} sessions", id, toCoreMsg.getDeviceActivityBatchMsg().getLastActivityTimeCount());
+                                    forwardDeviceActivity(toCoreMsg.getDeviceActivityBatchMsg(), callback);
                                 } else if (toCoreMsg.hasEdgeNotificationMsg()) {
                                     log.trace("[{}] Forwarding message to edge service {}", id, toCoreMsg.getEdgeNotificationMsg());
                                     forwardToEdgeNotificationService(toCoreMsg.getEdgeNotificationMsg(), callback);
@@ -508,6 +523,38 @@ public class DefaultTbCoreConsumerService extends AbstractConsumerService<ToCore
         edgeNotificationService.pushNotificationToEdge(edgeNotificationMsg, callback);
     }
 
+    @Override
+    protected void onComponentLifecycleMsg(ComponentLifecycleMsg componentLifecycleMsg) {
+        entityDataSubscriptionService.onEntityLifecycleEvent(componentLifecycleMsg.getTenantId(), componentLifecycleMsg.getEntityId(),
+                componentLifecycleMsg.getEvent());
+    }
+
+    void forwardDeviceActivity(DeviceActivityBatchMsgProto activityMsg, TbCallback callback) {
+        if (statsEnabled) {
+            stats.log(activityMsg);
+        }
+        Map<DeviceId, DeviceSessionsActivityMsg> devicesActivity = new LinkedHashMap<>();
+        for (int i = 0; i < activityMsg.getLastActivityTimeCount(); i++) {
+            TenantId tenantId = TenantId.fromUUID(new UUID(activityMsg.getTenantIdMSB(i), activityMsg.getTenantIdLSB(i)));
+            DeviceId deviceId = new DeviceId(new UUID(activityMsg.getDeviceIdMSB(i), activityMsg.getDeviceIdLSB(i)));
+            DeviceSessionsActivityMsg deviceActivity = devicesActivity.computeIfAbsent(deviceId, id -> new DeviceSessionsActivityMsg(tenantId, id, new HashMap<>()));
+            // the subscription flags are missing in the batches of the transports that were not upgraded yet
+            SubscriptionInfoProto subscriptionInfo = SubscriptionInfoProto.newBuilder()
+                    .setLastActivityTime(activityMsg.getLastActivityTime(i))
+                    .setAttributeSubscription(i < activityMsg.getAttributeSubscriptionCount() && activityMsg.getAttributeSubscription(i))
+                    .setRpcSubscription(i < activityMsg.getRpcSubscriptionCount() && activityMsg.getRpcSubscription(i))
+                    .build();
+            deviceActivity.getSessionsActivity().put(new UUID(activityMsg.getSessionIdMSB(i), activityMsg.getSessionIdLSB(i)), subscriptionInfo);
+        }
+        devicesActivity.values().forEach(deviceActivity -> {
+            actorContext.tell(deviceActivity);
+            long lastActivityTime = deviceActivity.getSessionsActivity().values().stream()
+                    .mapToLong(SubscriptionInfoProto::getLastActivityTime).max().orElse(0L);
+            stateService.onDeviceActivity(deviceActivity.getTenantId(), deviceActivity.getDeviceId(), lastActivityTime);
+        });
+        callback.onSuccess();
+    }
+
     private void forwardToDeviceActor(TransportToDeviceActorMsg toDeviceActorMsg, TbCallback callback) {
         if (statsEnabled) {
             stats.log(toDeviceActorMsg);
@@ -15,6 +15,7 @@
  */
 package org.thingsboard.server.service.queue;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.ProtocolStringList;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -38,9 +39,16 @@ import org.thingsboard.server.common.transport.util.DataDecodingEncodingService;
 import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineNotificationMsg;
+import org.thingsboard.server.queue.TbQueueCallback;
 import org.thingsboard.server.queue.TbQueueConsumer;
+import org.thingsboard.server.queue.TbQueueConsumerPosition;
+import org.thingsboard.server.queue.TbQueueMsgHeaders;
+import org.thingsboard.server.queue.TbQueueMsgMetadata;
+import org.thingsboard.server.queue.TbQueueProducer;
+import org.thingsboard.server.queue.common.DefaultTbQueueMsgHeaders;
 import org.thingsboard.server.queue.common.TbProtoQueueMsg;
 import org.thingsboard.server.queue.discovery.event.PartitionChangeEvent;
+import org.thingsboard.server.queue.provider.TbQueueProducerProvider;
 import org.thingsboard.server.queue.provider.TbRuleEngineQueueFactory;
 import org.thingsboard.server.queue.settings.TbQueueRuleEngineSettings;
 import org.thingsboard.server.queue.settings.TbRuleEngineQueueConfiguration;
@@ -61,6 +69,9 @@ import org.thingsboard.server.service.stats.RuleEngineStatisticsService;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -70,6 +81,7 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -83,6 +95,9 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
     public static final String SUCCESSFUL_STATUS = "successful";
     public static final String FAILED_STATUS = "failed";
     public static final String THREAD_TOPIC_SEPARATOR = " | ";
+    public static final String RETRY_TOPIC_SUFFIX = ".retry";
+    static final String RETRY_ATTEMPT_HEADER = "retryAttempt";
+    static final String RETRY_TS_HEADER = "retryTs";
     @Value("${queue.rule-engine.poll-interval}")
     private long pollDuration;
     @Value("${queue.rule-engine.pack-processing-timeout}")
@@ -99,10 +114,12 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
     private final TbQueueRuleEngineSettings ruleEngineSettings;
     private final RuleEngineStatisticsService statisticsService;
     private final TbRuleEngineDeviceRpcService tbDeviceRpcService;
+    private final TbQueueProducerProvider producerProvider;
     private final ConcurrentMap<String, TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>>> consumers = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, TbRuleEngineQueueConfiguration> consumerConfigurations = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, TbRuleEngineConsumerStats> consumerStats = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, TbTopicWithConsumerPerPartition> topicsConsumerPerPartition = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>>> retryConsumers = new ConcurrentHashMap<>();
     final ExecutorService submitExecutor = Executors.newSingleThreadExecutor(ThingsBoardThreadFactory.forName("tb-rule-engine-consumer-submit"));
     final ScheduledExecutorService repartitionExecutor = Executors.newScheduledThreadPool(1, ThingsBoardThreadFactory.forName("tb-rule-engine-consumer-repartition"));
 
@@ -114,6 +131,7 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
                                               ActorSystemContext actorContext,
                                               DataDecodingEncodingService encodingService,
                                               TbRuleEngineDeviceRpcService tbDeviceRpcService,
+                                              TbQueueProducerProvider producerProvider,
                                               StatsFactory statsFactory,
                                               TbDeviceProfileCache deviceProfileCache,
                                               TbTenantProfileCache tenantProfileCache,
@@ -125,6 +143,7 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
         this.submitStrategyFactory = submitStrategyFactory;
         this.processingStrategyFactory = processingStrategyFactory;
         this.tbDeviceRpcService = tbDeviceRpcService;
+        this.producerProvider = producerProvider;
         this.statsFactory = statsFactory;
     }
 
@@ -139,6 +158,11 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
             } else {
                 topicsConsumerPerPartition.computeIfAbsent(configuration.getName(), TbTopicWithConsumerPerPartition::new);
             }
+            if (getMaxPacksInFlight(configuration) > 1) {
+                log.info("[{}] Processing up to {} packs per consumer, retry topic: {}", configuration.getName(),
+                        configuration.getMaxPacksInFlight(), configuration.getTopic() + RETRY_TOPIC_SUFFIX);
+                retryConsumers.computeIfAbsent(configuration.getName(), queueName -> tbRuleEngineQueueFactory.createToRuleEngineMsgConsumer(toRetryConfiguration(configuration)));
+            }
         }
     }
 
@@ -232,17 +256,26 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
     @Override
     protected void launchMainConsumers() {
         consumers.forEach((queue, consumer) -> launchConsumer(consumer, consumerConfigurations.get(queue), consumerStats.get(queue), queue));
+        retryConsumers.forEach((queue, consumer) -> {
+            consumer.subscribe();
+            consumersExecutor.execute(() -> retryConsumerLoop(consumer, consumerConfigurations.get(queue), consumerStats.get(queue)));
+        });
     }
 
     @Override
     protected void stopMainConsumers() {
         consumers.values().forEach(TbQueueConsumer::unsubscribe);
+        retryConsumers.values().forEach(TbQueueConsumer::unsubscribe);
         topicsConsumerPerPartition.values().forEach(tbTopicWithConsumerPerPartition -> tbTopicWithConsumerPerPartition.getConsumers().keySet()
                 .forEach((tpi) -> removeConsumerForTopicByTpi(tbTopicWithConsumerPerPartition.getTopic(), tbTopicWithConsumerPerPartition.getConsumers(), tpi)));
     }
 
     void launchConsumer(TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>> consumer, TbRuleEngineQueueConfiguration configuration, TbRuleEngineConsumerStats stats, String threadSuffix) {
-        consumersExecutor.execute(() -> consumerLoop(consumer, configuration, stats, threadSuffix));
+        if (getMaxPacksInFlight(configuration) > 1) {
+            consumersExecutor.execute(() -> windowConsumerLoop(consumer, configuration, stats, threadSuffix));
+        } else {
+            consumersExecutor.execute(() -> consumerLoop(consumer, configuration, stats, threadSuffix));
+        }
     }
 
     void consumerLoop(TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>> consumer, TbRuleEngineQueueConfiguration configuration, TbRuleEngineConsumerStats stats, String threadSuffix) {
@@ -255,7 +288,7 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
                 }
                 final TbRuleEngineSubmitStrategy submitStrategy = getSubmitStrategy(configuration);
                 final TbRuleEngineProcessingStrategy ackStrategy = getAckStrategy(configuration);
-                submitStrategy.init(msgs);
+                submitStrategy.init(unpackMsgs(msgs));
                 while (!stopped) {
                     TbMsgPackProcessingContext ctx = new TbMsgPackProcessingContext(configuration.getName(), submitStrategy, ackStrategy.isSkipTimeoutMsgs());
                     submitStrategy.submitAttempt((id, msg) -> submitExecutor.submit(() -> submitMessage(configuration, stats, ctx, id, msg)));
@@ -300,6 +333,226 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
         log.info("TB Rule Engine Consumer stopped.");
     }
 
+    /**
+     * Keeps up to max-packs-in-flight packs in processing and commits the completed packs one by one in the order of polling.
+     * A pack leaves the window only after its commit succeeds, so a failed commit is retried without handling the pack again.
+     * The failed and timed out messages are not reprocessed in place, but sent to the retry topic of the queue,
+     * so a slow message does not block the partition for longer than the pack processing timeout.
+     */
+    void windowConsumerLoop(TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>> consumer, TbRuleEngineQueueConfiguration configuration, TbRuleEngineConsumerStats stats, String threadSuffix) {
+        updateCurrentThreadName(threadSuffix);
+        TbMsgPackWindow window = new TbMsgPackWindow(configuration.getMaxPacksInFlight());
+        TbRuleEngineProcessingStrategy ackStrategy = getAckStrategy(configuration);
+        while (!stopped && !consumer.isStopped()) {
+            try {
+                if (!window.isFull()) {
+                    List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs = consumer.poll(pollDuration);
+                    if (!msgs.isEmpty()) {
+                        submitPack(configuration, stats, ackStrategy, window, unpackMsgs(msgs), consumer.getPosition());
+                    }
+                }
+                TbMsgPackWindow.InFlightPack pack;
+                while ((pack = window.peekCompleted(window.isFull())) != null) {
+                    completePack(configuration, stats, ackStrategy, pack);
+                    if (pack.getPosition() != null) {
+                        consumer.commit(pack.getPosition());
+                    } else {
+                        consumer.commit();
+                    }
+                    window.removeCompleted(pack);
+                }
+            } catch (Exception e) {
+                if (!stopped) {
+                    log.warn("Failed to process messages from queue.", e);
+                    try {
+                        Thread.sleep(pollDuration);
+                    } catch (InterruptedException e2) {
+                        log.trace("Failed to wait until the server has capacity to handle new requests", e2);
+                    }
+                }
+            }
+        }
+        log.info("TB Rule Engine Consumer stopped.");
+    }
+
+    /**
+     * Processes the messages of the retry topic once their retry time comes. The messages that fail again are sent back to the retry topic
+     * until the retries of the processing strategy are exhausted.
+     */
+    void retryConsumerLoop(TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>> consumer, TbRuleEngineQueueConfiguration configuration, TbRuleEngineConsumerStats stats) {
+        updateCurrentThreadName(configuration.getName() + RETRY_TOPIC_SUFFIX);
+        TbRuleEngineProcessingStrategy ackStrategy = getAckStrategy(configuration);
+        while (!stopped && !consumer.isStopped()) {
+            try {
+                List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs = consumer.poll(pollDuration);
+                if (msgs.isEmpty()) {
+                    continue;
+                }
+                long delay = msgs.stream().mapToLong(msg -> getLongHeader(msg, RETRY_TS_HEADER)).max().orElse(0L) - System.currentTimeMillis();
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+                TbMsgPackWindow window = new TbMsgPackWindow(1);
+                submitPack(configuration, stats, ackStrategy, window, msgs, null);
+                completePack(configuration, stats, ackStrategy, window.peekCompleted(true));
+                consumer.commit();
+            } catch (Exception e) {
+                if (!stopped) {
+                    log.warn("Failed to process messages from retry queue.", e);
+                    try {
+                        Thread.sleep(pollDuration);
+                    } catch (InterruptedException e2) {
+                        log.trace("Failed to wait until the server has capacity to handle new requests", e2);
+                    }
+                }
+            }
+        }
+        log.info("TB Rule Engine Retry Consumer stopped.");
+    }
+
+    private void submitPack(TbRuleEngineQueueConfiguration configuration, TbRuleEngineConsumerStats stats, TbRuleEngineProcessingStrategy ackStrategy,
+                            TbMsgPackWindow window, List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs, TbQueueConsumerPosition position) {
+        TbRuleEngineSubmitStrategy submitStrategy = getSubmitStrategy(configuration);
+        submitStrategy.init(msgs);
+        TbMsgPackProcessingContext ctx = new TbMsgPackProcessingContext(configuration.getName(), submitStrategy, ackStrategy.isSkipTimeoutMsgs());
+        window.add(ctx, submitStrategy, position, System.currentTimeMillis() + configuration.getPackProcessingTimeout());
+        submitStrategy.submitAttempt((id, msg) -> submitExecutor.submit(() -> submitMessage(configuration, stats, ctx, id, msg)));
+    }
+
+    private void completePack(TbRuleEngineQueueConfiguration configuration, TbRuleEngineConsumerStats stats, TbRuleEngineProcessingStrategy ackStrategy,
+                              TbMsgPackWindow.InFlightPack pack) throws InterruptedException {
+        if (pack.isCompleted()) {
+            return;
+        }
+        TbMsgPackProcessingContext ctx = pack.getCtx();
+        boolean timeout = pack.isTimeout();
+        TbRuleEngineProcessingResult result = new TbRuleEngineProcessingResult(configuration.getName(), timeout, ctx);
+        if (timeout) {
+            printFirstOrAll(configuration, ctx, ctx.getPendingMap(), "Timeout");
+        }
+        if (!ctx.getFailedMap().isEmpty()) {
+            printFirstOrAll(configuration, ctx, ctx.getFailedMap(), "Failed");
+        }
+        ctx.printProfilerStats();
+        Map<UUID, TbProtoQueueMsg<ToRuleEngineMsg>> retryMap = ackStrategy.getRetryMap(result);
+        if (statsEnabled) {
+            stats.log(result, true);
+        }
+        sendToRetryTopic(configuration, retryMap.values());
+        ctx.cleanup();
+        pack.getSubmitStrategy().stop();
+        pack.setCompleted(true);
+    }
+
+    /**
+     * Waits until all the messages are sent, so that they are not lost when the pack is committed.
+     * The messages that failed to be sent or were not acknowledged in time are sent again after the poll interval.
+     * If the service is stopped meanwhile, the exception prevents the commit of the pack and the packs after it.
+     */
+    void sendToRetryTopic(TbRuleEngineQueueConfiguration configuration, Collection<TbProtoQueueMsg<ToRuleEngineMsg>> msgs) throws InterruptedException {
+        if (msgs.isEmpty()) {
+            return;
+        }
+        TbQueueProducer<TbProtoQueueMsg<ToRuleEngineMsg>> producer = producerProvider.getRuleEngineMsgProducer();
+        int maxRetries = configuration.getProcessingStrategy().getRetries();
+        long retryTs = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(configuration.getProcessingStrategy().getPauseBetweenRetries());
+        TopicPartitionInfo retryTpi = new TopicPartitionInfo(configuration.getTopic() + RETRY_TOPIC_SUFFIX, null, null, false);
+        Map<UUID, TbProtoQueueMsg<ToRuleEngineMsg>> pendingMsgs = new ConcurrentHashMap<>();
+        int skipped = 0;
+        for (TbProtoQueueMsg<ToRuleEngineMsg> msg : msgs) {
+            long attempt = getLongHeader(msg, RETRY_ATTEMPT_HEADER) + 1;
+            if (maxRetries > 0 && attempt > maxRetries) {
+                skipped++;
+                continue;
+            }
+            TbQueueMsgHeaders headers = new DefaultTbQueueMsgHeaders();
+            headers.put(RETRY_ATTEMPT_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(attempt).array());
+            headers.put(RETRY_TS_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(retryTs).array());
+            TbProtoQueueMsg<ToRuleEngineMsg> retryMsg = new TbProtoQueueMsg<>(UUID.randomUUID(), msg.getValue(), headers);
+            pendingMsgs.put(retryMsg.getKey(), retryMsg);
+        }
+        if (skipped > 0) {
+            log.debug("[{}] Skip retry of {} messages due to max retries", configuration.getName(), skipped);
+        }
+        while (!pendingMsgs.isEmpty()) {
+            CountDownLatch latch = new CountDownLatch(pendingMsgs.size());
+            for (TbProtoQueueMsg<ToRuleEngineMsg> retryMsg : new ArrayList<>(pendingMsgs.values())) {
+                producer.send(retryTpi, retryMsg, new TbQueueCallback() {
+                    @Override
+                    public void onSuccess(TbQueueMsgMetadata metadata) {
+                        pendingMsgs.remove(retryMsg.getKey());
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        log.debug("[{}] Failed to send message to the retry topic", retryTpi.getTopic(), t);
+                        latch.countDown();
+                    }
+                });
+            }
+            latch.await(configuration.getPackProcessingTimeout(), TimeUnit.MILLISECONDS);
+            if (!pendingMsgs.isEmpty()) {
+                if (stopped) {
+                    throw new RuntimeException(String.format("[%s] Failed to send %d messages to the retry topic", configuration.getName(), pendingMsgs.size()));
+                }
+                log.warn("[{}] Failed to send {} messages to the retry topic, sending them again", configuration.getName(), pendingMsgs.size());
+                Thread.sleep(pollDuration);
+            }
+        }
+    }
+
+    private static long getLongHeader(TbProtoQueueMsg<ToRuleEngineMsg> msg, String key) {
+        byte[] value = msg.getHeaders() != null ? msg.getHeaders().get(key) : null;
+        return value != null && value.length == Long.BYTES ? ByteBuffer.wrap(value).getLong() : 0L;
+    }
+
+    static int getMaxPacksInFlight(TbRuleEngineQueueConfiguration configuration) {
+        String submitStrategyType = configuration.getSubmitStrategy() != null ? configuration.getSubmitStrategy().getType() : null;
+        if (submitStrategyType != null && submitStrategyType.startsWith("SEQUENTIAL")) {
+            // the packs processed concurrently would break the order of the messages
+            return 1;
+        }
+        return configuration.getMaxPacksInFlight();
+    }
+
+    private static TbRuleEngineQueueConfiguration toRetryConfiguration(TbRuleEngineQueueConfiguration configuration) {
+        TbRuleEngineQueueConfiguration retryConfiguration = new TbRuleEngineQueueConfiguration();
+        retryConfiguration.setName(configuration.getName() + RETRY_TOPIC_SUFFIX);
+        retryConfiguration.setTopic(configuration.getTopic() + RETRY_TOPIC_SUFFIX);
+        retryConfiguration.setPollInterval(configuration.getPollInterval());
+        retryConfiguration.setPartitions(configuration.getPartitions());
+        retryConfiguration.setPackProcessingTimeout(configuration.getPackProcessingTimeout());
+        retryConfiguration.setSubmitStrategy(configuration.getSubmitStrategy());
+        retryConfiguration.setProcessingStrategy(configuration.getProcessingStrategy());
+        return retryConfiguration;
+    }
+
+    /**
+     * Splits the packs of messages published by the transports, so that every message is submitted, acknowledged and reprocessed separately.
+     */
+    static List<TbProtoQueueMsg<ToRuleEngineMsg>> unpackMsgs(List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs) {
+        if (msgs.stream().noneMatch(msg -> msg.getValue().hasTbMsgPack())) {
+            return msgs;
+        }
+        List<TbProtoQueueMsg<ToRuleEngineMsg>> result = new ArrayList<>(msgs.size());
+        for (TbProtoQueueMsg<ToRuleEngineMsg> msg : msgs) {
+            ToRuleEngineMsg toRuleEngineMsg = msg.getValue();
+            if (toRuleEngineMsg.hasTbMsgPack()) {
+                for (ByteString tbMsg : toRuleEngineMsg.getTbMsgPack().getTbMsgsList()) {
+                    ToRuleEngineMsg unpacked = ToRuleEngineMsg.newBuilder()
+                            .setTenantIdMSB(toRuleEngineMsg.getTenantIdMSB())
+                            .setTenantIdLSB(toRuleEngineMsg.getTenantIdLSB())
+                            .setTbMsg(tbMsg).build();
+                    result.add(new TbProtoQueueMsg<>(UUID.randomUUID(), unpacked, msg.getHeaders()));
+                }
+            } else {
+                result.add(msg);
+            }
+        }
+        return result;
+    }
+
     void updateCurrentThreadName(String threadSuffix) {
         String name = Thread.currentThread().getName();
         int spliteratorIndex = name.indexOf(THREAD_TOPIC_SEPARATOR);
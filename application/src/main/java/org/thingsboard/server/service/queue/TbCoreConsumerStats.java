@@ -33,6 +33,7 @@ public class TbCoreConsumerStats {
     public static final String RPC_SUBSCRIBES = "subToRpc";
     public static final String TO_DEVICE_RPC_CALL_RESPONSES = "toDevRpc";
     public static final String SUBSCRIPTION_INFO = "subInfo";
+    public static final String SESSIONS_ACTIVITY = "sessionsActivity";
     public static final String DEVICE_CLAIMS = "claimDevice";
     public static final String DEVICE_STATES = "deviceState";
     public static final String SUBSCRIPTION_MSGS = "subMsgs";
@@ -46,6 +47,7 @@ public class TbCoreConsumerStats {
     private final StatsCounter subscribeToRPCCounter;
     private final StatsCounter toDeviceRPCCallResponseCounter;
     private final StatsCounter subscriptionInfoCounter;
+    private final StatsCounter sessionsActivityCounter;
     private final StatsCounter claimDeviceCounter;
 
     private final StatsCounter deviceStateCounter;
@@ -65,6 +67,7 @@ public class TbCoreConsumerStats {
         this.subscribeToRPCCounter = register(statsFactory.createStatsCounter(statsKey, RPC_SUBSCRIBES));
         this.toDeviceRPCCallResponseCounter = register(statsFactory.createStatsCounter(statsKey, TO_DEVICE_RPC_CALL_RESPONSES));
         this.subscriptionInfoCounter = register(statsFactory.createStatsCounter(statsKey, SUBSCRIPTION_INFO));
+        this.sessionsActivityCounter = register(statsFactory.createStatsCounter(statsKey, SESSIONS_ACTIVITY));
         this.claimDeviceCounter = register(statsFactory.createStatsCounter(statsKey, DEVICE_CLAIMS));
         this.deviceStateCounter = register(statsFactory.createStatsCounter(statsKey, DEVICE_STATES));
         this.subscriptionMsgCounter = register(statsFactory.createStatsCounter(statsKey, SUBSCRIPTION_MSGS));
@@ -102,6 +105,11 @@ public class TbCoreConsumerStats {
         }
     }
 
+    public void log(TransportProtos.DeviceActivityBatchMsgProto msg) {
+        totalCounter.increment();
+        sessionsActivityCounter.add(msg.getLastActivityTimeCount());
+    }
+
     public void log(TransportProtos.DeviceStateServiceMsgProto msg) {
         totalCounter.increment();
         deviceStateCounter.increment();
@@ -0,0 +1,105 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.queue;
+
+import lombok.Data;
+import org.thingsboard.server.queue.TbQueueConsumerPosition;
+import org.thingsboard.server.service.queue.processing.TbRuleEngineSubmitStrategy;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs of the rule engine messages that are submitted but not committed yet, in the order of polling.
+ * The packs are completed in the same order, so that the committed position never skips a pack that is still processed.
+ * Used by the consumer thread only.
+ */
+public class TbMsgPackWindow {
+
+    private final Deque<InFlightPack> packs = new ArrayDeque<>();
+    private final int maxPacks;
+
+    public TbMsgPackWindow(int maxPacks) {
+        this.maxPacks = Math.max(1, maxPacks);
+    }
+
+    public void add(TbMsgPackProcessingContext ctx, TbRuleEngineSubmitStrategy submitStrategy, TbQueueConsumerPosition position, long deadline) {
+        packs.add(new InFlightPack(ctx, submitStrategy, position, deadline));
+    }
+
+    /**
+     * The consumer may commit only all the polled messages at once if the position is not supported,
+     * so the next pack is polled after the previous one is completed.
+     */
+    public boolean isFull() {
+        InFlightPack last = packs.peekLast();
+        return packs.size() >= maxPacks || (last != null && last.getPosition() == null);
+    }
+
+    public boolean isEmpty() {
+        return packs.isEmpty();
+    }
+
+    public int size() {
+        return packs.size();
+    }
+
+    /**
+     * Returns the first pack if it is processed or timed out, or null otherwise.
+     * If wait is set, waits for the completion or the timeout of the first pack.
+     * The pack stays in the window until it is removed after the commit.
+     */
+    public InFlightPack peekCompleted(boolean wait) throws InterruptedException {
+        InFlightPack head = packs.peek();
+        if (head == null) {
+            return null;
+        }
+        if (head.isCompleted()) {
+            return head;
+        }
+        if (wait) {
+            head.getCtx().await(Math.max(0, head.getDeadline() - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+        return head.getCtx().isDone() || System.currentTimeMillis() >= head.getDeadline() ? head : null;
+    }
+
+    /**
+     * Removes the first pack once it is committed.
+     */
+    public void removeCompleted(InFlightPack pack) {
+        if (packs.peek() != pack) {
+            throw new IllegalStateException("Only the first pack of the window may be removed");
+        }
+        packs.poll();
+    }
+
+    @Data
+    public static class InFlightPack {
+        private final TbMsgPackProcessingContext ctx;
+        private final TbRuleEngineSubmitStrategy submitStrategy;
+        private final TbQueueConsumerPosition position;
+        private final long deadline;
+        /**
+         * Set once the results of the pack are handled, so they are not handled again if the commit fails.
+         */
+        private boolean completed;
+
+        public boolean isTimeout() {
+            return !ctx.isDone();
+        }
+    }
+}
@@ -15,10 +15,25 @@
  */
 package org.thingsboard.server.service.queue.processing;
 
+import org.thingsboard.server.gen.transport.TransportProtos;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
 public interface TbRuleEngineProcessingStrategy {
 
     boolean isSkipTimeoutMsgs();
 
     TbRuleEngineProcessingDecision analyze(TbRuleEngineProcessingResult result);
 
+    /**
+     * Returns the messages of the processed pack to retry via the retry topic of the queue.
+     * Unlike {@link #analyze(TbRuleEngineProcessingResult)}, does not wait in the consumer thread and does not count the retries.
+     */
+    default Map<UUID, TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> getRetryMap(TbRuleEngineProcessingResult result) {
+        return Collections.emptyMap();
+    }
+
 }
@@ -24,6 +24,9 @@ import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.queue.common.TbProtoQueueMsg;
 import org.thingsboard.server.queue.settings.TbRuleEngineQueueAckStrategyConfiguration;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -141,6 +144,30 @@ public class TbRuleEngineProcessingStrategyFactory {
                 }
             }
         }
+
+        @Override
+        public Map<UUID, TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> getRetryMap(TbRuleEngineProcessingResult result) {
+            if (result.isSuccess()) {
+                return Collections.emptyMap();
+            }
+            double totalCount = result.getPendingMap().size() + result.getFailedMap().size() + result.getSuccessMap().size();
+            double failedCount = result.getFailedMap().size() + result.getPendingMap().size();
+            if (maxAllowedFailurePercentage > 0 && (failedCount / totalCount) > maxAllowedFailurePercentage) {
+                log.debug("[{}] Skip retry of the rule engine pack due to max allowed failure percentage", queueName);
+                return Collections.emptyMap();
+            }
+            Map<UUID, TbProtoQueueMsg<TransportProtos.ToRuleEngineMsg>> toRetry = new HashMap<>();
+            if (retryFailed) {
+                toRetry.putAll(result.getFailedMap());
+            }
+            if (retryTimeout) {
+                toRetry.putAll(result.getPendingMap());
+            }
+            if (retrySuccessful) {
+                toRetry.putAll(result.getSuccessMap());
+            }
+            return toRetry;
+        }
     }
 
     private static class SkipStrategy implements TbRuleEngineProcessingStrategy {
@@ -0,0 +1,172 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.rule;
+
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thingsboard.server.common.data.Event;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.EventId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.tools.TbRateLimits;
+import org.thingsboard.server.dao.event.EventService;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DefaultTbRuleNodeDebugEventService implements TbRuleNodeDebugEventService {
+
+    private static final String TRUNCATED_SUFFIX = "...[truncated]";
+
+    private final EventService eventService;
+
+    @Value("${actors.rule.node.debug.sampling_rate:1}")
+    private int samplingRate;
+
+    @Value("${actors.rule.node.debug.rate_limits.enabled:false}")
+    private boolean rateLimitsEnabled;
+
+    @Value("${actors.rule.node.debug.rate_limits.configuration:1000:60}")
+    private String rateLimitsConfiguration;
+
+    @Value("${actors.rule.node.debug.max_payload_size:0}")
+    private int maxPayloadSize;
+
+    @Value("${actors.rule.node.debug.persist_enabled:true}")
+    private boolean persistEnabled;
+
+    @Value("${actors.rule.node.debug.buffer.enabled:false}")
+    private boolean bufferEnabled;
+
+    @Value("${actors.rule.node.debug.buffer.size:100}")
+    private int bufferSize;
+
+    @Value("${actors.rule.node.debug.buffer.max_rule_nodes:1000}")
+    private int bufferMaxRuleNodes;
+
+    @Value("${actors.rule.node.debug.buffer.ttl_in_minutes:60}")
+    private int bufferTtlInMinutes;
+
+    private Cache<EntityId, TbRateLimits> rateLimits;
+    private Cache<EntityId, RuleNodeDebugEventBuffer> buffers;
+
+    @PostConstruct
+    public void init() {
+        if (rateLimitsEnabled) {
+            rateLimits = Caffeine.newBuilder()
+                    .expireAfterAccess(1, TimeUnit.HOURS)
+                    .build();
+        }
+        if (bufferEnabled) {
+            buffers = Caffeine.newBuilder()
+                    .maximumSize(bufferMaxRuleNodes)
+                    .expireAfterAccess(bufferTtlInMinutes, TimeUnit.MINUTES)
+                    .build();
+        }
+    }
+
+    @Override
+    public boolean isDebugEventAllowed(EntityId ruleNodeId, TbMsg msg, boolean error) {
+        if (!error && samplingRate > 1 && !isSampled(msg.getId())) {
+            return false;
+        }
+        if (rateLimitsEnabled) {
+            TbRateLimits limits = rateLimits.get(ruleNodeId, id -> new TbRateLimits(rateLimitsConfiguration));
+            if (!limits.tryConsume()) {
+                if (log.isTraceEnabled()) {
+                    log.trace("[{}] Rule node level debug mode rate limit detected: {}", ruleNodeId, msg);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Sampling is based on the message id, so IN and OUT events of the same message are either both persisted or both skipped.
+     */
+    private boolean isSampled(UUID msgId) {
+        long hash = msgId.getMostSignificantBits() ^ msgId.getLeastSignificantBits();
+        return Math.floorMod(hash, (long) samplingRate) == 0;
+    }
+
+    @Override
+    public String truncatePayload(String payload) {
+        if (maxPayloadSize <= 0 || payload == null || payload.length() <= maxPayloadSize) {
+            return payload;
+        }
+        return payload.substring(0, maxPayloadSize) + TRUNCATED_SUFFIX;
+    }
+
+    @Override
+    public Map<String, String> truncateMetadata(Map<String, String> metadata) {
+        if (maxPayloadSize <= 0) {
+            return metadata;
+        }
+        Map<String, String> truncated = new LinkedHashMap<>();
+        metadata.forEach((key, value) -> truncated.put(key, truncatePayload(value)));
+        return truncated;
+    }
+
+    @Override
+    public ListenableFuture<Void> saveDebugEvent(Event event) {
+        if (bufferEnabled) {
+            if (event.getId() == null) {
+                UUID timeBased = Uuids.timeBased();
+                event.setId(new EventId(timeBased));
+                event.setCreatedTime(Uuids.unixTimestamp(timeBased));
+            }
+            buffers.get(event.getEntityId(), id -> new RuleNodeDebugEventBuffer(bufferSize)).add(event);
+        }
+        if (persistEnabled) {
+            return eventService.saveAsync(event);
+        } else {
+            return Futures.immediateFuture(null);
+        }
+    }
+
+    @Override
+    public List<Event> findRecentDebugEvents(TenantId tenantId, EntityId ruleNodeId, int limit) {
+        if (!bufferEnabled) {
+            return Collections.emptyList();
+        }
+        RuleNodeDebugEventBuffer buffer = buffers.getIfPresent(ruleNodeId);
+        if (buffer == null) {
+            return Collections.emptyList();
+        }
+        return buffer.getLatest(limit).stream()
+                .filter(event -> tenantId.equals(event.getTenantId()))
+                .collect(Collectors.toList());
+    }
+
+}
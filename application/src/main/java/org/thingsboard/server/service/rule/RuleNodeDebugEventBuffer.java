@@ -0,0 +1,64 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.rule;
+
+import org.thingsboard.server.common.data.Event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fixed size ring buffer with the latest debug events of a single rule node.
+ */
+class RuleNodeDebugEventBuffer {
+
+    private final Event[] events;
+    private int head;
+    private int size;
+
+    RuleNodeDebugEventBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Buffer capacity should be positive: " + capacity);
+        }
+        this.events = new Event[capacity];
+    }
+
+    synchronized void add(Event event) {
+        events[head] = event;
+        head = (head + 1) % events.length;
+        if (size < events.length) {
+            size++;
+        }
+    }
+
+    synchronized List<Event> getLatest(int limit) {
+        int count = Math.min(limit, size);
+        if (count <= 0) {
+            return Collections.emptyList();
+        }
+        List<Event> result = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            result.add(events[(head - i + events.length) % events.length]);
+        }
+        return result;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+}
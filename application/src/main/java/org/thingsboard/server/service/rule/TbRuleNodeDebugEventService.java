@@ -0,0 +1,49 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.rule;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.thingsboard.server.common.data.Event;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.TbMsg;
+
+import java.util.List;
+import java.util.Map;
+
+public interface TbRuleNodeDebugEventService {
+
+    /**
+     * Applies per rule node sampling and rate limits. Events with errors are never sampled out, but still respect the rate limits.
+     */
+    boolean isDebugEventAllowed(EntityId ruleNodeId, TbMsg msg, boolean error);
+
+    String truncatePayload(String payload);
+
+    /**
+     * Truncates each metadata value, so the serialized metadata stays valid JSON.
+     */
+    Map<String, String> truncateMetadata(Map<String, String> metadata);
+
+    ListenableFuture<Void> saveDebugEvent(Event event);
+
+    /**
+     * Returns the most recent debug events of the rule node, newest first, from the local in-memory buffer.
+     * Returns an empty list if the buffer is disabled or the rule node is not processed by this server.
+     */
+    List<Event> findRecentDebugEvents(TenantId tenantId, EntityId ruleNodeId, int limit);
+
+}
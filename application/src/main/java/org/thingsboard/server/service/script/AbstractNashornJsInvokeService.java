@@ -26,6 +26,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.thingsboard.common.util.ThingsBoardExecutors;
+import org.thingsboard.server.actors.JsInvokeStats;
 import org.thingsboard.server.queue.usagestats.TbApiUsageClient;
 import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
 
@@ -35,10 +36,17 @@ import javax.script.Invocable;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
@@ -46,9 +54,14 @@ import java.util.concurrent.locks.ReentrantLock;
 @Slf4j
 public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeService {
 
-    private NashornSandbox sandbox;
-    private ScriptEngine engine;
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final List<PooledEngine> engines = new ArrayList<>();
+    private final Map<UUID, String> scriptBodies = new ConcurrentHashMap<>();
+    private final AtomicInteger nextEngine = new AtomicInteger(0);
+    private final ThreadLocal<UUID> invokedScriptId = new ThreadLocal<>();
     private ExecutorService monitorExecutorService;
+    private boolean scriptRunsOnSandboxExecutor;
 
     private final AtomicInteger jsPushedMsgs = new AtomicInteger(0);
     private final AtomicInteger jsInvokeMsgs = new AtomicInteger(0);
@@ -58,20 +71,25 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
     private final FutureCallback<UUID> evalCallback = new JsStatCallback<>(jsEvalMsgs, jsTimeoutMsgs, jsFailedMsgs);
     private final FutureCallback<Object> invokeCallback = new JsStatCallback<>(jsInvokeMsgs, jsTimeoutMsgs, jsFailedMsgs);
 
-    private final ReentrantLock evalLock = new ReentrantLock();
-
     @Getter
     private final JsExecutorService jsExecutor;
 
+    private final JsInvokeStats jsInvokeStats;
+
     @Value("${js.local.max_requests_timeout:0}")
     private long maxRequestsTimeout;
 
     @Value("${js.local.stats.enabled:false}")
     private boolean statsEnabled;
 
-    public AbstractNashornJsInvokeService(TbApiUsageStateService apiUsageStateService, TbApiUsageClient apiUsageClient, JsExecutorService jsExecutor) {
+    @Value("${js.local.engines_pool_size:1}")
+    private int enginesPoolSize;
+
+    public AbstractNashornJsInvokeService(TbApiUsageStateService apiUsageStateService, TbApiUsageClient apiUsageClient,
+                                          JsExecutorService jsExecutor, JsInvokeStats jsInvokeStats) {
         super(apiUsageStateService, apiUsageClient);
         this.jsExecutor = jsExecutor;
+        this.jsInvokeStats = jsInvokeStats;
     }
 
     @Scheduled(fixedDelayString = "${js.local.stats.print_interval_ms:10000}")
@@ -92,18 +110,28 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
     @PostConstruct
     public void init() {
         super.init(maxRequestsTimeout);
+        int poolSize = enginesPoolSize > 0 ? enginesPoolSize : Runtime.getRuntime().availableProcessors();
         if (useJsSandbox()) {
-            sandbox = NashornSandboxes.create();
             monitorExecutorService = ThingsBoardExecutors.newWorkStealingPool(getMonitorThreadPoolSize(), "nashorn-js-monitor");
-            sandbox.setExecutor(monitorExecutorService);
-            sandbox.setMaxCPUTime(getMaxCpuTime());
-            sandbox.allowNoBraces(false);
-            sandbox.allowLoadFunctions(true);
-            sandbox.setMaxPreparedStatements(30);
-        } else {
-            ScriptEngineManager factory = new ScriptEngineManager();
-            engine = factory.getEngineByName("nashorn");
+            // with a max CPU time the sandbox runs the script on the executor and monitors it from the calling thread
+            scriptRunsOnSandboxExecutor = getMaxCpuTime() > 0;
         }
+        ExecutorService sandboxExecutor = monitorExecutorService != null ? new CpuTimeRecordingExecutor(monitorExecutorService) : null;
+        for (int i = 0; i < poolSize; i++) {
+            if (useJsSandbox()) {
+                NashornSandbox sandbox = NashornSandboxes.create();
+                sandbox.setExecutor(sandboxExecutor);
+                sandbox.setMaxCPUTime(getMaxCpuTime());
+                sandbox.allowNoBraces(false);
+                sandbox.allowLoadFunctions(true);
+                sandbox.setMaxPreparedStatements(30);
+                engines.add(new PooledEngine(sandbox, null));
+            } else {
+                ScriptEngineManager factory = new ScriptEngineManager();
+                engines.add(new PooledEngine(null, factory.getEngineByName("nashorn")));
+            }
+        }
+        log.info("Initialized {} Nashorn JS engine(s)", poolSize);
     }
 
     @PreDestroy
@@ -125,16 +153,9 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
         jsPushedMsgs.incrementAndGet();
         ListenableFuture<UUID> result = jsExecutor.executeAsync(() -> {
             try {
-                evalLock.lock();
-                try {
-                    if (useJsSandbox()) {
-                        sandbox.eval(jsScript);
-                    } else {
-                        engine.eval(jsScript);
-                    }
-                } finally {
-                    evalLock.unlock();
-                }
+                // compile on one engine to validate the script, other engines compile it on the first invocation
+                selectEngine().compile(scriptId, jsScript);
+                scriptBodies.put(scriptId, jsScript);
                 scriptIdToNameMap.put(scriptId, functionName);
                 return scriptId;
             } catch (Exception e) {
@@ -153,15 +174,34 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
     protected ListenableFuture<Object> doInvokeFunction(UUID scriptId, String functionName, Object[] args) {
         jsPushedMsgs.incrementAndGet();
         ListenableFuture<Object> result = jsExecutor.executeAsync(() -> {
+            PooledEngine engine = selectEngine();
+            engine.load.incrementAndGet();
             try {
-                if (useJsSandbox()) {
-                    return sandbox.getSandboxedInvocable().invokeFunction(functionName, args);
-                } else {
-                    return ((Invocable) engine).invokeFunction(functionName, args);
+                String jsScript = scriptBodies.get(scriptId);
+                if (jsScript == null) {
+                    throw new IllegalStateException("No compiled script found for scriptId: [" + scriptId + "]!");
+                }
+                engine.compile(scriptId, jsScript);
+                long startTs = System.nanoTime();
+                boolean recordCpuTimeHere = statsEnabled && !scriptRunsOnSandboxExecutor;
+                long startCpuTime = recordCpuTimeHere ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : 0L;
+                if (statsEnabled && scriptRunsOnSandboxExecutor) {
+                    invokedScriptId.set(scriptId);
                 }
+                Object invokeResult = engine.invoke(functionName, args);
+                if (statsEnabled) {
+                    jsInvokeStats.recordScriptLatency(scriptId, System.nanoTime() - startTs);
+                }
+                if (recordCpuTimeHere) {
+                    jsInvokeStats.recordScriptCpuTime(scriptId, THREAD_MX_BEAN.getCurrentThreadCpuTime() - startCpuTime);
+                }
+                return invokeResult;
             } catch (Exception e) {
                 onScriptExecutionError(scriptId, e, functionName);
                 throw new ExecutionException(e);
+            } finally {
+                invokedScriptId.remove();
+                engine.load.decrementAndGet();
             }
         });
 
@@ -173,10 +213,138 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
     }
 
     protected void doRelease(UUID scriptId, String functionName) throws ScriptException {
-        if (useJsSandbox()) {
-            sandbox.eval(functionName + " = undefined;");
-        } else {
-            engine.eval(functionName + " = undefined;");
+        scriptBodies.remove(scriptId);
+        jsInvokeStats.removeScript(scriptId);
+        for (PooledEngine engine : engines) {
+            engine.release(scriptId, functionName);
+        }
+    }
+
+    /**
+     * Picks the engine with the least number of running invocations, starting from the next engine in round-robin order
+     * so that equally loaded engines are used evenly.
+     */
+    private PooledEngine selectEngine() {
+        int size = engines.size();
+        if (size == 1) {
+            return engines.get(0);
+        }
+        int start = Math.floorMod(nextEngine.getAndIncrement(), size);
+        PooledEngine selected = engines.get(start);
+        for (int i = 1; i < size && selected.load.get() > 0; i++) {
+            PooledEngine engine = engines.get((start + i) % size);
+            if (engine.load.get() < selected.load.get()) {
+                selected = engine;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Executor of the sandboxes. Records the CPU time of a script on the thread that actually runs it,
+     * since the invoking thread only waits for the result and monitors the script.
+     */
+    private class CpuTimeRecordingExecutor extends AbstractExecutorService {
+        private final ExecutorService delegate;
+
+        CpuTimeRecordingExecutor(ExecutorService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            UUID scriptId = invokedScriptId.get();
+            if (scriptId == null) {
+                delegate.execute(command);
+                return;
+            }
+            delegate.execute(() -> {
+                long startCpuTime = THREAD_MX_BEAN.getCurrentThreadCpuTime();
+                try {
+                    command.run();
+                } finally {
+                    jsInvokeStats.recordScriptCpuTime(scriptId, THREAD_MX_BEAN.getCurrentThreadCpuTime() - startCpuTime);
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+
+    private static class PooledEngine {
+        private final NashornSandbox sandbox;
+        private final ScriptEngine engine;
+        private final ReentrantLock evalLock = new ReentrantLock();
+        private final Set<UUID> compiledScripts = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger load = new AtomicInteger(0);
+
+        PooledEngine(NashornSandbox sandbox, ScriptEngine engine) {
+            this.sandbox = sandbox;
+            this.engine = engine;
+        }
+
+        void compile(UUID scriptId, String jsScript) throws ScriptException {
+            if (!compiledScripts.contains(scriptId)) {
+                evalLock.lock();
+                try {
+                    if (!compiledScripts.contains(scriptId)) {
+                        eval(jsScript);
+                        compiledScripts.add(scriptId);
+                    }
+                } finally {
+                    evalLock.unlock();
+                }
+            }
+        }
+
+        Object invoke(String functionName, Object[] args) throws ScriptException, NoSuchMethodException {
+            if (sandbox != null) {
+                return sandbox.getSandboxedInvocable().invokeFunction(functionName, args);
+            } else {
+                return ((Invocable) engine).invokeFunction(functionName, args);
+            }
+        }
+
+        void release(UUID scriptId, String functionName) throws ScriptException {
+            evalLock.lock();
+            try {
+                if (compiledScripts.remove(scriptId)) {
+                    eval(functionName + " = undefined;");
+                }
+            } finally {
+                evalLock.unlock();
+            }
+        }
+
+        private void eval(String jsScript) throws ScriptException {
+            if (sandbox != null) {
+                sandbox.eval(jsScript);
+            } else {
+                engine.eval(jsScript);
+            }
         }
     }
 
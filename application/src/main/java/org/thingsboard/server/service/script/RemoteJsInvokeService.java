@@ -18,7 +18,9 @@ package org.thingsboard.server.service.script;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import lombok.Getter;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -37,11 +39,15 @@ import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
 import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -67,6 +73,15 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
     @Value("${js.remote.stats.enabled:false}")
     private boolean statsEnabled;
 
+    @Value("${js.remote.invoke_batch.enabled:false}")
+    private boolean invokeBatchEnabled;
+
+    @Value("${js.remote.invoke_batch.max_size:100}")
+    private int invokeBatchMaxSize;
+
+    @Value("${js.remote.invoke_batch.linger_ms:5}")
+    private long invokeBatchLingerMs;
+
     private final AtomicInteger queuePushedMsgs = new AtomicInteger(0);
     private final AtomicInteger queueInvokeMsgs = new AtomicInteger(0);
     private final AtomicInteger queueEvalMsgs = new AtomicInteger(0);
@@ -99,15 +114,24 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
 
     private Map<UUID, String> scriptIdToBodysMap = new ConcurrentHashMap<>();
 
+    private final Map<UUID, InvokeBatch> pendingBatches = new ConcurrentHashMap<>();
+    private ScheduledExecutorService batchExecutor;
+
     @PostConstruct
     public void init() {
         super.init(maxRequestsTimeout);
+        if (invokeBatchEnabled) {
+            batchExecutor = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("js-invoke-batch"));
+        }
         requestTemplate.init();
     }
 
     @PreDestroy
     public void destroy() {
         super.stop();
+        if (batchExecutor != null) {
+            batchExecutor.shutdownNow();
+        }
         if (requestTemplate != null) {
             requestTemplate.stop();
         }
@@ -166,6 +190,9 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
         if (scriptBody == null) {
             return Futures.immediateFailedFuture(new RuntimeException("No script body found for scriptId: [" + scriptId + "]!"));
         }
+        if (invokeBatchEnabled) {
+            return doInvokeFunctionInBatch(scriptId, functionName, scriptBody, args);
+        }
         JsInvokeProtos.JsInvokeRequest.Builder jsRequestBuilder = JsInvokeProtos.JsInvokeRequest.newBuilder()
                 .setScriptIdMSB(scriptId.getMostSignificantBits())
                 .setScriptIdLSB(scriptId.getLeastSignificantBits())
@@ -219,6 +246,101 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
         }, callbackExecutor);
     }
 
+    /**
+     * Adds the invocation to the pending batch of the script. The batch is sent as one request once it reaches
+     * the max size or when the linger time since its first invocation expires, whatever happens first.
+     */
+    private ListenableFuture<Object> doInvokeFunctionInBatch(UUID scriptId, String functionName, String scriptBody, Object[] args) {
+        JsInvokeProtos.JsInvokeArgs.Builder invokeArgs = JsInvokeProtos.JsInvokeArgs.newBuilder();
+        for (Object arg : args) {
+            invokeArgs.addArgs(arg.toString());
+        }
+        SettableFuture<Object> result = SettableFuture.create();
+        InvokeBatch[] fullBatch = new InvokeBatch[1];
+        pendingBatches.compute(scriptId, (id, batch) -> {
+            if (batch == null) {
+                InvokeBatch newBatch = new InvokeBatch(scriptId, functionName, scriptBody);
+                newBatch.lingerFuture = batchExecutor.schedule(() -> flushBatch(newBatch), invokeBatchLingerMs, TimeUnit.MILLISECONDS);
+                batch = newBatch;
+            }
+            batch.invocations.add(invokeArgs.build());
+            batch.results.add(result);
+            if (batch.invocations.size() >= invokeBatchMaxSize) {
+                fullBatch[0] = batch;
+                return null;
+            }
+            return batch;
+        });
+        if (fullBatch[0] != null) {
+            fullBatch[0].lingerFuture.cancel(false);
+            sendBatch(fullBatch[0]);
+        }
+        return result;
+    }
+
+    private void flushBatch(InvokeBatch batch) {
+        if (pendingBatches.remove(batch.scriptId, batch)) {
+            sendBatch(batch);
+        }
+    }
+
+    private void sendBatch(InvokeBatch batch) {
+        UUID scriptId = batch.scriptId;
+        JsInvokeProtos.JsInvokeBatchRequest jsRequest = JsInvokeProtos.JsInvokeBatchRequest.newBuilder()
+                .setScriptIdMSB(scriptId.getMostSignificantBits())
+                .setScriptIdLSB(scriptId.getLeastSignificantBits())
+                .setFunctionName(batch.functionName)
+                .setTimeout((int) maxRequestsTimeout)
+                .setScriptBody(batch.scriptBody)
+                .addAllInvocations(batch.invocations)
+                .build();
+
+        JsInvokeProtos.RemoteJsRequest jsRequestWrapper = JsInvokeProtos.RemoteJsRequest.newBuilder()
+                .setInvokeBatchRequest(jsRequest)
+                .build();
+
+        log.trace("[{}] Post invoke batch request with {} invocations", scriptId, batch.invocations.size());
+        ListenableFuture<TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>> future = requestTemplate.send(new TbProtoJsQueueMsg<>(UUID.randomUUID(), jsRequestWrapper));
+        if (maxRequestsTimeout > 0) {
+            future = Futures.withTimeout(future, maxRequestsTimeout, TimeUnit.MILLISECONDS, timeoutExecutorService);
+        }
+        queuePushedMsgs.incrementAndGet();
+        Futures.addCallback(future, new FutureCallback<TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>>() {
+            @Override
+            public void onSuccess(@Nullable TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse> response) {
+                List<JsInvokeProtos.JsInvokeResponse> invokeResults = response.getValue().getInvokeBatchResponse().getResultsList();
+                queueInvokeMsgs.addAndGet(invokeResults.size());
+                for (int i = 0; i < batch.results.size(); i++) {
+                    SettableFuture<Object> result = batch.results.get(i);
+                    if (i >= invokeResults.size()) {
+                        result.setException(new RuntimeException("No result received for the invocation in batch!"));
+                        continue;
+                    }
+                    JsInvokeProtos.JsInvokeResponse invokeResult = invokeResults.get(i);
+                    if (invokeResult.getSuccess()) {
+                        result.set(invokeResult.getResult());
+                    } else {
+                        RuntimeException e = new RuntimeException(invokeResult.getErrorDetails());
+                        onScriptExecutionError(scriptId, e, batch.scriptBody);
+                        log.debug("[{}] Failed to invoke script due to [{}]: {}", scriptId, invokeResult.getErrorCode().name(), invokeResult.getErrorDetails());
+                        result.setException(e);
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                // the whole batch is a single remote request, so it counts as a single script error
+                onScriptExecutionError(scriptId, t, batch.scriptBody);
+                if (t instanceof TimeoutException || (t.getCause() != null && t.getCause() instanceof TimeoutException)) {
+                    queueTimeoutMsgs.incrementAndGet();
+                }
+                queueFailedMsgs.incrementAndGet();
+                batch.results.forEach(result -> result.setException(t));
+            }
+        }, callbackExecutor);
+    }
+
     @Override
     protected void doRelease(UUID scriptId, String functionName) throws Exception {
         JsInvokeProtos.JsReleaseRequest jsRequest = JsInvokeProtos.JsReleaseRequest.newBuilder()
@@ -250,4 +372,14 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
         return TimeUnit.SECONDS.toMillis(maxBlackListDurationSec);
     }
 
+    @RequiredArgsConstructor
+    private static class InvokeBatch {
+        private final UUID scriptId;
+        private final String functionName;
+        private final String scriptBody;
+        private final List<JsInvokeProtos.JsInvokeArgs> invocations = new ArrayList<>();
+        private final List<SettableFuture<Object>> results = new ArrayList<>();
+        private ScheduledFuture<?> lingerFuture;
+    }
+
 }
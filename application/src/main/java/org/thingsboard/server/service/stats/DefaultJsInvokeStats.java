@@ -15,6 +15,7 @@
  */
 package org.thingsboard.server.service.stats;
 
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.thingsboard.server.actors.JsInvokeStats;
@@ -23,16 +24,24 @@ import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.common.stats.StatsType;
 
 import javax.annotation.PostConstruct;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class DefaultJsInvokeStats implements JsInvokeStats {
     private static final String REQUESTS = "requests";
     private static final String RESPONSES = "responses";
     private static final String FAILURES = "failures";
+    private static final String SCRIPT_LATENCY = "jsInvoke.script.latency";
+    private static final String SCRIPT_CPU_TIME = "jsInvoke.script.cpuTime";
+    private static final String SCRIPT_ID_TAG = "scriptId";
 
     private StatsCounter requestsCounter;
     private StatsCounter responsesCounter;
     private StatsCounter failuresCounter;
+    private final ConcurrentMap<UUID, ScriptTimers> scriptTimers = new ConcurrentHashMap<>();
 
     @Autowired
     private StatsFactory statsFactory;
@@ -81,4 +90,39 @@ public class DefaultJsInvokeStats implements JsInvokeStats {
         responsesCounter.clear();
         failuresCounter.clear();
     }
+
+    @Override
+    public void recordScriptLatency(UUID scriptId, long latencyNanos) {
+        getScriptTimers(scriptId).latency.record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordScriptCpuTime(UUID scriptId, long cpuTimeNanos) {
+        getScriptTimers(scriptId).cpuTime.record(cpuTimeNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private ScriptTimers getScriptTimers(UUID scriptId) {
+        return scriptTimers.computeIfAbsent(scriptId, id -> new ScriptTimers(
+                statsFactory.createTimer(SCRIPT_LATENCY, SCRIPT_ID_TAG, id.toString()),
+                statsFactory.createTimer(SCRIPT_CPU_TIME, SCRIPT_ID_TAG, id.toString())));
+    }
+
+    @Override
+    public void removeScript(UUID scriptId) {
+        ScriptTimers timers = scriptTimers.remove(scriptId);
+        if (timers != null) {
+            statsFactory.removeMeter(timers.latency);
+            statsFactory.removeMeter(timers.cpuTime);
+        }
+    }
+
+    private static class ScriptTimers {
+        private final Timer latency;
+        private final Timer cpuTime;
+
+        private ScriptTimers(Timer latency, Timer cpuTime) {
+            this.latency = latency;
+            this.cpuTime = cpuTime;
+        }
+    }
 }
@@ -30,11 +30,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.socket.CloseStatus;
 import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.BaseReadTsKvQuery;
 import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
 import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.plugin.ComponentLifecycleEvent;
 import org.thingsboard.server.common.data.query.AlarmDataQuery;
 import org.thingsboard.server.common.data.query.EntityData;
 import org.thingsboard.server.common.data.query.EntityDataQuery;
@@ -128,6 +130,10 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
     private int maxEntitiesPerDataSubscription;
     @Value("${server.ws.max_entities_per_alarm_subscription:1000}")
     private int maxEntitiesPerAlarmSubscription;
+    @Value("${server.ws.dynamic_page_link.change_driven_refresh.enabled:false}")
+    private boolean changeDrivenRefresh;
+    @Value("${server.ws.dynamic_page_link.change_driven_refresh.full_refresh_interval:300}")
+    private long fullRefreshInterval;
     @Value("${server.ws.dynamic_page_link.max_alarm_queries_per_refresh_interval:10}")
     private int maxAlarmQueriesPerRefreshInterval;
 
@@ -299,6 +305,11 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
 
     private void refreshDynamicQuery(TbAbstractSubCtx finalCtx) {
         try {
+            if (changeDrivenRefresh && !finalCtx.isRefreshRequired(TimeUnit.SECONDS.toMillis(fullRefreshInterval))) {
+                log.trace("[{}][{}] Skipping query refresh, no relevant updates", finalCtx.getSessionId(), finalCtx.getCmdId());
+                stats.getDynamicQuerySkippedCnt().incrementAndGet();
+                return;
+            }
             long start = System.currentTimeMillis();
             finalCtx.update();
             long end = System.currentTimeMillis();
@@ -318,13 +329,14 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
         long regularQueryInvocationTimeValue = stats.getRegularQueryTimeSpent().getAndSet(0);
         int dynamicQueryInvocationCntValue = stats.getDynamicQueryInvocationCnt().getAndSet(0);
         long dynamicQueryInvocationTimeValue = stats.getDynamicQueryTimeSpent().getAndSet(0);
+        int dynamicQuerySkippedCntValue = stats.getDynamicQuerySkippedCnt().getAndSet(0);
         long dynamicQueryCnt = subscriptionsBySessionId.values().stream().mapToLong(m -> m.values().stream().filter(TbAbstractSubCtx::isDynamic).count()).sum();
         if (regularQueryInvocationCntValue > 0 || dynamicQueryInvocationCntValue > 0 || dynamicQueryCnt > 0 || alarmQueryInvocationCntValue > 0) {
             log.info("Stats: regularQueryInvocationCnt = [{}], regularQueryInvocationTime = [{}], " +
                             "dynamicQueryCnt = [{}] dynamicQueryInvocationCnt = [{}], dynamicQueryInvocationTime = [{}], " +
-                            "alarmQueryInvocationCnt = [{}], alarmQueryInvocationTime = [{}]",
+                            "dynamicQuerySkippedCnt = [{}], alarmQueryInvocationCnt = [{}], alarmQueryInvocationTime = [{}]",
                     regularQueryInvocationCntValue, regularQueryInvocationTimeValue,
-                    dynamicQueryCnt, dynamicQueryInvocationCntValue, dynamicQueryInvocationTimeValue,
+                    dynamicQueryCnt, dynamicQueryInvocationCntValue, dynamicQueryInvocationTimeValue, dynamicQuerySkippedCntValue,
                     alarmQueryInvocationCntValue, alarmQueryInvocationTimeValue);
         }
     }
@@ -333,6 +345,7 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
         Map<Integer, TbAbstractSubCtx> sessionSubs = subscriptionsBySessionId.computeIfAbsent(sessionRef.getSessionId(), k -> new HashMap<>());
         TbEntityDataSubCtx ctx = new TbEntityDataSubCtx(serviceId, wsService, entityService, localSubscriptionService,
                 attributesService, stats, sessionRef, cmd.getCmdId(), maxEntitiesPerDataSubscription);
+        ctx.setSubscribeToQueryKeys(changeDrivenRefresh);
         if (cmd.getQuery() != null) {
             ctx.setAndResolveQuery(cmd.getQuery());
         }
@@ -529,6 +542,16 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
         }
     }
 
+    @Override
+    public void onEntityLifecycleEvent(TenantId tenantId, EntityId entityId, ComponentLifecycleEvent event) {
+        if (!changeDrivenRefresh) {
+            return;
+        }
+        subscriptionsBySessionId.values().forEach(sessionSubs -> sessionSubs.values().stream()
+                .filter(ctx -> ctx.isDynamic() && tenantId.equals(ctx.getTenantId()))
+                .forEach(ctx -> ctx.onEntityLifecycleEvent(entityId, event)));
+    }
+
     private int getLimit(int limit) {
         return limit == 0 ? DEFAULT_LIMIT : limit;
     }
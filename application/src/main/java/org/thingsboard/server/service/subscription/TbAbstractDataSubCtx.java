@@ -16,6 +16,7 @@
 package org.thingsboard.server.service.subscription;
 
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.page.PageData;
@@ -48,6 +49,8 @@ public abstract class TbAbstractDataSubCtx<T extends AbstractDataQuery<? extends
     protected final Map<Integer, EntityId> subToEntityIdMap;
     @Getter
     protected PageData<EntityData> data;
+    @Setter
+    protected boolean subscribeToQueryKeys;
 
     public TbAbstractDataSubCtx(String serviceId, TelemetryWebSocketService wsService,
                                 EntityService entityService, TbLocalSubscriptionService localSubscriptionService,
@@ -57,6 +60,33 @@ public abstract class TbAbstractDataSubCtx<T extends AbstractDataQuery<? extends
         this.subToEntityIdMap = new ConcurrentHashMap<>();
     }
 
+    @Override
+    public void setAndResolveQuery(T query) {
+        super.setAndResolveQuery(query);
+        if (query != null && query.getPageLink() != null && query.getPageLink().getSortOrder() != null
+                && query.getPageLink().getSortOrder().getKey() != null) {
+            queryKeys.add(query.getPageLink().getSortOrder().getKey().getKey());
+            queryEntityKeys.add(query.getPageLink().getSortOrder().getKey());
+        }
+    }
+
+    /**
+     * Adds the keys used by the key filters and the sort order of a dynamic query to the subscribed keys,
+     * so the updates of the keys that are not displayed also trigger the change driven refresh.
+     */
+    protected List<EntityKey> withQueryKeys(List<EntityKey> keys) {
+        if (!subscribeToQueryKeys || !isDynamic()) {
+            return keys;
+        }
+        List<EntityKey> result = keys != null ? new ArrayList<>(keys) : new ArrayList<>();
+        for (EntityKey key : queryEntityKeys) {
+            if (key.getType() != EntityKeyType.ENTITY_FIELD && key.getType() != EntityKeyType.ALARM_FIELD && !result.contains(key)) {
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
     @Override
     public void fetchData() {
         this.data = findEntityData();
@@ -27,10 +27,12 @@ import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.id.UserId;
 import org.thingsboard.server.common.data.kv.AttributeKvEntry;
+import org.thingsboard.server.common.data.plugin.ComponentLifecycleEvent;
 import org.thingsboard.server.common.data.query.ComplexFilterPredicate;
 import org.thingsboard.server.common.data.query.DynamicValue;
 import org.thingsboard.server.common.data.query.DynamicValueSourceType;
 import org.thingsboard.server.common.data.query.EntityCountQuery;
+import org.thingsboard.server.common.data.query.EntityKey;
 import org.thingsboard.server.common.data.query.EntityKeyType;
 import org.thingsboard.server.common.data.query.FilterPredicateType;
 import org.thingsboard.server.common.data.query.KeyFilter;
@@ -44,6 +46,7 @@ import org.thingsboard.server.service.telemetry.TelemetryWebSocketSessionRef;
 import org.thingsboard.server.service.telemetry.sub.TelemetrySubscriptionUpdate;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -52,6 +55,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
 @Data
@@ -73,6 +77,10 @@ public abstract class TbAbstractSubCtx<T extends EntityCountQuery> {
     protected T query;
     @Setter
     protected volatile ScheduledFuture<?> refreshTask;
+    protected final Set<String> queryKeys;
+    protected final Set<EntityKey> queryEntityKeys;
+    protected final AtomicBoolean changesPending;
+    protected volatile long lastRefreshTs;
 
     public TbAbstractSubCtx(String serviceId, TelemetryWebSocketService wsService,
                             EntityService entityService, TbLocalSubscriptionService localSubscriptionService,
@@ -88,19 +96,67 @@ public abstract class TbAbstractSubCtx<T extends EntityCountQuery> {
         this.cmdId = cmdId;
         this.subToDynamicValueKeySet = ConcurrentHashMap.newKeySet();
         this.dynamicValues = new ConcurrentHashMap<>();
+        this.queryKeys = ConcurrentHashMap.newKeySet();
+        this.queryEntityKeys = ConcurrentHashMap.newKeySet();
+        this.changesPending = new AtomicBoolean();
+        this.lastRefreshTs = System.currentTimeMillis();
     }
 
     public void setAndResolveQuery(T query) {
         dynamicValues.clear();
+        queryKeys.clear();
+        queryEntityKeys.clear();
         this.query = query;
         if (query != null && query.getKeyFilters() != null) {
             for (KeyFilter filter : query.getKeyFilters()) {
                 registerDynamicValues(filter.getPredicate());
+                if (filter.getKey() != null) {
+                    queryKeys.add(filter.getKey().getKey());
+                    queryEntityKeys.add(filter.getKey());
+                }
             }
         }
         resolve(getTenantId(), getCustomerId(), getUserId());
     }
 
+    /**
+     * Marks the query for refresh if any of the updated keys is used by the key filters or the sort order.
+     * The update is taken into account when it is received, regardless of the timestamp of the values,
+     * since the timestamps are set by the devices and are not comparable with the server clock.
+     */
+    protected void onKeysUpdate(Collection<String> keys) {
+        if (!changesPending.get() && keys.stream().anyMatch(queryKeys::contains)) {
+            log.trace("[{}][{}] Query keys were updated: {}", sessionRef.getSessionId(), cmdId, keys);
+            changesPending.set(true);
+        }
+    }
+
+    /**
+     * Marks the query for refresh on the creation, update or deletion of an entity of the tenant,
+     * since the entity may enter or leave the query result without any update of the keys of the current page.
+     */
+    public void onEntityLifecycleEvent(EntityId entityId, ComponentLifecycleEvent event) {
+        if (!changesPending.get()) {
+            log.trace("[{}][{}] Entity {} was {}", sessionRef.getSessionId(), cmdId, entityId, event);
+            changesPending.set(true);
+        }
+    }
+
+    /**
+     * Change driven refresh check. The query is refreshed if the keys it depends on were updated for the entities
+     * of the current page, if an entity of the tenant was created, updated or deleted, or once per full refresh interval,
+     * since the other changes of entities outside the page (e.g. entities that now match the filters) are not tracked.
+     */
+    public boolean isRefreshRequired(long fullRefreshIntervalMs) {
+        long ts = System.currentTimeMillis();
+        if (changesPending.getAndSet(false) || ts - lastRefreshTs >= fullRefreshIntervalMs) {
+            lastRefreshTs = ts;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
     public void resolve(TenantId tenantId, CustomerId customerId, UserId userId) {
         List<ListenableFuture<DynamicValueKeySub>> futures = new ArrayList<>();
         for (DynamicValueKey key : dynamicValues.keySet()) {
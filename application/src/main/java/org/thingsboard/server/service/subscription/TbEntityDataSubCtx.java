@@ -68,6 +68,9 @@ public class TbEntityDataSubCtx extends TbAbstractDataSubCtx<EntityDataQuery> {
         EntityId entityId = subToEntityIdMap.get(subscriptionUpdate.getSubscriptionId());
         if (entityId != null) {
             log.trace("[{}][{}][{}][{}] Received subscription update: {}", sessionId, cmdId, subscriptionUpdate.getSubscriptionId(), keyType, subscriptionUpdate);
+            if (subscriptionUpdate.getData() != null) {
+                onKeysUpdate(subscriptionUpdate.getData().keySet());
+            }
             if (resultToLatestValues) {
                 sendLatestWsMsg(entityId, sessionId, subscriptionUpdate, keyType);
             } else {
@@ -84,6 +87,10 @@ public class TbEntityDataSubCtx extends TbAbstractDataSubCtx<EntityDataQuery> {
             Object[] data = (Object[]) v.get(0);
             latestUpdate.put(k, new TsValue((Long) data[0], (String) data[1]));
         });
+        if (subscribeToQueryKeys && latestValueCmd != null && latestValueCmd.getKeys() != null) {
+            // the keys that are subscribed only for the change driven refresh are not sent to the client
+            latestUpdate.keySet().removeIf(k -> !latestValueCmd.getKeys().contains(new EntityKey(keyType, k)));
+        }
         EntityData entityData = getDataForEntity(entityId);
         if (entityData != null && entityData.getLatest() != null) {
             Map<String, TsValue> latestCtxValues = entityData.getLatest().get(keyType);
@@ -183,7 +190,7 @@ public class TbEntityDataSubCtx extends TbAbstractDataSubCtx<EntityDataQuery> {
         if (!newSubsList.isEmpty()) {
             // NOTE: We ignore the TS subscriptions for new entities here, because widgets will re-init it's content and will create new subscriptions.
             if (curTsCmd == null && latestValueCmd != null) {
-                List<EntityKey> keys = latestValueCmd.getKeys();
+                List<EntityKey> keys = withQueryKeys(latestValueCmd.getKeys());
                 if (keys != null && !keys.isEmpty()) {
                     Map<EntityKeyType, List<EntityKey>> keysByType = getEntityKeyByTypeMap(keys);
                     newSubsList.forEach(
@@ -200,6 +207,11 @@ public class TbEntityDataSubCtx extends TbAbstractDataSubCtx<EntityDataQuery> {
         subsToAdd.forEach(localSubscriptionService::addSubscription);
     }
 
+    @Override
+    public void createLatestValuesSubscriptions(List<EntityKey> keys) {
+        super.createLatestValuesSubscriptions(withQueryKeys(keys));
+    }
+
     public void setCurrentCmd(EntityDataCmd cmd) {
         curTsCmd = cmd.getTsCmd();
         latestValueCmd = cmd.getLatestCmd();
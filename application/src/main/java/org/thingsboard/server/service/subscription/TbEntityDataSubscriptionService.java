@@ -15,6 +15,9 @@
  */
 package org.thingsboard.server.service.subscription;
 
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.plugin.ComponentLifecycleEvent;
 import org.thingsboard.server.service.telemetry.TelemetryWebSocketSessionRef;
 import org.thingsboard.server.service.telemetry.cmd.v2.AlarmDataCmd;
 import org.thingsboard.server.service.telemetry.cmd.v2.EntityCountCmd;
@@ -34,4 +37,9 @@ public interface TbEntityDataSubscriptionService {
 
     void cancelAllSessionSubscriptions(String sessionId);
 
+    /**
+     * Marks the dynamic queries of the tenant for the change driven refresh, since the entity may enter or leave their results.
+     */
+    void onEntityLifecycleEvent(TenantId tenantId, EntityId entityId, ComponentLifecycleEvent event);
+
 }
@@ -35,15 +35,18 @@ import org.thingsboard.server.common.data.id.CustomerId;
 import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.plugin.ComponentLifecycleEvent;
 import org.thingsboard.server.common.data.query.AlarmData;
 import org.thingsboard.server.common.data.query.AlarmDataQuery;
 import org.thingsboard.server.common.msg.queue.ServiceType;
 import org.thingsboard.server.common.msg.queue.TbCallback;
 import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.dao.alarm.AlarmCacheWrapper;
 import org.thingsboard.server.dao.alarm.AlarmOperationResult;
 import org.thingsboard.server.dao.alarm.AlarmService;
 import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.queue.discovery.PartitionService;
+import org.thingsboard.server.queue.discovery.event.PartitionChangeEvent;
 import org.thingsboard.server.queue.usagestats.TbApiUsageClient;
 import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
 import org.thingsboard.server.cluster.TbClusterService;
@@ -51,6 +54,7 @@ import org.thingsboard.server.service.subscription.SubscriptionManagerService;
 import org.thingsboard.server.service.subscription.TbSubscriptionUtils;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -64,6 +68,9 @@ public class DefaultAlarmSubscriptionService extends AbstractSubscriptionService
     private final TbApiUsageClient apiUsageClient;
     private final TbApiUsageStateService apiUsageStateService;
 
+    @Autowired(required = false)
+    private AlarmCacheWrapper alarmCache;
+
     public DefaultAlarmSubscriptionService(TbClusterService clusterService,
                                            PartitionService partitionService,
                                            AlarmService alarmService,
@@ -85,11 +92,22 @@ public class DefaultAlarmSubscriptionService extends AbstractSubscriptionService
         return "alarm";
     }
 
+    @Override
+    protected void onTbApplicationEvent(PartitionChangeEvent partitionChangeEvent) {
+        super.onTbApplicationEvent(partitionChangeEvent);
+        if (ServiceType.TB_RULE_ENGINE.equals(partitionChangeEvent.getServiceType()) && alarmCache != null) {
+            alarmCache.clear();
+        }
+    }
+
     @Override
     public Alarm createOrUpdateAlarm(Alarm alarm) {
         AlarmOperationResult result = alarmService.createOrUpdateAlarm(alarm, apiUsageStateService.getApiUsageState(alarm.getTenantId()).isAlarmCreationEnabled());
         if (result.isSuccessful()) {
             onAlarmUpdated(result);
+            if (!result.isCreated()) {
+                evictFromAlarmCache(result.getAlarm(), ComponentLifecycleEvent.UPDATED);
+            }
         }
         if (result.isCreated()) {
             apiUsageClient.report(alarm.getTenantId(), null, ApiUsageRecordKey.CREATED_ALARMS_COUNT);
@@ -101,6 +119,9 @@ public class DefaultAlarmSubscriptionService extends AbstractSubscriptionService
     public Boolean deleteAlarm(TenantId tenantId, AlarmId alarmId) {
         AlarmOperationResult result = alarmService.deleteAlarm(tenantId, alarmId);
         onAlarmDeleted(result);
+        if (result.isSuccessful()) {
+            evictFromAlarmCache(result.getAlarm(), ComponentLifecycleEvent.DELETED);
+        }
         return result.isSuccessful();
     }
 
@@ -160,23 +181,50 @@ public class DefaultAlarmSubscriptionService extends AbstractSubscriptionService
     }
 
     private void onAlarmUpdated(AlarmOperationResult result) {
-        wsCallBackExecutor.submit(() -> {
-            Alarm alarm = result.getAlarm();
-            TenantId tenantId = result.getAlarm().getTenantId();
-            for (EntityId entityId : result.getPropagatedEntitiesList()) {
-                TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, tenantId, entityId);
-                if (currentPartitions.contains(tpi)) {
-                    if (subscriptionManagerService.isPresent()) {
-                        subscriptionManagerService.get().onAlarmUpdate(tenantId, entityId, alarm, TbCallback.EMPTY);
-                    } else {
-                        log.warn("Possible misconfiguration because subscriptionManagerService is null!");
-                    }
+        Alarm alarm = result.getAlarm();
+        if (alarm == null) {
+            return;
+        }
+        wsCallBackExecutor.submit(() -> onAlarmUpdated(alarm, result.getPropagatedEntitiesList()));
+        Futures.addCallback(result.getRelatedEntitiesFuture(), new FutureCallback<List<EntityId>>() {
+            @Override
+            public void onSuccess(List<EntityId> relatedEntities) {
+                onAlarmUpdated(alarm, relatedEntities);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                log.warn("[{}] Failed to propagate alarm to related entities", alarm.getId(), t);
+            }
+        }, wsCallBackExecutor);
+    }
+
+    private void onAlarmUpdated(Alarm alarm, List<EntityId> propagatedEntities) {
+        TenantId tenantId = alarm.getTenantId();
+        for (EntityId entityId : propagatedEntities) {
+            TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, tenantId, entityId);
+            if (currentPartitions.contains(tpi)) {
+                if (subscriptionManagerService.isPresent()) {
+                    subscriptionManagerService.get().onAlarmUpdate(tenantId, entityId, alarm, TbCallback.EMPTY);
                 } else {
-                    TransportProtos.ToCoreMsg toCoreMsg = TbSubscriptionUtils.toAlarmUpdateProto(tenantId, entityId, alarm);
-                    clusterService.pushMsgToCore(tpi, entityId.getId(), toCoreMsg, null);
+                    log.warn("Possible misconfiguration because subscriptionManagerService is null!");
                 }
+            } else {
+                TransportProtos.ToCoreMsg toCoreMsg = TbSubscriptionUtils.toAlarmUpdateProto(tenantId, entityId, alarm);
+                clusterService.pushMsgToCore(tpi, entityId.getId(), toCoreMsg, null);
             }
-        });
+        }
+    }
+
+    /**
+     * The local alarm cache of the rule engine node that owns the originator is updated by that node only,
+     * so the changes made through other nodes are broadcast to evict the alarm.
+     */
+    private void evictFromAlarmCache(Alarm alarm, ComponentLifecycleEvent event) {
+        if (alarmCache != null && alarmCache.isLocalCache()
+                && !partitionService.resolve(ServiceType.TB_RULE_ENGINE, alarm.getTenantId(), alarm.getOriginator()).isMyPartition()) {
+            clusterService.broadcastEntityStateChangeEvent(alarm.getTenantId(), alarm.getId(), event);
+        }
     }
 
     private void onAlarmDeleted(AlarmOperationResult result) {
@@ -203,6 +251,9 @@ public class DefaultAlarmSubscriptionService extends AbstractSubscriptionService
         @Override
         public void onSuccess(@Nullable AlarmOperationResult result) {
             onAlarmUpdated(result);
+            if (result.isSuccessful()) {
+                evictFromAlarmCache(result.getAlarm(), ComponentLifecycleEvent.UPDATED);
+            }
         }
 
         @Override
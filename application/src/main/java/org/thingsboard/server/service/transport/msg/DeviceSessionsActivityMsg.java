@@ -0,0 +1,44 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.transport.msg;
+
+import lombok.Data;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.MsgType;
+import org.thingsboard.server.common.msg.TbActorMsg;
+import org.thingsboard.server.common.msg.aware.DeviceAwareMsg;
+import org.thingsboard.server.common.msg.aware.TenantAwareMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.SubscriptionInfoProto;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Last activity time and subscription state of the device sessions, taken from the batched activity reports of the transports.
+ */
+@Data
+public class DeviceSessionsActivityMsg implements TbActorMsg, DeviceAwareMsg, TenantAwareMsg {
+
+    private final TenantId tenantId;
+    private final DeviceId deviceId;
+    private final Map<UUID, SubscriptionInfoProto> sessionsActivity;
+
+    @Override
+    public MsgType getMsgType() {
+        return MsgType.DEVICE_SESSIONS_ACTIVITY_TO_DEVICE_ACTOR_MSG;
+    }
+}
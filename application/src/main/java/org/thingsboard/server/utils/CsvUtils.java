@@ -18,10 +18,12 @@ package org.thingsboard.server.utils;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.io.input.CharSequenceReader;
 
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -29,17 +31,35 @@ import java.util.stream.Stream;
 public class CsvUtils {
 
     public static List<List<String>> parseCsv(String content, Character delimiter) throws Exception {
-        CSVFormat csvFormat = delimiter.equals(',') ? CSVFormat.DEFAULT : CSVFormat.DEFAULT.withDelimiter(delimiter);
-
         List<CSVRecord> records;
         try (CharSequenceReader reader = new CharSequenceReader(content)) {
-            records = csvFormat.parse(reader).getRecords();
+            records = getFormat(delimiter).parse(reader).getRecords();
         }
 
         return records.stream()
-                .map(record -> Stream.iterate(0, i -> i < record.size(), i -> i + 1)
-                        .map(record::get)
-                        .collect(Collectors.toList()))
+                .map(CsvUtils::toValues)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Parses the content record by record without keeping the already consumed records in memory.
+     */
+    public static void parseCsv(String content, Character delimiter, Consumer<List<String>> recordConsumer) throws Exception {
+        try (CharSequenceReader reader = new CharSequenceReader(content);
+             CSVParser parser = getFormat(delimiter).parse(reader)) {
+            for (CSVRecord record : parser) {
+                recordConsumer.accept(toValues(record));
+            }
+        }
+    }
+
+    private static CSVFormat getFormat(Character delimiter) {
+        return delimiter.equals(',') ? CSVFormat.DEFAULT : CSVFormat.DEFAULT.withDelimiter(delimiter);
+    }
+
+    private static List<String> toValues(CSVRecord record) {
+        return Stream.iterate(0, i -> i < record.size(), i -> i + 1)
+                .map(record::get)
                 .collect(Collectors.toList());
     }
 
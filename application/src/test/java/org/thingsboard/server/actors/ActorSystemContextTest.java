@@ -68,6 +68,7 @@ import org.thingsboard.server.service.profile.TbDeviceProfileCache;
 import org.thingsboard.server.service.rpc.TbCoreDeviceRpcService;
 import org.thingsboard.server.service.rpc.TbRpcService;
 import org.thingsboard.server.service.rpc.TbRuleEngineDeviceRpcService;
+import org.thingsboard.server.service.rule.TbRuleNodeDebugEventService;
 import org.thingsboard.server.service.script.JsInvokeService;
 import org.thingsboard.server.service.session.DeviceSessionCacheService;
 import org.thingsboard.server.service.sms.SmsExecutorService;
@@ -155,6 +156,9 @@ public class ActorSystemContextTest {
     @MockBean
     private EventService eventService;
 
+    @MockBean
+    private TbRuleNodeDebugEventService ruleNodeDebugEventService;
+
     @MockBean
     private RelationService relationService;
 
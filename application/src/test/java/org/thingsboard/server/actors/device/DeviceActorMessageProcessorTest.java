@@ -22,11 +22,20 @@ import org.thingsboard.server.actors.ActorSystemContext;
 import org.thingsboard.server.common.data.id.DeviceId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.dao.device.DeviceService;
+import org.thingsboard.server.gen.transport.TransportProtos.SessionType;
+import org.thingsboard.server.gen.transport.TransportProtos.SubscriptionInfoProto;
+import org.thingsboard.server.service.transport.msg.DeviceSessionsActivityMsg;
+
+import java.util.Map;
+import java.util.UUID;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.BDDMockito.willReturn;
 import static org.mockito.Mockito.mock;
 
@@ -55,4 +64,29 @@ public class DeviceActorMessageProcessorTest {
         assertThat(processor.sessions.getMaxEntries(), is(MAX_CONCURRENT_SESSIONS_PER_DEVICE));
         assertThat(processor.sessions.getRemovalConsumer(), notNullValue());
     }
+
+    @Test
+    public void givenBatchedSessionsActivity_whenProcess_thenActivityAndSubscriptionsAreUpdated() {
+        willReturn(true).given(systemContext).isLocalCacheType();
+        UUID sessionId = UUID.randomUUID();
+        UUID staleSessionId = UUID.randomUUID();
+        processor.sessions.put(sessionId, new SessionInfoMetaData(new SessionInfo(SessionType.ASYNC, "node"), 100L));
+        processor.sessions.put(staleSessionId, new SessionInfoMetaData(new SessionInfo(SessionType.ASYNC, "node"), 500L));
+
+        processor.processSessionsActivity(new DeviceSessionsActivityMsg(tenantId, deviceId, Map.of(
+                sessionId, SubscriptionInfoProto.newBuilder().setLastActivityTime(200L).setAttributeSubscription(true).setRpcSubscription(true).build(),
+                staleSessionId, SubscriptionInfoProto.newBuilder().setLastActivityTime(300L).setAttributeSubscription(true).build())));
+
+        SessionInfoMetaData sessionMD = processor.sessions.get(sessionId);
+        assertEquals(200L, sessionMD.getLastActivityTime());
+        assertTrue(sessionMD.isSubscribedToAttributes());
+        assertTrue(sessionMD.isSubscribedToRPC());
+        assertTrue(processor.attributeSubscriptions.containsKey(sessionId));
+        assertTrue(processor.rpcSubscriptions.containsKey(sessionId));
+
+        SessionInfoMetaData staleSessionMD = processor.sessions.get(staleSessionId);
+        assertEquals(500L, staleSessionMD.getLastActivityTime());
+        assertFalse(staleSessionMD.isSubscribedToAttributes());
+        assertFalse(processor.attributeSubscriptions.containsKey(staleSessionId));
+    }
 }
\ No newline at end of file
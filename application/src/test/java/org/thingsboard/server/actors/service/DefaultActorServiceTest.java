@@ -0,0 +1,211 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.actors.ActorSystemContext;
+import org.thingsboard.server.actors.DefaultTbActorSystem;
+import org.thingsboard.server.actors.TbActor;
+import org.thingsboard.server.actors.TbActorCreator;
+import org.thingsboard.server.actors.TbActorId;
+import org.thingsboard.server.actors.TbActorSystem;
+import org.thingsboard.server.actors.TbActorSystemSettings;
+import org.thingsboard.server.actors.TbEntityActorId;
+import org.thingsboard.server.common.data.TenantProfile;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.tenant.profile.DefaultTenantProfileConfiguration;
+import org.thingsboard.server.common.data.tenant.profile.TenantProfileData;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.dao.tenant.TbTenantProfileCache;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DefaultActorServiceTest {
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private final TbActorId tenantActorId = new TbEntityActorId(tenantId);
+
+    private DefaultActorService actorService;
+    private TbActorSystem system;
+    private DefaultTenantProfileConfiguration profileConfiguration;
+    private AtomicInteger utilization;
+
+    @Before
+    public void before() {
+        profileConfiguration = new DefaultTenantProfileConfiguration();
+        TenantProfileData profileData = new TenantProfileData();
+        profileData.setConfiguration(profileConfiguration);
+        TenantProfile tenantProfile = new TenantProfile();
+        tenantProfile.setProfileData(profileData);
+        TbTenantProfileCache tenantProfileCache = mock(TbTenantProfileCache.class);
+        when(tenantProfileCache.get(tenantId)).thenReturn(tenantProfile);
+        ActorSystemContext actorContext = mock(ActorSystemContext.class);
+        when(actorContext.getTenantProfileCache()).thenReturn(tenantProfileCache);
+
+        utilization = new AtomicInteger(-1);
+        StatsFactory statsFactory = mock(StatsFactory.class);
+        when(statsFactory.createGauge(anyString(), any(AtomicInteger.class), anyString(), anyString())).thenAnswer(invocation ->
+                "tenantDispatcherUtilization".equals(invocation.getArgument(0)) ? utilization : invocation.getArgument(1));
+
+        system = new DefaultTbActorSystem(new TbActorSystemSettings(5, 1, 10));
+        system.createDispatcher(DefaultActorService.TENANT_DISPATCHER_NAME, Executors.newSingleThreadExecutor());
+        actorService = new DefaultActorService();
+        ReflectionTestUtils.setField(actorService, "actorContext", actorContext);
+        ReflectionTestUtils.setField(actorService, "statsFactory", statsFactory);
+        ReflectionTestUtils.setField(actorService, "system", system);
+        ReflectionTestUtils.setField(actorService, "tenantDispatcherMaxPoolSize", 4);
+    }
+
+    @After
+    public void after() {
+        system.stop();
+    }
+
+    @Test
+    public void testSharedDispatcherIsUsedWithoutPoolSizeInProfile() {
+        assertEquals(DefaultActorService.DEVICE_DISPATCHER_NAME, actorService.getDispatcherName(tenantId, DefaultActorService.DEVICE_DISPATCHER_NAME));
+        assertEquals(DefaultActorService.TENANT_DISPATCHER_NAME, actorService.getDispatcherName(TenantId.SYS_TENANT_ID, DefaultActorService.TENANT_DISPATCHER_NAME));
+    }
+
+    @Test
+    public void testTenantDispatcherIsCreatedOnceAndReleased() {
+        profileConfiguration.setActorDispatcherPoolSize(2);
+
+        String dispatcherName = actorService.getDispatcherName(tenantId, DefaultActorService.DEVICE_DISPATCHER_NAME);
+        assertNotEquals(DefaultActorService.DEVICE_DISPATCHER_NAME, dispatcherName);
+        assertEquals(dispatcherName, actorService.getDispatcherName(tenantId, DefaultActorService.RULE_DISPATCHER_NAME));
+
+        actorService.releaseDispatcher(tenantId, dispatcherName);
+        assertNull(getTenantDispatchers().get(tenantId));
+        // a new dispatcher is registered once the tenant actors are recreated
+        String newDispatcherName = actorService.getDispatcherName(tenantId, DefaultActorService.RULE_DISPATCHER_NAME);
+        assertNotEquals(DefaultActorService.RULE_DISPATCHER_NAME, newDispatcherName);
+        assertNotEquals(dispatcherName, newDispatcherName);
+    }
+
+    @Test
+    public void testReplacedTenantDispatcherIsNotReleasedByOldTenantActor() {
+        profileConfiguration.setActorDispatcherPoolSize(2);
+        String oldDispatcherName = actorService.getDispatcherName(tenantId, DefaultActorService.TENANT_DISPATCHER_NAME);
+        actorService.releaseDispatcher(tenantId, oldDispatcherName);
+        String newDispatcherName = actorService.getDispatcherName(tenantId, DefaultActorService.TENANT_DISPATCHER_NAME);
+
+        // the destroy of the old tenant actor is processed after the new dispatcher was created
+        actorService.releaseDispatcher(tenantId, oldDispatcherName);
+
+        assertNotNull(getTenantDispatchers().get(tenantId));
+        assertEquals(newDispatcherName, actorService.getDispatcherName(tenantId, DefaultActorService.TENANT_DISPATCHER_NAME));
+        createTenantActor();
+        assertNotNull(system.getActor(tenantActorId));
+    }
+
+    @Test
+    public void testTenantDispatcherIsKeptWhileTenantActorIsRegistered() {
+        profileConfiguration.setActorDispatcherPoolSize(2);
+        createTenantActor();
+        String dispatcherName = actorService.getDispatcherName(tenantId, DefaultActorService.TENANT_DISPATCHER_NAME);
+
+        // the old tenant actor is destroyed after the new one was created on the same dispatcher
+        actorService.releaseDispatcher(tenantId, dispatcherName);
+
+        assertNotNull(getTenantDispatchers().get(tenantId));
+        system.stop(tenantActorId);
+        actorService.releaseDispatcher(tenantId, dispatcherName);
+        assertNull(getTenantDispatchers().get(tenantId));
+    }
+
+    @Test
+    public void testTenantActorIsRestartedWhenOwnDispatcherIsEnabled() {
+        createTenantActor();
+        assertNull(getTenantDispatchers().get(tenantId));
+
+        profileConfiguration.setActorDispatcherPoolSize(2);
+        actorService.updateTenantDispatchers();
+
+        assertNull(system.getActor(tenantActorId));
+        assertNotEquals(DefaultActorService.TENANT_DISPATCHER_NAME, actorService.getDispatcherName(tenantId, DefaultActorService.TENANT_DISPATCHER_NAME));
+    }
+
+    @Test
+    public void testTenantActorIsRestartedWhenOwnDispatcherIsDisabled() {
+        profileConfiguration.setActorDispatcherPoolSize(2);
+        createTenantActor();
+        assertNotNull(getTenantDispatchers().get(tenantId));
+
+        profileConfiguration.setActorDispatcherPoolSize(0);
+        actorService.updateTenantDispatchers();
+
+        assertNull(system.getActor(tenantActorId));
+        assertNull(getTenantDispatchers().get(tenantId));
+        assertEquals(DefaultActorService.TENANT_DISPATCHER_NAME, actorService.getDispatcherName(tenantId, DefaultActorService.TENANT_DISPATCHER_NAME));
+    }
+
+    @Test
+    public void testTenantDispatcherUtilizationAndResize() throws Exception {
+        profileConfiguration.setActorDispatcherPoolSize(1);
+        actorService.getDispatcherName(tenantId, DefaultActorService.TENANT_DISPATCHER_NAME);
+        TenantDispatcherExecutor executor = (TenantDispatcherExecutor) ReflectionTestUtils.getField(getTenantDispatchers().get(tenantId), "executor");
+
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            latch.countDown();
+        });
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        Thread.sleep(10);
+
+        profileConfiguration.setActorDispatcherPoolSize(8);
+        actorService.updateTenantDispatchers();
+
+        assertTrue(utilization.get() > 0);
+        assertEquals(4, executor.getMaximumPoolSize());
+        assertEquals(4, executor.getCorePoolSize());
+    }
+
+    private void createTenantActor() {
+        TbActorCreator creator = mock(TbActorCreator.class);
+        when(creator.createActorId()).thenReturn(tenantActorId);
+        when(creator.createActor()).thenReturn(mock(TbActor.class));
+        system.createRootActor(actorService.getDispatcherName(tenantId, DefaultActorService.TENANT_DISPATCHER_NAME), creator);
+        assertNotNull(system.getActor(tenantActorId));
+    }
+
+    private Map<?, ?> getTenantDispatchers() {
+        return (Map<?, ?>) ReflectionTestUtils.getField(actorService, "tenantDispatchers");
+    }
+
+}
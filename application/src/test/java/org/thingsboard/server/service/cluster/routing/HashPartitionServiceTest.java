@@ -16,8 +16,10 @@
 package org.thingsboard.server.service.cluster.routing;
 
 import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.google.common.hash.HashFunction;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -111,6 +113,60 @@ public class HashPartitionServiceTest {
         testDevicesDispersion(devices);
     }
 
+    @Test
+    public void testResolveMatchesHashOfEntityId() {
+        for (String hashFunction : new String[]{"sha256", "murmur3_128"}) {
+            ReflectionTestUtils.setField(clusterRoutingService, "hashFunctionName", hashFunction);
+            clusterRoutingService.init();
+            HashFunction guavaHashFunction = HashPartitionService.forName(hashFunction);
+            for (int i = 0; i < 10000; i++) {
+                DeviceId deviceId = new DeviceId(Uuids.timeBased());
+                int hash = guavaHashFunction.newHasher()
+                        .putLong(deviceId.getId().getMostSignificantBits())
+                        .putLong(deviceId.getId().getLeastSignificantBits()).hash().asInt();
+                TopicPartitionInfo tpi = clusterRoutingService.resolve(ServiceType.TB_CORE, TenantId.SYS_TENANT_ID, deviceId);
+                Assert.assertEquals("tb.core", tpi.getTopic());
+                Assert.assertEquals(Integer.valueOf(Math.abs(hash % 10)), tpi.getPartition().get());
+                Assert.assertEquals(tpi, clusterRoutingService.resolve(ServiceType.TB_CORE, TenantId.SYS_TENANT_ID, deviceId));
+            }
+        }
+    }
+
+    @Test
+    public void testResolveThroughput() {
+        Assume.assumeTrue("Run with -Dbenchmarks.enabled=true", Boolean.getBoolean("benchmarks.enabled"));
+        List<DeviceId> devices = new ArrayList<>();
+        for (int i = 0; i < ITERATIONS; i++) {
+            devices.add(new DeviceId(Uuids.timeBased()));
+        }
+        ReflectionTestUtils.setField(clusterRoutingService, "hashFunctionName", "murmur3_128");
+        clusterRoutingService.init();
+        HashFunction guavaHashFunction = HashPartitionService.forName("murmur3_128");
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long checksum = 0;
+            for (DeviceId deviceId : devices) {
+                int hash = guavaHashFunction.newHasher()
+                        .putLong(deviceId.getId().getMostSignificantBits())
+                        .putLong(deviceId.getId().getLeastSignificantBits()).hash().asInt();
+                checksum += Math.abs(hash % 10);
+            }
+            long hashOnlyTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (DeviceId deviceId : devices) {
+                checksum -= clusterRoutingService.resolve(ServiceType.TB_CORE, TenantId.SYS_TENANT_ID, deviceId).getPartition().get();
+            }
+            long resolveTime = System.nanoTime() - start;
+            Assert.assertEquals(0, checksum);
+            log.info("Round {}: guava hash only {} ops/s, resolve {} ops/s", round, toOpsPerSecond(hashOnlyTime), toOpsPerSecond(resolveTime));
+        }
+    }
+
+    private static long toOpsPerSecond(long timeNanos) {
+        return ITERATIONS * 1_000_000_000L / Math.max(timeNanos, 1);
+    }
+
     private void testDevicesDispersion(List<DeviceId> devices) {
         long start = System.currentTimeMillis();
         Map<Integer, Integer> map = new HashMap<>();
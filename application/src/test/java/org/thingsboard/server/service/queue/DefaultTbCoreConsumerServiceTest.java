@@ -0,0 +1,153 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.queue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.thingsboard.server.actors.ActorSystemContext;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.plugin.ComponentLifecycleEvent;
+import org.thingsboard.server.common.msg.plugin.ComponentLifecycleMsg;
+import org.thingsboard.server.common.msg.queue.TbCallback;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.common.transport.util.DataDecodingEncodingService;
+import org.thingsboard.server.dao.tenant.TbTenantProfileCache;
+import org.thingsboard.server.gen.transport.TransportProtos.DeviceActivityBatchMsgProto;
+import org.thingsboard.server.gen.transport.TransportProtos.SubscriptionInfoProto;
+import org.thingsboard.server.queue.provider.TbCoreQueueFactory;
+import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
+import org.thingsboard.server.service.edge.EdgeNotificationService;
+import org.thingsboard.server.service.ota.OtaPackageStateService;
+import org.thingsboard.server.service.profile.TbDeviceProfileCache;
+import org.thingsboard.server.service.rpc.TbCoreDeviceRpcService;
+import org.thingsboard.server.service.state.DeviceStateService;
+import org.thingsboard.server.service.subscription.SubscriptionManagerService;
+import org.thingsboard.server.service.subscription.TbEntityDataSubscriptionService;
+import org.thingsboard.server.service.subscription.TbLocalSubscriptionService;
+import org.thingsboard.server.service.transport.msg.DeviceSessionsActivityMsg;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class DefaultTbCoreConsumerServiceTest {
+
+    private final TenantId tenantId = TenantId.fromUUID(UUID.randomUUID());
+
+    private DefaultTbCoreConsumerService consumerService;
+    private ActorSystemContext actorContext;
+    private DeviceStateService stateService;
+    private TbEntityDataSubscriptionService entityDataSubscriptionService;
+
+    @Before
+    public void before() {
+        actorContext = mock(ActorSystemContext.class);
+        stateService = mock(DeviceStateService.class);
+        entityDataSubscriptionService = mock(TbEntityDataSubscriptionService.class);
+        consumerService = new DefaultTbCoreConsumerService(mock(TbCoreQueueFactory.class), actorContext, stateService,
+                mock(TbLocalSubscriptionService.class), mock(SubscriptionManagerService.class), mock(DataDecodingEncodingService.class),
+                mock(TbCoreDeviceRpcService.class), mock(StatsFactory.class), mock(TbDeviceProfileCache.class), mock(TbApiUsageStateService.class),
+                mock(TbTenantProfileCache.class), mock(TbApiUsageStateService.class), mock(EdgeNotificationService.class),
+                mock(OtaPackageStateService.class), entityDataSubscriptionService);
+    }
+
+    @Test
+    public void testActivityIsGroupedByDevice() {
+        DeviceId first = new DeviceId(UUID.randomUUID());
+        DeviceId second = new DeviceId(UUID.randomUUID());
+        UUID subscribedSession = UUID.randomUUID();
+        DeviceActivityBatchMsgProto.Builder batch = DeviceActivityBatchMsgProto.newBuilder();
+        add(batch, first, UUID.randomUUID(), 100L, false, false);
+        add(batch, first, subscribedSession, 300L, true, true);
+        add(batch, second, UUID.randomUUID(), 200L, false, true);
+        TbCallback callback = mock(TbCallback.class);
+
+        consumerService.forwardDeviceActivity(batch.build(), callback);
+
+        verify(stateService).onDeviceActivity(tenantId, first, 300L);
+        verify(stateService).onDeviceActivity(tenantId, second, 200L);
+        ArgumentCaptor<DeviceSessionsActivityMsg> actorMsgs = ArgumentCaptor.forClass(DeviceSessionsActivityMsg.class);
+        verify(actorContext, times(2)).tell(actorMsgs.capture());
+        DeviceSessionsActivityMsg firstActivity = actorMsgs.getAllValues().get(0);
+        assertEquals(first, firstActivity.getDeviceId());
+        assertEquals(2, firstActivity.getSessionsActivity().size());
+        SubscriptionInfoProto subscriptionInfo = firstActivity.getSessionsActivity().get(subscribedSession);
+        assertEquals(300L, subscriptionInfo.getLastActivityTime());
+        assertTrue(subscriptionInfo.getAttributeSubscription());
+        assertTrue(subscriptionInfo.getRpcSubscription());
+        assertEquals(1, actorMsgs.getAllValues().get(1).getSessionsActivity().size());
+        verify(callback).onSuccess();
+        verify(callback, never()).onFailure(any());
+    }
+
+    @Test
+    public void testActivityWithoutSubscriptionFlagsIsAccepted() {
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        UUID sessionId = UUID.randomUUID();
+        // the batch of a transport that does not report the subscription flags yet
+        DeviceActivityBatchMsgProto batch = DeviceActivityBatchMsgProto.newBuilder()
+                .addTenantIdMSB(tenantId.getId().getMostSignificantBits())
+                .addTenantIdLSB(tenantId.getId().getLeastSignificantBits())
+                .addDeviceIdMSB(deviceId.getId().getMostSignificantBits())
+                .addDeviceIdLSB(deviceId.getId().getLeastSignificantBits())
+                .addSessionIdMSB(sessionId.getMostSignificantBits())
+                .addSessionIdLSB(sessionId.getLeastSignificantBits())
+                .addLastActivityTime(100L)
+                .build();
+        TbCallback callback = mock(TbCallback.class);
+
+        consumerService.forwardDeviceActivity(batch, callback);
+
+        verify(stateService).onDeviceActivity(tenantId, deviceId, 100L);
+        ArgumentCaptor<DeviceSessionsActivityMsg> actorMsg = ArgumentCaptor.forClass(DeviceSessionsActivityMsg.class);
+        verify(actorContext).tell(actorMsg.capture());
+        SubscriptionInfoProto subscriptionInfo = actorMsg.getValue().getSessionsActivity().get(sessionId);
+        assertFalse(subscriptionInfo.getAttributeSubscription());
+        assertFalse(subscriptionInfo.getRpcSubscription());
+        verify(callback).onSuccess();
+    }
+
+    @Test
+    public void testEntityLifecycleEventIsForwardedToEntityDataSubscriptions() {
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+
+        consumerService.onComponentLifecycleMsg(new ComponentLifecycleMsg(tenantId, deviceId, ComponentLifecycleEvent.DELETED));
+
+        verify(entityDataSubscriptionService).onEntityLifecycleEvent(tenantId, deviceId, ComponentLifecycleEvent.DELETED);
+    }
+
+    private void add(DeviceActivityBatchMsgProto.Builder batch, DeviceId deviceId, UUID sessionId, long lastActivityTime,
+                     boolean attributeSubscription, boolean rpcSubscription) {
+        batch.addTenantIdMSB(tenantId.getId().getMostSignificantBits())
+                .addTenantIdLSB(tenantId.getId().getLeastSignificantBits())
+                .addDeviceIdMSB(deviceId.getId().getMostSignificantBits())
+                .addDeviceIdLSB(deviceId.getId().getLeastSignificantBits())
+                .addSessionIdMSB(sessionId.getMostSignificantBits())
+                .addSessionIdLSB(sessionId.getLeastSignificantBits())
+                .addLastActivityTime(lastActivityTime)
+                .addAttributeSubscription(attributeSubscription)
+                .addRpcSubscription(rpcSubscription);
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.queue;
+
+import com.google.protobuf.ByteString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.actors.ActorSystemContext;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.common.transport.util.DataDecodingEncodingService;
+import org.thingsboard.server.dao.tenant.TbTenantProfileCache;
+import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineMsg;
+import org.thingsboard.server.queue.TbQueueCallback;
+import org.thingsboard.server.queue.TbQueueConsumer;
+import org.thingsboard.server.queue.TbQueueConsumerPosition;
+import org.thingsboard.server.queue.TbQueueMsgHeaders;
+import org.thingsboard.server.queue.TbQueueProducer;
+import org.thingsboard.server.queue.common.DefaultTbQueueMsgHeaders;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.queue.provider.TbQueueProducerProvider;
+import org.thingsboard.server.queue.provider.TbRuleEngineQueueFactory;
+import org.thingsboard.server.queue.settings.TbQueueRuleEngineSettings;
+import org.thingsboard.server.queue.settings.TbRuleEngineQueueAckStrategyConfiguration;
+import org.thingsboard.server.queue.settings.TbRuleEngineQueueConfiguration;
+import org.thingsboard.server.queue.settings.TbRuleEngineQueueSubmitStrategyConfiguration;
+import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
+import org.thingsboard.server.service.profile.TbDeviceProfileCache;
+import org.thingsboard.server.service.queue.processing.TbRuleEngineProcessingStrategyFactory;
+import org.thingsboard.server.service.queue.processing.TbRuleEngineSubmitStrategyFactory;
+import org.thingsboard.server.service.rpc.TbRuleEngineDeviceRpcService;
+import org.thingsboard.server.service.stats.RuleEngineStatisticsService;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultTbRuleEngineConsumerServiceTest {
+
+    private static final long PACK_PROCESSING_TIMEOUT = 200;
+    private static final int MAX_RETRIES = 3;
+
+    private final ConcurrentLinkedQueue<List<TbProtoQueueMsg<ToRuleEngineMsg>>> polls = new ConcurrentLinkedQueue<>();
+
+    private DefaultTbRuleEngineConsumerService consumerService;
+    private TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>> consumer;
+    private TbQueueProducer<TbProtoQueueMsg<ToRuleEngineMsg>> producer;
+    private TbRuleEngineQueueConfiguration configuration;
+    private Thread consumerThread;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() {
+        TbRuleEngineQueueFactory queueFactory = mock(TbRuleEngineQueueFactory.class);
+        TbQueueProducerProvider producerProvider = mock(TbQueueProducerProvider.class);
+        producer = mock(TbQueueProducer.class);
+        when(producerProvider.getRuleEngineMsgProducer()).thenReturn(producer);
+        consumerService = new DefaultTbRuleEngineConsumerService(new TbRuleEngineProcessingStrategyFactory(), new TbRuleEngineSubmitStrategyFactory(),
+                mock(TbQueueRuleEngineSettings.class), queueFactory, mock(RuleEngineStatisticsService.class), mock(ActorSystemContext.class),
+                mock(DataDecodingEncodingService.class), mock(TbRuleEngineDeviceRpcService.class), producerProvider, mock(StatsFactory.class),
+                mock(TbDeviceProfileCache.class), mock(TbTenantProfileCache.class), mock(TbApiUsageStateService.class));
+        ReflectionTestUtils.setField(consumerService, "pollDuration", 10L);
+
+        consumer = mock(TbQueueConsumer.class);
+        when(consumer.poll(anyLong())).thenAnswer(invocation -> {
+            List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs = polls.poll();
+            if (msgs == null) {
+                Thread.sleep(10);
+                return Collections.emptyList();
+            }
+            return msgs;
+        });
+
+        configuration = new TbRuleEngineQueueConfiguration();
+        configuration.setName("Main");
+        configuration.setTopic("tb_rule_engine.main");
+        configuration.setPackProcessingTimeout(PACK_PROCESSING_TIMEOUT);
+        configuration.setMaxPacksInFlight(2);
+        TbRuleEngineQueueSubmitStrategyConfiguration submitStrategy = new TbRuleEngineQueueSubmitStrategyConfiguration();
+        submitStrategy.setType("BURST");
+        configuration.setSubmitStrategy(submitStrategy);
+        TbRuleEngineQueueAckStrategyConfiguration processingStrategy = new TbRuleEngineQueueAckStrategyConfiguration();
+        processingStrategy.setType("RETRY_TIMED_OUT");
+        processingStrategy.setRetries(MAX_RETRIES);
+        configuration.setProcessingStrategy(processingStrategy);
+    }
+
+    @After
+    public void after() throws InterruptedException {
+        ReflectionTestUtils.setField(consumerService, "stopped", true);
+        if (consumerThread != null) {
+            consumerThread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        consumerService.submitExecutor.shutdownNow();
+        consumerService.repartitionExecutor.shutdownNow();
+    }
+
+    @Test
+    public void givenCommitFailed_whenWindowConsumerLoop_thenPackIsCommittedAgainWithoutRetrySend() {
+        TbQueueConsumerPosition position = mock(TbQueueConsumerPosition.class);
+        when(consumer.getPosition()).thenReturn(position);
+        doThrow(new RuntimeException("Commit failed")).doNothing().when(consumer).commit(position);
+        mockProducerResults(true);
+        polls.add(List.of(newSlowMsg()));
+
+        startWindowConsumerLoop();
+
+        verify(consumer, timeout(5000).times(2)).commit(position);
+        verify(producer, times(1)).send(any(), any(), any());
+    }
+
+    @Test
+    public void givenLaterPackCompletedFirst_whenWindowConsumerLoop_thenPacksAreCommittedInPollOrder() {
+        TbQueueConsumerPosition slowPosition = mock(TbQueueConsumerPosition.class);
+        TbQueueConsumerPosition fastPosition = mock(TbQueueConsumerPosition.class);
+        when(consumer.getPosition()).thenReturn(slowPosition, fastPosition);
+        mockProducerResults(true);
+        polls.add(List.of(newSlowMsg()));
+        polls.add(List.of(newFastMsg()));
+
+        startWindowConsumerLoop();
+
+        verify(consumer, timeout(5000)).commit(fastPosition);
+        InOrder commits = inOrder(consumer);
+        commits.verify(consumer).commit(slowPosition);
+        commits.verify(consumer).commit(fastPosition);
+    }
+
+    @Test
+    public void givenRetryTsInFuture_whenRetryConsumerLoop_thenProcessedAfterRetryTsAndSentBackWithNextAttempt() {
+        AtomicLong sendTs = new AtomicLong();
+        doAnswer(invocation -> {
+            sendTs.set(System.currentTimeMillis());
+            invocation.<TbQueueCallback>getArgument(2).onSuccess(null);
+            return null;
+        }).when(producer).send(any(), any(), any());
+        long retryTs = System.currentTimeMillis() + 300;
+        polls.add(List.of(withRetryHeaders(newSlowMsg(), 1, retryTs)));
+
+        consumerThread = new Thread(() -> consumerService.retryConsumerLoop(consumer, configuration, mock(TbRuleEngineConsumerStats.class)));
+        consumerThread.start();
+
+        verify(consumer, timeout(5000)).commit();
+        ArgumentCaptor<TbProtoQueueMsg<ToRuleEngineMsg>> retryMsg = captureSentMsg();
+        assertEquals(2L, getLongHeader(retryMsg.getValue().getHeaders(), DefaultTbRuleEngineConsumerService.RETRY_ATTEMPT_HEADER));
+        assertTrue(sendTs.get() >= retryTs + PACK_PROCESSING_TIMEOUT);
+    }
+
+    @Test
+    public void givenSendFailed_whenSendToRetryTopic_thenSentAgain() throws InterruptedException {
+        mockProducerResults(false, true);
+
+        consumerService.sendToRetryTopic(configuration, List.of(newSlowMsg()));
+
+        ArgumentCaptor<TopicPartitionInfo> tpi = ArgumentCaptor.forClass(TopicPartitionInfo.class);
+        verify(producer, times(2)).send(tpi.capture(), any(), any());
+        assertEquals("tb_rule_engine.main.retry", tpi.getValue().getFullTopicName());
+        assertEquals(1L, getLongHeader(captureSentMsg().getValue().getHeaders(), DefaultTbRuleEngineConsumerService.RETRY_ATTEMPT_HEADER));
+    }
+
+    @Test
+    public void givenRetriesExhausted_whenSendToRetryTopic_thenSkipped() throws InterruptedException {
+        consumerService.sendToRetryTopic(configuration, List.of(withRetryHeaders(newSlowMsg(), MAX_RETRIES, 0L)));
+
+        verify(producer, never()).send(any(), any(), any());
+    }
+
+    private void startWindowConsumerLoop() {
+        consumerThread = new Thread(() -> consumerService.windowConsumerLoop(consumer, configuration, mock(TbRuleEngineConsumerStats.class), "test"));
+        consumerThread.start();
+    }
+
+    private void mockProducerResults(boolean... results) {
+        AtomicInteger sends = new AtomicInteger();
+        doAnswer(invocation -> {
+            int send = sends.getAndIncrement();
+            TbQueueCallback callback = invocation.getArgument(2);
+            if (results[Math.min(send, results.length - 1)]) {
+                callback.onSuccess(null);
+            } else {
+                callback.onFailure(new RuntimeException("Send failed"));
+            }
+            return null;
+        }).when(producer).send(any(), any(), any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArgumentCaptor<TbProtoQueueMsg<ToRuleEngineMsg>> captureSentMsg() {
+        ArgumentCaptor<TbProtoQueueMsg<ToRuleEngineMsg>> msg = ArgumentCaptor.forClass(TbProtoQueueMsg.class);
+        verify(producer, timeout(5000).atLeastOnce()).send(any(), msg.capture(), any());
+        return msg;
+    }
+
+    // the actor context mock never acknowledges the message, so it times out
+    private static TbProtoQueueMsg<ToRuleEngineMsg> newSlowMsg() {
+        TbMsg tbMsg = TbMsg.newMsg("TEST", new DeviceId(UUID.randomUUID()), new TbMsgMetaData(), "{}");
+        return new TbProtoQueueMsg<>(UUID.randomUUID(), newMsgBuilder().setTbMsg(ByteString.copyFrom(TbMsg.toByteArray(tbMsg))).build());
+    }
+
+    // a message without the rule engine message is acknowledged on submit
+    private static TbProtoQueueMsg<ToRuleEngineMsg> newFastMsg() {
+        return new TbProtoQueueMsg<>(UUID.randomUUID(), newMsgBuilder().build());
+    }
+
+    private static ToRuleEngineMsg.Builder newMsgBuilder() {
+        UUID tenantId = UUID.randomUUID();
+        return ToRuleEngineMsg.newBuilder()
+                .setTenantIdMSB(tenantId.getMostSignificantBits())
+                .setTenantIdLSB(tenantId.getLeastSignificantBits());
+    }
+
+    private static TbProtoQueueMsg<ToRuleEngineMsg> withRetryHeaders(TbProtoQueueMsg<ToRuleEngineMsg> msg, long attempt, long retryTs) {
+        TbQueueMsgHeaders headers = new DefaultTbQueueMsgHeaders();
+        headers.put(DefaultTbRuleEngineConsumerService.RETRY_ATTEMPT_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(attempt).array());
+        headers.put(DefaultTbRuleEngineConsumerService.RETRY_TS_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(retryTs).array());
+        return new TbProtoQueueMsg<>(msg.getKey(), msg.getValue(), headers);
+    }
+
+    private static long getLongHeader(TbQueueMsgHeaders headers, String key) {
+        return ByteBuffer.wrap(headers.get(key)).getLong();
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.queue;
+
+import org.junit.Test;
+import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineMsg;
+import org.thingsboard.server.queue.TbQueueConsumerPosition;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.service.queue.processing.BurstTbRuleEngineSubmitStrategy;
+import org.thingsboard.server.service.queue.processing.TbRuleEngineSubmitStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TbMsgPackWindowTest {
+
+    private static final long TIMEOUT = 60000;
+
+    @Test
+    public void givenLaterPackCompletedFirst_whenPeekCompleted_thenWaitsForEarlierPack() throws InterruptedException {
+        TbMsgPackWindow window = new TbMsgPackWindow(3);
+        List<UUID> firstIds = new ArrayList<>();
+        List<UUID> secondIds = new ArrayList<>();
+        TbMsgPackProcessingContext first = addPack(window, 2, firstIds, new TbQueueConsumerPosition() {}, System.currentTimeMillis() + TIMEOUT);
+        TbMsgPackProcessingContext second = addPack(window, 1, secondIds, new TbQueueConsumerPosition() {}, System.currentTimeMillis() + TIMEOUT);
+        assertFalse(window.isFull());
+
+        secondIds.forEach(second::onSuccess);
+        assertNull(window.peekCompleted(false));
+
+        first.onSuccess(firstIds.get(0));
+        assertNull(window.peekCompleted(false));
+        first.onSuccess(firstIds.get(1));
+
+        TbMsgPackWindow.InFlightPack completed = window.peekCompleted(false);
+        assertSame(first, completed.getCtx());
+        assertFalse(completed.isTimeout());
+        window.removeCompleted(completed);
+
+        completed = window.peekCompleted(false);
+        assertSame(second, completed.getCtx());
+        window.removeCompleted(completed);
+        assertTrue(window.isEmpty());
+    }
+
+    @Test
+    public void givenCompletedPack_whenNotRemoved_thenStaysFirst() throws InterruptedException {
+        TbMsgPackWindow window = new TbMsgPackWindow(2);
+        List<UUID> firstIds = new ArrayList<>();
+        TbMsgPackProcessingContext first = addPack(window, 1, firstIds, new TbQueueConsumerPosition() {}, System.currentTimeMillis() + TIMEOUT);
+        addPack(window, 1, new ArrayList<>(), new TbQueueConsumerPosition() {}, System.currentTimeMillis() + TIMEOUT);
+        firstIds.forEach(first::onSuccess);
+
+        TbMsgPackWindow.InFlightPack completed = window.peekCompleted(false);
+        completed.setCompleted(true);
+
+        assertSame(completed, window.peekCompleted(false));
+        assertEquals(2, window.size());
+    }
+
+    @Test
+    public void givenExpiredPack_whenPeekCompleted_thenCompletedWithTimeout() throws InterruptedException {
+        TbMsgPackWindow window = new TbMsgPackWindow(2);
+        addPack(window, 1, new ArrayList<>(), new TbQueueConsumerPosition() {}, System.currentTimeMillis() + 50);
+        addPack(window, 1, new ArrayList<>(), new TbQueueConsumerPosition() {}, System.currentTimeMillis() + TIMEOUT);
+        assertTrue(window.isFull());
+
+        TbMsgPackWindow.InFlightPack completed = window.peekCompleted(true);
+
+        assertTrue(completed.isTimeout());
+        assertEquals(1, completed.getCtx().getPendingMap().size());
+        window.removeCompleted(completed);
+        assertEquals(1, window.size());
+    }
+
+    @Test
+    public void givenPositionNotSupported_whenPackAdded_thenWindowIsFull() {
+        TbMsgPackWindow window = new TbMsgPackWindow(10);
+        addPack(window, 1, new ArrayList<>(), null, System.currentTimeMillis() + TIMEOUT);
+        assertTrue(window.isFull());
+    }
+
+    private static TbMsgPackProcessingContext addPack(TbMsgPackWindow window, int size, List<UUID> ids, TbQueueConsumerPosition position, long deadline) {
+        List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            msgs.add(new TbProtoQueueMsg<>(UUID.randomUUID(), ToRuleEngineMsg.getDefaultInstance()));
+        }
+        TbRuleEngineSubmitStrategy submitStrategy = new BurstTbRuleEngineSubmitStrategy("Main");
+        submitStrategy.init(msgs);
+        TbMsgPackProcessingContext ctx = new TbMsgPackProcessingContext("Main", submitStrategy, false);
+        submitStrategy.submitAttempt((id, msg) -> ids.add(id));
+        window.add(ctx, submitStrategy, position, deadline);
+        return ctx;
+    }
+}
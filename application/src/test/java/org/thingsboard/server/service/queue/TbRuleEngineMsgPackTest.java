@@ -0,0 +1,84 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.queue;
+
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.msg.queue.ServiceQueue;
+import org.thingsboard.server.common.msg.queue.TbMsgCallback;
+import org.thingsboard.server.gen.transport.TransportProtos.TbMsgPackProto;
+import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineMsg;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+public class TbRuleEngineMsgPackTest {
+
+    private final UUID tenantUuid = UUID.randomUUID();
+
+    @Test
+    public void testPacksAreSplitIntoSeparateMessages() {
+        TbMsg first = newMsg();
+        TbMsg second = newMsg();
+        TbMsg single = newMsg();
+        ToRuleEngineMsg pack = ToRuleEngineMsg.newBuilder()
+                .setTenantIdMSB(tenantUuid.getMostSignificantBits())
+                .setTenantIdLSB(tenantUuid.getLeastSignificantBits())
+                .setTbMsgPack(TbMsgPackProto.newBuilder().addTbMsgs(TbMsg.toByteString(first)).addTbMsgs(TbMsg.toByteString(second)))
+                .build();
+        ToRuleEngineMsg singleMsg = ToRuleEngineMsg.newBuilder()
+                .setTenantIdMSB(tenantUuid.getMostSignificantBits())
+                .setTenantIdLSB(tenantUuid.getLeastSignificantBits())
+                .setTbMsg(TbMsg.toByteString(single))
+                .build();
+
+        List<TbProtoQueueMsg<ToRuleEngineMsg>> result = DefaultTbRuleEngineConsumerService.unpackMsgs(Arrays.asList(
+                new TbProtoQueueMsg<>(UUID.randomUUID(), pack), new TbProtoQueueMsg<>(single.getId(), singleMsg)));
+
+        assertEquals(3, result.size());
+        assertEquals(first.getId(), toTbMsg(result.get(0)).getId());
+        assertEquals(second.getId(), toTbMsg(result.get(1)).getId());
+        assertEquals(single.getId(), toTbMsg(result.get(2)).getId());
+        for (TbProtoQueueMsg<ToRuleEngineMsg> msg : result) {
+            assertFalse(msg.getValue().hasTbMsgPack());
+            assertEquals(tenantUuid, new UUID(msg.getValue().getTenantIdMSB(), msg.getValue().getTenantIdLSB()));
+        }
+    }
+
+    @Test
+    public void testMsgsWithoutPacksAreNotCopied() {
+        List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs = Collections.singletonList(new TbProtoQueueMsg<>(UUID.randomUUID(),
+                ToRuleEngineMsg.newBuilder().setTbMsg(TbMsg.toByteString(newMsg())).build()));
+        assertSame(msgs, DefaultTbRuleEngineConsumerService.unpackMsgs(msgs));
+    }
+
+    private static TbMsg newMsg() {
+        return TbMsg.newMsg("POST_TELEMETRY_REQUEST", new DeviceId(UUID.randomUUID()), new TbMsgMetaData(), "{\"temperature\":42}");
+    }
+
+    private static TbMsg toTbMsg(TbProtoQueueMsg<ToRuleEngineMsg> msg) {
+        return TbMsg.fromBytes(ServiceQueue.MAIN, msg.getValue().getTbMsg().toByteArray(), TbMsgCallback.EMPTY);
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.rule;
+
+import com.google.common.util.concurrent.Futures;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.common.util.JacksonUtil;
+import org.thingsboard.server.common.data.DataConstants;
+import org.thingsboard.server.common.data.Event;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.dao.event.EventService;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultTbRuleNodeDebugEventServiceTest {
+
+    @Mock
+    EventService eventService;
+
+    DefaultTbRuleNodeDebugEventService service;
+
+    TenantId tenantId = TenantId.fromUUID(UUID.randomUUID());
+    RuleNodeId ruleNodeId = new RuleNodeId(UUID.randomUUID());
+
+    @Before
+    public void setUp() {
+        service = new DefaultTbRuleNodeDebugEventService(eventService);
+        ReflectionTestUtils.setField(service, "samplingRate", 1);
+        ReflectionTestUtils.setField(service, "rateLimitsConfiguration", "3:60");
+        ReflectionTestUtils.setField(service, "persistEnabled", true);
+        ReflectionTestUtils.setField(service, "bufferSize", 3);
+        ReflectionTestUtils.setField(service, "bufferMaxRuleNodes", 10);
+        ReflectionTestUtils.setField(service, "bufferTtlInMinutes", 1);
+    }
+
+    @Test
+    public void givenSamplingRate_whenSameMsg_thenDecisionIsStable() {
+        ReflectionTestUtils.setField(service, "samplingRate", 4);
+        service.init();
+
+        int allowed = 0;
+        for (int i = 0; i < 1000; i++) {
+            TbMsg msg = newMsg();
+            boolean in = service.isDebugEventAllowed(ruleNodeId, msg, false);
+            boolean out = service.isDebugEventAllowed(ruleNodeId, msg, false);
+            assertEquals(in, out);
+            if (in) {
+                allowed++;
+            }
+            assertTrue(service.isDebugEventAllowed(ruleNodeId, msg, true));
+        }
+        assertTrue(allowed > 0 && allowed < 500);
+    }
+
+    @Test
+    public void givenRateLimits_whenLimitReached_thenEventsAreSkipped() {
+        ReflectionTestUtils.setField(service, "rateLimitsEnabled", true);
+        service.init();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(service.isDebugEventAllowed(ruleNodeId, newMsg(), false));
+        }
+        assertFalse(service.isDebugEventAllowed(ruleNodeId, newMsg(), false));
+        assertTrue(service.isDebugEventAllowed(new RuleNodeId(UUID.randomUUID()), newMsg(), false));
+    }
+
+    @Test
+    public void givenMaxPayloadSize_whenPayloadIsLarge_thenTruncated() {
+        ReflectionTestUtils.setField(service, "maxPayloadSize", 5);
+        service.init();
+
+        assertEquals("12345", service.truncatePayload("12345"));
+        assertEquals("12345...[truncated]", service.truncatePayload("123456789"));
+    }
+
+    @Test
+    public void givenMaxPayloadSize_whenMetadataIsLarge_thenEachValueTruncated() {
+        ReflectionTestUtils.setField(service, "maxPayloadSize", 5);
+        service.init();
+
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("deviceName", "123456789");
+        metadata.put("deviceType", "12345");
+
+        Map<String, String> truncated = service.truncateMetadata(metadata);
+
+        assertEquals("12345...[truncated]", truncated.get("deviceName"));
+        assertEquals("12345", truncated.get("deviceType"));
+        assertEquals("123456789", metadata.get("deviceName"));
+    }
+
+    @Test
+    public void givenBufferEnabled_whenEventsSaved_thenLatestEventsReturnedNewestFirst() {
+        ReflectionTestUtils.setField(service, "bufferEnabled", true);
+        ReflectionTestUtils.setField(service, "persistEnabled", false);
+        service.init();
+
+        for (int i = 0; i < 5; i++) {
+            service.saveDebugEvent(newEvent(i));
+        }
+
+        List<Event> events = service.findRecentDebugEvents(tenantId, ruleNodeId, 10);
+        assertEquals(3, events.size());
+        assertEquals(4, events.get(0).getBody().get("idx").asInt());
+        assertEquals(2, events.get(2).getBody().get("idx").asInt());
+        assertNotNull(events.get(0).getId());
+        assertTrue(service.findRecentDebugEvents(TenantId.fromUUID(UUID.randomUUID()), ruleNodeId, 10).isEmpty());
+        verify(eventService, never()).saveAsync(any());
+    }
+
+    @Test
+    public void givenBufferDisabled_whenEventSaved_thenPersisted() {
+        when(eventService.saveAsync(any())).thenReturn(Futures.immediateFuture(null));
+        service.init();
+
+        Event event = newEvent(0);
+        service.saveDebugEvent(event);
+
+        verify(eventService).saveAsync(event);
+        assertTrue(service.findRecentDebugEvents(tenantId, ruleNodeId, 10).isEmpty());
+    }
+
+    private TbMsg newMsg() {
+        return TbMsg.newMsg("POST_TELEMETRY_REQUEST", new DeviceId(UUID.randomUUID()), new TbMsgMetaData(), "{}");
+    }
+
+    private Event newEvent(int idx) {
+        Event event = new Event();
+        event.setTenantId(tenantId);
+        event.setEntityId(ruleNodeId);
+        event.setType(DataConstants.DEBUG_RULE_NODE);
+        event.setBody(JacksonUtil.newObjectNode().put("idx", idx));
+        return event;
+    }
+
+}
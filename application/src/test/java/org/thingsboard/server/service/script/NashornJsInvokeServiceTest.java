@@ -0,0 +1,137 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.script;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.actors.JsInvokeStats;
+import org.thingsboard.server.common.data.ApiUsageState;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.queue.usagestats.TbApiUsageClient;
+import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NashornJsInvokeServiceTest {
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+
+    private JsExecutorService jsExecutor;
+    private JsInvokeStats jsInvokeStats;
+    private NashornJsInvokeService invokeService;
+
+    @Before
+    public void before() {
+        TbApiUsageStateService apiUsageStateService = mock(TbApiUsageStateService.class);
+        when(apiUsageStateService.getApiUsageState(any())).thenReturn(new ApiUsageState());
+
+        jsExecutor = new JsExecutorService();
+        ReflectionTestUtils.setField(jsExecutor, "jsExecutorThreadPoolSize", 8);
+        jsExecutor.init();
+
+        jsInvokeStats = mock(JsInvokeStats.class);
+        invokeService = createInvokeService(apiUsageStateService, false);
+    }
+
+    private NashornJsInvokeService createInvokeService(TbApiUsageStateService apiUsageStateService, boolean useJsSandbox) {
+        NashornJsInvokeService invokeService = new NashornJsInvokeService(apiUsageStateService, mock(TbApiUsageClient.class), jsExecutor, jsInvokeStats);
+        ReflectionTestUtils.setField(invokeService, "useJsSandbox", useJsSandbox);
+        ReflectionTestUtils.setField(invokeService, "monitorThreadPoolSize", 2);
+        ReflectionTestUtils.setField(invokeService, "maxCpuTime", 5000L);
+        ReflectionTestUtils.setField(invokeService, "maxErrors", 3);
+        ReflectionTestUtils.setField(invokeService, "enginesPoolSize", 4);
+        ReflectionTestUtils.setField(invokeService, "statsEnabled", true);
+        invokeService.init();
+        return invokeService;
+    }
+
+    @After
+    public void after() {
+        invokeService.stop();
+        jsExecutor.destroy();
+    }
+
+    @Test
+    public void testConcurrentInvocationsAcrossEngines() throws Exception {
+        UUID scriptId = eval("return {value: msg.value * 2};");
+
+        List<ListenableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(invokeService.invokeFunction(tenantId, null, scriptId, "{\"value\":" + i + "}", "{}", "POST_TELEMETRY_REQUEST"));
+        }
+        List<Object> results = Futures.allAsList(futures).get(30, TimeUnit.SECONDS);
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals("{\"value\":" + (i * 2) + "}", results.get(i));
+        }
+        verify(jsInvokeStats, atLeastOnce()).recordScriptLatency(eq(scriptId), anyLong());
+        verify(jsInvokeStats, atLeastOnce()).recordScriptCpuTime(eq(scriptId), anyLong());
+    }
+
+    @Test
+    public void testSandboxCpuTimeIsRecordedOnScriptThread() throws Exception {
+        invokeService.stop();
+        TbApiUsageStateService apiUsageStateService = mock(TbApiUsageStateService.class);
+        when(apiUsageStateService.getApiUsageState(any())).thenReturn(new ApiUsageState());
+        invokeService = createInvokeService(apiUsageStateService, true);
+        List<String> cpuTimeThreads = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> cpuTimeThreads.add(Thread.currentThread().getName()))
+                .when(jsInvokeStats).recordScriptCpuTime(any(), anyLong());
+
+        UUID scriptId = eval("var sum = 0; for (var i = 0; i < 100000; i++) { sum += i; } return {sum: sum};");
+        invokeService.invokeFunction(tenantId, null, scriptId, "{}", "{}", "POST_TELEMETRY_REQUEST").get(30, TimeUnit.SECONDS);
+
+        verify(jsInvokeStats).recordScriptLatency(eq(scriptId), anyLong());
+        verify(jsInvokeStats, timeout(1000)).recordScriptCpuTime(eq(scriptId), anyLong());
+        assertEquals(1, cpuTimeThreads.size());
+        assertTrue(cpuTimeThreads.get(0).startsWith("nashorn-js-monitor"));
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void testReleasedScriptIsNotInvoked() throws Exception {
+        UUID scriptId = eval("return msg;");
+        invokeService.invokeFunction(tenantId, null, scriptId, "{}", "{}", "POST_TELEMETRY_REQUEST").get(30, TimeUnit.SECONDS);
+
+        invokeService.release(scriptId).get();
+
+        verify(jsInvokeStats).removeScript(scriptId);
+        invokeService.invokeFunction(tenantId, null, scriptId, "{}", "{}", "POST_TELEMETRY_REQUEST").get(30, TimeUnit.SECONDS);
+    }
+
+    private UUID eval(String script) throws Exception {
+        return invokeService.eval(tenantId, JsScriptType.RULE_NODE_SCRIPT, script, "msg", "metadata", "msgType").get(30, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.script;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.ApiUsageState;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.gen.js.JsInvokeProtos;
+import org.thingsboard.server.queue.TbQueueRequestTemplate;
+import org.thingsboard.server.queue.common.TbProtoJsQueueMsg;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.queue.usagestats.TbApiUsageClient;
+import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RemoteJsInvokeServiceTest {
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+
+    private RemoteJsInvokeService invokeService;
+    private List<JsInvokeProtos.RemoteJsRequest> sentRequests;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() {
+        TbApiUsageStateService apiUsageStateService = mock(TbApiUsageStateService.class);
+        when(apiUsageStateService.getApiUsageState(any())).thenReturn(new ApiUsageState());
+
+        sentRequests = new CopyOnWriteArrayList<>();
+        TbQueueRequestTemplate<TbProtoJsQueueMsg<JsInvokeProtos.RemoteJsRequest>, TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>> requestTemplate =
+                mock(TbQueueRequestTemplate.class);
+        when(requestTemplate.send(any())).thenAnswer(invocation -> {
+            TbProtoJsQueueMsg<JsInvokeProtos.RemoteJsRequest> msg = invocation.getArgument(0);
+            JsInvokeProtos.RemoteJsRequest request = msg.getValue();
+            sentRequests.add(request);
+            return Futures.immediateFuture(new TbProtoQueueMsg<>(msg.getKey(), respond(request)));
+        });
+
+        invokeService = new RemoteJsInvokeService(apiUsageStateService, mock(TbApiUsageClient.class));
+        ReflectionTestUtils.setField(invokeService, "requestTemplate", requestTemplate);
+        ReflectionTestUtils.setField(invokeService, "maxErrors", 3);
+        ReflectionTestUtils.setField(invokeService, "invokeBatchEnabled", true);
+        ReflectionTestUtils.setField(invokeService, "invokeBatchMaxSize", 3);
+        ReflectionTestUtils.setField(invokeService, "invokeBatchLingerMs", 50L);
+        invokeService.init();
+    }
+
+    @After
+    public void after() {
+        invokeService.destroy();
+    }
+
+    @Test
+    public void testFullBatchIsSentAsSingleRequest() throws Exception {
+        UUID scriptId = eval();
+
+        List<ListenableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(invokeService.invokeFunction(tenantId, null, scriptId, "msg" + i, "{}", "POST_TELEMETRY_REQUEST"));
+        }
+        List<Object> results = Futures.allAsList(futures).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, invokeRequests().size());
+        assertEquals(3, invokeRequests().get(0).getInvocationsCount());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("result-msg" + i, results.get(i));
+        }
+    }
+
+    @Test
+    public void testIncompleteBatchIsSentAfterLinger() throws Exception {
+        UUID scriptId = eval();
+
+        ListenableFuture<Object> first = invokeService.invokeFunction(tenantId, null, scriptId, "a", "{}", "POST_TELEMETRY_REQUEST");
+        ListenableFuture<Object> second = invokeService.invokeFunction(tenantId, null, scriptId, "fail", "{}", "POST_TELEMETRY_REQUEST");
+
+        assertEquals("result-a", first.get(5, TimeUnit.SECONDS));
+        try {
+            second.get(5, TimeUnit.SECONDS);
+            fail("Failed invocation should complete exceptionally");
+        } catch (ExecutionException e) {
+            assertEquals("Script failed", e.getCause().getMessage());
+        }
+        assertEquals(1, invokeRequests().size());
+        assertEquals(2, invokeRequests().get(0).getInvocationsCount());
+    }
+
+    private UUID eval() throws Exception {
+        return invokeService.eval(tenantId, JsScriptType.RULE_NODE_SCRIPT, "return msg;").get(5, TimeUnit.SECONDS);
+    }
+
+    private List<JsInvokeProtos.JsInvokeBatchRequest> invokeRequests() {
+        List<JsInvokeProtos.JsInvokeBatchRequest> result = new ArrayList<>();
+        for (JsInvokeProtos.RemoteJsRequest request : sentRequests) {
+            if (request.hasInvokeBatchRequest()) {
+                result.add(request.getInvokeBatchRequest());
+            }
+        }
+        return result;
+    }
+
+    private static JsInvokeProtos.RemoteJsResponse respond(JsInvokeProtos.RemoteJsRequest request) {
+        if (request.hasCompileRequest()) {
+            JsInvokeProtos.JsCompileRequest compileRequest = request.getCompileRequest();
+            return JsInvokeProtos.RemoteJsResponse.newBuilder()
+                    .setCompileResponse(JsInvokeProtos.JsCompileResponse.newBuilder()
+                            .setSuccess(true)
+                            .setScriptIdMSB(compileRequest.getScriptIdMSB())
+                            .setScriptIdLSB(compileRequest.getScriptIdLSB()))
+                    .build();
+        }
+        JsInvokeProtos.JsInvokeBatchResponse.Builder batchResponse = JsInvokeProtos.JsInvokeBatchResponse.newBuilder();
+        for (JsInvokeProtos.JsInvokeArgs invocation : request.getInvokeBatchRequest().getInvocationsList()) {
+            String msg = invocation.getArgs(0);
+            if ("fail".equals(msg)) {
+                batchResponse.addResults(JsInvokeProtos.JsInvokeResponse.newBuilder()
+                        .setSuccess(false)
+                        .setErrorCode(JsInvokeProtos.JsInvokeErrorCode.RUNTIME_ERROR)
+                        .setErrorDetails("Script failed"));
+            } else {
+                batchResponse.addResults(JsInvokeProtos.JsInvokeResponse.newBuilder()
+                        .setSuccess(true)
+                        .setResult("result-" + msg));
+            }
+        }
+        return JsInvokeProtos.RemoteJsResponse.newBuilder().setInvokeBatchResponse(batchResponse).build();
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.script;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.rule.engine.filter.TbMsgExpression;
+import org.thingsboard.server.actors.JsInvokeStats;
+import org.thingsboard.server.common.data.ApiUsageState;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgDataType;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.queue.usagestats.TbApiUsageClient;
+import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares the filter evaluation cost of the JS script engine with the expression used by the expression filter node.
+ * Runs only with -Dbenchmarks.enabled=true.
+ */
+@Slf4j
+public class RuleNodeExpressionBenchmarkTest {
+
+    private static final int MSG_COUNT = 10000;
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+
+    private JsExecutorService jsExecutor;
+    private NashornJsInvokeService invokeService;
+
+    @Before
+    public void before() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmarks.enabled"));
+        TbApiUsageStateService apiUsageStateService = mock(TbApiUsageStateService.class);
+        when(apiUsageStateService.getApiUsageState(any())).thenReturn(new ApiUsageState());
+
+        jsExecutor = new JsExecutorService();
+        ReflectionTestUtils.setField(jsExecutor, "jsExecutorThreadPoolSize", 1);
+        jsExecutor.init();
+
+        invokeService = new NashornJsInvokeService(apiUsageStateService, mock(TbApiUsageClient.class), jsExecutor, mock(JsInvokeStats.class));
+        ReflectionTestUtils.setField(invokeService, "useJsSandbox", false);
+        ReflectionTestUtils.setField(invokeService, "maxErrors", 3);
+        ReflectionTestUtils.setField(invokeService, "enginesPoolSize", 1);
+        invokeService.init();
+    }
+
+    @After
+    public void after() {
+        if (invokeService != null) {
+            invokeService.stop();
+            jsExecutor.destroy();
+        }
+    }
+
+    @Test
+    public void testFilterBenchmark() throws Exception {
+        List<TbMsg> msgs = new ArrayList<>(MSG_COUNT);
+        int expectedTrue = 0;
+        for (int i = 0; i < MSG_COUNT; i++) {
+            TbMsgMetaData metaData = new TbMsgMetaData();
+            metaData.putValue("deviceType", "thermostat");
+            int temperature = i % 60;
+            if (temperature > 30) {
+                expectedTrue++;
+            }
+            msgs.add(TbMsg.newMsg("POST_TELEMETRY_REQUEST", deviceId, metaData, TbMsgDataType.JSON,
+                    "{\"temperature\":" + temperature + ",\"humidity\":" + (i % 100) + "}"));
+        }
+
+        RuleNodeJsScriptEngine jsEngine = new RuleNodeJsScriptEngine(tenantId, invokeService, deviceId,
+                "return msg.temperature > 30 && metadata.deviceType === 'thermostat';");
+        TbMsgExpression expression = new TbMsgExpression("msg.temperature > 30 and metadata.deviceType == 'thermostat'");
+        try {
+            for (int round = 0; round < 3; round++) {
+                long jsStart = System.nanoTime();
+                int jsTrue = 0;
+                for (TbMsg msg : msgs) {
+                    if (jsEngine.executeFilterAsync(msg).get()) {
+                        jsTrue++;
+                    }
+                }
+                long jsTime = System.nanoTime() - jsStart;
+
+                long expressionStart = System.nanoTime();
+                int expressionTrue = 0;
+                for (TbMsg msg : msgs) {
+                    if (expression.evaluateFilter(msg)) {
+                        expressionTrue++;
+                    }
+                }
+                long expressionTime = System.nanoTime() - expressionStart;
+
+                assertEquals(expectedTrue, jsTrue);
+                assertEquals(expectedTrue, expressionTrue);
+                log.info("Round {}: {} messages, JS filter {} ms, expression filter {} ms", round, MSG_COUNT,
+                        TimeUnit.NANOSECONDS.toMillis(jsTime), TimeUnit.NANOSECONDS.toMillis(expressionTime));
+            }
+        } finally {
+            jsEngine.destroy();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.subscription;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.plugin.ComponentLifecycleEvent;
+import org.thingsboard.server.common.data.query.EntityData;
+import org.thingsboard.server.common.data.query.EntityDataPageLink;
+import org.thingsboard.server.common.data.query.EntityDataQuery;
+import org.thingsboard.server.common.data.query.EntityDataSortOrder;
+import org.thingsboard.server.common.data.query.EntityKey;
+import org.thingsboard.server.common.data.query.EntityKeyType;
+import org.thingsboard.server.common.data.query.FilterPredicateValue;
+import org.thingsboard.server.common.data.query.KeyFilter;
+import org.thingsboard.server.common.data.query.NumericFilterPredicate;
+import org.thingsboard.server.common.data.query.TsValue;
+import org.thingsboard.server.dao.attributes.AttributesService;
+import org.thingsboard.server.dao.entity.EntityService;
+import org.thingsboard.server.service.security.model.SecurityUser;
+import org.thingsboard.server.service.telemetry.cmd.v2.EntityDataCmd;
+import org.thingsboard.server.service.telemetry.cmd.v2.EntityDataUpdate;
+import org.thingsboard.server.service.telemetry.cmd.v2.LatestValueCmd;
+import org.thingsboard.server.service.telemetry.TelemetryWebSocketService;
+import org.thingsboard.server.service.telemetry.TelemetryWebSocketSessionRef;
+import org.thingsboard.server.service.telemetry.sub.TelemetrySubscriptionUpdate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TbEntityDataSubCtxTest {
+
+    private static final long FULL_REFRESH_INTERVAL = 60000;
+    private static final int SUB_ID = 1;
+
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+    private TelemetryWebSocketService wsService;
+    private TbEntityDataSubCtx ctx;
+
+    @Before
+    public void before() {
+        SecurityUser securityUser = mock(SecurityUser.class);
+        when(securityUser.getTenantId()).thenReturn(new TenantId(UUID.randomUUID()));
+        TelemetryWebSocketSessionRef sessionRef = mock(TelemetryWebSocketSessionRef.class);
+        when(sessionRef.getSessionId()).thenReturn("session");
+        when(sessionRef.getSecurityCtx()).thenReturn(securityUser);
+
+        wsService = mock(TelemetryWebSocketService.class);
+        ctx = new TbEntityDataSubCtx("service", wsService, mock(EntityService.class),
+                mock(TbLocalSubscriptionService.class), mock(AttributesService.class), new SubscriptionServiceStatistics(),
+                sessionRef, 1, 100);
+
+        NumericFilterPredicate predicate = new NumericFilterPredicate();
+        predicate.setOperation(NumericFilterPredicate.NumericOperation.GREATER);
+        predicate.setValue(FilterPredicateValue.fromDouble(30));
+        KeyFilter keyFilter = new KeyFilter();
+        keyFilter.setKey(new EntityKey(EntityKeyType.TIME_SERIES, "temperature"));
+        keyFilter.setPredicate(predicate);
+        EntityDataPageLink pageLink = new EntityDataPageLink(10, 0, null,
+                new EntityDataSortOrder(new EntityKey(EntityKeyType.ATTRIBUTE, "priority")));
+        pageLink.setDynamic(true);
+        ctx.setAndResolveQuery(new EntityDataQuery(null, pageLink, Collections.emptyList(), Collections.emptyList(),
+                Collections.singletonList(keyFilter)));
+
+        Map<EntityKeyType, Map<String, TsValue>> latest = new HashMap<>();
+        latest.put(EntityKeyType.TIME_SERIES, new HashMap<>());
+        ctx.data = new PageData<>(Collections.singletonList(new EntityData(deviceId, latest, null)), 1, 1, false);
+        ctx.subToEntityIdMap.put(SUB_ID, deviceId);
+    }
+
+    @Test
+    public void testRefreshIsSkippedWithoutRelevantUpdates() {
+        assertFalse(ctx.isRefreshRequired(FULL_REFRESH_INTERVAL));
+
+        ctx.sendWsMsg("session", update("humidity"), EntityKeyType.TIME_SERIES, true);
+
+        assertFalse(ctx.isRefreshRequired(FULL_REFRESH_INTERVAL));
+    }
+
+    @Test
+    public void testRefreshIsRequiredOnceAfterFilterKeyUpdate() {
+        ctx.sendWsMsg("session", update("temperature"), EntityKeyType.TIME_SERIES, true);
+
+        assertTrue(ctx.isRefreshRequired(FULL_REFRESH_INTERVAL));
+        assertFalse(ctx.isRefreshRequired(FULL_REFRESH_INTERVAL));
+    }
+
+    @Test
+    public void testRefreshIsRequiredAfterSortKeyUpdate() {
+        ctx.sendWsMsg("session", update("priority"), EntityKeyType.ATTRIBUTE, true);
+
+        assertTrue(ctx.isRefreshRequired(FULL_REFRESH_INTERVAL));
+    }
+
+    @Test
+    public void testUpdatesWithDeviceTimestampBeforeLastRefreshAreTakenIntoAccount() {
+        // the device clock is behind the server clock
+        ctx.sendWsMsg("session", update("temperature", System.currentTimeMillis() - FULL_REFRESH_INTERVAL), EntityKeyType.TIME_SERIES, true);
+
+        assertTrue(ctx.isRefreshRequired(FULL_REFRESH_INTERVAL));
+    }
+
+    @Test
+    public void testRefreshIsRequiredOnceAfterEntityLifecycleEvent() {
+        ctx.onEntityLifecycleEvent(new DeviceId(UUID.randomUUID()), ComponentLifecycleEvent.CREATED);
+
+        assertTrue(ctx.isRefreshRequired(FULL_REFRESH_INTERVAL));
+        assertFalse(ctx.isRefreshRequired(FULL_REFRESH_INTERVAL));
+    }
+
+    @Test
+    public void testFilterKeysAreSubscribedButNotSentToClient() {
+        ctx.setSubscribeToQueryKeys(true);
+        LatestValueCmd latestCmd = new LatestValueCmd();
+        latestCmd.setKeys(Collections.singletonList(new EntityKey(EntityKeyType.TIME_SERIES, "humidity")));
+        ctx.setCurrentCmd(new EntityDataCmd(1, null, null, latestCmd, null));
+
+        List<EntityKey> keys = ctx.withQueryKeys(latestCmd.getKeys());
+        assertEquals(3, keys.size());
+        assertTrue(keys.contains(new EntityKey(EntityKeyType.TIME_SERIES, "temperature")));
+        assertTrue(keys.contains(new EntityKey(EntityKeyType.ATTRIBUTE, "priority")));
+
+        ctx.sendWsMsg("session", update("temperature"), EntityKeyType.TIME_SERIES, true);
+
+        assertTrue(ctx.isRefreshRequired(FULL_REFRESH_INTERVAL));
+        verify(wsService, never()).sendWsMsg(anyString(), any(EntityDataUpdate.class));
+    }
+
+    @Test
+    public void testRefreshIsRequiredAfterFullRefreshInterval() {
+        assertTrue(ctx.isRefreshRequired(0));
+    }
+
+    private TelemetrySubscriptionUpdate update(String key) {
+        return update(key, System.currentTimeMillis());
+    }
+
+    private TelemetrySubscriptionUpdate update(String key, long ts) {
+        return new TelemetrySubscriptionUpdate(SUB_ID, Collections.singletonList(
+                new BasicTsKvEntry(ts, new DoubleDataEntry(key, 42.0))));
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.transport.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.DeviceProfileId;
+import org.thingsboard.server.common.transport.auth.TransportDeviceInfo;
+import org.thingsboard.server.common.transport.auth.ValidateDeviceCredentialsResponse;
+import org.thingsboard.server.common.transport.service.DefaultTransportDeviceCredentialsCache;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DefaultTransportDeviceCredentialsCacheTest {
+
+    private final DeviceProfileId deviceProfileId = new DeviceProfileId(UUID.randomUUID());
+
+    private DefaultTransportDeviceCredentialsCache cache;
+
+    @Before
+    public void before() {
+        cache = new DefaultTransportDeviceCredentialsCache(true, 100, 300);
+    }
+
+    @Test
+    public void testDeviceUpdateEvictsCredentials() {
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        ValidateDeviceCredentialsResponse response = createResponse(deviceId, deviceProfileId);
+        cache.put("TOKEN:A1", response);
+        assertSame(response, cache.get("TOKEN:A1"));
+
+        cache.evict(deviceId);
+
+        assertNull(cache.get("TOKEN:A1"));
+    }
+
+    @Test
+    public void testNewCredentialsReplaceOldOnes() {
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        cache.put("TOKEN:A1", createResponse(deviceId, deviceProfileId));
+        ValidateDeviceCredentialsResponse response = createResponse(deviceId, deviceProfileId);
+        cache.put("TOKEN:A2", response);
+
+        assertNull(cache.get("TOKEN:A1"));
+        assertSame(response, cache.get("TOKEN:A2"));
+    }
+
+    @Test
+    public void testProfileUpdateEvictsCredentialsOfProfileDevices() {
+        ValidateDeviceCredentialsResponse other = createResponse(new DeviceId(UUID.randomUUID()), new DeviceProfileId(UUID.randomUUID()));
+        cache.put("TOKEN:A1", createResponse(new DeviceId(UUID.randomUUID()), deviceProfileId));
+        cache.put("TOKEN:A2", other);
+
+        cache.evict(deviceProfileId);
+
+        assertNull(cache.get("TOKEN:A1"));
+        assertSame(other, cache.get("TOKEN:A2"));
+    }
+
+    @Test
+    public void testInvalidCredentialsAreNotCached() {
+        cache.put("TOKEN:A1", ValidateDeviceCredentialsResponse.builder().build());
+        assertNull(cache.get("TOKEN:A1"));
+    }
+
+    @Test
+    public void testDisabledCache() {
+        cache = new DefaultTransportDeviceCredentialsCache(false, 100, 300);
+        cache.put("TOKEN:A1", createResponse(new DeviceId(UUID.randomUUID()), deviceProfileId));
+        assertNull(cache.get("TOKEN:A1"));
+    }
+
+    private static ValidateDeviceCredentialsResponse createResponse(DeviceId deviceId, DeviceProfileId deviceProfileId) {
+        TransportDeviceInfo deviceInfo = new TransportDeviceInfo();
+        deviceInfo.setDeviceId(deviceId);
+        deviceInfo.setDeviceProfileId(deviceProfileId);
+        return ValidateDeviceCredentialsResponse.builder().deviceInfo(deviceInfo).build();
+    }
+}
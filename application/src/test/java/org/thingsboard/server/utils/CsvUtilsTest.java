@@ -0,0 +1,49 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CsvUtilsTest {
+
+    private static final String CONTENT = "name,type,label\n" +
+            "Device 1,thermostat,\"Label, with delimiter\"\n" +
+            "Device 2,thermostat,\"Multi\nline\"\n";
+
+    @Test
+    public void testRecordByRecordParsingMatchesFullParsing() throws Exception {
+        List<List<String>> records = new ArrayList<>();
+        CsvUtils.parseCsv(CONTENT, ',', records::add);
+
+        assertEquals(CsvUtils.parseCsv(CONTENT, ','), records);
+        assertEquals(3, records.size());
+        assertEquals(List.of("Device 1", "thermostat", "Label, with delimiter"), records.get(1));
+        assertEquals("Multi\nline", records.get(2).get(2));
+    }
+
+    @Test
+    public void testCustomDelimiter() throws Exception {
+        List<List<String>> records = new ArrayList<>();
+        CsvUtils.parseCsv("a;b\nc;d", ';', records::add);
+
+        assertEquals(List.of(List.of("a", "b"), List.of("c", "d")), records);
+    }
+}
@@ -66,7 +66,7 @@ public class DefaultTbActorSystem implements TbActorSystem {
     public void destroyDispatcher(String dispatcherId) {
         Dispatcher dispatcher = dispatchers.remove(dispatcherId);
         if (dispatcher != null) {
-            dispatcher.getExecutor().shutdownNow();
+            dispatcher.getExecutor().shutdown();
         } else {
             throw new RuntimeException("Dispatcher with id [" + dispatcherId + "] is not registered!");
         }
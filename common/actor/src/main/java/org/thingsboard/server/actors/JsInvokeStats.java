@@ -15,6 +15,8 @@
  */
 package org.thingsboard.server.actors;
 
+import java.util.UUID;
+
 public interface JsInvokeStats {
     default void incrementRequests() {
         incrementRequests(1);
@@ -41,4 +43,13 @@ public interface JsInvokeStats {
     int getFailures();
 
     void reset();
+
+    default void recordScriptLatency(UUID scriptId, long latencyNanos) {
+    }
+
+    default void recordScriptCpuTime(UUID scriptId, long cpuTimeNanos) {
+    }
+
+    default void removeScript(UUID scriptId) {
+    }
 }
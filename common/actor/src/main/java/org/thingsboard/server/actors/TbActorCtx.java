@@ -28,6 +28,8 @@ public interface TbActorCtx extends TbActorRef {
 
     TbActorRef getParentRef();
 
+    String getDispatcherId();
+
     void tell(TbActorId target, TbActorMsg msg);
 
     void stop(TbActorId target);
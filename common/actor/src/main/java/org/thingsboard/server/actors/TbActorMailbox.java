@@ -24,6 +24,7 @@ import org.thingsboard.server.common.msg.TbActorStopReason;
 
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
@@ -55,7 +56,7 @@ public final class TbActorMailbox implements TbActorCtx {
     private volatile TbActorStopReason stopReason;
 
     public void initActor() {
-        dispatcher.getExecutor().execute(() -> tryInit(1));
+        execute(() -> tryInit(1));
     }
 
     private void tryInit(int attempt) {
@@ -79,11 +80,11 @@ public final class TbActorMailbox implements TbActorCtx {
             } else if (strategy.getRetryDelay() > 0) {
                 log.info("[{}] Failed to init actor, attempt {}, going to retry in attempts in {}ms", selfId, attempt, strategy.getRetryDelay());
                 log.debug("[{}] Error", selfId, t);
-                system.getScheduler().schedule(() -> dispatcher.getExecutor().execute(() -> tryInit(attemptIdx)), strategy.getRetryDelay(), TimeUnit.MILLISECONDS);
+                system.getScheduler().schedule(() -> execute(() -> tryInit(attemptIdx)), strategy.getRetryDelay(), TimeUnit.MILLISECONDS);
             } else {
                 log.info("[{}] Failed to init actor, attempt {}, going to retry immediately", selfId, attempt);
                 log.debug("[{}] Error", selfId, t);
-                dispatcher.getExecutor().execute(() -> tryInit(attemptIdx));
+                execute(() -> tryInit(attemptIdx));
             }
         }
     }
@@ -117,7 +118,7 @@ public final class TbActorMailbox implements TbActorCtx {
         if (ready.get() == READY) {
             if (newMsg || !highPriorityMsgs.isEmpty() || !normalPriorityMsgs.isEmpty()) {
                 if (busy.compareAndSet(FREE, BUSY)) {
-                    dispatcher.getExecutor().execute(this::processMailbox);
+                    execute(this::processMailbox);
                 } else {
                     log.trace("[{}] MessageBox is busy, new msg: {}", selfId, newMsg);
                 }
@@ -157,9 +158,33 @@ public final class TbActorMailbox implements TbActorCtx {
         }
         if (noMoreElements) {
             busy.set(FREE);
-            dispatcher.getExecutor().execute(() -> tryProcessQueue(false));
+            execute(() -> tryProcessQueue(false));
         } else {
-            dispatcher.getExecutor().execute(this::processMailbox);
+            execute(this::processMailbox);
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            dispatcher.getExecutor().execute(task);
+        } catch (RejectedExecutionException e) {
+            onDispatcherTerminated();
+        }
+    }
+
+    private void onDispatcherTerminated() {
+        if (stopReason == null) {
+            stopReason = TbActorStopReason.STOPPED;
+        }
+        if (destroyInProgress.compareAndSet(false, true)) {
+            // the actor is recreated on the next message, with the dispatcher that is registered at that moment
+            log.warn("[{}] Dispatcher [{}] is terminated, stopping actor", selfId, dispatcher.getDispatcherId());
+            system.stop(selfId);
+        }
+        ready.set(NOT_READY);
+        TbActorMsg msg;
+        while ((msg = highPriorityMsgs.poll()) != null || (msg = normalPriorityMsgs.poll()) != null) {
+            msg.onTbActorStopped(stopReason);
         }
     }
 
@@ -168,6 +193,11 @@ public final class TbActorMailbox implements TbActorCtx {
         return selfId;
     }
 
+    @Override
+    public String getDispatcherId() {
+        return dispatcher.getDispatcherId();
+    }
+
     @Override
     public void tell(TbActorId target, TbActorMsg actorMsg) {
         system.tell(target, actorMsg);
@@ -213,7 +243,7 @@ public final class TbActorMailbox implements TbActorCtx {
             stopReason = TbActorStopReason.STOPPED;
         }
         destroyInProgress.set(true);
-        dispatcher.getExecutor().execute(() -> {
+        execute(() -> {
             try {
                 ready.set(NOT_READY);
                 actor.destroy();
@@ -202,6 +202,25 @@ public class ActorSystemTest {
         Assert.assertTrue(testCtx1.getLatch().await(3, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testTellAfterDispatcherDestroyed() throws InterruptedException {
+        executor = Executors.newSingleThreadExecutor(ThingsBoardThreadFactory.forName(getClass().getSimpleName() + "-tenant-dispatcher"));
+        actorSystem.createDispatcher(ROOT_DISPATCHER, executor);
+        ActorTestCtx testCtx = getActorTestCtx(1);
+        TbActorId actorId = new TbEntityActorId(new DeviceId(UUID.randomUUID()));
+        TbActorRef actorRef = actorSystem.createRootActor(ROOT_DISPATCHER, new TestRootActor.TestRootActorCreator(actorId, testCtx));
+
+        actorRef.tell(new IntTbActorMsg(42));
+        Assert.assertTrue(testCtx.getLatch().await(1, TimeUnit.SECONDS));
+
+        actorSystem.destroyDispatcher(ROOT_DISPATCHER);
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+
+        // the message is dropped and the actor is stopped instead of failing the sender with RejectedExecutionException
+        actorRef.tell(new IntTbActorMsg(42));
+        Assert.assertNull(actorSystem.getActor(actorId));
+    }
+
 
     public void testActorsAndMessages(int actorsCount, int msgNumber, int times) throws InterruptedException {
         Random random = new Random();
@@ -20,6 +20,8 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 
+import java.nio.ByteBuffer;
+
 import static org.thingsboard.server.common.data.CacheConstants.OTA_PACKAGE_CACHE;
 import static org.thingsboard.server.common.data.CacheConstants.OTA_PACKAGE_DATA_CACHE;
 
@@ -57,6 +59,26 @@ public class CaffeineOtaPackageCache implements OtaPackageDataCache {
         return new byte[0];
     }
 
+    @Override
+    public ByteBuffer getChunk(String key, int chunkSize, int chunk) {
+        byte[] data = cacheManager.getCache(OTA_PACKAGE_DATA_CACHE).get(key, byte[].class);
+
+        if (chunkSize < 1) {
+            return data != null ? ByteBuffer.wrap(data).asReadOnlyBuffer() : null;
+        }
+
+        if (data != null && data.length > 0) {
+            int startIndex = chunkSize * chunk;
+
+            int size = Math.min(data.length - startIndex, chunkSize);
+
+            if (startIndex < data.length && size > 0) {
+                return ByteBuffer.wrap(data, startIndex, size).slice().asReadOnlyBuffer();
+            }
+        }
+        return ByteBuffer.allocate(0);
+    }
+
     @Override
     public void put(String key, byte[] value) {
         cacheManager.getCache(OTA_PACKAGE_DATA_CACHE).putIfAbsent(key, value);
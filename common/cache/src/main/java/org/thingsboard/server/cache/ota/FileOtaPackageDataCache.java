@@ -0,0 +1,199 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.cache.ota;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps OTA package data in local files mapped to memory instead of the heap.
+ * Chunks are returned as slices of the mapped file. Packages are evicted in LRU order once the disk budget is exceeded.
+ * Like the caffeine cache, the files are local to the node, so the transports should run in the same process as the core service.
+ */
+@Service
+@ConditionalOnProperty(prefix = "cache.ota_file", value = "enabled", havingValue = "true")
+@Primary
+@Slf4j
+public class FileOtaPackageDataCache implements OtaPackageDataCache {
+
+    private static final String FILE_SUFFIX = ".ota";
+
+    private final Map<String, MappedPackage> packages = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize;
+
+    private final Path packagesDir;
+    private final long maxSizeInMb;
+
+    public FileOtaPackageDataCache(@Value("${cache.ota_file.directory:}") String directory,
+                                   @Value("${cache.ota_file.max_size_in_mb:1024}") long maxSizeInMb) throws IOException {
+        this.maxSizeInMb = maxSizeInMb;
+        this.packagesDir = StringUtils.isEmpty(directory) ? Paths.get(System.getProperty("java.io.tmpdir"), "tb-ota") : Paths.get(directory);
+        Files.createDirectories(packagesDir);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(packagesDir, "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+        log.info("Using OTA package files directory: {}, max size: {} MB", packagesDir, maxSizeInMb);
+    }
+
+    @Override
+    public byte[] get(String key) {
+        return get(key, 0, 0);
+    }
+
+    @Override
+    public byte[] get(String key, int chunkSize, int chunk) {
+        ByteBuffer data = getChunk(key, chunkSize, chunk);
+        if (data == null) {
+            return null;
+        }
+        byte[] result = new byte[data.remaining()];
+        data.get(result);
+        return result;
+    }
+
+    @Override
+    public ByteBuffer getChunk(String key, int chunkSize, int chunk) {
+        MappedPackage mappedPackage;
+        synchronized (packages) {
+            mappedPackage = packages.get(key);
+        }
+        if (mappedPackage == null) {
+            return chunkSize < 1 ? null : ByteBuffer.allocate(0);
+        }
+        return slice(mappedPackage.getBuffer(), chunkSize, chunk);
+    }
+
+    @Override
+    public void put(String key, byte[] value) {
+        synchronized (packages) {
+            if (packages.containsKey(key)) {
+                return;
+            }
+        }
+        long budget = maxSizeInMb * 1024L * 1024L;
+        if (value.length > budget) {
+            log.warn("[{}] OTA package size {} exceeds the files cache size {}, skipping", key, value.length, budget);
+            return;
+        }
+        try {
+            Path file = packagesDir.resolve(key + FILE_SUFFIX);
+            Path tmpFile = Files.createTempFile(packagesDir, key, ".tmp");
+            Files.write(tmpFile, value);
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, value.length);
+            }
+            synchronized (packages) {
+                MappedPackage previous = packages.put(key, new MappedPackage(file, buffer));
+                if (previous != null) {
+                    totalSize -= previous.getSize();
+                }
+                totalSize += value.length;
+                evictExceeding(budget, key);
+            }
+        } catch (IOException e) {
+            log.warn("[{}] Failed to store OTA package to file", key, e);
+        }
+    }
+
+    @Override
+    public void evict(String key) {
+        synchronized (packages) {
+            MappedPackage mappedPackage = packages.remove(key);
+            if (mappedPackage != null) {
+                totalSize -= mappedPackage.getSize();
+                delete(mappedPackage);
+            }
+        }
+    }
+
+    private void evictExceeding(long budget, String currentKey) {
+        Iterator<Map.Entry<String, MappedPackage>> it = packages.entrySet().iterator();
+        while (totalSize > budget && it.hasNext()) {
+            Map.Entry<String, MappedPackage> eldest = it.next();
+            if (!eldest.getKey().equals(currentKey)) {
+                it.remove();
+                totalSize -= eldest.getValue().getSize();
+                log.debug("[{}] Evicting OTA package file to fit the cache size", eldest.getKey());
+                delete(eldest.getValue());
+            }
+        }
+    }
+
+    private void delete(MappedPackage mappedPackage) {
+        // the mapping stays valid for the readers of already returned slices until it is garbage collected
+        try {
+            Files.deleteIfExists(mappedPackage.getFile());
+        } catch (IOException e) {
+            log.warn("Failed to delete OTA package file {}", mappedPackage.getFile(), e);
+        }
+    }
+
+    static ByteBuffer slice(ByteBuffer data, int chunkSize, int chunk) {
+        ByteBuffer result = data.duplicate();
+        if (chunkSize < 1) {
+            return result.slice();
+        }
+        long startIndex = (long) chunkSize * chunk;
+        if (startIndex >= result.limit()) {
+            return ByteBuffer.allocate(0);
+        }
+        int size = (int) Math.min(result.limit() - startIndex, chunkSize);
+        result.position((int) startIndex);
+        result.limit((int) startIndex + size);
+        return result.slice();
+    }
+
+    long getTotalSize() {
+        synchronized (packages) {
+            return totalSize;
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class MappedPackage {
+        private final Path file;
+        private final MappedByteBuffer buffer;
+
+        long getSize() {
+            return buffer.capacity();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.cache.ota;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileOtaPackageDataCacheTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @TempDir
+    Path dir;
+
+    private FileOtaPackageDataCache cache;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        cache = new FileOtaPackageDataCache(dir.toString(), 2L);
+    }
+
+    @Test
+    public void givenStoredPackage_whenGetChunks_thenReturnSlicesOfFile() {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        cache.put("fw", data);
+
+        assertThat(cache.has("fw")).isTrue();
+        assertThat(cache.get("fw")).isEqualTo(data);
+
+        ByteBuffer chunk = cache.getChunk("fw", 300, 3);
+        assertThat(chunk.remaining()).isEqualTo(100);
+        assertThat(chunk.isDirect()).isTrue();
+        assertThat(chunk.get(0)).isEqualTo(data[900]);
+
+        assertThat(cache.get("fw", 300, 1)).hasSize(300).startsWith(data[300]);
+        assertThat(cache.get("fw", 300, 4)).isEmpty();
+        assertThat(cache.has("unknown")).isFalse();
+        assertThat(cache.get("unknown")).isNull();
+    }
+
+    @Test
+    public void givenSizeBudget_whenPutMore_thenEvictLeastRecentlyUsed() {
+        cache.put("a", new byte[MB]);
+        cache.put("b", new byte[MB]);
+        cache.getChunk("a", 1, 0);
+        cache.put("c", new byte[MB]);
+
+        assertThat(cache.has("a")).isTrue();
+        assertThat(cache.has("b")).isFalse();
+        assertThat(cache.has("c")).isTrue();
+        assertThat(cache.getTotalSize()).isEqualTo(2L * MB);
+        assertThat(Files.exists(dir.resolve("b.ota"))).isFalse();
+    }
+
+    @Test
+    public void givenStoredPackage_whenEvict_thenFileRemoved() {
+        cache.put("fw", new byte[10]);
+        assertThat(Files.exists(dir.resolve("fw.ota"))).isTrue();
+
+        cache.evict("fw");
+
+        assertThat(cache.has("fw")).isFalse();
+        assertThat(cache.getTotalSize()).isZero();
+        assertThat(Files.exists(dir.resolve("fw.ota"))).isFalse();
+    }
+}
@@ -34,6 +34,18 @@ public interface TbQueueConsumer<T extends TbQueueMsg> {
 
     void commit();
 
+    /**
+     * Returns the position right after the messages returned by the last poll, or null if the consumer is able to commit
+     * all the polled messages only. The position may be committed with {@link #commit(TbQueueConsumerPosition)} after the next polls.
+     */
+    default TbQueueConsumerPosition getPosition() {
+        return null;
+    }
+
+    default void commit(TbQueueConsumerPosition position) {
+        commit();
+    }
+
     boolean isStopped();
 
 }
@@ -15,6 +15,8 @@
  */
 package org.thingsboard.server.dao.alarm;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import lombok.Data;
 import org.thingsboard.server.common.data.alarm.Alarm;
 import org.thingsboard.server.common.data.id.EntityId;
@@ -28,6 +30,10 @@ public class AlarmOperationResult {
     private final boolean successful;
     private final boolean created;
     private final List<EntityId> propagatedEntitiesList;
+    /**
+     * Entities the alarm is propagated to by relations. Their records are saved after the result is returned.
+     */
+    private final ListenableFuture<List<EntityId>> relatedEntitiesFuture;
 
     public AlarmOperationResult(Alarm alarm, boolean successful) {
         this(alarm, successful, Collections.emptyList());
@@ -38,9 +44,15 @@ public class AlarmOperationResult {
     }
 
     public AlarmOperationResult(Alarm alarm, boolean successful, boolean created, List<EntityId> propagatedEntitiesList) {
+        this(alarm, successful, created, propagatedEntitiesList, Futures.immediateFuture(Collections.emptyList()));
+    }
+
+    public AlarmOperationResult(Alarm alarm, boolean successful, boolean created, List<EntityId> propagatedEntitiesList,
+                                ListenableFuture<List<EntityId>> relatedEntitiesFuture) {
         this.alarm = alarm;
         this.successful = successful;
         this.created = created;
         this.propagatedEntitiesList = propagatedEntitiesList;
+        this.relatedEntitiesFuture = relatedEntitiesFuture;
     }
 }
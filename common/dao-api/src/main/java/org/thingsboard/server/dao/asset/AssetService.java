@@ -41,6 +41,8 @@ public interface AssetService {
 
     Asset findAssetByTenantIdAndName(TenantId tenantId, String name);
 
+    List<Asset> findAssetsByTenantIdAndNames(TenantId tenantId, List<String> names);
+
     Asset saveAsset(Asset asset);
 
     Asset assignAssetToCustomer(TenantId tenantId, AssetId assetId, CustomerId customerId);
@@ -31,4 +31,6 @@ public class CacheConstants {
     public static final String TOKEN_OUTDATAGE_TIME_CACHE = "tokensOutdatageTime";
     public static final String OTA_PACKAGE_CACHE = "otaPackages";
     public static final String OTA_PACKAGE_DATA_CACHE = "otaPackagesData";
+    public static final String TS_LATEST_CACHE = "tsLatest";
+    public static final String ALARM_CACHE = "alarms";
 }
@@ -62,6 +62,10 @@ public class DefaultTenantProfileConfiguration implements TenantProfileConfigura
 
     private double warnThreshold;
 
+    // number of threads in the own actor dispatcher of the tenant; 0 means the tenant uses the shared dispatchers.
+    // Switching between 0 and a positive value restarts the tenant actor
+    private int actorDispatcherPoolSize;
+
     @Override
     public long getProfileThreshold(ApiUsageRecordKey key) {
         switch (key) {
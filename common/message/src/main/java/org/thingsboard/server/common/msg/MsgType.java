@@ -119,6 +119,11 @@ public enum MsgType {
      */
     TRANSPORT_TO_DEVICE_ACTOR_MSG,
 
+    /**
+     * Message that is sent by TbCoreConsumerService to Device Actor. Represents activity of the device sessions reported in batch by the transport.
+     */
+    DEVICE_SESSIONS_ACTIVITY_TO_DEVICE_ACTOR_MSG,
+
     /**
      * Message that is sent on Edge Event to Edge Session
      */
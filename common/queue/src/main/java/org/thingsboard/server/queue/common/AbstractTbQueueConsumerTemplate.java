@@ -15,6 +15,10 @@
  */
 package org.thingsboard.server.queue.common;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
@@ -39,6 +43,7 @@ import static java.util.Collections.emptyList;
 public abstract class AbstractTbQueueConsumerTemplate<R, T extends TbQueueMsg> implements TbQueueConsumer<T> {
 
     public static final long ONE_MILLISECOND_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int MIN_RECORDS_PER_DECODE_TASK = 64;
     private volatile boolean subscribed;
     protected volatile boolean stopped = false;
     protected volatile Set<TopicPartitionInfo> partitions;
@@ -74,7 +79,6 @@ public abstract class AbstractTbQueueConsumerTemplate<R, T extends TbQueueMsg> i
 
     @Override
     public List<T> poll(long durationInMillis) {
-        List<R> records;
         long startNanos = System.nanoTime();
         if (stopped) {
             return errorAndReturnEmpty();
@@ -83,6 +87,20 @@ public abstract class AbstractTbQueueConsumerTemplate<R, T extends TbQueueMsg> i
             return sleepAndReturnEmpty(startNanos, durationInMillis);
         }
 
+        List<R> records = pollRecords(durationInMillis);
+
+        if (records.isEmpty()) { return sleepAndReturnEmpty(startNanos, durationInMillis); }
+
+        return decodeRecords(records);
+    }
+
+    /**
+     * Applies the pending subscription changes and polls the records without decoding them.
+     */
+    protected List<R> pollRecords(long durationInMillis) {
+        if (!subscribed && partitions == null && subscribeQueue.isEmpty()) {
+            return emptyList();
+        }
         if (consumerLock.isLocked()) {
             log.error("poll. consumerLock is locked. will wait with no timeout. it looks like a race conditions or deadlock topic " + topic, new RuntimeException("stacktrace"));
         }
@@ -98,14 +116,10 @@ public abstract class AbstractTbQueueConsumerTemplate<R, T extends TbQueueMsg> i
                 doSubscribe(topicNames);
                 subscribed = true;
             }
-            records = partitions.isEmpty() ? emptyList() : doPoll(durationInMillis);
+            return partitions.isEmpty() ? emptyList() : doPoll(durationInMillis);
         } finally {
             consumerLock.unlock();
         }
-
-        if (records.isEmpty()) { return sleepAndReturnEmpty(startNanos, durationInMillis); }
-
-        return decodeRecords(records);
     }
 
     @Nonnull
@@ -124,12 +138,32 @@ public abstract class AbstractTbQueueConsumerTemplate<R, T extends TbQueueMsg> i
         return result;
     }
 
-    List<T> errorAndReturnEmpty() {
+    /**
+     * Decodes the records in chunks on the given executor. The order of the records is preserved.
+     */
+    protected ListenableFuture<List<T>> decodeRecordsAsync(List<R> records, ListeningExecutorService executor, int parallelism) {
+        if (parallelism <= 1 || records.size() < parallelism * MIN_RECORDS_PER_DECODE_TASK) {
+            return executor.submit(() -> decodeRecords(records));
+        }
+        int chunkSize = (records.size() + parallelism - 1) / parallelism;
+        List<ListenableFuture<List<T>>> chunks = new ArrayList<>(parallelism);
+        for (int from = 0; from < records.size(); from += chunkSize) {
+            List<R> chunk = records.subList(from, Math.min(records.size(), from + chunkSize));
+            chunks.add(executor.submit(() -> decodeRecords(chunk)));
+        }
+        return Futures.transform(Futures.allAsList(chunks), decoded -> {
+            List<T> result = new ArrayList<>(records.size());
+            decoded.forEach(result::addAll);
+            return result;
+        }, MoreExecutors.directExecutor());
+    }
+
+    protected List<T> errorAndReturnEmpty() {
         log.error("poll invoked but consumer stopped for topic" + topic, new RuntimeException("stacktrace"));
         return emptyList();
     }
 
-    List<T> sleepAndReturnEmpty(final long startNanos, final long durationInMillis) {
+    protected List<T> sleepAndReturnEmpty(final long startNanos, final long durationInMillis) {
         long durationNanos = TimeUnit.MILLISECONDS.toNanos(durationInMillis);
         long spentNanos = System.nanoTime() - startNanos;
         long nanosLeft = durationNanos - spentNanos;
@@ -0,0 +1,108 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.discovery;
+
+import com.google.common.hash.HashFunction;
+
+import java.util.UUID;
+
+/**
+ * Computes the same hash as {@code hashFunction.newHasher().putLong(msb).putLong(lsb).hash().asInt()}.
+ * The murmur3_128 implementation does not allocate, other hash functions delegate to Guava.
+ */
+public abstract class EntityIdHashFunction {
+
+    public abstract int hash(UUID id);
+
+    public static EntityIdHashFunction forName(String name) {
+        if ("murmur3_128".equals(name)) {
+            return new Murmur3x128();
+        }
+        return new GuavaHashFunction(HashPartitionService.forName(name));
+    }
+
+    private static class GuavaHashFunction extends EntityIdHashFunction {
+
+        private final HashFunction hashFunction;
+
+        private GuavaHashFunction(HashFunction hashFunction) {
+            this.hashFunction = hashFunction;
+        }
+
+        @Override
+        public int hash(UUID id) {
+            return hashFunction.newHasher()
+                    .putLong(id.getMostSignificantBits())
+                    .putLong(id.getLeastSignificantBits()).hash().asInt();
+        }
+    }
+
+    /**
+     * Murmur3 x64 128-bit hash with zero seed of exactly one 16-byte block.
+     * Guava writes longs in little-endian order, so the block is {msb, lsb} as is.
+     */
+    private static class Murmur3x128 extends EntityIdHashFunction {
+
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+        private static final int LENGTH = 2 * Long.BYTES;
+
+        @Override
+        public int hash(UUID id) {
+            long k1 = id.getMostSignificantBits();
+            long k2 = id.getLeastSignificantBits();
+
+            long h1 = 0;
+            long h2 = 0;
+
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+
+            h1 ^= LENGTH;
+            h2 ^= LENGTH;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix64(h1);
+            h2 = fmix64(h2);
+            h1 += h2;
+            // HashCode.asInt() takes the first four little-endian bytes of h1
+            return (int) h1;
+        }
+
+        private static long fmix64(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+
+}
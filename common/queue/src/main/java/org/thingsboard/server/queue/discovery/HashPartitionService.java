@@ -16,7 +16,6 @@
 package org.thingsboard.server.queue.discovery;
 
 import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -41,6 +40,7 @@ import javax.annotation.PostConstruct;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -71,15 +71,18 @@ public class HashPartitionService implements PartitionService {
     private final ConcurrentMap<ServiceQueue, Integer> partitionSizes = new ConcurrentHashMap<>();
     private final ConcurrentMap<TenantId, TenantRoutingInfo> tenantRoutingInfoMap = new ConcurrentHashMap<>();
 
-    private ConcurrentMap<ServiceQueueKey, List<Integer>> myPartitions = new ConcurrentHashMap<>();
-    private ConcurrentMap<TopicPartitionInfoKey, TopicPartitionInfo> tpiCache = new ConcurrentHashMap<>();
+    private final Map<ServiceType, ServiceQueue> mainServiceQueues = new EnumMap<>(ServiceType.class);
+    private final ConcurrentMap<String, ServiceQueue> ruleEngineServiceQueues = new ConcurrentHashMap<>();
+
+    private volatile ConcurrentMap<ServiceQueueKey, List<Integer>> myPartitions = new ConcurrentHashMap<>();
+    private volatile PartitionTables partitionTables = new PartitionTables();
 
     private Map<String, TopicPartitionInfo> tbCoreNotificationTopics = new HashMap<>();
     private Map<String, TopicPartitionInfo> tbRuleEngineNotificationTopics = new HashMap<>();
     private Map<String, List<ServiceInfo>> tbTransportServicesByType = new HashMap<>();
     private List<ServiceInfo> currentOtherServices;
 
-    private HashFunction hashFunction;
+    private EntityIdHashFunction hashFunction;
 
     public HashPartitionService(TbServiceInfoProvider serviceInfoProvider,
                                 TenantRoutingInfoService tenantRoutingInfoService,
@@ -95,7 +98,10 @@ public class HashPartitionService implements PartitionService {
 
     @PostConstruct
     public void init() {
-        this.hashFunction = forName(hashFunctionName);
+        this.hashFunction = EntityIdHashFunction.forName(hashFunctionName);
+        for (ServiceType serviceType : ServiceType.values()) {
+            mainServiceQueues.put(serviceType, new ServiceQueue(serviceType));
+        }
         partitionSizes.put(new ServiceQueue(ServiceType.TB_CORE), corePartitions);
         partitionTopics.put(new ServiceQueue(ServiceType.TB_CORE), coreTopic);
         tbQueueRuleEngineSettings.getQueues().forEach(queueConfiguration -> {
@@ -106,30 +112,50 @@ public class HashPartitionService implements PartitionService {
 
     @Override
     public TopicPartitionInfo resolve(ServiceType serviceType, TenantId tenantId, EntityId entityId) {
-        return resolve(new ServiceQueue(serviceType), tenantId, entityId);
+        return resolve(getServiceQueue(serviceType, ServiceQueue.MAIN), tenantId, entityId);
     }
 
     @Override
     public TopicPartitionInfo resolve(ServiceType serviceType, String queueName, TenantId tenantId, EntityId entityId) {
         queueName = queueService.resolve(serviceType, queueName);
-        return resolve(new ServiceQueue(serviceType, queueName), tenantId, entityId);
+        return resolve(getServiceQueue(serviceType, queueName), tenantId, entityId);
     }
 
     private TopicPartitionInfo resolve(ServiceQueue serviceQueue, TenantId tenantId, EntityId entityId) {
-        int hash = hashFunction.newHasher()
-                .putLong(entityId.getId().getMostSignificantBits())
-                .putLong(entityId.getId().getLeastSignificantBits()).hash().asInt();
-        Integer partitionSize = partitionSizes.get(serviceQueue);
-        int partition;
-        if (partitionSize != null) {
-            partition = Math.abs(hash % partitionSize);
+        TopicPartitionInfo[] table = getPartitionTable(serviceQueue, isIsolated(serviceQueue, tenantId) ? tenantId : null);
+        return table[Math.abs(hashFunction.hash(entityId.getId()) % table.length)];
+    }
+
+    private ServiceQueue getServiceQueue(ServiceType serviceType, String queueName) {
+        if (queueName == null || ServiceQueue.MAIN.equals(queueName)) {
+            return mainServiceQueues.get(serviceType);
+        } else if (ServiceType.TB_RULE_ENGINE.equals(serviceType)) {
+            return ruleEngineServiceQueues.computeIfAbsent(queueName, name -> new ServiceQueue(serviceType, name));
         } else {
-            //TODO: In 2.6/3.1 this should not happen because all Rule Engine Queues will be in the DB and we always know their partition sizes.
-            partition = 0;
+            return new ServiceQueue(serviceType, queueName);
+        }
+    }
+
+    private TopicPartitionInfo[] getPartitionTable(ServiceQueue serviceQueue, TenantId isolatedTenantId) {
+        PartitionTables tables = partitionTables;
+        ConcurrentMap<ServiceQueue, TopicPartitionInfo[]> queueTables = isolatedTenantId == null ? tables.common :
+                tables.isolated.computeIfAbsent(isolatedTenantId, id -> new ConcurrentHashMap<>());
+        TopicPartitionInfo[] table = queueTables.get(serviceQueue);
+        if (table == null) {
+            table = queueTables.computeIfAbsent(serviceQueue, queue -> buildPartitionTable(queue, isolatedTenantId));
         }
-        boolean isolatedTenant = isIsolated(serviceQueue, tenantId);
-        TopicPartitionInfoKey cacheKey = new TopicPartitionInfoKey(serviceQueue, isolatedTenant ? tenantId : null, partition);
-        return tpiCache.computeIfAbsent(cacheKey, key -> buildTopicPartitionInfo(serviceQueue, tenantId, partition));
+        return table;
+    }
+
+    private TopicPartitionInfo[] buildPartitionTable(ServiceQueue serviceQueue, TenantId isolatedTenantId) {
+        Integer partitionSize = partitionSizes.get(serviceQueue);
+        //TODO: In 2.6/3.1 this should not happen because all Rule Engine Queues will be in the DB and we always know their partition sizes.
+        TopicPartitionInfo[] table = new TopicPartitionInfo[partitionSize != null ? partitionSize : 1];
+        TenantId tenantId = isolatedTenantId != null ? isolatedTenantId : TenantId.SYS_TENANT_ID;
+        for (int partition = 0; partition < table.length; partition++) {
+            table[partition] = buildTopicPartitionInfo(serviceQueue, tenantId, partition, isolatedTenantId != null);
+        }
+        return table;
     }
 
     @Override
@@ -146,19 +172,22 @@ public class HashPartitionService implements PartitionService {
 
         ConcurrentMap<ServiceQueueKey, List<Integer>> oldPartitions = myPartitions;
         TenantId myIsolatedOrSystemTenantId = getSystemOrIsolatedTenantId(currentService);
-        myPartitions = new ConcurrentHashMap<>();
+        ConcurrentMap<ServiceQueueKey, List<Integer>> newPartitions = new ConcurrentHashMap<>();
         partitionSizes.forEach((serviceQueue, size) -> {
             ServiceQueueKey myServiceQueueKey = new ServiceQueueKey(serviceQueue, myIsolatedOrSystemTenantId);
             for (int i = 0; i < size; i++) {
                 ServiceInfo serviceInfo = resolveByPartitionIdx(queueServicesMap.get(myServiceQueueKey), i);
                 if (currentService.equals(serviceInfo)) {
                     ServiceQueueKey serviceQueueKey = new ServiceQueueKey(serviceQueue, getSystemOrIsolatedTenantId(serviceInfo));
-                    myPartitions.computeIfAbsent(serviceQueueKey, key -> new ArrayList<>()).add(i);
+                    newPartitions.computeIfAbsent(serviceQueueKey, key -> new ArrayList<>()).add(i);
                 }
             }
         });
+        myPartitions = newPartitions;
 
-        tpiCache.clear();
+        PartitionTables newTables = new PartitionTables();
+        partitionSizes.keySet().forEach(serviceQueue -> newTables.common.put(serviceQueue, buildPartitionTable(serviceQueue, null)));
+        partitionTables = newTables;
 
         oldPartitions.forEach((serviceQueueKey, partitions) -> {
             if (!myPartitions.containsKey(serviceQueueKey)) {
@@ -232,10 +261,7 @@ public class HashPartitionService implements PartitionService {
 
     @Override
     public int resolvePartitionIndex(UUID entityId, int partitions) {
-        int hash = hashFunction.newHasher()
-                .putLong(entityId.getMostSignificantBits())
-                .putLong(entityId.getLeastSignificantBits()).hash().asInt();
-        return Math.abs(hash % partitions);
+        return Math.abs(hashFunction.hash(entityId) % partitions);
     }
 
     @Override
@@ -272,11 +298,15 @@ public class HashPartitionService implements PartitionService {
     }
 
     private TopicPartitionInfo buildTopicPartitionInfo(ServiceQueue serviceQueue, TenantId tenantId, int partition) {
+        return buildTopicPartitionInfo(serviceQueue, tenantId, partition, isIsolated(serviceQueue, tenantId));
+    }
+
+    private TopicPartitionInfo buildTopicPartitionInfo(ServiceQueue serviceQueue, TenantId tenantId, int partition, boolean isolated) {
         TopicPartitionInfo.TopicPartitionInfoBuilder tpi = TopicPartitionInfo.builder();
         tpi.topic(partitionTopics.get(serviceQueue));
         tpi.partition(partition);
         ServiceQueueKey myPartitionsSearchKey;
-        if (isIsolated(serviceQueue, tenantId)) {
+        if (isolated) {
             tpi.tenantId(tenantId);
             myPartitionsSearchKey = new ServiceQueueKey(serviceQueue, tenantId);
         } else {
@@ -359,6 +389,14 @@ public class HashPartitionService implements PartitionService {
         return servers.get(partitionIdx % servers.size());
     }
 
+    /**
+     * Partition lookup tables, indexed by partition number. Replaced as a whole on every partition recalculation.
+     */
+    private static class PartitionTables {
+        private final ConcurrentMap<ServiceQueue, TopicPartitionInfo[]> common = new ConcurrentHashMap<>();
+        private final ConcurrentMap<TenantId, ConcurrentMap<ServiceQueue, TopicPartitionInfo[]>> isolated = new ConcurrentHashMap<>();
+    }
+
     public static HashFunction forName(String name) {
         switch (name) {
             case "murmur3_32":
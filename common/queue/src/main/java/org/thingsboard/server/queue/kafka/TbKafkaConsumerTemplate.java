@@ -15,23 +15,45 @@
  */
 package org.thingsboard.server.queue.kafka;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import lombok.Builder;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.util.StopWatch;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.queue.TbQueueAdmin;
+import org.thingsboard.server.queue.TbQueueConsumerPosition;
 import org.thingsboard.server.queue.TbQueueMsg;
 import org.thingsboard.server.queue.common.AbstractTbQueueConsumerTemplate;
 
 import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.emptyList;
 
 /**
  * Created by ashvayka on 24.09.18.
@@ -40,16 +62,31 @@ import java.util.Properties;
 public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQueueConsumerTemplate<ConsumerRecord<String, byte[]>, T> {
 
     private final TbQueueAdmin admin;
-    private final KafkaConsumer<String, byte[]> consumer;
+    private final Consumer<String, byte[]> consumer;
     private final TbKafkaDecoder<T> decoder;
 
     private final TbKafkaConsumerStatsService statsService;
     private final String groupId;
 
+    /*
+     * In the pipelined mode the fetch thread owns the Kafka consumer: it polls the next packs and commits the offsets
+     * while the current pack is processed. The offsets of a pack are committed only after the pack was processed.
+     */
+    private final boolean pipelined;
+    private final int decodeThreads;
+    private final BlockingQueue<PolledPack<T>> prefetchedPacks;
+    private final Map<TopicPartition, OffsetAndMetadata> pendingOffsets = new HashMap<>();
+    // accessed by the fetch thread only, the commit callbacks are invoked on the same thread
+    private final Map<TopicPartition, Long> lastCommitSeqs = new HashMap<>();
+    private long commitSeq;
+    private ExecutorService fetchExecutor;
+    private ListeningExecutorService decodeExecutor;
+    private Map<TopicPartition, OffsetAndMetadata> polledOffsets;
+
     @Builder
     private TbKafkaConsumerTemplate(TbKafkaSettings settings, TbKafkaDecoder<T> decoder,
                                     String clientId, String groupId, String topic,
-                                    TbQueueAdmin admin, TbKafkaConsumerStatsService statsService) {
+                                    TbQueueAdmin admin, TbKafkaConsumerStatsService statsService, boolean pipelined) {
         super(topic);
         Properties props = settings.toConsumerProps(topic);
         props.put(ConsumerConfig.CLIENT_ID_CONFIG, clientId);
@@ -67,6 +104,291 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
         this.admin = admin;
         this.consumer = new KafkaConsumer<>(props);
         this.decoder = decoder;
+
+        this.pipelined = pipelined;
+        this.decodeThreads = pipelined ? Math.max(1, settings.getConsumerPipelineDecodeThreads()) : 0;
+        this.prefetchedPacks = pipelined ? new LinkedBlockingQueue<>(Math.max(1, settings.getConsumerPipelinePrefetchPacks())) : null;
+    }
+
+    /*
+     * Invoked by the thread that polls the consumer. The records of the revoked partitions that are already fetched
+     * belong to the new owner, so the prefetched packs are dropped and the offsets of the revoked partitions
+     * that are not committed yet are committed before the partitions are released.
+     */
+    private final ConsumerRebalanceListener rebalanceListener = new ConsumerRebalanceListener() {
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            if (!pipelined || partitions.isEmpty()) {
+                return;
+            }
+            dropPrefetchedPacks(partitions);
+            Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+            synchronized (pendingOffsets) {
+                partitions.forEach(tp -> {
+                    OffsetAndMetadata offset = pendingOffsets.remove(tp);
+                    if (offset != null) {
+                        offsets.put(tp, offset);
+                    }
+                });
+            }
+            if (!offsets.isEmpty()) {
+                try {
+                    consumer.commitSync(offsets);
+                } catch (Exception e) {
+                    log.warn("[{}] Failed to commit offsets of revoked partitions {}", getTopic(), offsets, e);
+                }
+            }
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        }
+    };
+
+    /**
+     * Drops the packs that were fetched but not taken for processing yet. The partitions that stay assigned
+     * are rewound to the first dropped record, so their records are fetched again.
+     */
+    private void dropPrefetchedPacks(Collection<TopicPartition> revoked) {
+        List<PolledPack<T>> dropped = new ArrayList<>();
+        prefetchedPacks.drainTo(dropped);
+        if (dropped.isEmpty()) {
+            return;
+        }
+        Map<TopicPartition, Long> rewindOffsets = new HashMap<>();
+        for (PolledPack<T> pack : dropped) {
+            pack.getMsgs().cancel(false);
+            pack.getFirstOffsets().forEach((tp, offset) -> rewindOffsets.merge(tp, offset, Math::min));
+        }
+        Set<TopicPartition> assignment = consumer.assignment();
+        rewindOffsets.forEach((tp, offset) -> {
+            if (!revoked.contains(tp) && assignment.contains(tp)) {
+                consumer.seek(tp, offset);
+            }
+        });
+        log.info("[{}] Dropped {} prefetched packs due to the revoked partitions {}", getTopic(), dropped.size(), revoked);
+    }
+
+    /**
+     * Keeps only the offsets of the partitions assigned to this consumer, so the progress of the new owner
+     * of a revoked partition is not overwritten by the packs processed before the rebalance.
+     */
+    private Map<TopicPartition, OffsetAndMetadata> filterAssigned(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        Set<TopicPartition> assignment = consumer.assignment();
+        if (assignment.containsAll(offsets.keySet())) {
+            return offsets;
+        }
+        Map<TopicPartition, OffsetAndMetadata> result = new HashMap<>(offsets);
+        result.keySet().retainAll(assignment);
+        log.debug("[{}] Skipping commit of offsets of the partitions that are not assigned: {}", getTopic(), offsets);
+        return result;
+    }
+
+    @Override
+    public List<T> poll(long durationInMillis) {
+        if (!pipelined) {
+            return super.poll(durationInMillis);
+        }
+        if (stopped) {
+            return errorAndReturnEmpty();
+        }
+        startFetching(durationInMillis);
+        PolledPack<T> pack;
+        try {
+            pack = prefetchedPacks.poll(durationInMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            if (!stopped) {
+                log.error("Failed to wait", e);
+            }
+            return emptyList();
+        }
+        if (pack == null) {
+            return emptyList();
+        }
+        polledOffsets = pack.getOffsets();
+        try {
+            return pack.getMsgs().get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to decode records: ", e);
+        }
+    }
+
+    @Override
+    public void commit() {
+        if (!pipelined) {
+            super.commit();
+            return;
+        }
+        if (polledOffsets != null) {
+            synchronized (pendingOffsets) {
+                pendingOffsets.putAll(polledOffsets);
+            }
+            polledOffsets = null;
+        }
+    }
+
+    @Override
+    public TbQueueConsumerPosition getPosition() {
+        return polledOffsets != null ? new KafkaConsumerPosition(polledOffsets) : null;
+    }
+
+    /**
+     * Commits the offsets of a pack polled before, while the next packs may be already polled.
+     */
+    @Override
+    public void commit(TbQueueConsumerPosition position) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = ((KafkaConsumerPosition) position).getOffsets();
+        if (pipelined) {
+            synchronized (pendingOffsets) {
+                pendingOffsets.putAll(offsets);
+            }
+            return;
+        }
+        consumerLock.lock();
+        try {
+            offsets = filterAssigned(offsets);
+            if (!offsets.isEmpty()) {
+                consumer.commitSync(offsets);
+            }
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    private synchronized void startFetching(long durationInMillis) {
+        if (fetchExecutor == null && !stopped) {
+            decodeExecutor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(decodeThreads,
+                    ThingsBoardThreadFactory.forName("kafka-decode-" + getTopic())));
+            fetchExecutor = Executors.newSingleThreadExecutor(ThingsBoardThreadFactory.forName("kafka-fetch-" + getTopic()));
+            fetchExecutor.submit(() -> fetchLoop(durationInMillis));
+        }
+    }
+
+    private void fetchLoop(long durationInMillis) {
+        while (!stopped) {
+            long startNanos = System.nanoTime();
+            try {
+                commitPendingOffsets();
+                List<ConsumerRecord<String, byte[]>> records = pollRecords(durationInMillis);
+                if (records.isEmpty()) {
+                    sleepAndReturnEmpty(startNanos, durationInMillis);
+                    continue;
+                }
+                PolledPack<T> pack = new PolledPack<>(decodeRecordsAsync(records, decodeExecutor, decodeThreads), toOffsets(records), toFirstOffsets(records));
+                while (!stopped && !prefetchedPacks.offer(pack, durationInMillis, TimeUnit.MILLISECONDS)) {
+                    commitPendingOffsets();
+                }
+            } catch (InterruptedException e) {
+                if (!stopped) {
+                    log.error("[{}] Fetch thread was interrupted", getTopic(), e);
+                }
+                return;
+            } catch (Throwable e) {
+                if (!stopped) {
+                    log.warn("[{}] Failed to fetch records", getTopic(), e);
+                    sleepAndReturnEmpty(startNanos, durationInMillis);
+                }
+            }
+        }
+    }
+
+    private static Map<TopicPartition, OffsetAndMetadata> toOffsets(List<ConsumerRecord<String, byte[]>> records) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (ConsumerRecord<String, byte[]> record : records) {
+            offsets.put(new TopicPartition(record.topic(), record.partition()), new OffsetAndMetadata(record.offset() + 1));
+        }
+        return offsets;
+    }
+
+    private static Map<TopicPartition, Long> toFirstOffsets(List<ConsumerRecord<String, byte[]>> records) {
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        for (ConsumerRecord<String, byte[]> record : records) {
+            offsets.putIfAbsent(new TopicPartition(record.topic(), record.partition()), record.offset());
+        }
+        return offsets;
+    }
+
+    private void commitPendingOffsets() {
+        Map<TopicPartition, OffsetAndMetadata> offsets;
+        synchronized (pendingOffsets) {
+            if (pendingOffsets.isEmpty()) {
+                return;
+            }
+            offsets = new HashMap<>(pendingOffsets);
+            pendingOffsets.clear();
+        }
+        long seq = ++commitSeq;
+        consumerLock.lock();
+        try {
+            Map<TopicPartition, OffsetAndMetadata> assignedOffsets = filterAssigned(offsets);
+            if (assignedOffsets.isEmpty()) {
+                return;
+            }
+            assignedOffsets.keySet().forEach(tp -> lastCommitSeqs.put(tp, seq));
+            consumer.commitAsync(assignedOffsets, (committed, e) -> {
+                if (e != null) {
+                    onCommitFailed(seq, assignedOffsets, e);
+                }
+            });
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the offsets of the failed commit to the pending ones, except the partitions that were committed again after it.
+     */
+    private void onCommitFailed(long seq, Map<TopicPartition, OffsetAndMetadata> offsets, Exception e) {
+        log.warn("[{}] Failed to commit offsets {}", getTopic(), offsets, e);
+        if (stopped) {
+            return;
+        }
+        synchronized (pendingOffsets) {
+            offsets.forEach((tp, offset) -> {
+                if (lastCommitSeqs.getOrDefault(tp, 0L) == seq) {
+                    pendingOffsets.putIfAbsent(tp, offset);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void unsubscribe() {
+        if (pipelined) {
+            stopped = true;
+            stopFetching();
+            consumerLock.lock();
+            try {
+                Map<TopicPartition, OffsetAndMetadata> offsets;
+                synchronized (pendingOffsets) {
+                    offsets = new HashMap<>(pendingOffsets);
+                    pendingOffsets.clear();
+                }
+                offsets = filterAssigned(offsets);
+                if (!offsets.isEmpty()) {
+                    consumer.commitSync(offsets);
+                }
+            } catch (Exception e) {
+                log.warn("[{}] Failed to commit offsets on unsubscribe", getTopic(), e);
+            } finally {
+                consumerLock.unlock();
+            }
+        }
+        super.unsubscribe();
+    }
+
+    private synchronized void stopFetching() {
+        if (fetchExecutor != null) {
+            fetchExecutor.shutdownNow();
+            try {
+                fetchExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                log.trace("Interrupted while waiting for fetch executor to stop");
+            }
+        }
+        if (decodeExecutor != null) {
+            decodeExecutor.shutdownNow();
+        }
     }
 
     @Override
@@ -74,7 +396,7 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
         if (!topicNames.isEmpty()) {
             topicNames.forEach(admin::createTopicIfNotExists);
             log.info("subscribe topics {}", topicNames);
-            consumer.subscribe(topicNames);
+            consumer.subscribe(topicNames, rebalanceListener);
         } else {
             log.info("unsubscribe due to empty topic list");
             consumer.unsubscribe();
@@ -98,6 +420,9 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
         } else {
             List<ConsumerRecord<String, byte[]>> recordList = new ArrayList<>(256);
             records.forEach(recordList::add);
+            if (!pipelined) {
+                polledOffsets = toOffsets(recordList);
+            }
             return recordList;
         }
     }
@@ -123,4 +448,16 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
             statsService.unregisterClientGroup(groupId);
         }
     }
+
+    @Data
+    private static class KafkaConsumerPosition implements TbQueueConsumerPosition {
+        private final Map<TopicPartition, OffsetAndMetadata> offsets;
+    }
+
+    @Data
+    private static class PolledPack<T> {
+        private final ListenableFuture<List<T>> msgs;
+        private final Map<TopicPartition, OffsetAndMetadata> offsets;
+        private final Map<TopicPartition, Long> firstOffsets;
+    }
 }
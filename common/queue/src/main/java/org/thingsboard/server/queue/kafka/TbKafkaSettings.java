@@ -89,6 +89,18 @@ public class TbKafkaSettings {
     @Value("${queue.kafka.fetch_max_bytes:134217728}")
     private int fetchMaxBytes;
 
+    @Value("${queue.kafka.consumer_pipeline.enabled:false}")
+    @Getter
+    private boolean consumerPipelineEnabled;
+
+    @Value("${queue.kafka.consumer_pipeline.prefetch_packs:1}")
+    @Getter
+    private int consumerPipelinePrefetchPacks;
+
+    @Value("${queue.kafka.consumer_pipeline.decode_threads:2}")
+    @Getter
+    private int consumerPipelineDecodeThreads;
+
     @Value("${queue.kafka.use_confluent_cloud:false}")
     private boolean useConfluent;
 
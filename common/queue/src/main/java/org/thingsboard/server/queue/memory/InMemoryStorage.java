@@ -19,31 +19,51 @@ import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.server.queue.TbQueueMsg;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 @Slf4j
 public final class InMemoryStorage {
     private static InMemoryStorage instance;
-    private final ConcurrentHashMap<String, BlockingQueue<TbQueueMsg>> storage;
+    private final ConcurrentHashMap<String, InMemoryTopic> storage;
+    private volatile InMemoryStorageSettings settings = InMemoryStorageSettings.DEFAULT;
 
     private InMemoryStorage() {
         storage = new ConcurrentHashMap<>();
     }
 
+    /**
+     * Applies to topics created after the call. Expected to be called once, before any message is produced.
+     */
+    public void configure(InMemoryStorageSettings settings) {
+        this.settings = settings;
+    }
+
     public void printStats() {
         storage.forEach((topic, queue) -> {
-            if (queue.size() > 0) {
-                log.debug("[{}] Queue Size [{}]", topic, queue.size());
+            if (queue.size() > 0 || queue.getRejected() > 0) {
+                log.debug("[{}] Queue Size [{}], produced [{}], consumed [{}], rejected [{}]",
+                        topic, queue.size(), queue.getProduced(), queue.getConsumed(), queue.getRejected());
             }
         });
     }
 
     public int getLagTotal() {
-        return storage.values().stream().map(BlockingQueue::size).reduce(0, Integer::sum);
+        return storage.values().stream().map(InMemoryTopic::size).reduce(0, Integer::sum);
+    }
+
+    public Set<String> getTopics() {
+        return Collections.unmodifiableSet(storage.keySet());
+    }
+
+    public int getLag(String topic) {
+        InMemoryTopic queue = storage.get(topic);
+        return queue != null ? queue.size() : 0;
     }
 
     public static InMemoryStorage getInstance() {
@@ -58,30 +78,71 @@ public final class InMemoryStorage {
     }
 
     public boolean put(String topic, TbQueueMsg msg) {
-        return storage.computeIfAbsent(topic, (t) -> new LinkedBlockingQueue<>()).add(msg);
+        return getTopic(topic).put(msg);
     }
 
     public <T extends TbQueueMsg> List<T> get(String topic) throws InterruptedException {
-        if (storage.containsKey(topic)) {
-            List<T> entities;
-            @SuppressWarnings("unchecked")
-            T first = (T) storage.get(topic).poll();
-            if (first != null) {
-                entities = new ArrayList<>();
-                entities.add(first);
-                List<TbQueueMsg> otherList = new ArrayList<>();
-                storage.get(topic).drainTo(otherList, 999);
-                for (TbQueueMsg other : otherList) {
-                    @SuppressWarnings("unchecked")
-                    T entity = (T) other;
-                    entities.add(entity);
+        InMemoryTopic queue = storage.get(topic);
+        if (queue != null) {
+            List<T> entities = new ArrayList<>();
+            drainTo(queue, entities, settings.getMaxPollRecords());
+            return entities.isEmpty() ? Collections.emptyList() : entities;
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Drains up to maxPollRecords messages from each of the topics, waiting up to the specified time if all topics are empty.
+     * The waiting consumer is woken up by the producer as soon as a message is put to any of the topics.
+     */
+    public <T extends TbQueueMsg> List<T> get(Collection<String> topics, long durationInMillis) throws InterruptedException {
+        List<InMemoryTopic> queues = new ArrayList<>(topics.size());
+        for (String topic : topics) {
+            queues.add(getTopic(topic));
+        }
+        List<T> entities = new ArrayList<>();
+        drainTo(queues, entities);
+        if (!entities.isEmpty() || durationInMillis <= 0) {
+            return entities;
+        }
+        Thread current = Thread.currentThread();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationInMillis);
+        queues.forEach(queue -> queue.addWaitingConsumer(current));
+        try {
+            while (true) {
+                drainTo(queues, entities);
+                long remaining = deadline - System.nanoTime();
+                if (!entities.isEmpty() || remaining <= 0) {
+                    return entities;
+                }
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
                 }
-            } else {
-                entities = Collections.emptyList();
             }
-            return entities;
+        } finally {
+            queues.forEach(queue -> queue.removeWaitingConsumer(current));
         }
-        return Collections.emptyList();
+    }
+
+    private <T extends TbQueueMsg> void drainTo(List<InMemoryTopic> queues, List<T> entities) {
+        int maxPollRecords = settings.getMaxPollRecords();
+        for (InMemoryTopic queue : queues) {
+            drainTo(queue, entities, maxPollRecords);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends TbQueueMsg> void drainTo(InMemoryTopic queue, List<T> entities, int maxElements) {
+        queue.drainTo((List<TbQueueMsg>) entities, maxElements);
+    }
+
+    private InMemoryTopic getTopic(String topic) {
+        InMemoryTopic queue = storage.get(topic);
+        if (queue == null) {
+            queue = storage.computeIfAbsent(topic, t -> new InMemoryTopic(settings));
+        }
+        return queue;
     }
 
     /**
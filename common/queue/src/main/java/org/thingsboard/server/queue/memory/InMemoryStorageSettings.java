@@ -0,0 +1,35 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.memory;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class InMemoryStorageSettings {
+
+    public static final InMemoryStorageSettings DEFAULT = InMemoryStorageSettings.builder().build();
+
+    private final boolean ringBufferEnabled;
+    @Builder.Default
+    private final int ringBufferCapacity = 16384;
+    @Builder.Default
+    private final long maxPutWaitMs = 1000;
+    @Builder.Default
+    private final int maxPollRecords = 1000;
+
+}
@@ -29,6 +29,7 @@ import java.util.stream.Collectors;
 public class InMemoryTbQueueConsumer<T extends TbQueueMsg> implements TbQueueConsumer<T> {
     private final InMemoryStorage storage = InMemoryStorage.getInstance();
     private volatile Set<TopicPartitionInfo> partitions;
+    private volatile List<String> topicNames;
     private volatile boolean stopped;
     private volatile boolean subscribed;
 
@@ -47,12 +48,14 @@ public class InMemoryTbQueueConsumer<T extends TbQueueMsg> implements TbQueueCon
     @Override
     public void subscribe() {
         partitions = Collections.singleton(new TopicPartitionInfo(topic, null, null, true));
+        topicNames = toTopicNames(partitions);
         subscribed = true;
     }
 
     @Override
     public void subscribe(Set<TopicPartitionInfo> partitions) {
         this.partitions = partitions;
+        topicNames = toTopicNames(partitions);
         subscribed = true;
     }
 
@@ -64,35 +67,21 @@ public class InMemoryTbQueueConsumer<T extends TbQueueMsg> implements TbQueueCon
     @Override
     public List<T> poll(long durationInMillis) {
         if (subscribed) {
-            @SuppressWarnings("unchecked")
-            List<T> messages = partitions
-                    .stream()
-                    .map(tpi -> {
-                        try {
-                            return storage.get(tpi.getFullTopicName());
-                        } catch (InterruptedException e) {
-                            if (!stopped) {
-                                log.error("Queue was interrupted.", e);
-                            }
-                            return Collections.emptyList();
-                        }
-                    })
-                    .flatMap(List::stream)
-                    .map(msg -> (T) msg).collect(Collectors.toList());
-            if (messages.size() > 0) {
-                return messages;
-            }
             try {
-                Thread.sleep(durationInMillis);
+                return storage.get(topicNames, durationInMillis);
             } catch (InterruptedException e) {
                 if (!stopped) {
-                    log.error("Failed to sleep.", e);
+                    log.error("Queue was interrupted.", e);
                 }
             }
         }
         return Collections.emptyList();
     }
 
+    private static List<String> toTopicNames(Set<TopicPartitionInfo> partitions) {
+        return partitions.stream().map(TopicPartitionInfo::getFullTopicName).collect(Collectors.toList());
+    }
+
     @Override
     public void commit() {
     }
@@ -0,0 +1,122 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.memory;
+
+import org.thingsboard.server.queue.TbQueueMsg;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Messages of a single topic partition. Backed either by the unbounded linked queue or by the bounded ring buffer.
+ * Consumers that wait for new messages are parked and woken up by producers instead of sleep polling.
+ */
+final class InMemoryTopic {
+
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final BlockingQueue<TbQueueMsg> linkedQueue;
+    private final InMemoryRingBuffer<TbQueueMsg> ringBuffer;
+    private final long maxPutWaitNanos;
+    private final Set<Thread> waitingConsumers = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong produced = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    InMemoryTopic(InMemoryStorageSettings settings) {
+        if (settings.isRingBufferEnabled()) {
+            this.ringBuffer = new InMemoryRingBuffer<>(settings.getRingBufferCapacity());
+            this.linkedQueue = null;
+        } else {
+            this.ringBuffer = null;
+            this.linkedQueue = new LinkedBlockingQueue<>();
+        }
+        this.maxPutWaitNanos = TimeUnit.MILLISECONDS.toNanos(settings.getMaxPutWaitMs());
+    }
+
+    boolean put(TbQueueMsg msg) {
+        boolean added;
+        if (ringBuffer != null) {
+            added = ringBuffer.offer(msg);
+            if (!added && maxPutWaitNanos > 0) {
+                long deadline = System.nanoTime() + maxPutWaitNanos;
+                do {
+                    LockSupport.parkNanos(PRODUCER_PARK_NANOS);
+                    added = ringBuffer.offer(msg);
+                } while (!added && System.nanoTime() - deadline < 0);
+            }
+        } else {
+            added = linkedQueue.add(msg);
+        }
+        if (added) {
+            produced.incrementAndGet();
+            if (!waitingConsumers.isEmpty()) {
+                waitingConsumers.forEach(LockSupport::unpark);
+            }
+        } else {
+            rejected.incrementAndGet();
+        }
+        return added;
+    }
+
+    int drainTo(Collection<? super TbQueueMsg> target, int maxElements) {
+        int drained = ringBuffer != null ? ringBuffer.drainTo(target, maxElements) : linkedQueue.drainTo(target, maxElements);
+        if (drained > 0) {
+            consumed.addAndGet(drained);
+        }
+        return drained;
+    }
+
+    int size() {
+        return ringBuffer != null ? ringBuffer.size() : linkedQueue.size();
+    }
+
+    void addWaitingConsumer(Thread thread) {
+        waitingConsumers.add(thread);
+    }
+
+    void removeWaitingConsumer(Thread thread) {
+        waitingConsumers.remove(thread);
+    }
+
+    long getProduced() {
+        return produced.get();
+    }
+
+    long getConsumed() {
+        return consumed.get();
+    }
+
+    long getRejected() {
+        return rejected.get();
+    }
+
+    void clear() {
+        if (ringBuffer != null) {
+            ringBuffer.clear();
+        } else {
+            linkedQueue.clear();
+        }
+    }
+
+}
@@ -16,10 +16,12 @@
 package org.thingsboard.server.queue.provider;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.thingsboard.server.common.msg.queue.ServiceType;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.gen.js.JsInvokeProtos;
 import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.queue.TbQueueConsumer;
@@ -30,6 +32,7 @@ import org.thingsboard.server.queue.common.TbProtoQueueMsg;
 import org.thingsboard.server.queue.discovery.PartitionService;
 import org.thingsboard.server.queue.discovery.TbServiceInfoProvider;
 import org.thingsboard.server.queue.memory.InMemoryStorage;
+import org.thingsboard.server.queue.memory.InMemoryStorageSettings;
 import org.thingsboard.server.queue.memory.InMemoryTbQueueConsumer;
 import org.thingsboard.server.queue.memory.InMemoryTbQueueProducer;
 import org.thingsboard.server.queue.settings.TbQueueCoreSettings;
@@ -38,6 +41,11 @@ import org.thingsboard.server.queue.settings.TbQueueTransportApiSettings;
 import org.thingsboard.server.queue.settings.TbQueueTransportNotificationSettings;
 import org.thingsboard.server.queue.settings.TbRuleEngineQueueConfiguration;
 
+import javax.annotation.PostConstruct;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 @Slf4j
 @Component
 @ConditionalOnExpression("'${queue.type:null}'=='in-memory' && '${service.type:null}'=='monolith'")
@@ -50,12 +58,24 @@ public class InMemoryMonolithQueueFactory implements TbCoreQueueFactory, TbRuleE
     private final TbQueueTransportApiSettings transportApiSettings;
     private final TbQueueTransportNotificationSettings transportNotificationSettings;
     private final InMemoryStorage storage;
+    private final StatsFactory statsFactory;
+    private final ConcurrentMap<String, AtomicInteger> lagGauges = new ConcurrentHashMap<>();
+
+    @Value("${queue.in_memory.ring_buffer.enabled:false}")
+    private boolean ringBufferEnabled;
+    @Value("${queue.in_memory.ring_buffer.capacity:16384}")
+    private int ringBufferCapacity;
+    @Value("${queue.in_memory.ring_buffer.max_put_wait_ms:1000}")
+    private long maxPutWaitMs;
+    @Value("${queue.in_memory.max_poll_records:1000}")
+    private int maxPollRecords;
 
     public InMemoryMonolithQueueFactory(PartitionService partitionService, TbQueueCoreSettings coreSettings,
                                         TbQueueRuleEngineSettings ruleEngineSettings,
                                         TbServiceInfoProvider serviceInfoProvider,
                                         TbQueueTransportApiSettings transportApiSettings,
-                                        TbQueueTransportNotificationSettings transportNotificationSettings) {
+                                        TbQueueTransportNotificationSettings transportNotificationSettings,
+                                        StatsFactory statsFactory) {
         this.partitionService = partitionService;
         this.coreSettings = coreSettings;
         this.serviceInfoProvider = serviceInfoProvider;
@@ -63,6 +83,17 @@ public class InMemoryMonolithQueueFactory implements TbCoreQueueFactory, TbRuleE
         this.transportApiSettings = transportApiSettings;
         this.transportNotificationSettings = transportNotificationSettings;
         this.storage = InMemoryStorage.getInstance();
+        this.statsFactory = statsFactory;
+    }
+
+    @PostConstruct
+    public void init() {
+        storage.configure(InMemoryStorageSettings.builder()
+                .ringBufferEnabled(ringBufferEnabled)
+                .ringBufferCapacity(ringBufferCapacity)
+                .maxPutWaitMs(maxPutWaitMs)
+                .maxPollRecords(maxPollRecords)
+                .build());
     }
 
     @Override
@@ -148,6 +179,8 @@ public class InMemoryMonolithQueueFactory implements TbCoreQueueFactory, TbRuleE
     @Scheduled(fixedRateString = "${queue.in_memory.stats.print-interval-ms:60000}")
     private void printInMemoryStats() {
         storage.printStats();
+        storage.getTopics().forEach(topic -> lagGauges.computeIfAbsent(topic,
+                t -> statsFactory.createGauge("inMemoryQueueLag", new AtomicInteger(), "topic", t)).set(storage.getLag(topic)));
     }
 
 
@@ -26,6 +26,7 @@ public class TbRuleEngineQueueConfiguration {
     private int partitions;
     private boolean consumerPerPartition;
     private long packProcessingTimeout;
+    private int maxPacksInFlight;
     private TbRuleEngineQueueSubmitStrategyConfiguration submitStrategy;
     private TbRuleEngineQueueAckStrategyConfiguration processingStrategy;
 
@@ -0,0 +1,42 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.discovery;
+
+import com.google.common.hash.HashFunction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.UUID;
+
+public class EntityIdHashFunctionTest {
+
+    @Test
+    public void testHashIsCompatibleWithGuava() {
+        for (String name : new String[]{"murmur3_32", "murmur3_128", "sha256"}) {
+            HashFunction guava = HashPartitionService.forName(name);
+            EntityIdHashFunction hashFunction = EntityIdHashFunction.forName(name);
+            for (int i = 0; i < 100000; i++) {
+                UUID id = i % 2 == 0 ? UUID.randomUUID() : new UUID(System.nanoTime(), i);
+                int expected = guava.newHasher()
+                        .putLong(id.getMostSignificantBits())
+                        .putLong(id.getLeastSignificantBits()).hash().asInt();
+                Assert.assertEquals(name + " " + id, expected, hashFunction.hash(id));
+            }
+            Assert.assertEquals(guava.newHasher().putLong(0L).putLong(0L).hash().asInt(), hashFunction.hash(new UUID(0L, 0L)));
+        }
+    }
+
+}
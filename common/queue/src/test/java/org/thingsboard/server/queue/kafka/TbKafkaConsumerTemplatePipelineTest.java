@@ -0,0 +1,205 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.kafka;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.queue.TbQueueAdmin;
+import org.thingsboard.server.queue.TbQueueMsg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TbKafkaConsumerTemplatePipelineTest {
+
+    private static final String TOPIC = "tb_rule_engine.main.0";
+    private static final TopicPartition PARTITION = new TopicPartition(TOPIC, 0);
+    private static final TopicPartition OTHER_PARTITION = new TopicPartition("tb_rule_engine.main.1", 0);
+
+    private volatile OffsetAndMetadata committedOnUnsubscribe;
+    private volatile ConsumerRebalanceListener rebalanceListener;
+    private MockConsumer<String, byte[]> mockConsumer;
+    private TbKafkaConsumerTemplate<TbQueueMsg> template;
+
+    @Before
+    public void before() {
+        Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        TbKafkaSettings settings = mock(TbKafkaSettings.class);
+        when(settings.toConsumerProps(TOPIC)).thenReturn(props);
+        when(settings.getConsumerPipelinePrefetchPacks()).thenReturn(1);
+        when(settings.getConsumerPipelineDecodeThreads()).thenReturn(2);
+
+        TbKafkaConsumerTemplate.TbKafkaConsumerTemplateBuilder<TbQueueMsg> builder = TbKafkaConsumerTemplate.builder();
+        template = builder.settings(settings).topic(TOPIC).clientId("test").groupId("test")
+                .decoder(msg -> msg).admin(mock(TbQueueAdmin.class)).pipelined(true).build();
+        ((Consumer<?, ?>) ReflectionTestUtils.getField(template, "consumer")).close();
+        mockConsumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST) {
+            @Override
+            public synchronized void subscribe(Collection<String> topics, ConsumerRebalanceListener listener) {
+                rebalanceListener = listener;
+                super.subscribe(topics, listener);
+            }
+
+            @Override
+            public synchronized void unsubscribe() {
+                committedOnUnsubscribe = committed(Collections.singleton(PARTITION)).get(PARTITION);
+                super.unsubscribe();
+            }
+        };
+        ReflectionTestUtils.setField(template, "consumer", mockConsumer);
+        mockConsumer.schedulePollTask(() -> {
+            mockConsumer.rebalance(Arrays.asList(PARTITION, OTHER_PARTITION));
+            mockConsumer.updateBeginningOffsets(Map.of(PARTITION, 0L, OTHER_PARTITION, 0L));
+            addRecords(0, 500);
+        });
+        mockConsumer.schedulePollTask(() -> addRecords(500, 1000));
+        template.subscribe();
+    }
+
+    @After
+    public void after() {
+        if (!template.isStopped()) {
+            template.unsubscribe();
+        }
+    }
+
+    @Test
+    public void givenPipelinedConsumer_whenPackProcessed_thenOnlyItsOffsetsCommitted() {
+        List<TbQueueMsg> first = pollUntilNotEmpty();
+        assertThat(first).hasSize(500);
+        assertThat(first.get(0).getKey()).isNotNull();
+        assertThat(new String(first.get(499).getData())).isEqualTo("499");
+
+        // the next pack is fetched while the current one is processed, but its offsets are not committed
+        await().atMost(10, TimeUnit.SECONDS).until(() -> mockConsumer.position(PARTITION) == 1000);
+        assertThat(committed()).isNull();
+
+        template.commit();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> committed() != null && committed().offset() == 500);
+
+        List<TbQueueMsg> second = pollUntilNotEmpty();
+        assertThat(second).hasSize(500);
+        assertThat(new String(second.get(0).getData())).isEqualTo("500");
+        template.commit();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> committed() != null && committed().offset() == 1000);
+    }
+
+    @Test
+    public void givenUncommittedPack_whenUnsubscribe_thenCommitOnlyProcessedPacks() {
+        assertThat(pollUntilNotEmpty()).hasSize(500);
+        template.commit();
+        assertThat(pollUntilNotEmpty()).hasSize(500);
+
+        template.unsubscribe();
+
+        assertThat(mockConsumer.closed()).isTrue();
+        assertThat(committedOnUnsubscribe.offset()).isEqualTo(500);
+    }
+
+    @Test
+    public void givenPrefetchedPack_whenPartitionRevoked_thenPackDroppedAndOffsetsNotCommitted() {
+        assertThat(pollUntilNotEmpty()).hasSize(500);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> mockConsumer.position(PARTITION) == 1000);
+
+        revoke(PARTITION);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> !mockConsumer.assignment().contains(PARTITION));
+
+        // the pack processed before the rebalance must not override the progress of the new owner
+        template.commit();
+        assertThat(template.poll(500)).isEmpty();
+        await().during(1, TimeUnit.SECONDS).atMost(5, TimeUnit.SECONDS).until(() -> committed() == null);
+
+        template.unsubscribe();
+        assertThat(committedOnUnsubscribe).isNull();
+    }
+
+    @Test
+    public void givenPrefetchedPack_whenOtherPartitionRevoked_thenPackFetchedAgain() {
+        assertThat(pollUntilNotEmpty()).hasSize(500);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> mockConsumer.position(PARTITION) == 1000);
+
+        revoke(OTHER_PARTITION);
+        // the records that are still assigned are fetched again starting from the dropped pack
+        mockConsumer.schedulePollTask(() -> addRecords(500, 1000));
+        template.commit();
+
+        List<TbQueueMsg> second = pollUntilNotEmpty();
+        assertThat(second).hasSize(500);
+        assertThat(new String(second.get(0).getData())).isEqualTo("500");
+        await().atMost(10, TimeUnit.SECONDS).until(() -> committed() != null && committed().offset() == 500);
+        template.commit();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> committed() != null && committed().offset() == 1000);
+    }
+
+    private void revoke(TopicPartition partition) {
+        mockConsumer.schedulePollTask(() -> {
+            List<TopicPartition> assignment = new ArrayList<>(mockConsumer.assignment());
+            assignment.remove(partition);
+            rebalanceListener.onPartitionsRevoked(Collections.singleton(partition));
+            mockConsumer.rebalance(assignment);
+            rebalanceListener.onPartitionsAssigned(Collections.emptyList());
+        });
+    }
+
+    private List<TbQueueMsg> pollUntilNotEmpty() {
+        for (int i = 0; i < 100; i++) {
+            List<TbQueueMsg> msgs = template.poll(100);
+            if (!msgs.isEmpty()) {
+                return msgs;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private OffsetAndMetadata committed() {
+        synchronized (mockConsumer) {
+            return mockConsumer.committed(Collections.singleton(PARTITION)).get(PARTITION);
+        }
+    }
+
+    private void addRecords(int from, int to) {
+        for (int i = from; i < to; i++) {
+            mockConsumer.addRecord(new ConsumerRecord<>(TOPIC, 0, i, UUID.randomUUID().toString(), Integer.toString(i).getBytes()));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.memory;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InMemoryRingBufferTest {
+
+    @Test
+    public void givenFullBuffer_whenOffer_thenRejected() {
+        InMemoryRingBuffer<Integer> buffer = new InMemoryRingBuffer<>(3);
+        assertThat(buffer.capacity()).isEqualTo(4);
+        for (int i = 0; i < 4; i++) {
+            assertThat(buffer.offer(i)).isTrue();
+        }
+        assertThat(buffer.offer(4)).isFalse();
+        assertThat(buffer.size()).isEqualTo(4);
+
+        List<Integer> drained = new ArrayList<>();
+        assertThat(buffer.drainTo(drained, 3)).isEqualTo(3);
+        assertThat(drained).containsExactly(0, 1, 2);
+        assertThat(buffer.offer(5)).isTrue();
+        assertThat(buffer.poll()).isEqualTo(3);
+        assertThat(buffer.poll()).isEqualTo(5);
+        assertThat(buffer.poll()).isNull();
+        assertThat(buffer.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void givenConcurrentProducers_whenDrain_thenNoMessagesLostOrDuplicated() throws InterruptedException {
+        int producers = 4;
+        int msgsPerProducer = 100_000;
+        InMemoryRingBuffer<Integer> buffer = new InMemoryRingBuffer<>(1024);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch latch = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            executor.submit(() -> {
+                for (int i = 0; i < msgsPerProducer; i++) {
+                    while (!buffer.offer(producer * msgsPerProducer + i)) {
+                        Thread.yield();
+                    }
+                }
+                latch.countDown();
+            });
+        }
+        Set<Integer> received = new HashSet<>();
+        List<Integer> batch = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (received.size() < producers * msgsPerProducer && System.currentTimeMillis() < deadline) {
+            batch.clear();
+            buffer.drainTo(batch, 500);
+            received.addAll(batch);
+        }
+        assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue();
+        executor.shutdownNow();
+        assertThat(received).hasSize(producers * msgsPerProducer);
+        assertThat(buffer.size()).isEqualTo(0);
+    }
+
+}
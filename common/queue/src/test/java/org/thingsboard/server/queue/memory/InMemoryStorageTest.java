@@ -20,6 +20,12 @@ import org.junit.Before;
 import org.junit.Test;
 import org.thingsboard.server.queue.TbQueueMsg;
 
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 
@@ -35,6 +41,7 @@ public class InMemoryStorageTest {
     @After
     public void tearDown() {
         storage.cleanup();
+        storage.configure(InMemoryStorageSettings.DEFAULT);
     }
 
     @Test
@@ -51,4 +58,36 @@ public class InMemoryStorageTest {
         storage.cleanup();
         assertThat(storage.getLagTotal()).isEqualTo(0);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void givenRingBuffer_whenCapacityExceeded_thenPutRejected() {
+        storage.configure(InMemoryStorageSettings.builder().ringBufferEnabled(true).ringBufferCapacity(2).maxPutWaitMs(0).build());
+        assertThat(storage.put("main", mock(TbQueueMsg.class))).isTrue();
+        assertThat(storage.put("main", mock(TbQueueMsg.class))).isTrue();
+        assertThat(storage.put("main", mock(TbQueueMsg.class))).isFalse();
+        assertThat(storage.getLag("main")).isEqualTo(2);
+    }
+
+    @Test
+    public void givenWaitingConsumer_whenPut_thenConsumerWokenUp() throws Exception {
+        TbQueueMsg msg = mock(TbQueueMsg.class);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<TbQueueMsg>> future = executor.submit(() -> storage.get(List.of("main", "hp"), TimeUnit.SECONDS.toMillis(30)));
+            Thread.sleep(100);
+            long start = System.nanoTime();
+            storage.put("hp", msg);
+            assertThat(future.get(5, TimeUnit.SECONDS)).containsExactly(msg);
+            assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(5);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenEmptyTopics_whenGet_thenWaitForDuration() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        assertThat(storage.<TbQueueMsg>get(List.of("main"), 50)).isEmpty();
+        assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(50);
+    }
+}
@@ -102,6 +102,11 @@ public class DefaultStatsFactory implements StatsFactory {
         return timerBuilder.register(meterRegistry);
     }
 
+    @Override
+    public void removeMeter(Meter meter) {
+        meterRegistry.remove(meter);
+    }
+
     private static class StubCounter implements Counter {
         @Override
         public void increment(double amount) {
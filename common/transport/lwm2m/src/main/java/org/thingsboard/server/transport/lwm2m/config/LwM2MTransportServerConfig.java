@@ -69,6 +69,10 @@ public class LwM2MTransportServerConfig implements LwM2MSecureServerConfig {
     @Value("${transport.lwm2m.clean_period_in_sec:}")
     private int cleanPeriodInSec;
 
+    @Getter
+    @Value("${transport.lwm2m.registration_store.lock_free:false}")
+    private boolean registrationStoreLockFree;
+
     @Getter
     @Value("${transport.lwm2m.server.id:}")
     private Integer id;
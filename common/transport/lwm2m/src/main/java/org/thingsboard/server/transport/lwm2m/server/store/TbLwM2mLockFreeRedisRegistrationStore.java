@@ -0,0 +1,688 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.transport.lwm2m.server.store;
+
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.californium.core.coap.Token;
+import org.eclipse.californium.core.observe.ObservationStoreException;
+import org.eclipse.californium.elements.EndpointContext;
+import org.eclipse.leshan.core.Destroyable;
+import org.eclipse.leshan.core.Startable;
+import org.eclipse.leshan.core.Stoppable;
+import org.eclipse.leshan.core.californium.ObserveUtil;
+import org.eclipse.leshan.core.observation.Observation;
+import org.eclipse.leshan.core.observation.SingleObservation;
+import org.eclipse.leshan.core.request.Identity;
+import org.eclipse.leshan.core.util.NamedThreadFactory;
+import org.eclipse.leshan.core.util.Validate;
+import org.eclipse.leshan.server.californium.registration.CaliforniumRegistrationStore;
+import org.eclipse.leshan.server.redis.serialization.IdentitySerDes;
+import org.eclipse.leshan.server.redis.serialization.ObservationSerDes;
+import org.eclipse.leshan.server.redis.serialization.RegistrationSerDes;
+import org.eclipse.leshan.server.registration.Deregistration;
+import org.eclipse.leshan.server.registration.ExpirationListener;
+import org.eclipse.leshan.server.registration.Registration;
+import org.eclipse.leshan.server.registration.RegistrationUpdate;
+import org.eclipse.leshan.server.registration.UpdatedRegistration;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Redis registration store that does not use distributed locks.
+ * Every change is applied by a Lua script, so it is atomic on the Redis side. Registration updates and removals read the registration,
+ * apply the change locally and store it with a compare-and-set script, retrying if the registration was changed concurrently.
+ * All endpoints are kept in a set, so the registrations are enumerated without scanning the key space.
+ * Scripts touch keys of different endpoints, so the store supports standalone and sentinel Redis, but not Redis Cluster.
+ */
+@Slf4j
+public class TbLwM2mLockFreeRedisRegistrationStore implements CaliforniumRegistrationStore, Startable, Stoppable, Destroyable {
+
+    public static final long DEFAULT_CLEAN_PERIOD = 60;
+    public static final int DEFAULT_CLEAN_LIMIT = 500;
+    public static final long DEFAULT_GRACE_PERIOD = 0;
+
+    // Same keys as in TbLwM2mRedisRegistrationStore, so the stores may be switched without losing registrations
+    private static final String REG_EP = "REG:EP:"; // (Endpoint => Registration)
+    private static final String REG_EP_REGID_IDX = "EP:REGID:"; // secondary index key (Registration ID => Endpoint)
+    private static final String REG_EP_ADDR_IDX = "EP:ADDR:"; // secondary index key (Socket Address => Endpoint)
+    private static final String REG_EP_IDENTITY = "EP:IDENTITY:"; // secondary index key (Identity => Endpoint)
+    private static final byte[] REG_EPS = "REG:EPS".getBytes(UTF_8); // a set of all registered endpoints
+    private static final byte[] OBS_TKN = "OBS:TKN:".getBytes(UTF_8);
+    private static final String OBS_TKNS_REGID_IDX = "TKNS:REGID:"; // secondary index (token list by registration)
+    private static final byte[] EXP_EP = "EXP:EP".getBytes(UTF_8); // a sorted set used for registration expiration
+
+    private static final int MAX_CAS_ATTEMPTS = 100;
+    private static final int MGET_BATCH_SIZE = 500;
+
+    // KEYS: endpoint, regId idx, addr idx, identity idx, expiration, endpoints; ARGV: registration, endpoint, expiration ts
+    private static final RedisScript<byte[]> ADD_REGISTRATION = RedisScript.of(
+            "local old = redis.call('GET', KEYS[1]) " +
+                    "redis.call('SET', KEYS[1], ARGV[1]) " +
+                    "redis.call('SET', KEYS[2], ARGV[2]) " +
+                    "redis.call('SET', KEYS[3], ARGV[2]) " +
+                    "redis.call('SET', KEYS[4], ARGV[2]) " +
+                    "redis.call('ZADD', KEYS[5], ARGV[3], ARGV[2]) " +
+                    "redis.call('SADD', KEYS[6], ARGV[2]) " +
+                    "return old", byte[].class);
+
+    // KEYS: endpoint, addr idx, expiration; ARGV: expected registration, new registration, endpoint, expiration ts
+    private static final RedisScript<Long> UPDATE_REGISTRATION = RedisScript.of(
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end " +
+                    "redis.call('SET', KEYS[1], ARGV[2]) " +
+                    "redis.call('SET', KEYS[2], ARGV[3]) " +
+                    "redis.call('ZADD', KEYS[3], ARGV[4], ARGV[3]) " +
+                    "return 1", Long.class);
+
+    // KEYS: endpoint, regId idx, addr idx, identity idx, expiration, endpoints, observation tokens;
+    // ARGV: expected registration, endpoint, observation key prefix. Returns {1, removed observations...} or {0}
+    private static final RedisScript<List> REMOVE_REGISTRATION = RedisScript.of(
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return {0} end " +
+                    "redis.call('DEL', KEYS[1], KEYS[2]) " +
+                    "if redis.call('GET', KEYS[3]) == ARGV[2] then redis.call('DEL', KEYS[3]) end " +
+                    "if redis.call('GET', KEYS[4]) == ARGV[2] then redis.call('DEL', KEYS[4]) end " +
+                    "redis.call('ZREM', KEYS[5], ARGV[2]) " +
+                    "redis.call('SREM', KEYS[6], ARGV[2]) " +
+                    "local result = {1} " +
+                    "for _, token in ipairs(redis.call('LRANGE', KEYS[7], 0, -1)) do " +
+                    "  local obs = redis.call('GET', ARGV[3] .. token) " +
+                    "  if obs then table.insert(result, obs) redis.call('DEL', ARGV[3] .. token) end " +
+                    "end " +
+                    "redis.call('DEL', KEYS[7]) " +
+                    "return result", List.class);
+
+    // KEYS: observation tokens; ARGV: observation key prefix. Returns removed observations
+    private static final RedisScript<List> REMOVE_ALL_OBSERVATIONS = RedisScript.of(
+            "local result = {} " +
+                    "for _, token in ipairs(redis.call('LRANGE', KEYS[1], 0, -1)) do " +
+                    "  local obs = redis.call('GET', ARGV[1] .. token) " +
+                    "  if obs then table.insert(result, obs) redis.call('DEL', ARGV[1] .. token) end " +
+                    "end " +
+                    "redis.call('DEL', KEYS[1]) " +
+                    "return result", List.class);
+
+    // KEYS: observation, observation tokens; ARGV: token
+    private static final RedisScript<Long> REMOVE_OBSERVATION = RedisScript.of(
+            "if redis.call('DEL', KEYS[1]) > 0 then redis.call('LREM', KEYS[2], 0, ARGV[1]) return 1 end " +
+                    "return 0", Long.class);
+
+    // KEYS: regId idx, observation, observation tokens; ARGV: observation, if absent flag, token.
+    // Returns {-1} if there is no registration, {0, existing} if absent flag is set and the observation exists, {1[, previous]} otherwise
+    private static final RedisScript<List> ADD_OBSERVATION = RedisScript.of(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return {-1} end " +
+                    "local previous = redis.call('GET', KEYS[2]) " +
+                    "if ARGV[2] == '1' and previous then return {0, previous} end " +
+                    "redis.call('SET', KEYS[2], ARGV[1]) " +
+                    "redis.call('LPUSH', KEYS[3], ARGV[3]) " +
+                    "if previous then return {1, previous} end " +
+                    "return {1}", List.class);
+
+    // KEYS: index; ARGV: expected value
+    private static final RedisScript<Long> DELETE_IF_EQUALS = RedisScript.of(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+                    "return 0", Long.class);
+
+    private final RedisConnectionFactory connectionFactory;
+    private final ScheduledExecutorService schedExecutor;
+    private final long cleanPeriod; // in seconds
+    private final int cleanLimit; // maximum number to clean in a clean period
+    private final long gracePeriod; // in seconds
+
+    private ExpirationListener expirationListener;
+    private ScheduledFuture<?> cleanerTask;
+    private boolean started = false;
+
+    public TbLwM2mLockFreeRedisRegistrationStore(RedisConnectionFactory connectionFactory) {
+        this(connectionFactory, DEFAULT_CLEAN_PERIOD, DEFAULT_GRACE_PERIOD, DEFAULT_CLEAN_LIMIT);
+    }
+
+    public TbLwM2mLockFreeRedisRegistrationStore(RedisConnectionFactory connectionFactory, long cleanPeriodInSec, long lifetimeGracePeriodInSec, int cleanLimit) {
+        this.connectionFactory = connectionFactory;
+        this.schedExecutor = Executors.newScheduledThreadPool(1,
+                new NamedThreadFactory(String.format("RedisRegistrationStore Cleaner (%ds)", cleanPeriodInSec)));
+        this.cleanPeriod = cleanPeriodInSec;
+        this.cleanLimit = cleanLimit;
+        this.gracePeriod = lifetimeGracePeriodInSec;
+    }
+
+    /* *************** Leshan Registration API **************** */
+
+    @Override
+    public Deregistration addRegistration(Registration registration) {
+        try (var connection = connectionFactory.getConnection()) {
+            byte[] endpoint = registration.getEndpoint().getBytes(UTF_8);
+            byte[] old = eval(connection, ADD_REGISTRATION, ReturnType.VALUE, 6,
+                    toEndpointKey(endpoint), toRegIdKey(registration.getId()), toRegAddrKey(registration.getSocketAddress()),
+                    toRegIdentityKey(registration.getIdentity()), EXP_EP, REG_EPS,
+                    serializeReg(registration), endpoint, toExpirationArg(registration));
+            if (old == null) {
+                return null;
+            }
+            Registration oldRegistration = deserializeReg(old);
+            // remove old secondary indexes, unless they were already taken by the other registrations
+            if (!registration.getId().equals(oldRegistration.getId())) {
+                deleteIfEquals(connection, toRegIdKey(oldRegistration.getId()), endpoint);
+            }
+            if (!oldRegistration.getSocketAddress().equals(registration.getSocketAddress())) {
+                deleteIfEquals(connection, toRegAddrKey(oldRegistration.getSocketAddress()), endpoint);
+            }
+            if (!oldRegistration.getIdentity().equals(registration.getIdentity())) {
+                deleteIfEquals(connection, toRegIdentityKey(oldRegistration.getIdentity()), endpoint);
+            }
+            return new Deregistration(oldRegistration, removeAllObservations(connection, oldRegistration.getId()));
+        }
+    }
+
+    @Override
+    public UpdatedRegistration updateRegistration(RegistrationUpdate update) {
+        try (var connection = connectionFactory.getConnection()) {
+            for (int attempt = 0; attempt < MAX_CAS_ATTEMPTS; attempt++) {
+                byte[] ep = connection.get(toRegIdKey(update.getRegistrationId()));
+                if (ep == null) {
+                    return null;
+                }
+                byte[] data = connection.get(toEndpointKey(ep));
+                if (data == null) {
+                    return null;
+                }
+                Registration r = deserializeReg(data);
+                if (!r.getId().equals(update.getRegistrationId())) {
+                    return null;
+                }
+                Registration updatedRegistration = update.update(r);
+                Long updated = eval(connection, UPDATE_REGISTRATION, ReturnType.INTEGER, 3,
+                        toEndpointKey(ep), toRegAddrKey(updatedRegistration.getSocketAddress()), EXP_EP,
+                        data, serializeReg(updatedRegistration), ep, toExpirationArg(updatedRegistration));
+                if (updated != null && updated > 0) {
+                    if (!r.getSocketAddress().equals(updatedRegistration.getSocketAddress())) {
+                        deleteIfEquals(connection, toRegAddrKey(r.getSocketAddress()), ep);
+                    }
+                    if (!r.getIdentity().equals(updatedRegistration.getIdentity())) {
+                        deleteIfEquals(connection, toRegIdentityKey(r.getIdentity()), ep);
+                    }
+                    return new UpdatedRegistration(r, updatedRegistration);
+                }
+                log.trace("[{}] Registration was changed concurrently, retrying update", update.getRegistrationId());
+            }
+            log.warn("[{}] Failed to update registration after {} attempts", update.getRegistrationId(), MAX_CAS_ATTEMPTS);
+            return null;
+        }
+    }
+
+    @Override
+    public Registration getRegistration(String registrationId) {
+        try (var connection = connectionFactory.getConnection()) {
+            return getRegistration(connection, registrationId);
+        }
+    }
+
+    @Override
+    public Registration getRegistrationByEndpoint(String endpoint) {
+        Validate.notNull(endpoint);
+        try (var connection = connectionFactory.getConnection()) {
+            byte[] data = connection.get(toEndpointKey(endpoint.getBytes(UTF_8)));
+            return data != null ? deserializeReg(data) : null;
+        }
+    }
+
+    @Override
+    public Registration getRegistrationByAdress(InetSocketAddress address) {
+        Validate.notNull(address);
+        try (var connection = connectionFactory.getConnection()) {
+            return getRegistrationByIndex(connection, toRegAddrKey(address));
+        }
+    }
+
+    @Override
+    public Registration getRegistrationByIdentity(Identity identity) {
+        Validate.notNull(identity);
+        try (var connection = connectionFactory.getConnection()) {
+            return getRegistrationByIndex(connection, toRegIdentityKey(identity));
+        }
+    }
+
+    @Override
+    public Iterator<Registration> getAllRegistrations() {
+        try (var connection = connectionFactory.getConnection()) {
+            Set<byte[]> endpoints = connection.sMembers(REG_EPS);
+            if (endpoints == null || endpoints.isEmpty()) {
+                return Collections.emptyIterator();
+            }
+            List<Registration> result = new ArrayList<>(endpoints.size());
+            List<byte[]> keys = new ArrayList<>(MGET_BATCH_SIZE);
+            for (byte[] endpoint : endpoints) {
+                keys.add(toEndpointKey(endpoint));
+                if (keys.size() >= MGET_BATCH_SIZE) {
+                    addRegistrations(connection, keys, result);
+                    keys.clear();
+                }
+            }
+            addRegistrations(connection, keys, result);
+            return result.iterator();
+        }
+    }
+
+    private void addRegistrations(RedisConnection connection, List<byte[]> keys, List<Registration> result) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        List<byte[]> values = connection.mGet(keys.toArray(new byte[0][]));
+        if (values != null) {
+            for (byte[] value : values) {
+                if (value != null) {
+                    result.add(deserializeReg(value));
+                }
+            }
+        }
+    }
+
+    @Override
+    public Deregistration removeRegistration(String registrationId) {
+        try (var connection = connectionFactory.getConnection()) {
+            return removeRegistration(connection, registrationId, false);
+        }
+    }
+
+    private Deregistration removeRegistration(RedisConnection connection, String registrationId, boolean removeOnlyIfNotAlive) {
+        for (int attempt = 0; attempt < MAX_CAS_ATTEMPTS; attempt++) {
+            byte[] ep = connection.get(toRegIdKey(registrationId));
+            if (ep == null) {
+                return null;
+            }
+            byte[] data = connection.get(toEndpointKey(ep));
+            if (data == null) {
+                return null;
+            }
+            Registration r = deserializeReg(data);
+            if (!r.getId().equals(registrationId) || (removeOnlyIfNotAlive && r.isAlive(gracePeriod))) {
+                return null;
+            }
+            List<Object> result = eval(connection, REMOVE_REGISTRATION, ReturnType.MULTI, 7,
+                    toEndpointKey(ep), toRegIdKey(registrationId), toRegAddrKey(r.getSocketAddress()), toRegIdentityKey(r.getIdentity()),
+                    EXP_EP, REG_EPS, toKey(OBS_TKNS_REGID_IDX, registrationId),
+                    data, ep, OBS_TKN);
+            if (result != null && !result.isEmpty() && ((Long) result.get(0)) > 0) {
+                return new Deregistration(r, toObservations(result.subList(1, result.size())));
+            }
+            log.trace("[{}] Registration was changed concurrently, retrying removal", registrationId);
+        }
+        log.warn("[{}] Failed to remove registration after {} attempts", registrationId, MAX_CAS_ATTEMPTS);
+        return null;
+    }
+
+    private Registration getRegistration(RedisConnection connection, String registrationId) {
+        return getRegistrationByIndex(connection, toRegIdKey(registrationId));
+    }
+
+    private Registration getRegistrationByIndex(RedisConnection connection, byte[] indexKey) {
+        byte[] ep = connection.get(indexKey);
+        if (ep == null) {
+            return null;
+        }
+        byte[] data = connection.get(toEndpointKey(ep));
+        return data != null ? deserializeReg(data) : null;
+    }
+
+    /* *************** Leshan Observation API **************** */
+
+    /*
+     * The observation is not persisted here, it is done by the Californium layer (in the implementation of the
+     * org.eclipse.californium.core.observe.ObservationStore#add method)
+     */
+    @Override
+    public Collection<Observation> addObservation(String registrationId, Observation observation) {
+        List<Observation> removed = new ArrayList<>();
+        try (var connection = connectionFactory.getConnection()) {
+            if (!connection.exists(toRegIdKey(registrationId))) {
+                return null;
+            }
+            // cancel existing observations for the same path and registration id.
+            for (Observation obs : getObservations(connection, registrationId)) {
+                if (((SingleObservation) observation).getPath().equals(((SingleObservation) obs).getPath())
+                        && !Arrays.equals(observation.getId(), obs.getId())
+                        && removeObservation(connection, registrationId, obs.getId())) {
+                    removed.add(obs);
+                }
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public Observation removeObservation(String registrationId, byte[] observationId) {
+        try (var connection = connectionFactory.getConnection()) {
+            Observation observation = build(get(connection, observationId));
+            if (observation != null && registrationId.equals(observation.getRegistrationId())
+                    && removeObservation(connection, registrationId, observationId)) {
+                return observation;
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public Observation getObservation(String registrationId, byte[] observationId) {
+        return build(get(new Token(observationId)));
+    }
+
+    @Override
+    public Collection<Observation> getObservations(String registrationId) {
+        try (var connection = connectionFactory.getConnection()) {
+            return getObservations(connection, registrationId);
+        }
+    }
+
+    private Collection<Observation> getObservations(RedisConnection connection, String registrationId) {
+        Collection<Observation> result = new ArrayList<>();
+        List<byte[]> tokens = connection.lRange(toKey(OBS_TKNS_REGID_IDX, registrationId), 0, -1);
+        if (tokens != null) {
+            for (byte[] token : tokens) {
+                byte[] obs = connection.get(toKey(OBS_TKN, token));
+                if (obs != null) {
+                    result.add(build(deserializeObs(obs)));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Collection<Observation> removeObservations(String registrationId) {
+        try (var connection = connectionFactory.getConnection()) {
+            if (!connection.exists(toRegIdKey(registrationId))) {
+                return Collections.emptyList();
+            }
+            return removeAllObservations(connection, registrationId);
+        }
+    }
+
+    /* *************** Californium ObservationStore API **************** */
+
+    @Override
+    public org.eclipse.californium.core.observe.Observation putIfAbsent(Token token, org.eclipse.californium.core.observe.Observation obs) throws ObservationStoreException {
+        return add(obs, true);
+    }
+
+    @Override
+    public org.eclipse.californium.core.observe.Observation put(Token token, org.eclipse.californium.core.observe.Observation obs) throws ObservationStoreException {
+        return add(obs, false);
+    }
+
+    private org.eclipse.californium.core.observe.Observation add(org.eclipse.californium.core.observe.Observation obs, boolean ifAbsent) throws ObservationStoreException {
+        ObserveUtil.validateCoapObservation(obs);
+        String registrationId = ObserveUtil.extractRegistrationId(obs);
+        byte[] token = obs.getRequest().getToken().getBytes();
+        try (var connection = connectionFactory.getConnection()) {
+            List<Object> result = eval(connection, ADD_OBSERVATION, ReturnType.MULTI, 3,
+                    toRegIdKey(registrationId), toKey(OBS_TKN, token), toKey(OBS_TKNS_REGID_IDX, registrationId),
+                    serializeObs(obs), (ifAbsent ? "1" : "0").getBytes(UTF_8), token);
+            long status = (Long) result.get(0);
+            if (status < 0) {
+                throw new ObservationStoreException("no registration for this Id");
+            }
+            if (result.size() < 2) {
+                return null;
+            }
+            org.eclipse.californium.core.observe.Observation previousObservation = deserializeObs((byte[]) result.get(1));
+            if (status > 0) {
+                log.warn("Token collision ? observation from request [{}] will be replaced by observation from request [{}] ",
+                        previousObservation.getRequest(), obs.getRequest());
+            }
+            return previousObservation;
+        }
+    }
+
+    @Override
+    public void remove(Token token) {
+        try (var connection = connectionFactory.getConnection()) {
+            org.eclipse.californium.core.observe.Observation obs = get(connection, token.getBytes());
+            if (obs != null) {
+                removeObservation(connection, ObserveUtil.extractRegistrationId(obs), token.getBytes());
+            }
+        }
+    }
+
+    @Override
+    public org.eclipse.californium.core.observe.Observation get(Token token) {
+        try (var connection = connectionFactory.getConnection()) {
+            return get(connection, token.getBytes());
+        }
+    }
+
+    @Override
+    public void setContext(Token token, EndpointContext correlationContext) {
+        // In Leshan we always set context when we send the request, so this should not be needed to implement this.
+    }
+
+    private org.eclipse.californium.core.observe.Observation get(RedisConnection connection, byte[] token) {
+        byte[] obs = connection.get(toKey(OBS_TKN, token));
+        return obs != null ? deserializeObs(obs) : null;
+    }
+
+    private boolean removeObservation(RedisConnection connection, String registrationId, byte[] token) {
+        Long removed = eval(connection, REMOVE_OBSERVATION, ReturnType.INTEGER, 2,
+                toKey(OBS_TKN, token), toKey(OBS_TKNS_REGID_IDX, registrationId), token);
+        return removed != null && removed > 0;
+    }
+
+    private Collection<Observation> removeAllObservations(RedisConnection connection, String registrationId) {
+        List<Object> removed = eval(connection, REMOVE_ALL_OBSERVATIONS, ReturnType.MULTI, 1,
+                toKey(OBS_TKNS_REGID_IDX, registrationId), OBS_TKN);
+        return removed != null ? toObservations(removed) : Collections.emptyList();
+    }
+
+    private Collection<Observation> toObservations(List<Object> serialized) {
+        Collection<Observation> result = new ArrayList<>(serialized.size());
+        for (Object obs : serialized) {
+            result.add(build(deserializeObs((byte[]) obs)));
+        }
+        return result;
+    }
+
+    /* *************** Redis utility functions **************** */
+
+    private void deleteIfEquals(RedisConnection connection, byte[] indexKey, byte[] endpoint) {
+        eval(connection, DELETE_IF_EQUALS, ReturnType.INTEGER, 1, indexKey, endpoint);
+    }
+
+    /**
+     * Executes the cached script by its SHA and loads it on the first use or after the script cache of the Redis server was flushed.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T eval(RedisConnection connection, RedisScript<?> script, ReturnType returnType, int numKeys, byte[]... keysAndArgs) {
+        try {
+            return (T) connection.evalSha(script.getSha1(), returnType, numKeys, keysAndArgs);
+        } catch (RuntimeException e) {
+            if (!isNoScriptError(e)) {
+                throw e;
+            }
+            return (T) connection.eval(script.getScriptAsString().getBytes(UTF_8), returnType, numKeys, keysAndArgs);
+        }
+    }
+
+    private static boolean isNoScriptError(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] toKey(byte[] prefix, byte[] key) {
+        byte[] result = new byte[prefix.length + key.length];
+        System.arraycopy(prefix, 0, result, 0, prefix.length);
+        System.arraycopy(key, 0, result, prefix.length, key.length);
+        return result;
+    }
+
+    private static byte[] toKey(String prefix, String key) {
+        return (prefix + key).getBytes(UTF_8);
+    }
+
+    private static byte[] toRegIdKey(String registrationId) {
+        return toKey(REG_EP_REGID_IDX, registrationId);
+    }
+
+    private static byte[] toRegAddrKey(InetSocketAddress addr) {
+        return toKey(REG_EP_ADDR_IDX, addr.getAddress().toString() + ":" + addr.getPort());
+    }
+
+    private static byte[] toRegIdentityKey(Identity identity) {
+        return toKey(REG_EP_IDENTITY, IdentitySerDes.serialize(identity).toString());
+    }
+
+    private static byte[] toEndpointKey(byte[] endpoint) {
+        return toKey(REG_EP.getBytes(UTF_8), endpoint);
+    }
+
+    private byte[] toExpirationArg(Registration registration) {
+        return Long.toString(registration.getExpirationTimeStamp(gracePeriod)).getBytes(UTF_8);
+    }
+
+    private static byte[] serializeReg(Registration registration) {
+        return RegistrationSerDes.bSerialize(registration);
+    }
+
+    private static Registration deserializeReg(byte[] data) {
+        return RegistrationSerDes.deserialize(data);
+    }
+
+    private static byte[] serializeObs(org.eclipse.californium.core.observe.Observation obs) {
+        return ObservationSerDes.serialize(obs);
+    }
+
+    private static org.eclipse.californium.core.observe.Observation deserializeObs(byte[] data) {
+        return ObservationSerDes.deserialize(data);
+    }
+
+    private static Observation build(org.eclipse.californium.core.observe.Observation cfObs) {
+        return cfObs != null ? ObserveUtil.createLwM2mObservation(cfObs.getRequest()) : null;
+    }
+
+    /* *************** Expiration handling **************** */
+
+    @Override
+    public synchronized void start() {
+        if (!started) {
+            started = true;
+            rebuildEndpointsIndex();
+            cleanerTask = schedExecutor.scheduleAtFixedRate(new Cleaner(), cleanPeriod, cleanPeriod, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Registrations stored by older versions of the lock based store are not in the endpoints set, so they are added on every start.
+     * The lock based store keeps the set up to date, so the stores may run side by side.
+     */
+    private void rebuildEndpointsIndex() {
+        try (var connection = connectionFactory.getConnection()) {
+            byte[] prefix = REG_EP.getBytes(UTF_8);
+            int count = 0;
+            try (Cursor<byte[]> scan = connection.scan(ScanOptions.scanOptions().count(1000).match(REG_EP + "*").build())) {
+                while (scan.hasNext()) {
+                    byte[] key = scan.next();
+                    connection.sAdd(REG_EPS, Arrays.copyOfRange(key, prefix.length, key.length));
+                    count++;
+                }
+            }
+            log.info("Indexed {} existing registrations", count);
+        } catch (Exception e) {
+            log.warn("Failed to rebuild the endpoints index", e);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (started) {
+            started = false;
+            if (cleanerTask != null) {
+                cleanerTask.cancel(false);
+                cleanerTask = null;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        started = false;
+        schedExecutor.shutdownNow();
+        try {
+            schedExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            log.warn("Destroying RedisRegistrationStore was interrupted.", e);
+        }
+    }
+
+    private class Cleaner implements Runnable {
+
+        @Override
+        public void run() {
+            try (var connection = connectionFactory.getConnection()) {
+                Set<byte[]> endpointsExpired = connection.zRangeByScore(EXP_EP, Double.NEGATIVE_INFINITY,
+                        System.currentTimeMillis(), 0, cleanLimit);
+                if (endpointsExpired == null) {
+                    return;
+                }
+                for (byte[] endpoint : endpointsExpired) {
+                    byte[] data = connection.get(toEndpointKey(endpoint));
+                    if (data == null) {
+                        connection.zRem(EXP_EP, endpoint);
+                        connection.sRem(REG_EPS, endpoint);
+                        continue;
+                    }
+                    Registration r = deserializeReg(data);
+                    if (!r.isAlive(gracePeriod)) {
+                        Deregistration dereg = removeRegistration(connection, r.getId(), true);
+                        if (dereg != null && expirationListener != null) {
+                            expirationListener.registrationExpired(dereg.getRegistration(), dereg.getObservations());
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("Unexpected Exception while registration cleaning", e);
+            }
+        }
+    }
+
+    @Override
+    public void setExpirationListener(ExpirationListener listener) {
+        expirationListener = listener;
+    }
+
+    @Override
+    public void setExecutor(ScheduledExecutorService executor) {
+        // TODO should we reuse californium executor ?
+    }
+}
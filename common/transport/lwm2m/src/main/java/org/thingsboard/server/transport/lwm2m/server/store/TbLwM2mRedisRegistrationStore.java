@@ -78,6 +78,7 @@ public class TbLwM2mRedisRegistrationStore implements CaliforniumRegistrationSto
     private static final String REG_EP_ADDR_IDX = "EP:ADDR:"; // secondary index key (Socket Address => Endpoint)
     private static final String REG_EP_IDENTITY = "EP:IDENTITY:"; // secondary index key (Identity => Endpoint)
     private static final String LOCK_EP = "LOCK:EP:";
+    private static final byte[] REG_EPS = "REG:EPS".getBytes(UTF_8); // a set of all registered endpoints, used by the lock free store
     private static final byte[] OBS_TKN = "OBS:TKN:".getBytes(UTF_8);
     private static final String OBS_TKNS_REGID_IDX = "TKNS:REGID:"; // secondary index (token list by registration)
     private static final byte[] EXP_EP = "EXP:EP".getBytes(UTF_8); // a sorted set used for registration expiration
@@ -161,6 +162,7 @@ public class TbLwM2mRedisRegistrationStore implements CaliforniumRegistrationSto
                 connection.set(addr_idx, registration.getEndpoint().getBytes(UTF_8));
                 byte[] identity_idx = toRegIdentityKey(registration.getIdentity());
                 connection.set(identity_idx, registration.getEndpoint().getBytes(UTF_8));
+                connection.sAdd(REG_EPS, registration.getEndpoint().getBytes(UTF_8));
 
                 // Add or update expiration
                 addOrUpdateExpiration(connection, registration);
@@ -351,6 +353,7 @@ public class TbLwM2mRedisRegistrationStore implements CaliforniumRegistrationSto
                 long nbRemoved = connection.del(toRegIdKey(r.getId()));
                 if (nbRemoved > 0) {
                     connection.del(toEndpointKey(r.getEndpoint()));
+                    connection.sRem(REG_EPS, r.getEndpoint().getBytes(UTF_8));
                     Collection<Observation> obsRemoved = unsafeRemoveAllObservations(connection, r.getId());
                     removeAddrIndex(connection, r);
                     removeIdentityIndex(connection, r);
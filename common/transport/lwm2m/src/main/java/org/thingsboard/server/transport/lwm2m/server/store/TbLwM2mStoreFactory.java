@@ -22,6 +22,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.stereotype.Component;
 import org.thingsboard.server.cache.TBRedisCacheConfiguration;
+import org.thingsboard.server.cache.TBRedisClusterConfiguration;
 import org.thingsboard.server.queue.util.TbLwM2mTransportComponent;
 import org.thingsboard.server.transport.lwm2m.config.LwM2MTransportServerConfig;
 import org.thingsboard.server.transport.lwm2m.secure.LwM2mCredentialsSecurityInfoValidator;
@@ -39,8 +40,17 @@ public class TbLwM2mStoreFactory {
 
     @Bean
     private CaliforniumRegistrationStore registrationStore() {
-        return redisConfiguration.isPresent() ?
-                new TbLwM2mRedisRegistrationStore(getConnectionFactory()) : new InMemoryRegistrationStore(config.getCleanPeriodInSec());
+        if (redisConfiguration.isEmpty()) {
+            return new InMemoryRegistrationStore(config.getCleanPeriodInSec());
+        }
+        if (config.isRegistrationStoreLockFree()) {
+            if (redisConfiguration.get() instanceof TBRedisClusterConfiguration) {
+                throw new IllegalStateException("Lock free LwM2M registration store does not support Redis Cluster. " +
+                        "Set 'transport.lwm2m.registration_store.lock_free' to false");
+            }
+            return new TbLwM2mLockFreeRedisRegistrationStore(getConnectionFactory());
+        }
+        return new TbLwM2mRedisRegistrationStore(getConnectionFactory());
     }
 
     @Bean
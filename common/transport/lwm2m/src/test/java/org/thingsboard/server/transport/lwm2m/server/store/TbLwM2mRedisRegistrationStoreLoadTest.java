@@ -0,0 +1,177 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.transport.lwm2m.server.store;
+
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.leshan.core.Destroyable;
+import org.eclipse.leshan.core.link.Link;
+import org.eclipse.leshan.core.request.BindingMode;
+import org.eclipse.leshan.core.request.Identity;
+import org.eclipse.leshan.server.californium.registration.CaliforniumRegistrationStore;
+import org.eclipse.leshan.server.registration.Registration;
+import org.eclipse.leshan.server.registration.RegistrationUpdate;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Compares the lock based and the lock free registration stores under concurrent load.
+ * Runs only with -Dbenchmarks.enabled=true against the Redis database set by the "redis.host", "redis.port" and "redis.db"
+ * system properties (localhost:6379, database 15 by default), for example a local "redis-server" or "docker run -p 6379:6379 redis".
+ * The test is skipped when Redis is not reachable or the database is not empty, and only removes the data it wrote.
+ * The consistency of the stores is checked by {@link TbLwM2mRedisRegistrationStoreTest}.
+ */
+@Slf4j
+public class TbLwM2mRedisRegistrationStoreLoadTest {
+
+    private static final int THREADS = 16;
+    private static final int CLIENTS = 2000;
+    private static final int UPDATES_PER_CLIENT = 5;
+
+    private JedisConnectionFactory connectionFactory;
+
+    @Before
+    public void before() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmarks.enabled"));
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(THREADS * 2);
+        RedisStandaloneConfiguration redisConfiguration = new RedisStandaloneConfiguration(System.getProperty("redis.host", "localhost"),
+                Integer.getInteger("redis.port", 6379));
+        redisConfiguration.setDatabase(Integer.getInteger("redis.db", 15));
+        connectionFactory = new JedisConnectionFactory(redisConfiguration,
+                JedisClientConfiguration.builder().usePooling().poolConfig(poolConfig).build());
+        connectionFactory.afterPropertiesSet();
+        long dbSize;
+        try (var connection = connectionFactory.getConnection()) {
+            dbSize = connection.dbSize();
+        } catch (Exception e) {
+            connectionFactory.destroy();
+            connectionFactory = null;
+            Assume.assumeNoException("Redis is not available", e);
+            return;
+        }
+        if (dbSize > 0) {
+            connectionFactory.destroy();
+            connectionFactory = null;
+            Assume.assumeTrue("Redis database is not empty", false);
+        }
+    }
+
+    @After
+    public void after() {
+        if (connectionFactory != null) {
+            clearDb();
+            connectionFactory.destroy();
+        }
+    }
+
+    @Test
+    public void testConcurrentLoad() throws Exception {
+        long lockBasedTime = runLoad(new TbLwM2mRedisRegistrationStore(connectionFactory));
+        clearDb();
+        long lockFreeTime = runLoad(new TbLwM2mLockFreeRedisRegistrationStore(connectionFactory));
+        log.info("[{}] clients, [{}] threads: lock based store - {} ms, lock free store - {} ms",
+                CLIENTS, THREADS, lockBasedTime, lockFreeTime);
+    }
+
+    private long runLoad(CaliforniumRegistrationStore store) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            long startTs = System.currentTimeMillis();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                int client = i;
+                futures.add(executor.submit(() -> {
+                    Registration registration = newRegistration("reg" + client, "ep" + client, 10000 + client);
+                    store.addRegistration(registration);
+                    for (int j = 0; j < UPDATES_PER_CLIENT; j++) {
+                        assertNotNull(store.updateRegistration(newUpdate(registration.getId(), registration.getIdentity())));
+                        if (client % 100 == 0) {
+                            store.getAllRegistrations();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+            Set<String> endpoints = new HashSet<>();
+            store.getAllRegistrations().forEachRemaining(r -> endpoints.add(r.getEndpoint()));
+            assertEquals(CLIENTS, endpoints.size());
+
+            futures.clear();
+            for (int i = 0; i < CLIENTS; i += 2) {
+                String registrationId = "reg" + i;
+                futures.add(executor.submit(() -> assertNotNull(store.removeRegistration(registrationId))));
+            }
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+            assertEquals(CLIENTS / 2, count(store.getAllRegistrations()));
+            return System.currentTimeMillis() - startTs;
+        } finally {
+            executor.shutdownNow();
+            ((Destroyable) store).destroy();
+        }
+    }
+
+    // the database was empty when the test started, so all its data was written by the test
+    private void clearDb() {
+        try (var connection = connectionFactory.getConnection()) {
+            connection.flushDb();
+        }
+    }
+
+    private static Registration newRegistration(String registrationId, String endpoint, int port) {
+        return new Registration.Builder(registrationId, endpoint, Identity.unsecure(new InetSocketAddress("127.0.0.1", port)))
+                .objectLinks(new Link[0])
+                .lifeTimeInSec(300L)
+                .build();
+    }
+
+    private static RegistrationUpdate newUpdate(String registrationId, Identity identity) {
+        return new RegistrationUpdate(registrationId, identity, 300L, null, EnumSet.of(BindingMode.U), null, null);
+    }
+
+    private static int count(Iterator<Registration> registrations) {
+        int count = 0;
+        while (registrations.hasNext()) {
+            registrations.next();
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.transport.lwm2m.server.store;
+
+import org.eclipse.leshan.core.link.Link;
+import org.eclipse.leshan.core.request.BindingMode;
+import org.eclipse.leshan.core.request.Identity;
+import org.eclipse.leshan.server.registration.Registration;
+import org.eclipse.leshan.server.registration.RegistrationUpdate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.testcontainers.containers.GenericContainer;
+
+import java.net.InetSocketAddress;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TbLwM2mRedisRegistrationStoreTest {
+
+    @ClassRule
+    public static GenericContainer<?> redis = new GenericContainer<>("redis:6.2").withExposedPorts(6379);
+
+    private JedisConnectionFactory connectionFactory;
+    private TbLwM2mRedisRegistrationStore lockBasedStore;
+    private TbLwM2mLockFreeRedisRegistrationStore lockFreeStore;
+
+    @Before
+    public void before() {
+        connectionFactory = new JedisConnectionFactory(new RedisStandaloneConfiguration(redis.getHost(), redis.getFirstMappedPort()),
+                JedisClientConfiguration.builder().usePooling().build());
+        connectionFactory.afterPropertiesSet();
+        lockBasedStore = new TbLwM2mRedisRegistrationStore(connectionFactory);
+        lockFreeStore = new TbLwM2mLockFreeRedisRegistrationStore(connectionFactory);
+    }
+
+    @After
+    public void after() {
+        lockFreeStore.destroy();
+        lockBasedStore.destroy();
+        try (var connection = connectionFactory.getConnection()) {
+            connection.flushDb();
+        }
+        connectionFactory.destroy();
+    }
+
+    @Test
+    public void testLockFreeStoreConsistency() {
+        Registration registration = newRegistration("reg1", "ep1", 5000);
+        assertNull(lockFreeStore.addRegistration(registration));
+        assertEquals("reg1", lockFreeStore.getRegistrationByEndpoint("ep1").getId());
+        assertNotNull(lockFreeStore.getRegistrationByAdress(registration.getSocketAddress()));
+
+        // re-registration of the same endpoint replaces the old registration and its indexes
+        Registration newRegistration = newRegistration("reg2", "ep1", 5001);
+        assertEquals("reg1", lockFreeStore.addRegistration(newRegistration).getRegistration().getId());
+        assertNull(lockFreeStore.getRegistration("reg1"));
+        assertNull(lockFreeStore.getRegistrationByAdress(registration.getSocketAddress()));
+        assertNull(lockFreeStore.updateRegistration(newUpdate("reg1", registration.getIdentity())));
+
+        assertNotNull(lockFreeStore.updateRegistration(newUpdate("reg2", newRegistration.getIdentity())));
+        assertEquals(Set.of("ep1"), getEndpoints(lockFreeStore));
+        assertEquals("reg2", lockFreeStore.removeRegistration("reg2").getRegistration().getId());
+        assertNull(lockFreeStore.removeRegistration("reg2"));
+        assertEquals(Set.of(), getEndpoints(lockFreeStore));
+    }
+
+    @Test
+    public void testRegistrationsOfLockBasedStoreAreListedByLockFreeStore() {
+        lockFreeStore.start();
+        lockFreeStore.addRegistration(newRegistration("reg1", "ep1", 5000));
+        lockBasedStore.addRegistration(newRegistration("reg2", "ep2", 5001));
+
+        assertEquals(Set.of("ep1", "ep2"), getEndpoints(lockFreeStore));
+
+        assertNotNull(lockBasedStore.removeRegistration("reg2"));
+        assertEquals(Set.of("ep1"), getEndpoints(lockFreeStore));
+    }
+
+    @Test
+    public void testExistingRegistrationsAreIndexedOnStart() {
+        lockFreeStore.addRegistration(newRegistration("reg1", "ep1", 5000));
+        lockBasedStore.addRegistration(newRegistration("reg2", "ep2", 5001));
+        // stored by a version of the lock based store that did not maintain the endpoints set
+        try (var connection = connectionFactory.getConnection()) {
+            connection.sRem("REG:EPS".getBytes(UTF_8), "ep2".getBytes(UTF_8));
+        }
+        assertEquals(Set.of("ep1"), getEndpoints(lockFreeStore));
+
+        lockFreeStore.start();
+
+        assertEquals(Set.of("ep1", "ep2"), getEndpoints(lockFreeStore));
+    }
+
+    private static Set<String> getEndpoints(TbLwM2mLockFreeRedisRegistrationStore store) {
+        Set<String> endpoints = new HashSet<>();
+        store.getAllRegistrations().forEachRemaining(registration -> endpoints.add(registration.getEndpoint()));
+        return endpoints;
+    }
+
+    private static Registration newRegistration(String registrationId, String endpoint, int port) {
+        return new Registration.Builder(registrationId, endpoint, Identity.unsecure(new InetSocketAddress("127.0.0.1", port)))
+                .objectLinks(new Link[0])
+                .lifeTimeInSec(300L)
+                .build();
+    }
+
+    private static RegistrationUpdate newUpdate(String registrationId, Identity identity) {
+        return new RegistrationUpdate(registrationId, identity, 300L, null, EnumSet.of(BindingMode.U), null, null);
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.transport.mqtt.adaptors;
+
+import io.netty.handler.codec.mqtt.MqttMessage;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import org.junit.Before;
+import org.junit.Test;
+import org.thingsboard.server.common.data.ota.OtaPackageType;
+import org.thingsboard.server.transport.mqtt.session.MqttDeviceAwareSessionContext;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MqttTransportAdaptorTest {
+
+    private final JsonMqttAdaptor adaptor = new JsonMqttAdaptor();
+    private MqttDeviceAwareSessionContext ctx;
+
+    @Before
+    public void setUp() {
+        ctx = mock(MqttDeviceAwareSessionContext.class);
+        when(ctx.getQoSForTopic(anyString())).thenReturn(MqttQoS.AT_LEAST_ONCE);
+        when(ctx.nextMsgId()).thenReturn(1);
+    }
+
+    @Test
+    public void givenFirmwareChunk_whenConvertToPublish_thenPayloadIsTheChunk() throws Exception {
+        Optional<MqttMessage> msg = adaptor.convertToPublish(ctx, ByteBuffer.wrap(new byte[]{1, 2, 3}), "1", 0, OtaPackageType.FIRMWARE);
+
+        assertTrue(msg.isPresent());
+        MqttPublishMessage publishMsg = (MqttPublishMessage) msg.get();
+        assertEquals("v2/fw/response/1/chunk/0", publishMsg.variableHeader().topicName());
+        assertEquals(3, publishMsg.payload().readableBytes());
+    }
+
+    @Test
+    public void givenMissingFirmwareChunk_whenConvertToPublish_thenPayloadIsEmpty() throws Exception {
+        Optional<MqttMessage> msg = adaptor.convertToPublish(ctx, (ByteBuffer) null, "1", 0, OtaPackageType.FIRMWARE);
+
+        assertTrue(msg.isPresent());
+        assertEquals(0, ((MqttPublishMessage) msg.get()).payload().readableBytes());
+    }
+}
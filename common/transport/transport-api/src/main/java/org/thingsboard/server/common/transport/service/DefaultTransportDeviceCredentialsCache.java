@@ -0,0 +1,105 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.transport.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.DeviceProfileId;
+import org.thingsboard.server.common.transport.TransportDeviceCredentialsCache;
+import org.thingsboard.server.common.transport.auth.ValidateDeviceCredentialsResponse;
+import org.thingsboard.server.queue.util.TbTransportComponent;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps successful credentials validation results on the transport, so that repeated validations of the same
+ * credentials (for example, HTTP requests) do not go through the transport API queue.
+ * Entries are evicted on device, device credentials and device profile updates received via the transport notifications topic.
+ */
+@Component
+@TbTransportComponent
+@Slf4j
+public class DefaultTransportDeviceCredentialsCache implements TransportDeviceCredentialsCache {
+
+    private final boolean enabled;
+    private final Cache<String, ValidateDeviceCredentialsResponse> cache;
+    private final ConcurrentMap<DeviceId, String> deviceCredentialsKeys = new ConcurrentHashMap<>();
+
+    public DefaultTransportDeviceCredentialsCache(@Value("${transport.credentials_cache.enabled:false}") boolean enabled,
+                                                  @Value("${transport.credentials_cache.max_size:100000}") long maxSize,
+                                                  @Value("${transport.credentials_cache.ttl:300}") long ttlSec) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSec, TimeUnit.SECONDS)
+                .<String, ValidateDeviceCredentialsResponse>removalListener((key, value, cause) -> {
+                    if (value != null && cause != RemovalCause.REPLACED) {
+                        onRemoval(key, value);
+                    }
+                })
+                .build();
+    }
+
+    private void onRemoval(String key, ValidateDeviceCredentialsResponse value) {
+        // the listener is asynchronous, so the key may be cached again by the time it is notified
+        if (!cache.asMap().containsKey(key)) {
+            deviceCredentialsKeys.remove(value.getDeviceInfo().getDeviceId(), key);
+        }
+    }
+
+    @Override
+    public ValidateDeviceCredentialsResponse get(String credentialsKey) {
+        return enabled ? cache.getIfPresent(credentialsKey) : null;
+    }
+
+    @Override
+    public void put(String credentialsKey, ValidateDeviceCredentialsResponse response) {
+        if (enabled && response.hasDeviceInfo()) {
+            DeviceId deviceId = response.getDeviceInfo().getDeviceId();
+            String oldKey = deviceCredentialsKeys.put(deviceId, credentialsKey);
+            if (oldKey != null && !oldKey.equals(credentialsKey)) {
+                cache.invalidate(oldKey);
+            }
+            cache.put(credentialsKey, response);
+        }
+    }
+
+    @Override
+    public void evict(DeviceId deviceId) {
+        if (enabled) {
+            String key = deviceCredentialsKeys.remove(deviceId);
+            if (key != null) {
+                log.trace("[{}] Evicting device credentials", deviceId);
+                cache.invalidate(key);
+            }
+        }
+    }
+
+    @Override
+    public void evict(DeviceProfileId deviceProfileId) {
+        if (enabled) {
+            cache.asMap().values().removeIf(response -> deviceProfileId.equals(response.getDeviceInfo().getDeviceProfileId()));
+        }
+    }
+
+}
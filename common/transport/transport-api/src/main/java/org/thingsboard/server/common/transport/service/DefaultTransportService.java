@@ -15,12 +15,15 @@
  */
 package org.thingsboard.server.common.transport.service;
 
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.protobuf.ByteString;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
@@ -58,6 +61,7 @@ import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.common.stats.StatsType;
 import org.thingsboard.server.common.transport.DeviceUpdatedEvent;
 import org.thingsboard.server.common.transport.SessionMsgListener;
+import org.thingsboard.server.common.transport.TransportDeviceCredentialsCache;
 import org.thingsboard.server.common.transport.TransportDeviceProfileCache;
 import org.thingsboard.server.common.transport.TransportResourceCache;
 import org.thingsboard.server.common.transport.TransportService;
@@ -96,7 +100,10 @@ import org.thingsboard.server.queue.util.TbTransportComponent;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -144,6 +151,20 @@ public class DefaultTransportService implements TransportService {
     private long sessionInactivityTimeout;
     @Value("${transport.sessions.report_timeout}")
     private long sessionReportTimeout;
+    @Value("${transport.sessions.activity.report_granularity:0}")
+    private long activityReportGranularity;
+    @Value("${transport.sessions.activity.batch.enabled:false}")
+    private boolean activityBatchEnabled;
+    @Value("${transport.sessions.activity.batch.max_size:1000}")
+    private int activityBatchMaxSize;
+    @Value("${transport.rule_engine_pack.enabled:false}")
+    private boolean ruleEnginePackEnabled;
+    @Value("${transport.rule_engine_pack.max_size:100}")
+    private int ruleEnginePackMaxSize;
+    @Value("${transport.rule_engine_pack.max_bytes:524288}")
+    private int ruleEnginePackMaxBytes;
+    @Value("${transport.rule_engine_pack.linger_ms:5}")
+    private long ruleEnginePackLingerMs;
     @Value("${transport.client_side_rpc.timeout:60000}")
     private long clientSideRpcTimeout;
     @Value("${queue.transport.poll_interval}")
@@ -167,6 +188,7 @@ public class DefaultTransportService implements TransportService {
     private final SchedulerComponent scheduler;
     private final ApplicationEventPublisher eventPublisher;
     private final TransportResourceCache transportResourceCache;
+    private final TransportDeviceCredentialsCache deviceCredentialsCache;
 
     protected TbQueueRequestTemplate<TbProtoQueueMsg<TransportApiRequestMsg>, TbProtoQueueMsg<TransportApiResponseMsg>> transportApiRequestTemplate;
     protected TbQueueProducer<TbProtoQueueMsg<ToRuleEngineMsg>> ruleEngineMsgProducer;
@@ -183,6 +205,7 @@ public class DefaultTransportService implements TransportService {
     private final ConcurrentMap<UUID, SessionMetaData> sessions = new ConcurrentHashMap<>();
     private final ConcurrentMap<UUID, SessionActivityData> sessionsActivity = new ConcurrentHashMap<>();
     private final Map<String, RpcRequestMetadata> toServerRpcPendingMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<RuleEngineMsgPackKey, RuleEngineMsgPack> pendingRuleEnginePacks = new ConcurrentHashMap<>();
 
     private volatile boolean stopped = false;
 
@@ -195,7 +218,7 @@ public class DefaultTransportService implements TransportService {
                                    TransportTenantProfileCache tenantProfileCache,
                                    TbApiUsageClient apiUsageClient, TransportRateLimitService rateLimitService,
                                    DataDecodingEncodingService dataDecodingEncodingService, SchedulerComponent scheduler, TransportResourceCache transportResourceCache,
-                                   ApplicationEventPublisher eventPublisher) {
+                                   TransportDeviceCredentialsCache deviceCredentialsCache, ApplicationEventPublisher eventPublisher) {
         this.serviceInfoProvider = serviceInfoProvider;
         this.queueProvider = queueProvider;
         this.producerProvider = producerProvider;
@@ -208,6 +231,7 @@ public class DefaultTransportService implements TransportService {
         this.dataDecodingEncodingService = dataDecodingEncodingService;
         this.scheduler = scheduler;
         this.transportResourceCache = transportResourceCache;
+        this.deviceCredentialsCache = deviceCredentialsCache;
         this.eventPublisher = eventPublisher;
     }
 
@@ -269,6 +293,8 @@ public class DefaultTransportService implements TransportService {
     public void destroy() {
         stopped = true;
 
+        pendingRuleEnginePacks.values().forEach(this::flushRuleEnginePack);
+
         if (transportNotificationsConsumer != null) {
             transportNotificationsConsumer.unsubscribe();
         }
@@ -370,7 +396,7 @@ public class DefaultTransportService implements TransportService {
         log.trace("Processing msg: {}", msg);
         TbProtoQueueMsg<TransportApiRequestMsg> protoMsg = new TbProtoQueueMsg<>(UUID.randomUUID(),
                 TransportApiRequestMsg.newBuilder().setValidateTokenRequestMsg(msg).build());
-        doProcess(transportType, protoMsg, callback);
+        doProcess(transportType, "TOKEN:" + msg.getToken(), protoMsg, callback);
     }
 
     @Override
@@ -379,7 +405,12 @@ public class DefaultTransportService implements TransportService {
         log.trace("Processing msg: {}", msg);
         TbProtoQueueMsg<TransportApiRequestMsg> protoMsg = new TbProtoQueueMsg<>(UUID.randomUUID(),
                 TransportApiRequestMsg.newBuilder().setValidateBasicMqttCredRequestMsg(msg).build());
-        doProcess(transportType, protoMsg, callback);
+        String credentialsHash = Hashing.sha256().newHasher()
+                .putString(msg.getClientId(), StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(msg.getUserName(), StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(msg.getPassword(), StandardCharsets.UTF_8)
+                .hash().toString();
+        doProcess(transportType, "MQTT_BASIC:" + credentialsHash, protoMsg, callback);
     }
 
     @Override
@@ -408,11 +439,25 @@ public class DefaultTransportService implements TransportService {
     public void process(DeviceTransportType transportType, TransportProtos.ValidateDeviceX509CertRequestMsg msg, TransportServiceCallback<ValidateDeviceCredentialsResponse> callback) {
         log.trace("Processing msg: {}", msg);
         TbProtoQueueMsg<TransportApiRequestMsg> protoMsg = new TbProtoQueueMsg<>(UUID.randomUUID(), TransportApiRequestMsg.newBuilder().setValidateX509CertRequestMsg(msg).build());
-        doProcess(transportType, protoMsg, callback);
+        doProcess(transportType, "X509:" + msg.getHash(), protoMsg, callback);
     }
 
-    private void doProcess(DeviceTransportType transportType, TbProtoQueueMsg<TransportApiRequestMsg> protoMsg,
+    private void doProcess(DeviceTransportType transportType, String credentialsKey, TbProtoQueueMsg<TransportApiRequestMsg> protoMsg,
                            TransportServiceCallback<ValidateDeviceCredentialsResponse> callback) {
+        ValidateDeviceCredentialsResponse cached = deviceCredentialsCache.get(credentialsKey);
+        if (cached != null) {
+            log.trace("[{}] Using cached device credentials", cached.getDeviceInfo().getDeviceId());
+            transportCallbackExecutor.submit(() -> {
+                try {
+                    checkTransportType(transportType, cached.getDeviceInfo(), cached.getDeviceProfile());
+                } catch (IllegalStateException e) {
+                    callback.onError(e);
+                    return;
+                }
+                callback.onSuccess(cached);
+            });
+            return;
+        }
         ListenableFuture<ValidateDeviceCredentialsResponse> response = Futures.transform(transportApiRequestTemplate.send(protoMsg), tmp -> {
             TransportProtos.ValidateDeviceCredentialsResponseMsg msg = tmp.getValue().getValidateCredResponseMsg();
             ValidateDeviceCredentialsResponse.ValidateDeviceCredentialsResponseBuilder result = ValidateDeviceCredentialsResponse.builder();
@@ -422,20 +467,26 @@ public class DefaultTransportService implements TransportService {
                 result.deviceInfo(tdi);
                 ByteString profileBody = msg.getProfileBody();
                 if (!profileBody.isEmpty()) {
-                    DeviceProfile profile = deviceProfileCache.getOrCreate(tdi.getDeviceProfileId(), profileBody);
-                    if (transportType != DeviceTransportType.DEFAULT
-                            && profile != null && profile.getTransportType() != DeviceTransportType.DEFAULT && profile.getTransportType() != transportType) {
-                        log.debug("[{}] Device profile [{}] has different transport type: {}, expected: {}", tdi.getDeviceId(), tdi.getDeviceProfileId(), profile.getTransportType(), transportType);
-                        throw new IllegalStateException("Device profile has different transport type: " + profile.getTransportType() + ". Expected: " + transportType);
-                    }
-                    result.deviceProfile(profile);
+                    result.deviceProfile(deviceProfileCache.getOrCreate(tdi.getDeviceProfileId(), profileBody));
                 }
+                ValidateDeviceCredentialsResponse validated = result.build();
+                deviceCredentialsCache.put(credentialsKey, validated);
+                checkTransportType(transportType, tdi, validated.getDeviceProfile());
+                return validated;
             }
             return result.build();
         }, MoreExecutors.directExecutor());
         AsyncCallbackTemplate.withCallback(response, callback::onSuccess, callback::onError, transportCallbackExecutor);
     }
 
+    private void checkTransportType(DeviceTransportType transportType, TransportDeviceInfo tdi, DeviceProfile profile) {
+        if (transportType != DeviceTransportType.DEFAULT
+                && profile != null && profile.getTransportType() != DeviceTransportType.DEFAULT && profile.getTransportType() != transportType) {
+            log.debug("[{}] Device profile [{}] has different transport type: {}, expected: {}", tdi.getDeviceId(), tdi.getDeviceProfileId(), profile.getTransportType(), transportType);
+            throw new IllegalStateException("Device profile has different transport type: " + profile.getTransportType() + ". Expected: " + transportType);
+        }
+    }
+
     @Override
     public void process(TransportProtos.GetOrCreateDeviceFromGatewayRequestMsg requestMsg, TransportServiceCallback<GetOrCreateDeviceFromGatewayResponse> callback) {
         TbProtoQueueMsg<TransportApiRequestMsg> protoMsg = new TbProtoQueueMsg<>(UUID.randomUUID(), TransportApiRequestMsg.newBuilder().setGetOrCreateDeviceRequestMsg(requestMsg).build());
@@ -717,9 +768,10 @@ public class DefaultTransportService implements TransportService {
         sessionMetaData.updateLastActivityTime();
     }
 
-    private void checkInactivityAndReportActivity() {
+    void checkInactivityAndReportActivity() {
         long expTime = System.currentTimeMillis() - sessionInactivityTimeout;
         Set<UUID> sessionsToRemove = new HashSet<>();
+        Map<TopicPartitionInfo, ActivityBatch> activityBatches = activityBatchEnabled ? new HashMap<>() : null;
         sessionsActivity.forEach((uuid, sessionAD) -> {
             long lastActivityTime = sessionAD.getLastActivityTime();
             SessionMetaData sessionMD = sessions.get(uuid);
@@ -748,8 +800,16 @@ public class DefaultTransportService implements TransportService {
                     process(sessionInfo, SESSION_EVENT_MSG_CLOSED, null);
                     sessionMD.getListener().onRemoteSessionCloseCommand(uuid, SESSION_CLOSE_NOTIFICATION_PROTO);
                 }
-            } else {
-                if (lastActivityTime > sessionAD.getLastReportedActivityTime()) {
+            } else if (lastActivityTime > sessionAD.getLastReportedActivityTime()
+                    && lastActivityTime - sessionAD.getLastReportedActivityTime() >= activityReportGranularity) {
+                if (activityBatches != null) {
+                    TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, getTenantId(sessionInfo), getDeviceId(sessionInfo));
+                    ActivityBatch batch = activityBatches.computeIfAbsent(tpi, k -> new ActivityBatch());
+                    batch.add(uuid, sessionInfo, sessionMD, sessionAD, lastActivityTime);
+                    if (batch.size() >= activityBatchMaxSize) {
+                        sendActivityBatch(tpi, activityBatches.remove(tpi));
+                    }
+                } else {
                     final long lastActivityTimeFinal = lastActivityTime;
                     process(sessionInfo, TransportProtos.SubscriptionInfoProto.newBuilder()
                             .setAttributeSubscription(sessionMD != null && sessionMD.isSubscribedToAttributes())
@@ -768,10 +828,68 @@ public class DefaultTransportService implements TransportService {
                 }
             }
         });
+        if (activityBatches != null) {
+            activityBatches.forEach(this::sendActivityBatch);
+        }
         // Removes all closed or short-lived sessions.
         sessionsToRemove.forEach(sessionsActivity::remove);
     }
 
+    private void sendActivityBatch(TopicPartitionInfo tpi, ActivityBatch batch) {
+        if (log.isTraceEnabled()) {
+            log.trace("Pushing activity of {} sessions to topic {}", batch.size(), tpi.getFullTopicName());
+        }
+        tbCoreProducerStats.incrementTotal();
+        StatsCallback wrappedCallback = new StatsCallback(new TbQueueCallback() {
+            @Override
+            public void onSuccess(TbQueueMsgMetadata metadata) {
+                batch.onReported();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                log.warn("Failed to report last activity time of {} sessions", batch.size(), t);
+            }
+        }, tbCoreProducerStats);
+        tbCoreMsgProducer.send(tpi, new TbProtoQueueMsg<>(UUID.randomUUID(),
+                ToCoreMsg.newBuilder().setDeviceActivityBatchMsg(batch.getMsg()).build()), wrappedCallback);
+    }
+
+    private static class ActivityBatch {
+
+        private final TransportProtos.DeviceActivityBatchMsgProto.Builder msg = TransportProtos.DeviceActivityBatchMsgProto.newBuilder();
+        private final List<SessionActivityData> sessions = new ArrayList<>();
+        private final List<Long> reportedTimes = new ArrayList<>();
+
+        void add(UUID sessionId, TransportProtos.SessionInfoProto sessionInfo, SessionMetaData sessionMD, SessionActivityData sessionAD, long lastActivityTime) {
+            msg.addTenantIdMSB(sessionInfo.getTenantIdMSB())
+                    .addTenantIdLSB(sessionInfo.getTenantIdLSB())
+                    .addDeviceIdMSB(sessionInfo.getDeviceIdMSB())
+                    .addDeviceIdLSB(sessionInfo.getDeviceIdLSB())
+                    .addSessionIdMSB(sessionId.getMostSignificantBits())
+                    .addSessionIdLSB(sessionId.getLeastSignificantBits())
+                    .addLastActivityTime(lastActivityTime)
+                    .addAttributeSubscription(sessionMD != null && sessionMD.isSubscribedToAttributes())
+                    .addRpcSubscription(sessionMD != null && sessionMD.isSubscribedToRPC());
+            sessions.add(sessionAD);
+            reportedTimes.add(lastActivityTime);
+        }
+
+        int size() {
+            return sessions.size();
+        }
+
+        TransportProtos.DeviceActivityBatchMsgProto getMsg() {
+            return msg.build();
+        }
+
+        void onReported() {
+            for (int i = 0; i < sessions.size(); i++) {
+                sessions.get(i).setLastReportedActivityTime(reportedTimes.get(i));
+            }
+        }
+    }
+
     @Override
     public SessionMetaData registerSyncSession(TransportProtos.SessionInfoProto sessionInfo, SessionMsgListener listener, long timeout) {
         SessionMetaData currentSession = new SessionMetaData(sessionInfo, TransportProtos.SessionType.SYNC, listener);
@@ -881,6 +999,7 @@ public class DefaultTransportService implements TransportService {
                     DeviceProfile deviceProfile = deviceProfileCache.put(msg.getData());
                     if (deviceProfile != null) {
                         log.info("On device profile update: {}", deviceProfile);
+                        deviceCredentialsCache.evict(deviceProfile.getId());
                         onProfileUpdate(deviceProfile);
                     }
                 } else if (EntityType.TENANT_PROFILE.equals(entityType)) {
@@ -904,6 +1023,7 @@ public class DefaultTransportService implements TransportService {
                 } else if (EntityType.DEVICE.equals(entityType)) {
                     Optional<Device> deviceOpt = dataDecodingEncodingService.decode(msg.getData().toByteArray());
                     deviceOpt.ifPresent(device -> {
+                        deviceCredentialsCache.evict(device.getId());
                         onDeviceUpdate(device);
                         eventPublisher.publishEvent(new DeviceUpdatedEvent(device));
                     });
@@ -913,15 +1033,21 @@ public class DefaultTransportService implements TransportService {
                 EntityType entityType = EntityType.valueOf(msg.getEntityType());
                 UUID entityUuid = new UUID(msg.getEntityIdMSB(), msg.getEntityIdLSB());
                 if (EntityType.DEVICE_PROFILE.equals(entityType)) {
-                    deviceProfileCache.evict(new DeviceProfileId(new UUID(msg.getEntityIdMSB(), msg.getEntityIdLSB())));
+                    DeviceProfileId deviceProfileId = new DeviceProfileId(entityUuid);
+                    deviceProfileCache.evict(deviceProfileId);
+                    deviceCredentialsCache.evict(deviceProfileId);
                 } else if (EntityType.TENANT_PROFILE.equals(entityType)) {
                     tenantProfileCache.remove(new TenantProfileId(entityUuid));
                 } else if (EntityType.TENANT.equals(entityType)) {
                     rateLimitService.remove(TenantId.fromUUID(entityUuid));
                 } else if (EntityType.DEVICE.equals(entityType)) {
                     rateLimitService.remove(new DeviceId(entityUuid));
+                    deviceCredentialsCache.evict(new DeviceId(entityUuid));
                     onDeviceDeleted(new DeviceId(entityUuid));
                 }
+            } else if (toSessionMsg.hasDeviceCredentialsUpdateMsg()) {
+                TransportProtos.DeviceCredentialsUpdateMsg msg = toSessionMsg.getDeviceCredentialsUpdateMsg();
+                deviceCredentialsCache.evict(new DeviceId(new UUID(msg.getDeviceIdMSB(), msg.getDeviceIdLSB())));
             } else if (toSessionMsg.hasResourceUpdateMsg()) {
                 TransportProtos.ResourceUpdateMsg msg = toSessionMsg.getResourceUpdateMsg();
                 TenantId tenantId = TenantId.fromUUID(new UUID(msg.getTenantIdMSB(), msg.getTenantIdLSB()));
@@ -1066,14 +1192,107 @@ public class DefaultTransportService implements TransportService {
         if (log.isTraceEnabled()) {
             log.trace("[{}][{}] Pushing to topic {} message {}", tenantId, tbMsg.getOriginator(), tpi.getFullTopicName(), tbMsg);
         }
+        ruleEngineProducerStats.incrementTotal();
+        StatsCallback wrappedCallback = new StatsCallback(callback, ruleEngineProducerStats);
+        if (ruleEnginePackEnabled) {
+            addToRuleEnginePack(new RuleEngineMsgPackKey(tpi, tenantId), tbMsg, wrappedCallback);
+            return;
+        }
         ToRuleEngineMsg msg = ToRuleEngineMsg.newBuilder().setTbMsg(TbMsg.toByteString(tbMsg))
                 .setTenantIdMSB(tenantId.getId().getMostSignificantBits())
                 .setTenantIdLSB(tenantId.getId().getLeastSignificantBits()).build();
-        ruleEngineProducerStats.incrementTotal();
-        StatsCallback wrappedCallback = new StatsCallback(callback, ruleEngineProducerStats);
         ruleEngineMsgProducer.send(tpi, new TbProtoQueueMsg<>(tbMsg.getId(), msg), wrappedCallback);
     }
 
+    /**
+     * Adds the message to the pending pack of the partition and tenant. The pack is sent as one queue record once it reaches
+     * the max size or the max bytes or when the linger time since its first message expires, whatever happens first.
+     * A message that does not fit into the max bytes of the pending pack starts a new pack.
+     * Packs are handed to the producer inside the map operation that removes them, so the packs of one key are sent in order.
+     */
+    private void addToRuleEnginePack(RuleEngineMsgPackKey key, TbMsg tbMsg, TbQueueCallback callback) {
+        ByteString tbMsgBytes = TbMsg.toByteString(tbMsg);
+        pendingRuleEnginePacks.compute(key, (k, pack) -> {
+            if (pack != null && pack.bytes + tbMsgBytes.size() > ruleEnginePackMaxBytes) {
+                pack.lingerFuture.cancel(false);
+                sendRuleEnginePack(pack);
+                pack = null;
+            }
+            if (pack == null) {
+                RuleEngineMsgPack newPack = new RuleEngineMsgPack(k);
+                newPack.lingerFuture = scheduler.schedule(() -> flushRuleEnginePack(newPack), ruleEnginePackLingerMs, TimeUnit.MILLISECONDS);
+                pack = newPack;
+            }
+            pack.msgIds.add(tbMsg.getId());
+            pack.msgs.add(tbMsgBytes);
+            pack.callbacks.add(callback);
+            pack.bytes += tbMsgBytes.size();
+            if (pack.msgs.size() >= ruleEnginePackMaxSize || pack.bytes >= ruleEnginePackMaxBytes) {
+                pack.lingerFuture.cancel(false);
+                sendRuleEnginePack(pack);
+                return null;
+            }
+            return pack;
+        });
+    }
+
+    private void flushRuleEnginePack(RuleEngineMsgPack pack) {
+        pendingRuleEnginePacks.computeIfPresent(pack.key, (k, pending) -> {
+            if (pending != pack) {
+                return pending;
+            }
+            sendRuleEnginePack(pack);
+            return null;
+        });
+    }
+
+    private void sendRuleEnginePack(RuleEngineMsgPack pack) {
+        TenantId tenantId = pack.key.getTenantId();
+        ToRuleEngineMsg.Builder msg = ToRuleEngineMsg.newBuilder()
+                .setTenantIdMSB(tenantId.getId().getMostSignificantBits())
+                .setTenantIdLSB(tenantId.getId().getLeastSignificantBits());
+        UUID msgId;
+        if (pack.msgs.size() == 1) {
+            msg.setTbMsg(pack.msgs.get(0));
+            msgId = pack.msgIds.get(0);
+        } else {
+            TransportProtos.TbMsgPackProto.Builder tbMsgPack = TransportProtos.TbMsgPackProto.newBuilder();
+            tbMsgPack.addAllTbMsgs(pack.msgs);
+            msg.setTbMsgPack(tbMsgPack);
+            msgId = UUID.randomUUID();
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("[{}] Pushing pack of {} messages to topic {}", tenantId, pack.msgs.size(), pack.key.getTpi().getFullTopicName());
+        }
+        ruleEngineMsgProducer.send(pack.key.getTpi(), new TbProtoQueueMsg<>(msgId, msg.build()), new TbQueueCallback() {
+            @Override
+            public void onSuccess(TbQueueMsgMetadata metadata) {
+                pack.callbacks.forEach(callback -> callback.onSuccess(metadata));
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                pack.callbacks.forEach(callback -> callback.onFailure(t));
+            }
+        });
+    }
+
+    @Data
+    private static class RuleEngineMsgPackKey {
+        private final TopicPartitionInfo tpi;
+        private final TenantId tenantId;
+    }
+
+    @RequiredArgsConstructor
+    private static class RuleEngineMsgPack {
+        private final RuleEngineMsgPackKey key;
+        private final List<UUID> msgIds = new ArrayList<>();
+        private final List<ByteString> msgs = new ArrayList<>();
+        private final List<TbQueueCallback> callbacks = new ArrayList<>();
+        private int bytes;
+        private ScheduledFuture<?> lingerFuture;
+    }
+
     private void sendToRuleEngine(TenantId tenantId, DeviceId deviceId, CustomerId customerId, TransportProtos.SessionInfoProto sessionInfo, JsonObject json,
                                   TbMsgMetaData metaData, SessionMsgType sessionMsgType, TbQueueCallback callback) {
         DeviceProfileId deviceProfileId = new DeviceProfileId(new UUID(sessionInfo.getDeviceProfileIdMSB(), sessionInfo.getDeviceProfileIdLSB()));
@@ -0,0 +1,49 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.transport.service;
+
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.transport.auth.TransportDeviceInfo;
+import org.thingsboard.server.common.transport.auth.ValidateDeviceCredentialsResponse;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DefaultTransportDeviceCredentialsCacheTest {
+
+    @Test
+    public void testEvictAfterRepeatedPutOfSameCredentials() throws Exception {
+        DefaultTransportDeviceCredentialsCache cache = new DefaultTransportDeviceCredentialsCache(true, 100, 300);
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        TransportDeviceInfo deviceInfo = new TransportDeviceInfo();
+        deviceInfo.setDeviceId(deviceId);
+
+        // two concurrent validations of the same token
+        cache.put("token", ValidateDeviceCredentialsResponse.builder().deviceInfo(deviceInfo).build());
+        cache.put("token", ValidateDeviceCredentialsResponse.builder().deviceInfo(deviceInfo).build());
+        // let the asynchronous removal listener handle the replaced entry
+        Thread.sleep(100);
+        assertNotNull(cache.get("token"));
+
+        cache.evict(deviceId);
+
+        assertNull(cache.get("token"));
+    }
+
+}
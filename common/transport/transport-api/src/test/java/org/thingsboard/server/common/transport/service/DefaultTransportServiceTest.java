@@ -0,0 +1,227 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.transport.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.queue.ServiceType;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.common.stats.MessagesStats;
+import org.thingsboard.server.common.transport.SessionMsgListener;
+import org.thingsboard.server.common.transport.TransportDeviceProfileCache;
+import org.thingsboard.server.common.transport.TransportServiceCallback;
+import org.thingsboard.server.common.transport.limits.TransportRateLimitService;
+import org.thingsboard.server.gen.transport.TransportProtos;
+import org.thingsboard.server.gen.transport.TransportProtos.DeviceActivityBatchMsgProto;
+import org.thingsboard.server.gen.transport.TransportProtos.ToCoreMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineMsg;
+import org.thingsboard.server.queue.TbQueueCallback;
+import org.thingsboard.server.queue.TbQueueProducer;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.queue.discovery.PartitionService;
+import org.thingsboard.server.queue.scheduler.SchedulerComponent;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultTransportServiceTest {
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private final UUID deviceId = UUID.randomUUID();
+
+    private DefaultTransportService transportService;
+    private SchedulerComponent scheduler;
+    private TbQueueProducer<TbProtoQueueMsg<ToRuleEngineMsg>> ruleEngineMsgProducer;
+    private TbQueueProducer<TbProtoQueueMsg<ToCoreMsg>> coreMsgProducer;
+    private ExecutorService executor;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() {
+        PartitionService partitionService = mock(PartitionService.class);
+        when(partitionService.resolve(eq(ServiceType.TB_RULE_ENGINE), any(), any(), any()))
+                .thenReturn(new TopicPartitionInfo("tb_rule_engine.main", tenantId, 0, true));
+        when(partitionService.resolve(eq(ServiceType.TB_CORE), any(), any()))
+                .thenReturn(new TopicPartitionInfo("tb_core", null, 0, true));
+        TransportRateLimitService rateLimitService = mock(TransportRateLimitService.class);
+        scheduler = mock(SchedulerComponent.class);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> mock(ScheduledFuture.class));
+        ruleEngineMsgProducer = mock(TbQueueProducer.class);
+        coreMsgProducer = mock(TbQueueProducer.class);
+
+        transportService = new DefaultTransportService(null, null, null, partitionService, null, mock(TransportDeviceProfileCache.class),
+                null, null, rateLimitService, null, scheduler, null, null, null);
+        ReflectionTestUtils.setField(transportService, "ruleEngineProducerStats", mock(MessagesStats.class));
+        ReflectionTestUtils.setField(transportService, "ruleEngineMsgProducer", ruleEngineMsgProducer);
+        ReflectionTestUtils.setField(transportService, "ruleEnginePackEnabled", true);
+        ReflectionTestUtils.setField(transportService, "ruleEnginePackMaxSize", 2);
+        ReflectionTestUtils.setField(transportService, "ruleEnginePackMaxBytes", 1024 * 1024);
+        ReflectionTestUtils.setField(transportService, "ruleEnginePackLingerMs", 5L);
+        ReflectionTestUtils.setField(transportService, "tbCoreProducerStats", mock(MessagesStats.class));
+        ReflectionTestUtils.setField(transportService, "tbCoreMsgProducer", coreMsgProducer);
+        ReflectionTestUtils.setField(transportService, "sessionInactivityTimeout", TimeUnit.MINUTES.toMillis(10));
+        ReflectionTestUtils.setField(transportService, "activityBatchEnabled", true);
+        ReflectionTestUtils.setField(transportService, "activityBatchMaxSize", 2);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testLingerFlushIsSentBeforeNextPackOfSameKey() throws Exception {
+        List<ToRuleEngineMsg> sent = new CopyOnWriteArrayList<>();
+        CountDownLatch firstSendStarted = new CountDownLatch(1);
+        CountDownLatch firstSendReleased = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            TbProtoQueueMsg<ToRuleEngineMsg> msg = invocation.getArgument(1);
+            if (firstSendStarted.getCount() > 0) {
+                firstSendStarted.countDown();
+                firstSendReleased.await(1, TimeUnit.SECONDS);
+            }
+            sent.add(msg.getValue());
+            return null;
+        }).when(ruleEngineMsgProducer).send(any(), any(), any());
+
+        postAttributes("first");
+        ArgumentCaptor<Runnable> lingerTask = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(lingerTask.capture(), anyLong(), any(TimeUnit.class));
+
+        // the linger task sends the first pack while the next pack of the same key fills up
+        Future<?> flush = executor.submit(lingerTask.getValue());
+        assertTrue(firstSendStarted.await(1, TimeUnit.SECONDS));
+        Future<?> nextPack = executor.submit(() -> {
+            postAttributes("second");
+            postAttributes("third");
+        });
+        Thread.sleep(100);
+        assertFalse(nextPack.isDone());
+        firstSendReleased.countDown();
+        flush.get(1, TimeUnit.SECONDS);
+        nextPack.get(1, TimeUnit.SECONDS);
+
+        assertEquals(2, sent.size());
+        assertFalse(sent.get(0).getTbMsg().isEmpty());
+        assertEquals(2, sent.get(1).getTbMsgPack().getTbMsgsCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testActivityIsReportedInBatchesWithSubscriptions() {
+        UUID firstSessionId = registerActiveSession(true, false);
+        UUID secondSessionId = registerActiveSession(false, true);
+        registerActiveSession(false, false);
+
+        transportService.checkInactivityAndReportActivity();
+
+        ArgumentCaptor<TbProtoQueueMsg<ToCoreMsg>> sent = ArgumentCaptor.forClass(TbProtoQueueMsg.class);
+        ArgumentCaptor<TbQueueCallback> callbacks = ArgumentCaptor.forClass(TbQueueCallback.class);
+        verify(coreMsgProducer, times(2)).send(any(), sent.capture(), callbacks.capture());
+        DeviceActivityBatchMsgProto fullBatch = sent.getAllValues().get(0).getValue().getDeviceActivityBatchMsg();
+        assertEquals(2, fullBatch.getLastActivityTimeCount());
+        assertEquals(1, sent.getAllValues().get(1).getValue().getDeviceActivityBatchMsg().getLastActivityTimeCount());
+        for (int i = 0; i < fullBatch.getLastActivityTimeCount(); i++) {
+            UUID sessionId = new UUID(fullBatch.getSessionIdMSB(i), fullBatch.getSessionIdLSB(i));
+            assertEquals(deviceId, new UUID(fullBatch.getDeviceIdMSB(i), fullBatch.getDeviceIdLSB(i)));
+            assertEquals(sessionId.equals(firstSessionId), fullBatch.getAttributeSubscription(i));
+            assertEquals(sessionId.equals(secondSessionId), fullBatch.getRpcSubscription(i));
+        }
+
+        // the sessions of the acknowledged batch are not reported again until they are active again
+        callbacks.getAllValues().get(0).onSuccess(null);
+        transportService.checkInactivityAndReportActivity();
+
+        verify(coreMsgProducer, times(3)).send(any(), sent.capture(), any());
+        assertEquals(1, sent.getValue().getValue().getDeviceActivityBatchMsg().getLastActivityTimeCount());
+    }
+
+    @Test
+    public void testActivityIsNotReportedWithinGranularity() {
+        ReflectionTestUtils.setField(transportService, "activityReportGranularity", TimeUnit.MINUTES.toMillis(1));
+        UUID sessionId = registerActiveSession(false, false);
+        transportService.checkInactivityAndReportActivity();
+        ArgumentCaptor<TbQueueCallback> callback = ArgumentCaptor.forClass(TbQueueCallback.class);
+        verify(coreMsgProducer).send(any(), any(), callback.capture());
+        callback.getValue().onSuccess(null);
+
+        transportService.reportActivity(getSessionInfo().toBuilder()
+                .setSessionIdMSB(sessionId.getMostSignificantBits())
+                .setSessionIdLSB(sessionId.getLeastSignificantBits())
+                .build());
+        transportService.checkInactivityAndReportActivity();
+
+        verify(coreMsgProducer, times(1)).send(any(), any(), any());
+    }
+
+    private UUID registerActiveSession(boolean attributeSubscription, boolean rpcSubscription) {
+        UUID sessionId = UUID.randomUUID();
+        TransportProtos.SessionInfoProto sessionInfo = getSessionInfo().toBuilder()
+                .setSessionIdMSB(sessionId.getMostSignificantBits())
+                .setSessionIdLSB(sessionId.getLeastSignificantBits())
+                .build();
+        SessionMetaData sessionMD = transportService.registerAsyncSession(sessionInfo, mock(SessionMsgListener.class));
+        sessionMD.setSubscribedToAttributes(attributeSubscription);
+        sessionMD.setSubscribedToRPC(rpcSubscription);
+        transportService.reportActivity(sessionInfo);
+        return sessionId;
+    }
+
+    private void postAttributes(String value) {
+        TransportProtos.PostAttributeMsg msg = TransportProtos.PostAttributeMsg.newBuilder()
+                .addKv(TransportProtos.KeyValueProto.newBuilder().setKey("key").setType(TransportProtos.KeyValueType.STRING_V).setStringV(value))
+                .build();
+        transportService.process(getSessionInfo(), msg, TransportServiceCallback.EMPTY);
+    }
+
+    private TransportProtos.SessionInfoProto getSessionInfo() {
+        return TransportProtos.SessionInfoProto.newBuilder()
+                .setTenantIdMSB(tenantId.getId().getMostSignificantBits())
+                .setTenantIdLSB(tenantId.getId().getLeastSignificantBits())
+                .setDeviceIdMSB(deviceId.getMostSignificantBits())
+                .setDeviceIdLSB(deviceId.getLeastSignificantBits())
+                .setDeviceProfileIdMSB(deviceId.getMostSignificantBits())
+                .setDeviceProfileIdLSB(deviceId.getLeastSignificantBits())
+                .setDeviceName("device")
+                .setDeviceType("default")
+                .build();
+    }
+
+}
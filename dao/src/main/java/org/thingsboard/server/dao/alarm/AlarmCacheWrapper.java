@@ -0,0 +1,197 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.alarm;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.thingsboard.server.common.data.alarm.Alarm;
+import org.thingsboard.server.common.data.id.AlarmId;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.dao.cache.CacheExecutorService;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+import static org.thingsboard.server.common.data.CacheConstants.ALARM_CACHE;
+
+/**
+ * Cache of the active alarm keyed by originator and type, used to find the active alarm on every alarm rule evaluation.
+ * Cleared alarms are not cached, so a new alarm is always created after the latest alarm is looked up in the database.
+ * A cache hit is returned without a database query. Alarms changed on the node that owns the originator partition update the cache
+ * directly. The local cache of the owner is told about changes made through other nodes by {@link #evict(AlarmId)}, and it is
+ * cleared on rule engine repartitioning, since the alarms of the partitions that moved away are changed by another node.
+ * Size bound and eviction are taken from the cache provider configuration ('caffeine.specs.alarms' for the local cache).
+ */
+@Service
+@ConditionalOnProperty(prefix = "cache.alarms", value = "enabled", havingValue = "true")
+@Slf4j
+public class AlarmCacheWrapper {
+    private static final String STATS_NAME = "alarms.cache";
+    public static final String LOCAL_CACHE_TYPE = "caffeine";
+
+    private final Cache alarmCache;
+    private final CacheExecutorService cacheExecutorService;
+    private final DefaultCounter hitCounter;
+    private final DefaultCounter missCounter;
+
+    @Value("${cache.type}")
+    private String cacheType;
+
+    @Getter
+    private Executor cacheExecutor;
+    @Getter
+    private boolean localCache;
+
+    public AlarmCacheWrapper(CacheManager cacheManager, StatsFactory statsFactory, CacheExecutorService cacheExecutorService) {
+        this.alarmCache = cacheManager.getCache(ALARM_CACHE);
+        this.cacheExecutorService = cacheExecutorService;
+        this.hitCounter = statsFactory.createDefaultCounter(STATS_NAME, "result", "hit");
+        this.missCounter = statsFactory.createDefaultCounter(STATS_NAME, "result", "miss");
+    }
+
+    @PostConstruct
+    public void init() {
+        this.localCache = StringUtils.isEmpty(cacheType) || LOCAL_CACHE_TYPE.equals(cacheType);
+        this.cacheExecutor = localCache ? MoreExecutors.directExecutor() : cacheExecutorService;
+    }
+
+    /**
+     * Returns a copy of the cached alarm, so the callers may modify it.
+     */
+    public Alarm get(EntityId originator, String type) {
+        AlarmCacheKey cacheKey = new AlarmCacheKey(originator, type);
+        try {
+            Cache.ValueWrapper valueWrapper = alarmCache.get(cacheKey);
+            if (valueWrapper != null) {
+                hitCounter.increment();
+                return new Alarm((Alarm) valueWrapper.get());
+            }
+        } catch (Exception e) {
+            log.debug("Failed to retrieve element from cache for key {}. Reason - {}.", cacheKey, e.getMessage());
+        }
+        missCounter.increment();
+        return null;
+    }
+
+    /**
+     * Puts the latest alarm created or found for the originator and type.
+     */
+    public void put(Alarm alarm) {
+        if (alarm.getStatus().isCleared()) {
+            evict(alarm.getOriginator(), alarm.getType());
+            return;
+        }
+        AlarmCacheKey cacheKey = toKey(alarm);
+        try {
+            alarmCache.put(cacheKey, new Alarm(alarm));
+        } catch (Exception e) {
+            log.debug("Failed to put element to cache for key {}. Reason - {}.", cacheKey, e.getMessage());
+        }
+    }
+
+    /**
+     * Puts the alarm loaded from the database, unless a newer alarm was put concurrently.
+     */
+    public void putIfAbsent(Alarm alarm) {
+        if (alarm.getStatus().isCleared()) {
+            return;
+        }
+        AlarmCacheKey cacheKey = toKey(alarm);
+        try {
+            alarmCache.putIfAbsent(cacheKey, new Alarm(alarm));
+        } catch (Exception e) {
+            log.debug("Failed to put element to cache for key {}. Reason - {}.", cacheKey, e.getMessage());
+        }
+    }
+
+    /**
+     * Replaces the cached alarm with the updated one if it is the same alarm, or evicts it if the alarm is cleared.
+     * Updates of older alarms do not change the cache.
+     */
+    public void update(Alarm alarm) {
+        AlarmCacheKey cacheKey = toKey(alarm);
+        try {
+            Cache.ValueWrapper valueWrapper = alarmCache.get(cacheKey);
+            if (valueWrapper != null && alarm.getId().equals(((Alarm) valueWrapper.get()).getId())) {
+                if (alarm.getStatus().isCleared()) {
+                    alarmCache.evict(cacheKey);
+                } else {
+                    alarmCache.put(cacheKey, new Alarm(alarm));
+                }
+            }
+        } catch (Exception e) {
+            log.debug("Failed to update element in cache for key {}. Reason - {}.", cacheKey, e.getMessage());
+            evict(alarm.getOriginator(), alarm.getType());
+        }
+    }
+
+    public void evict(EntityId originator, String type) {
+        AlarmCacheKey cacheKey = new AlarmCacheKey(originator, type);
+        try {
+            alarmCache.evict(cacheKey);
+        } catch (Exception e) {
+            log.debug("Failed to evict element from cache for key {}. Reason - {}.", cacheKey, e.getMessage());
+        }
+    }
+
+    /**
+     * Evicts the alarm changed through another node from the local cache. The shared cache is changed by that node directly.
+     */
+    public void evict(AlarmId alarmId) {
+        ConcurrentMap<Object, Object> localCacheMap = getLocalCacheMap();
+        if (localCacheMap != null) {
+            localCacheMap.values().removeIf(cached -> cached instanceof Alarm && alarmId.equals(((Alarm) cached).getId()));
+        }
+    }
+
+    /**
+     * Clears the local cache. The shared cache is kept.
+     */
+    public void clear() {
+        ConcurrentMap<Object, Object> localCacheMap = getLocalCacheMap();
+        if (localCacheMap != null) {
+            localCacheMap.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ConcurrentMap<Object, Object> getLocalCacheMap() {
+        if (!localCache) {
+            return null;
+        }
+        Object nativeCache = alarmCache.getNativeCache();
+        if (nativeCache instanceof com.github.benmanes.caffeine.cache.Cache) {
+            return ((com.github.benmanes.caffeine.cache.Cache<Object, Object>) nativeCache).asMap();
+        } else if (nativeCache instanceof ConcurrentMap) {
+            return (ConcurrentMap<Object, Object>) nativeCache;
+        }
+        return null;
+    }
+
+    private static AlarmCacheKey toKey(Alarm alarm) {
+        return new AlarmCacheKey(alarm.getOriginator(), alarm.getType());
+    }
+}
@@ -62,6 +62,8 @@ public interface AlarmDao extends Dao<Alarm> {
 
     void createEntityAlarmRecord(EntityAlarm entityAlarm);
 
+    void createEntityAlarmRecords(List<EntityAlarm> entityAlarms);
+
     List<EntityAlarm> findEntityAlarmRecords(TenantId tenantId, AlarmId id);
 
     void deleteEntityAlarmRecords(TenantId tenantId, EntityId entityId);
@@ -21,6 +21,7 @@ import com.google.common.base.Function;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -45,6 +46,7 @@ import org.thingsboard.server.common.data.relation.EntityRelation;
 import org.thingsboard.server.common.data.relation.EntityRelationsQuery;
 import org.thingsboard.server.common.data.relation.EntitySearchDirection;
 import org.thingsboard.server.common.data.relation.RelationsSearchParameters;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.dao.entity.AbstractEntityService;
 import org.thingsboard.server.dao.entity.EntityService;
 import org.thingsboard.server.dao.service.DataValidator;
@@ -61,6 +63,7 @@ import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -72,6 +75,7 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
 
     public static final String INCORRECT_TENANT_ID = "Incorrect tenantId ";
     public static final String INCORRECT_CUSTOMER_ID = "Incorrect customerId ";
+    private static final String WRITE_STATS_NAME = "alarms.write";
 
     @Autowired
     private AlarmDao alarmDao;
@@ -82,11 +86,22 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
     @Autowired
     private DataValidator<Alarm> alarmDataValidator;
 
+    @Autowired
+    private StatsFactory statsFactory;
+
+    @Autowired(required = false)
+    private AlarmCacheWrapper alarmCache;
+
     protected ExecutorService readResultsProcessingExecutor;
 
+    private Timer createAlarmTimer;
+    private Timer updateAlarmTimer;
+
     @PostConstruct
     public void startExecutor() {
         readResultsProcessingExecutor = Executors.newCachedThreadPool(ThingsBoardThreadFactory.forName("alarm-service"));
+        createAlarmTimer = statsFactory.createTimer(WRITE_STATS_NAME, "operation", "create");
+        updateAlarmTimer = statsFactory.createTimer(WRITE_STATS_NAME, "operation", "update");
     }
 
     @PreDestroy
@@ -104,6 +119,7 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
     @Override
     public AlarmOperationResult createOrUpdateAlarm(Alarm alarm, boolean alarmCreationEnabled) {
         alarmDataValidator.validate(alarm, Alarm::getTenantId);
+        long startTs = System.nanoTime();
         try {
             if (alarm.getStartTs() == 0L) {
                 alarm.setStartTs(System.currentTimeMillis());
@@ -113,17 +129,23 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
             }
             alarm.setCustomerId(entityService.fetchEntityCustomerId(alarm.getTenantId(), alarm.getOriginator()));
             if (alarm.getId() == null) {
-                Alarm existing = alarmDao.findLatestByOriginatorAndType(alarm.getTenantId(), alarm.getOriginator(), alarm.getType()).get();
+                Alarm existing = findLatestByOriginatorAndType(alarm.getTenantId(), alarm.getOriginator(), alarm.getType()).get();
                 if (existing == null || existing.getStatus().isCleared()) {
                     if (!alarmCreationEnabled) {
                         throw new ApiUsageLimitsExceededException("Alarms creation is disabled");
                     }
-                    return createAlarm(alarm);
+                    AlarmOperationResult result = createAlarm(alarm);
+                    createAlarmTimer.record(System.nanoTime() - startTs, TimeUnit.NANOSECONDS);
+                    return result;
                 } else {
-                    return updateAlarm(existing, alarm);
+                    AlarmOperationResult result = updateAlarm(existing, alarm);
+                    updateAlarmTimer.record(System.nanoTime() - startTs, TimeUnit.NANOSECONDS);
+                    return result;
                 }
             } else {
-                return updateAlarm(alarm).get();
+                AlarmOperationResult result = updateAlarm(alarm).get();
+                updateAlarmTimer.record(System.nanoTime() - startTs, TimeUnit.NANOSECONDS);
+                return result;
             }
         } catch (ExecutionException | InterruptedException e) {
             throw new RuntimeException(e);
@@ -131,7 +153,23 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
     }
 
     public ListenableFuture<Alarm> findLatestByOriginatorAndType(TenantId tenantId, EntityId originator, String type) {
-        return alarmDao.findLatestByOriginatorAndType(tenantId, originator, type);
+        if (alarmCache == null) {
+            return alarmDao.findLatestByOriginatorAndType(tenantId, originator, type);
+        }
+        Alarm cachedAlarm = alarmCache.get(originator, type);
+        if (cachedAlarm != null) {
+            return Futures.immediateFuture(cachedAlarm);
+        }
+        return findLatestAndCache(tenantId, originator, type);
+    }
+
+    private ListenableFuture<Alarm> findLatestAndCache(TenantId tenantId, EntityId originator, String type) {
+        return Futures.transform(alarmDao.findLatestByOriginatorAndType(tenantId, originator, type), alarm -> {
+            if (alarm != null) {
+                alarmCache.putIfAbsent(alarm);
+            }
+            return alarm;
+        }, alarmCache.getCacheExecutor());
     }
 
     @Override
@@ -152,47 +190,72 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
             AlarmOperationResult result = new AlarmOperationResult(alarm, true, new ArrayList<>(getPropagationEntityIds(alarm)));
             deleteEntityRelations(tenantId, alarm.getId());
             alarmDao.deleteAlarm(tenantId, alarm);
+            if (alarmCache != null) {
+                alarmCache.evict(alarm.getOriginator(), alarm.getType());
+            }
             return result;
         } catch (ExecutionException | InterruptedException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private AlarmOperationResult createAlarm(Alarm alarm) throws InterruptedException, ExecutionException {
+    private AlarmOperationResult createAlarm(Alarm alarm) {
         log.debug("New Alarm : {}", alarm);
+        // the related entities are found while the alarm is saved
+        ListenableFuture<Set<EntityId>> relatedEntities = getRelatedEntities(alarm);
         Alarm saved = alarmDao.save(alarm.getTenantId(), alarm);
-        List<EntityId> propagatedEntitiesList = createEntityAlarmRecords(saved);
-        return new AlarmOperationResult(saved, true, true, propagatedEntitiesList);
+        if (alarmCache != null) {
+            alarmCache.put(saved);
+        }
+        List<EntityId> propagatedEntitiesList = new ArrayList<>(getDirectPropagationEntityIds(saved));
+        createEntityAlarmRecords(saved.getTenantId(), propagatedEntitiesList, saved);
+        return new AlarmOperationResult(saved, true, true, propagatedEntitiesList,
+                createRelatedEntityAlarmRecords(saved, relatedEntities, propagatedEntitiesList));
     }
 
-    private List<EntityId> createEntityAlarmRecords(Alarm alarm) throws InterruptedException, ExecutionException {
-        Set<EntityId> propagatedEntitiesSet = new LinkedHashSet<>();
-        propagatedEntitiesSet.add(alarm.getOriginator());
-        if (alarm.isPropagate()) {
-            propagatedEntitiesSet.addAll(getRelatedEntities(alarm));
-        }
+    private Set<EntityId> getDirectPropagationEntityIds(Alarm alarm) {
+        Set<EntityId> entityIds = new LinkedHashSet<>();
+        entityIds.add(alarm.getOriginator());
         if (alarm.isPropagateToOwner()) {
-            propagatedEntitiesSet.add(alarm.getCustomerId() != null ? alarm.getCustomerId() : alarm.getTenantId());
+            entityIds.add(alarm.getCustomerId() != null ? alarm.getCustomerId() : alarm.getTenantId());
         }
         if (alarm.isPropagateToTenant()) {
-            propagatedEntitiesSet.add(alarm.getTenantId());
+            entityIds.add(alarm.getTenantId());
         }
-        for (EntityId entityId : propagatedEntitiesSet) {
-            createEntityAlarmRecord(alarm.getTenantId(), entityId, alarm);
-        }
-        return new ArrayList<>(propagatedEntitiesSet);
+        return entityIds;
+    }
+
+    /**
+     * Saves the records of the related entities once they are found, without blocking the alarm write.
+     */
+    private ListenableFuture<List<EntityId>> createRelatedEntityAlarmRecords(Alarm alarm, ListenableFuture<Set<EntityId>> relatedEntities,
+                                                                            Collection<EntityId> propagatedEntities) {
+        return Futures.transform(relatedEntities, entityIds -> {
+            List<EntityId> relatedEntitiesList = entityIds.stream()
+                    .filter(entityId -> !propagatedEntities.contains(entityId))
+                    .collect(Collectors.toList());
+            if (!relatedEntitiesList.isEmpty()) {
+                createEntityAlarmRecords(alarm.getTenantId(), relatedEntitiesList, alarm);
+            }
+            return relatedEntitiesList;
+        }, readResultsProcessingExecutor);
     }
 
-    private Set<EntityId> getRelatedEntities(Alarm alarm) throws InterruptedException, ExecutionException {
+    private ListenableFuture<Set<EntityId>> getRelatedEntities(Alarm alarm) {
+        if (!alarm.isPropagate()) {
+            return Futures.immediateFuture(Collections.emptySet());
+        }
         EntityRelationsQuery query = new EntityRelationsQuery();
         RelationsSearchParameters parameters = new RelationsSearchParameters(alarm.getOriginator(), EntitySearchDirection.TO, Integer.MAX_VALUE, false);
         query.setParameters(parameters);
-        List<String> propagateRelationTypes = alarm.getPropagateRelationTypes();
-        Stream<EntityRelation> relations = relationService.findByQuery(alarm.getTenantId(), query).get().stream();
-        if (!CollectionUtils.isEmpty(propagateRelationTypes)) {
-            relations = relations.filter(entityRelation -> propagateRelationTypes.contains(entityRelation.getType()));
-        }
-        return relations.map(EntityRelation::getFrom).collect(Collectors.toCollection(LinkedHashSet::new));
+        List<String> propagateRelationTypes = alarm.getPropagateRelationTypes() != null ? new ArrayList<>(alarm.getPropagateRelationTypes()) : null;
+        return Futures.transform(relationService.findByQuery(alarm.getTenantId(), query), entityRelations -> {
+            Stream<EntityRelation> relations = entityRelations.stream();
+            if (!CollectionUtils.isEmpty(propagateRelationTypes)) {
+                relations = relations.filter(entityRelation -> propagateRelationTypes.contains(entityRelation.getType()));
+            }
+            return relations.map(EntityRelation::getFrom).collect(Collectors.toCollection(LinkedHashSet::new));
+        }, MoreExecutors.directExecutor());
     }
 
     private ListenableFuture<AlarmOperationResult> updateAlarm(Alarm update) {
@@ -214,19 +277,20 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
         boolean propagationEnabled = !oldAlarm.isPropagate() && newAlarm.isPropagate();
         boolean propagationToOwnerEnabled = !oldAlarm.isPropagateToOwner() && newAlarm.isPropagateToOwner();
         boolean propagationToTenantEnabled = !oldAlarm.isPropagateToTenant() && newAlarm.isPropagateToTenant();
-        Alarm result = alarmDao.save(newAlarm.getTenantId(), merge(oldAlarm, newAlarm));
-        List<EntityId> propagatedEntitiesList;
-        if (propagationEnabled || propagationToOwnerEnabled || propagationToTenantEnabled) {
-            try {
-                propagatedEntitiesList = createEntityAlarmRecords(result);
-            } catch (InterruptedException | ExecutionException e) {
-                log.warn("Failed to update alarm relations [{}]", result, e);
-                throw new RuntimeException(e);
-            }
-        } else {
-            propagatedEntitiesList = new ArrayList<>(getPropagationEntityIds(result));
+        Alarm merged = merge(oldAlarm, newAlarm);
+        boolean propagationChanged = propagationEnabled || propagationToOwnerEnabled || propagationToTenantEnabled;
+        ListenableFuture<Set<EntityId>> relatedEntities = propagationChanged ? getRelatedEntities(merged) : null;
+        Alarm result = alarmDao.save(newAlarm.getTenantId(), merged);
+        if (alarmCache != null) {
+            alarmCache.update(result);
         }
-        return new AlarmOperationResult(result, true, propagatedEntitiesList);
+        if (!propagationChanged) {
+            return new AlarmOperationResult(result, true, new ArrayList<>(getPropagationEntityIds(result)));
+        }
+        createEntityAlarmRecords(result.getTenantId(), getDirectPropagationEntityIds(result), result);
+        List<EntityId> propagatedEntitiesList = new ArrayList<>(getPropagationEntityIds(result));
+        return new AlarmOperationResult(result, true, false, propagatedEntitiesList,
+                createRelatedEntityAlarmRecords(result, relatedEntities, propagatedEntitiesList));
     }
 
     @Override
@@ -243,6 +307,9 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
                     alarm.setStatus(newStatus);
                     alarm.setAckTs(ackTime);
                     alarm = alarmDao.save(alarm.getTenantId(), alarm);
+                    if (alarmCache != null) {
+                        alarmCache.update(alarm);
+                    }
                     return new AlarmOperationResult(alarm, true, new ArrayList<>(getPropagationEntityIds(alarm)));
                 }
             }
@@ -266,6 +333,9 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
                         alarm.setDetails(details);
                     }
                     alarm = alarmDao.save(alarm.getTenantId(), alarm);
+                    if (alarmCache != null) {
+                        alarmCache.update(alarm);
+                    }
                     return new AlarmOperationResult(alarm, true, new ArrayList<>(getPropagationEntityIds(alarm)));
                 }
             }
@@ -393,12 +463,14 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
         }
     }
 
-    private void createEntityAlarmRecord(TenantId tenantId, EntityId entityId, Alarm alarm) {
-        EntityAlarm entityAlarm = new EntityAlarm(tenantId, entityId, alarm.getCreatedTime(), alarm.getType(), alarm.getCustomerId(), alarm.getId());
+    private void createEntityAlarmRecords(TenantId tenantId, Collection<EntityId> entityIds, Alarm alarm) {
+        List<EntityAlarm> entityAlarms = entityIds.stream()
+                .map(entityId -> new EntityAlarm(tenantId, entityId, alarm.getCreatedTime(), alarm.getType(), alarm.getCustomerId(), alarm.getId()))
+                .collect(Collectors.toList());
         try {
-            alarmDao.createEntityAlarmRecord(entityAlarm);
+            alarmDao.createEntityAlarmRecords(entityAlarms);
         } catch (Exception e) {
-            log.warn("[{}] Failed to create entity alarm record: {}", tenantId, entityAlarm, e);
+            log.warn("[{}] Failed to create entity alarm records: {}", tenantId, entityAlarms, e);
         }
     }
 
@@ -161,6 +161,15 @@ public interface AssetDao extends Dao<Asset>, TenantEntityDao {
      */
     Optional<Asset> findAssetsByTenantIdAndName(UUID tenantId, String name);
 
+    /**
+     * Find assets by tenantId and asset names.
+     *
+     * @param tenantId the tenantId
+     * @param names the asset names
+     * @return the list of existing asset objects
+     */
+    List<Asset> findAssetsByTenantIdAndNames(UUID tenantId, List<String> names);
+
     /**
      * Find tenants asset types.
      *
@@ -110,6 +110,13 @@ public class BaseAssetService extends AbstractEntityService implements AssetServ
                 .orElse(null);
     }
 
+    @Override
+    public List<Asset> findAssetsByTenantIdAndNames(TenantId tenantId, List<String> names) {
+        log.trace("Executing findAssetsByTenantIdAndNames, tenantId [{}], names [{}]", tenantId, names);
+        validateId(tenantId, INCORRECT_TENANT_ID + tenantId);
+        return assetDao.findAssetsByTenantIdAndNames(tenantId.getId(), names);
+    }
+
     @CacheEvict(cacheNames = ASSET_CACHE, key = "{#asset.tenantId, #asset.name}")
     @Override
     public Asset saveAsset(Asset asset) {
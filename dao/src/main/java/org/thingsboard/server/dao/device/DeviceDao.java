@@ -198,6 +198,15 @@ public interface DeviceDao extends Dao<Device>, TenantEntityDao {
      */
     Optional<Device> findDeviceByTenantIdAndName(UUID tenantId, String name);
 
+    /**
+     * Find devices by tenantId and device names.
+     *
+     * @param tenantId the tenantId
+     * @param names the device names
+     * @return the list of existing device objects
+     */
+    List<Device> findDevicesByTenantIdAndNames(UUID tenantId, List<String> names);
+
     /**
      * Find tenants device types.
      *
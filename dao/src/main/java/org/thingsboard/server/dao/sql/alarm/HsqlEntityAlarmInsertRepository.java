@@ -0,0 +1,40 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql.alarm;
+
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.thingsboard.server.dao.util.HsqlDao;
+
+@HsqlDao
+@Repository
+@Transactional
+public class HsqlEntityAlarmInsertRepository extends EntityAlarmInsertRepository {
+
+    private static final String INSERT_OR_UPDATE =
+            "MERGE INTO entity_alarm USING(VALUES ?, ?, ?, ?, ?, ?, ?) " +
+                    "A (tenant_id, entity_type, entity_id, created_time, alarm_type, customer_id, alarm_id) " +
+                    "ON (entity_alarm.entity_id=A.entity_id AND entity_alarm.alarm_id=A.alarm_id) " +
+                    "WHEN MATCHED THEN UPDATE SET entity_alarm.tenant_id = A.tenant_id, entity_alarm.entity_type = A.entity_type, " +
+                    "entity_alarm.created_time = A.created_time, entity_alarm.alarm_type = A.alarm_type, entity_alarm.customer_id = A.customer_id " +
+                    "WHEN NOT MATCHED THEN INSERT (tenant_id, entity_type, entity_id, created_time, alarm_type, customer_id, alarm_id) " +
+                    "VALUES (A.tenant_id, A.entity_type, A.entity_id, A.created_time, A.alarm_type, A.customer_id, A.alarm_id)";
+
+    @Override
+    protected String getInsertOrUpdateQuery() {
+        return INSERT_OR_UPDATE;
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql.alarm;
+
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.thingsboard.server.dao.util.PsqlDao;
+
+@PsqlDao
+@Repository
+@Transactional
+public class PsqlEntityAlarmInsertRepository extends EntityAlarmInsertRepository {
+
+    private static final String INSERT_OR_UPDATE =
+            "INSERT INTO entity_alarm (tenant_id, entity_type, entity_id, created_time, alarm_type, customer_id, alarm_id) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+                    "ON CONFLICT (entity_id, alarm_id) DO UPDATE SET tenant_id = EXCLUDED.tenant_id, entity_type = EXCLUDED.entity_type, " +
+                    "created_time = EXCLUDED.created_time, alarm_type = EXCLUDED.alarm_type, customer_id = EXCLUDED.customer_id;";
+
+    @Override
+    protected String getInsertOrUpdateQuery() {
+        return INSERT_OR_UPDATE;
+    }
+}
@@ -78,6 +78,8 @@ public interface AssetRepository extends PagingAndSortingRepository<AssetEntity,
 
     AssetEntity findByTenantIdAndName(UUID tenantId, String name);
 
+    List<AssetEntity> findByTenantIdAndNameIn(UUID tenantId, List<String> names);
+
     @Query("SELECT a FROM AssetEntity a WHERE a.tenantId = :tenantId " +
             "AND a.type = :type " +
             "AND LOWER(a.searchText) LIKE LOWER(CONCAT('%', :textSearch, '%'))")
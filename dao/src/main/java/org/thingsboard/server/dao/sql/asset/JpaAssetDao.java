@@ -130,6 +130,11 @@ public class JpaAssetDao extends JpaAbstractSearchTextDao<AssetEntity, Asset> im
         return Optional.ofNullable(asset);
     }
 
+    @Override
+    public List<Asset> findAssetsByTenantIdAndNames(UUID tenantId, List<String> names) {
+        return DaoUtil.convertDataList(assetRepository.findByTenantIdAndNameIn(tenantId, names));
+    }
+
     @Override
     public PageData<Asset> findAssetsByTenantIdAndType(UUID tenantId, String type, PageLink pageLink) {
         return DaoUtil.toPageData(assetRepository
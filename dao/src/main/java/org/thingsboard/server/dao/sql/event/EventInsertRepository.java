@@ -30,6 +30,8 @@ import org.thingsboard.server.dao.util.PsqlDao;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 
 @PsqlDao
@@ -41,10 +43,17 @@ public class EventInsertRepository {
 
     private static final String EMPTY_STR = "";
 
-    private static final String INSERT =
-            "INSERT INTO event (id, created_time, body, entity_id, entity_type, event_type, event_uid, tenant_id, ts) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
-                    "ON CONFLICT DO NOTHING;";
+    private static final String INSERT_PREFIX =
+            "INSERT INTO event (id, created_time, body, entity_id, entity_type, event_type, event_uid, tenant_id, ts) VALUES ";
+    private static final String INSERT_VALUES = "(?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_SUFFIX = " ON CONFLICT DO NOTHING;";
+    private static final String INSERT = INSERT_PREFIX + INSERT_VALUES + INSERT_SUFFIX;
+
+    private static final int COLUMNS_COUNT = 9;
+    // PostgreSQL limits the number of bind parameters per statement to 32767
+    private static final int MAX_ROWS_PER_STATEMENT = Short.MAX_VALUE / COLUMNS_COUNT;
+
+    private final ConcurrentMap<Integer, String> multiRowInserts = new ConcurrentHashMap<>();
 
     @Autowired
     protected JdbcTemplate jdbcTemplate;
@@ -55,34 +64,74 @@ public class EventInsertRepository {
     @Value("${sql.remove_null_chars:true}")
     private boolean removeNullChars;
 
+    @Value("${sql.events.rows_per_insert:1}")
+    private int rowsPerInsert;
+
     protected void save(List<EventEntity> entities) {
         transactionTemplate.execute(new TransactionCallbackWithoutResult() {
             @Override
             protected void doInTransactionWithoutResult(TransactionStatus status) {
-                jdbcTemplate.batchUpdate(INSERT, new BatchPreparedStatementSetter() {
-                    @Override
-                    public void setValues(PreparedStatement ps, int i) throws SQLException {
-                        EventEntity event = entities.get(i);
-                        ps.setObject(1, event.getId());
-                        ps.setLong(2, event.getCreatedTime());
-                        ps.setString(3, replaceNullChars(event.getBody().toString()));
-                        ps.setObject(4, event.getEntityId());
-                        ps.setString(5, event.getEntityType().name());
-                        ps.setString(6, event.getEventType());
-                        ps.setString(7, event.getEventUid());
-                        ps.setObject(8, event.getTenantId());
-                        ps.setLong(9, event.getTs());
-                    }
-
-                    @Override
-                    public int getBatchSize() {
-                        return entities.size();
-                    }
-                });
+                int rowsPerStatement = Math.min(Math.max(rowsPerInsert, 1), MAX_ROWS_PER_STATEMENT);
+                if (rowsPerStatement > 1) {
+                    saveMultiRow(entities, rowsPerStatement);
+                } else {
+                    saveBatch(entities);
+                }
+            }
+        });
+    }
+
+    private void saveBatch(List<EventEntity> entities) {
+        jdbcTemplate.batchUpdate(INSERT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                setEventValues(ps, 0, entities.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return entities.size();
+            }
+        });
+    }
+
+    private void saveMultiRow(List<EventEntity> entities, int rowsPerStatement) {
+        for (int from = 0; from < entities.size(); from += rowsPerStatement) {
+            List<EventEntity> chunk = entities.subList(from, Math.min(from + rowsPerStatement, entities.size()));
+            jdbcTemplate.update(getMultiRowInsert(chunk.size()), ps -> {
+                for (int i = 0; i < chunk.size(); i++) {
+                    setEventValues(ps, i * COLUMNS_COUNT, chunk.get(i));
+                }
+            });
+        }
+    }
+
+    private String getMultiRowInsert(int rows) {
+        return multiRowInserts.computeIfAbsent(rows, r -> {
+            StringBuilder sb = new StringBuilder(INSERT_PREFIX.length() + r * (INSERT_VALUES.length() + 2) + INSERT_SUFFIX.length());
+            sb.append(INSERT_PREFIX);
+            for (int i = 0; i < r; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(INSERT_VALUES);
             }
+            return sb.append(INSERT_SUFFIX).toString();
         });
     }
 
+    private void setEventValues(PreparedStatement ps, int offset, EventEntity event) throws SQLException {
+        ps.setObject(offset + 1, event.getId());
+        ps.setLong(offset + 2, event.getCreatedTime());
+        ps.setString(offset + 3, replaceNullChars(event.getBody().toString()));
+        ps.setObject(offset + 4, event.getEntityId());
+        ps.setString(offset + 5, event.getEntityType().name());
+        ps.setString(offset + 6, event.getEventType());
+        ps.setString(offset + 7, event.getEventUid());
+        ps.setObject(offset + 8, event.getTenantId());
+        ps.setLong(offset + 9, event.getTs());
+    }
+
     private String replaceNullChars(String strValue) {
         if (removeNullChars && strValue != null) {
             return PATTERN_THREAD_LOCAL.get().matcher(strValue).replaceAll(EMPTY_STR);
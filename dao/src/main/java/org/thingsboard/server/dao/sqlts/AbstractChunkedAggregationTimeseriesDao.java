@@ -36,7 +36,9 @@ import org.thingsboard.server.dao.model.sql.AbstractTsKvEntity;
 import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
 import org.thingsboard.server.dao.sql.TbSqlBlockingQueueParams;
 import org.thingsboard.server.dao.sql.TbSqlBlockingQueueWrapper;
+import org.thingsboard.server.dao.sqlts.block.TsBlockStorage;
 import org.thingsboard.server.dao.sqlts.insert.InsertTsRepository;
+import org.thingsboard.server.dao.sqlts.ts.TsKvAggregationRepository;
 import org.thingsboard.server.dao.sqlts.ts.TsKvRepository;
 import org.thingsboard.server.dao.timeseries.TimeseriesDao;
 
@@ -56,6 +58,15 @@ public abstract class AbstractChunkedAggregationTimeseriesDao extends AbstractSq
     @Autowired
     protected InsertTsRepository<TsKvEntity> insertRepository;
 
+    @Autowired
+    protected TsKvAggregationRepository aggregationRepository;
+
+    @Autowired(required = false)
+    protected TsBlockStorage blockStorage;
+
+    @Value("${sql.ts.single_query_aggregation:true}")
+    protected boolean singleQueryAggregation;
+
     protected TbSqlBlockingQueueWrapper<TsKvEntity> tsQueue;
     @Autowired
     private StatsFactory statsFactory;
@@ -95,10 +106,21 @@ public abstract class AbstractChunkedAggregationTimeseriesDao extends AbstractSq
                     getOrSaveKeyId(query.getKey()),
                     query.getStartTs(),
                     query.getEndTs());
+            if (blockStorage != null) {
+                blockStorage.remove(entityId.getId(), getOrSaveKeyId(query.getKey()), query.getStartTs(), query.getEndTs());
+            }
             return null;
         });
     }
 
+    @Override
+    public void cleanup(long systemTtl) {
+        super.cleanup(systemTtl);
+        if (blockStorage != null) {
+            blockStorage.cleanup(systemTtl);
+        }
+    }
+
     @Override
     public ListenableFuture<Integer> savePartition(TenantId tenantId, EntityId entityId, long tsKvEntryTs, String key) {
         return Futures.immediateFuture(null);
@@ -118,6 +140,10 @@ public abstract class AbstractChunkedAggregationTimeseriesDao extends AbstractSq
     public ListenableFuture<List<TsKvEntry>> findAllAsync(TenantId tenantId, EntityId entityId, ReadTsKvQuery query) {
         if (query.getAggregation() == Aggregation.NONE) {
             return findAllAsyncWithLimit(entityId, query);
+        } else if (blockStorage != null) {
+            return findAndAggregateWithBlocksAsync(entityId, query);
+        } else if (singleQueryAggregation) {
+            return findAndAggregateInSingleQueryAsync(entityId, query);
         } else {
             long stepTs = query.getStartTs();
             List<ListenableFuture<Optional<TsKvEntry>>> futures = new ArrayList<>();
@@ -142,7 +168,27 @@ public abstract class AbstractChunkedAggregationTimeseriesDao extends AbstractSq
                 PageRequest.of(0, query.getLimit(),
                         Sort.by(new Sort.Order(Sort.Direction.fromString(query.getOrder()),  "ts").nullsNative())));
         tsKvEntities.forEach(tsKvEntity -> tsKvEntity.setStrKey(query.getKey()));
-        return Futures.immediateFuture(DaoUtil.convertDataList(tsKvEntities));
+        List<TsKvEntry> entries = DaoUtil.convertDataList(tsKvEntities);
+        if (blockStorage != null) {
+            entries = blockStorage.findAllWithLimit(entityId.getId(), keyId, query, entries);
+        }
+        return Futures.immediateFuture(entries);
+    }
+
+    private ListenableFuture<List<TsKvEntry>> findAndAggregateWithBlocksAsync(EntityId entityId, ReadTsKvQuery query) {
+        Integer keyId = getOrSaveKeyId(query.getKey());
+        return service.submit(() -> DaoUtil.convertDataList(blockStorage.findAggregated(entityId.getId(), keyId, query.getKey(),
+                query.getStartTs(), query.getEndTs(), query.getInterval(), query.getAggregation())));
+    }
+
+    private ListenableFuture<List<TsKvEntry>> findAndAggregateInSingleQueryAsync(EntityId entityId, ReadTsKvQuery query) {
+        Integer keyId = getOrSaveKeyId(query.getKey());
+        return service.submit(() -> {
+            List<TsKvEntity> tsKvEntities = aggregationRepository.findAggregated(entityId.getId(), keyId,
+                    query.getStartTs(), query.getEndTs(), query.getInterval(), query.getAggregation());
+            tsKvEntities.forEach(tsKvEntity -> tsKvEntity.setStrKey(query.getKey()));
+            return DaoUtil.convertDataList(tsKvEntities);
+        });
     }
 
     private ListenableFuture<Optional<TsKvEntry>> findAndAggregateAsync(EntityId entityId, String key, long startTs, long endTs, long ts, Aggregation aggregation) {
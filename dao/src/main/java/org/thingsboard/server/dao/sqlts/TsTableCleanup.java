@@ -0,0 +1,49 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls the TTL cleanup procedures of the tables derived from ts_kv, which return the number of removed rows in the last INOUT parameter.
+ */
+public final class TsTableCleanup {
+
+    private TsTableCleanup() {
+    }
+
+    public static long cleanup(JdbcTemplate jdbcTemplate, String callQuery, Object... args) {
+        Long deleted = jdbcTemplate.execute((Connection connection) -> {
+            try (PreparedStatement stmt = connection.prepareStatement(callQuery)) {
+                for (int i = 0; i < args.length; i++) {
+                    stmt.setObject(i + 1, args[i]);
+                }
+                stmt.setQueryTimeout((int) TimeUnit.HOURS.toSeconds(1));
+                stmt.execute();
+                try (ResultSet resultSet = stmt.getResultSet()) {
+                    resultSet.next();
+                    return resultSet.getLong(1);
+                }
+            }
+        });
+        return deleted != null ? deleted : 0;
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.block;
+
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.DataType;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Gorilla-style encoding of the numeric data points of one block, sorted by timestamp.
+ * Timestamps and long values are stored as bucketed delta-of-delta, doubles as XOR with the previous value
+ * that keeps only the meaningful bits. Regular sensor data takes one or two bits per timestamp and a few bits per value.
+ */
+public final class TsBlockCodec {
+
+    private static final int LONG_BLOCK = 0;
+    private static final int DOUBLE_BLOCK = 1;
+    private static final int MIXED_BLOCK = 2;
+
+    private TsBlockCodec() {
+    }
+
+    public static boolean isSupported(TsKvEntry entry) {
+        return entry.getDataType() == DataType.LONG || entry.getDataType() == DataType.DOUBLE;
+    }
+
+    public static byte[] encode(Collection<TsKvEntry> entries) {
+        BitOutput out = new BitOutput(entries.size() * 2 + 16);
+        out.writeBits(entries.size(), 32);
+        boolean hasLong = entries.stream().anyMatch(entry -> entry.getDataType() == DataType.LONG);
+        boolean hasDouble = entries.stream().anyMatch(entry -> entry.getDataType() == DataType.DOUBLE);
+        int blockType = hasLong && hasDouble ? MIXED_BLOCK : (hasDouble ? DOUBLE_BLOCK : LONG_BLOCK);
+        out.writeBits(blockType, 2);
+
+        DeltaOfDeltaEncoder timestamps = new DeltaOfDeltaEncoder();
+        DeltaOfDeltaEncoder longs = new DeltaOfDeltaEncoder();
+        XorEncoder doubles = new XorEncoder();
+        for (TsKvEntry entry : entries) {
+            timestamps.write(out, entry.getTs());
+            boolean isDouble = entry.getDataType() == DataType.DOUBLE;
+            if (blockType == MIXED_BLOCK) {
+                out.writeBit(isDouble);
+            }
+            if (isDouble) {
+                doubles.write(out, entry.getDoubleValue().orElse(0.0));
+            } else if (entry.getDataType() == DataType.LONG) {
+                longs.write(out, entry.getLongValue().orElse(0L));
+            } else {
+                throw new IllegalArgumentException("Not supported data type: " + entry.getDataType());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static List<TsKvEntry> decode(byte[] data, String key) {
+        BitInput in = new BitInput(data);
+        int count = (int) in.readBits(32);
+        int blockType = (int) in.readBits(2);
+        List<TsKvEntry> entries = new ArrayList<>(count);
+        DeltaOfDeltaDecoder timestamps = new DeltaOfDeltaDecoder();
+        DeltaOfDeltaDecoder longs = new DeltaOfDeltaDecoder();
+        XorDecoder doubles = new XorDecoder();
+        for (int i = 0; i < count; i++) {
+            long ts = timestamps.read(in);
+            boolean isDouble = blockType == MIXED_BLOCK ? in.readBit() : blockType == DOUBLE_BLOCK;
+            if (isDouble) {
+                entries.add(new BasicTsKvEntry(ts, new DoubleDataEntry(key, doubles.read(in))));
+            } else {
+                entries.add(new BasicTsKvEntry(ts, new LongDataEntry(key, longs.read(in))));
+            }
+        }
+        return entries;
+    }
+
+    private static final class DeltaOfDeltaEncoder {
+        private boolean first = true;
+        private long previous;
+        private long previousDelta;
+
+        void write(BitOutput out, long value) {
+            if (first) {
+                out.writeBits(value, 64);
+                first = false;
+            } else {
+                long delta = value - previous;
+                long deltaOfDelta = delta - previousDelta;
+                if (deltaOfDelta == 0) {
+                    out.writeBit(false);
+                } else if (fits(deltaOfDelta, 7)) {
+                    out.writeBits(0b10, 2);
+                    out.writeBits(deltaOfDelta, 7);
+                } else if (fits(deltaOfDelta, 9)) {
+                    out.writeBits(0b110, 3);
+                    out.writeBits(deltaOfDelta, 9);
+                } else if (fits(deltaOfDelta, 12)) {
+                    out.writeBits(0b1110, 4);
+                    out.writeBits(deltaOfDelta, 12);
+                } else if (fits(deltaOfDelta, 32)) {
+                    out.writeBits(0b11110, 5);
+                    out.writeBits(deltaOfDelta, 32);
+                } else {
+                    out.writeBits(0b11111, 5);
+                    out.writeBits(deltaOfDelta, 64);
+                }
+                previousDelta = delta;
+            }
+            previous = value;
+        }
+
+        private static boolean fits(long value, int bits) {
+            long bound = 1L << (bits - 1);
+            return value >= -bound && value < bound;
+        }
+    }
+
+    private static final class DeltaOfDeltaDecoder {
+        private boolean first = true;
+        private long previous;
+        private long previousDelta;
+
+        long read(BitInput in) {
+            if (first) {
+                first = false;
+                previous = in.readBits(64);
+                return previous;
+            }
+            long deltaOfDelta;
+            if (!in.readBit()) {
+                deltaOfDelta = 0;
+            } else if (!in.readBit()) {
+                deltaOfDelta = in.readSignedBits(7);
+            } else if (!in.readBit()) {
+                deltaOfDelta = in.readSignedBits(9);
+            } else if (!in.readBit()) {
+                deltaOfDelta = in.readSignedBits(12);
+            } else if (!in.readBit()) {
+                deltaOfDelta = in.readSignedBits(32);
+            } else {
+                deltaOfDelta = in.readBits(64);
+            }
+            previousDelta += deltaOfDelta;
+            previous += previousDelta;
+            return previous;
+        }
+    }
+
+    private static final class XorEncoder {
+        private boolean first = true;
+        private long previous;
+        private int leadingZeros = Integer.MAX_VALUE;
+        private int trailingZeros;
+
+        void write(BitOutput out, double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            if (first) {
+                out.writeBits(bits, 64);
+                first = false;
+            } else {
+                long xor = bits ^ previous;
+                if (xor == 0) {
+                    out.writeBit(false);
+                } else {
+                    out.writeBit(true);
+                    int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                    int trailing = Long.numberOfTrailingZeros(xor);
+                    if (leading >= leadingZeros && trailing >= trailingZeros) {
+                        out.writeBit(false);
+                        out.writeBits(xor >>> trailingZeros, 64 - leadingZeros - trailingZeros);
+                    } else {
+                        int significantBits = 64 - leading - trailing;
+                        out.writeBit(true);
+                        out.writeBits(leading, 5);
+                        out.writeBits(significantBits - 1, 6);
+                        out.writeBits(xor >>> trailing, significantBits);
+                        leadingZeros = leading;
+                        trailingZeros = trailing;
+                    }
+                }
+            }
+            previous = bits;
+        }
+    }
+
+    private static final class XorDecoder {
+        private boolean first = true;
+        private long previous;
+        private int leadingZeros;
+        private int trailingZeros;
+
+        double read(BitInput in) {
+            if (first) {
+                first = false;
+                previous = in.readBits(64);
+            } else if (in.readBit()) {
+                if (in.readBit()) {
+                    leadingZeros = (int) in.readBits(5);
+                    int significantBits = (int) in.readBits(6) + 1;
+                    trailingZeros = 64 - leadingZeros - significantBits;
+                }
+                previous ^= in.readBits(64 - leadingZeros - trailingZeros) << trailingZeros;
+            }
+            return Double.longBitsToDouble(previous);
+        }
+    }
+
+    private static final class BitOutput {
+        private byte[] buffer;
+        private int bitPosition;
+
+        BitOutput(int initialSize) {
+            buffer = new byte[initialSize];
+        }
+
+        void writeBit(boolean bit) {
+            writeBits(bit ? 1 : 0, 1);
+        }
+
+        void writeBits(long value, int bits) {
+            ensureCapacity(bits);
+            for (int i = bits - 1; i >= 0; i--) {
+                if (((value >>> i) & 1) != 0) {
+                    buffer[bitPosition >>> 3] |= (byte) (0x80 >>> (bitPosition & 7));
+                }
+                bitPosition++;
+            }
+        }
+
+        private void ensureCapacity(int bits) {
+            int requiredBytes = (bitPosition + bits + 7) >>> 3;
+            if (requiredBytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(requiredBytes, buffer.length * 2));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, (bitPosition + 7) >>> 3);
+        }
+    }
+
+    private static final class BitInput {
+        private final byte[] buffer;
+        private int bitPosition;
+
+        BitInput(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        boolean readBit() {
+            boolean bit = (buffer[bitPosition >>> 3] & (0x80 >>> (bitPosition & 7))) != 0;
+            bitPosition++;
+            return bit;
+        }
+
+        long readBits(int bits) {
+            long value = 0;
+            for (int i = 0; i < bits; i++) {
+                value = (value << 1) | (readBit() ? 1 : 0);
+            }
+            return value;
+        }
+
+        long readSignedBits(int bits) {
+            long value = readBits(bits);
+            return (value << (64 - bits)) >> (64 - bits);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.block;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.BooleanDataEntry;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.JsonDataEntry;
+import org.thingsboard.server.common.data.kv.KvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.StringDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.dao.model.ModelConstants;
+import org.thingsboard.server.dao.sqlts.TsTableCleanup;
+import org.thingsboard.server.dao.util.SqlTsDao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.BiPredicate;
+
+/**
+ * Stores the compressed blocks in the ts_block table and moves the numeric raw rows of closed blocks out of ts_kv.
+ * The table is not named ts_kv_* on purpose: the PostgreSQL partitions cleanup treats such tables as ts_kv partitions.
+ */
+@SqlTsDao
+@Repository
+public class TsBlockRepository {
+
+    private static final String FIND_CANDIDATES_QUERY = "SELECT b.entity_id, b.key, b.block_ts FROM " +
+            "(SELECT tskv.entity_id, tskv.key, (tskv.ts / ?) * ? AS block_ts FROM ts_kv tskv " +
+            "WHERE tskv.ts >= ? AND tskv.ts < ? AND (tskv.long_v IS NOT NULL OR tskv.dbl_v IS NOT NULL)) b " +
+            "GROUP BY b.entity_id, b.key, b.block_ts LIMIT ?";
+
+    private static final String FIND_NUMERIC_RAW_QUERY = "SELECT tskv.ts, tskv.long_v, tskv.dbl_v FROM ts_kv tskv " +
+            "WHERE tskv.entity_id = ? AND tskv.key = ? AND tskv.ts >= ? AND tskv.ts < ? " +
+            "AND (tskv.long_v IS NOT NULL OR tskv.dbl_v IS NOT NULL) ORDER BY tskv.ts";
+
+    private static final String FIND_RAW_QUERY = "SELECT tskv.ts, tskv.bool_v, tskv.str_v, tskv.long_v, tskv.dbl_v, tskv.json_v FROM ts_kv tskv " +
+            "WHERE tskv.entity_id = ? AND tskv.key = ? AND tskv.ts >= ? AND tskv.ts < ?";
+
+    private static final String FIND_RAW_TIMESTAMPS_QUERY = "SELECT tskv.ts FROM ts_kv tskv WHERE tskv.entity_id = ? AND tskv.key = ? AND tskv.ts >= ? AND tskv.ts < ?";
+
+    private static final String FIND_RAW_AGGREGATES_QUERY = "SELECT b.bucket, SUM(CASE WHEN b.bool_v IS NULL THEN 0 ELSE 1 END), " +
+            "SUM(CASE WHEN b.str_v IS NULL THEN 0 ELSE 1 END), SUM(CASE WHEN b.json_v IS NULL THEN 0 ELSE 1 END), " +
+            "SUM(CASE WHEN b.long_v IS NULL THEN 0 ELSE 1 END), SUM(CASE WHEN b.dbl_v IS NULL THEN 0 ELSE 1 END), " +
+            "SUM(COALESCE(b.long_v, 0)), SUM(COALESCE(b.dbl_v, 0.0)), MIN(b.long_v), MAX(b.long_v), MIN(b.dbl_v), MAX(b.dbl_v), MIN(b.str_v), MAX(b.str_v) " +
+            "FROM (SELECT (tskv.ts - ?) / ? AS bucket, tskv.bool_v, tskv.str_v, tskv.long_v, tskv.dbl_v, tskv.json_v " +
+            "FROM ts_kv tskv WHERE tskv.entity_id = ? AND tskv.key = ? AND tskv.ts >= ? AND tskv.ts < ?) b GROUP BY b.bucket";
+
+    private static final String FIND_BLOCKS_QUERY = "SELECT b.block_ts, b.data FROM ts_block b " +
+            "WHERE b.entity_id = ? AND b.key = ? AND b.block_ts > ? AND b.block_ts < ? ORDER BY b.block_ts ";
+
+    private static final String FIND_BLOCK_QUERY = "SELECT b.data FROM ts_block b WHERE b.entity_id = ? AND b.key = ? AND b.block_ts = ?";
+
+    private static final String DELETE_BLOCK_QUERY = "DELETE FROM ts_block WHERE entity_id = ? AND key = ? AND block_ts = ?";
+
+    private static final String INSERT_BLOCK_QUERY = "INSERT INTO ts_block (entity_id, key, block_ts, cnt, data) VALUES (?, ?, ?, ?, ?)";
+
+    // the value is compared as well, so the rows overwritten after they were compacted stay in ts_kv and take precedence over the block
+    private static final String DELETE_RAW_QUERY = "DELETE FROM ts_kv WHERE entity_id = ? AND key = ? AND ts = ? " +
+            "AND long_v IS NOT DISTINCT FROM CAST(? AS BIGINT) AND dbl_v IS NOT DISTINCT FROM CAST(? AS DOUBLE PRECISION) AND bool_v IS NULL AND str_v IS NULL AND json_v IS NULL";
+
+    // the table and the procedure are created by schema-ts-psql.sql and the 3.3.3 upgrade script
+    private static final String CLEANUP_QUERY = "call cleanup_ts_table_by_ttl('ts_block', 'block_ts', ?, ?, ?, ?)";
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
+    public List<TsBlockKey> findCompactionCandidates(long blockDuration, long startTs, long endTs, int limit) {
+        return jdbcTemplate.query(FIND_CANDIDATES_QUERY, (rs, rowNum) -> new TsBlockKey(rs.getObject(1, UUID.class), rs.getInt(2), rs.getLong(3)),
+                blockDuration, blockDuration, startTs, endTs, limit);
+    }
+
+    public List<TsKvEntry> findNumericRaw(UUID entityId, int key, long startTs, long endTs) {
+        return jdbcTemplate.query(FIND_NUMERIC_RAW_QUERY, (rs, rowNum) -> toEntry(rs.getLong(1), null, null, null, getLong(rs, 2), getDouble(rs, 3), null),
+                entityId, key, startTs, endTs);
+    }
+
+    public List<TsKvEntry> findRaw(UUID entityId, int key, String strKey, long startTs, long endTs) {
+        return jdbcTemplate.query(FIND_RAW_QUERY, (rs, rowNum) -> toEntry(rs.getLong(1), strKey, getBoolean(rs, 2), rs.getString(3), getLong(rs, 4), getDouble(rs, 5), rs.getString(6)),
+                entityId, key, startTs, endTs);
+    }
+
+    public Set<Long> findRawTimestamps(UUID entityId, int key, long startTs, long endTs) {
+        return new HashSet<>(jdbcTemplate.queryForList(FIND_RAW_TIMESTAMPS_QUERY, Long.class, entityId, key, startTs, endTs));
+    }
+
+    /**
+     * Returns the aggregates of the raw rows by the interval index.
+     */
+    public TreeMap<Long, TsIntervalAggregate> findRawAggregates(UUID entityId, int key, long startTs, long endTs, long interval) {
+        TreeMap<Long, TsIntervalAggregate> intervals = new TreeMap<>();
+        jdbcTemplate.query(FIND_RAW_AGGREGATES_QUERY, rs -> {
+            TsIntervalAggregate aggregate = new TsIntervalAggregate();
+            aggregate.booleanCount = rs.getLong(2);
+            aggregate.strCount = rs.getLong(3);
+            aggregate.jsonCount = rs.getLong(4);
+            aggregate.longCount = rs.getLong(5);
+            aggregate.doubleCount = rs.getLong(6);
+            aggregate.longSum = rs.getLong(7);
+            aggregate.doubleSum = rs.getDouble(8);
+            aggregate.longMin = getLong(rs, 9);
+            aggregate.longMax = getLong(rs, 10);
+            aggregate.doubleMin = getDouble(rs, 11);
+            aggregate.doubleMax = getDouble(rs, 12);
+            aggregate.strMin = rs.getString(13);
+            aggregate.strMax = rs.getString(14);
+            intervals.put(rs.getLong(1), aggregate);
+        }, startTs, interval, entityId, key, startTs, endTs);
+        return intervals;
+    }
+
+    public byte[] findBlock(UUID entityId, int key, long blockTs) {
+        List<byte[]> blocks = jdbcTemplate.query(FIND_BLOCK_QUERY, (rs, rowNum) -> rs.getBytes(1), entityId, key, blockTs);
+        return blocks.isEmpty() ? null : blocks.get(0);
+    }
+
+    /**
+     * Passes the blocks with block_ts in (afterTs, beforeTs) in the requested order to the consumer, until it returns false.
+     */
+    public void findBlocks(UUID entityId, int key, long afterTs, long beforeTs, boolean ascending, BiPredicate<Long, byte[]> consumer) {
+        jdbcTemplate.query(FIND_BLOCKS_QUERY + (ascending ? "ASC" : "DESC"), (ResultSet rs) -> {
+            while (rs.next()) {
+                if (!consumer.test(rs.getLong(1), rs.getBytes(2))) {
+                    break;
+                }
+            }
+            return null;
+        }, entityId, key, afterTs, beforeTs);
+    }
+
+    public void saveBlock(UUID entityId, int key, long blockTs, int count, byte[] data) {
+        jdbcTemplate.update(DELETE_BLOCK_QUERY, entityId, key, blockTs);
+        if (count > 0) {
+            jdbcTemplate.update(INSERT_BLOCK_QUERY, entityId, key, blockTs, count, data);
+        }
+    }
+
+    public void deleteRaw(UUID entityId, int key, List<TsKvEntry> entries) {
+        jdbcTemplate.batchUpdate(DELETE_RAW_QUERY, entries, entries.size(), (ps, entry) -> {
+            ps.setObject(1, entityId);
+            ps.setInt(2, key);
+            ps.setLong(3, entry.getTs());
+            if (entry.getLongValue().isPresent()) {
+                ps.setLong(4, entry.getLongValue().get());
+            } else {
+                ps.setNull(4, Types.BIGINT);
+            }
+            if (entry.getDoubleValue().isPresent()) {
+                ps.setDouble(5, entry.getDoubleValue().get());
+            } else {
+                ps.setNull(5, Types.DOUBLE);
+            }
+        });
+    }
+
+    /**
+     * Removes the blocks that ended before the TTL of the tenant or customer of the entity, or the system TTL otherwise.
+     */
+    public long cleanup(long systemTtl, long blockDuration) {
+        return TsTableCleanup.cleanup(jdbcTemplate, CLEANUP_QUERY, blockDuration, ModelConstants.NULL_UUID, systemTtl, 0L);
+    }
+
+    private static TsKvEntry toEntry(long ts, String key, Boolean booleanValue, String strValue, Long longValue, Double doubleValue, String jsonValue) {
+        KvEntry kvEntry = null;
+        if (strValue != null) {
+            kvEntry = new StringDataEntry(key, strValue);
+        } else if (longValue != null) {
+            kvEntry = new LongDataEntry(key, longValue);
+        } else if (doubleValue != null) {
+            kvEntry = new DoubleDataEntry(key, doubleValue);
+        } else if (booleanValue != null) {
+            kvEntry = new BooleanDataEntry(key, booleanValue);
+        } else if (jsonValue != null) {
+            kvEntry = new JsonDataEntry(key, jsonValue);
+        }
+        return new BasicTsKvEntry(ts, kvEntry);
+    }
+
+    private static Boolean getBoolean(ResultSet rs, int column) throws SQLException {
+        boolean value = rs.getBoolean(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Long getLong(ResultSet rs, int column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Double getDouble(ResultSet rs, int column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? null : value;
+    }
+}
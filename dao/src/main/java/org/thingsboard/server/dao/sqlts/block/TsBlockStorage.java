@@ -0,0 +1,276 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.block;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
+import org.thingsboard.server.dao.sql.ScheduledLogExecutorComponent;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueParams;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueWrapper;
+import org.thingsboard.server.dao.util.SqlTsDao;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compressed block storage of the numeric timeseries. The data is written to ts_kv as usual and the closed blocks
+ * (fixed time windows per entity key) are periodically compacted: the numeric rows of the block are encoded with
+ * {@link TsBlockCodec}, merged into the ts_block row and removed from ts_kv in one transaction.
+ * The reads merge the decoded blocks with the remaining raw rows, the raw rows take precedence for the same timestamp.
+ */
+@Component
+@Slf4j
+@SqlTsDao
+@ConditionalOnProperty(prefix = "sql.ts.compression", value = "enabled", havingValue = "true")
+public class TsBlockStorage {
+
+    private static final Comparator<TsBlockKey> BLOCK_KEY_COMPARATOR = Comparator.comparing(TsBlockKey::getEntityId)
+            .thenComparingInt(TsBlockKey::getKey)
+            .thenComparingLong(TsBlockKey::getBlockTs);
+
+    @Autowired
+    private TsBlockRepository blockRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ScheduledLogExecutorComponent logExecutor;
+
+    @Autowired
+    private StatsFactory statsFactory;
+
+    @Value("${sql.ts.compression.block_duration_ms:86400000}")
+    private long blockDuration;
+
+    @Value("${sql.ts.compression.closed_after_ms:3600000}")
+    private long closedAfter;
+
+    @Value("${sql.ts.compression.lookback_ms:604800000}")
+    private long lookback;
+
+    @Value("${sql.ts.compression.compaction_interval_ms:60000}")
+    private long compactionInterval;
+
+    @Value("${sql.ts.compression.max_blocks_per_run:1000}")
+    private int maxBlocksPerRun;
+
+    @Value("${sql.ts.compression.batch_size:100}")
+    private int batchSize;
+
+    @Value("${sql.ts.compression.batch_max_delay:1000}")
+    private long maxDelay;
+
+    @Value("${sql.ts.compression.stats_print_interval_ms:10000}")
+    private long statsPrintIntervalMs;
+
+    @Value("${sql.ts.compression.batch_threads:3}")
+    private int batchThreads;
+
+    private TbSqlBlockingQueueWrapper<TsBlockKey> compactionQueue;
+    private ScheduledExecutorService compactionScheduler;
+    // all the raw rows of the blocks closed before this timestamp were scheduled for compaction
+    private volatile long scannedBeforeTs;
+
+    @PostConstruct
+    public void init() {
+        TbSqlBlockingQueueParams params = TbSqlBlockingQueueParams.builder()
+                .logName("TS Blocks")
+                .batchSize(batchSize)
+                .maxDelay(maxDelay)
+                .statsPrintIntervalMs(statsPrintIntervalMs)
+                .statsNamePrefix("ts.blocks")
+                .batchSortEnabled(false)
+                .build();
+        compactionQueue = new TbSqlBlockingQueueWrapper<>(params, key -> key.getEntityId().hashCode(), batchThreads, statsFactory);
+        compactionQueue.init(logExecutor, this::compact, BLOCK_KEY_COMPARATOR);
+        compactionScheduler = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("ts-blocks-compaction"));
+        compactionScheduler.scheduleWithFixedDelay(this::scheduleCompaction, compactionInterval, compactionInterval, TimeUnit.MILLISECONDS);
+        log.info("Timeseries block compression enabled with block duration {} ms", blockDuration);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (compactionScheduler != null) {
+            compactionScheduler.shutdownNow();
+        }
+        if (compactionQueue != null) {
+            compactionQueue.destroy();
+        }
+    }
+
+    /**
+     * Looks for the raw rows of the closed blocks within the lookback once per closed block window. The runs are repeated
+     * until less than max_blocks_per_run candidates are found, then the scan is skipped until the next block window is closed.
+     * Late writes into the already compacted blocks are picked up by the scan of the next window.
+     */
+    void scheduleCompaction() {
+        try {
+            long closedBeforeTs = System.currentTimeMillis() - closedAfter;
+            closedBeforeTs -= closedBeforeTs % blockDuration;
+            if (closedBeforeTs == scannedBeforeTs) {
+                return;
+            }
+            List<TsBlockKey> candidates = blockRepository.findCompactionCandidates(blockDuration,
+                    Math.max(closedBeforeTs - lookback, 0), closedBeforeTs, maxBlocksPerRun);
+            log.debug("Scheduling compaction of {} timeseries blocks", candidates.size());
+            candidates.forEach(compactionQueue::add);
+            if (candidates.size() < maxBlocksPerRun) {
+                scannedBeforeTs = closedBeforeTs;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to schedule compaction of timeseries blocks", e);
+        }
+    }
+
+    void compact(List<TsBlockKey> keys) {
+        transactionTemplate.executeWithoutResult(status -> new LinkedHashSet<>(keys).forEach(this::compact));
+    }
+
+    private void compact(TsBlockKey blockKey) {
+        UUID entityId = blockKey.getEntityId();
+        int key = blockKey.getKey();
+        long blockTs = blockKey.getBlockTs();
+        List<TsKvEntry> rawEntries = blockRepository.findNumericRaw(entityId, key, blockTs, blockTs + blockDuration);
+        if (rawEntries.isEmpty()) {
+            return;
+        }
+        TreeMap<Long, TsKvEntry> entries = new TreeMap<>();
+        byte[] block = blockRepository.findBlock(entityId, key, blockTs);
+        if (block != null) {
+            TsBlockCodec.decode(block, "").forEach(entry -> entries.put(entry.getTs(), entry));
+        }
+        rawEntries.forEach(entry -> entries.put(entry.getTs(), entry));
+        blockRepository.saveBlock(entityId, key, blockTs, entries.size(), TsBlockCodec.encode(entries.values()));
+        blockRepository.deleteRaw(entityId, key, rawEntries);
+    }
+
+    /**
+     * Merges the raw entries of a NONE aggregation query, already sorted and limited, with the entries of the blocks.
+     */
+    public List<TsKvEntry> findAllWithLimit(UUID entityId, int key, ReadTsKvQuery query, List<TsKvEntry> rawEntries) {
+        boolean ascending = "ASC".equalsIgnoreCase(query.getOrder());
+        int limit = query.getLimit();
+        TreeMap<Long, TsKvEntry> entries = new TreeMap<>(ascending ? Comparator.<Long>naturalOrder() : Comparator.<Long>reverseOrder());
+        rawEntries.forEach(entry -> entries.put(entry.getTs(), entry));
+        blockRepository.findBlocks(entityId, key, query.getStartTs() - blockDuration, query.getEndTs(), ascending, (blockTs, data) -> {
+            if (entries.size() >= limit) {
+                long lastTs = entries.lastKey();
+                if (ascending ? lastTs < blockTs : lastTs >= blockTs + blockDuration) {
+                    return false;
+                }
+            }
+            for (TsKvEntry entry : TsBlockCodec.decode(data, query.getKey())) {
+                if (entry.getTs() >= query.getStartTs() && entry.getTs() < query.getEndTs()) {
+                    entries.putIfAbsent(entry.getTs(), entry);
+                }
+            }
+            while (entries.size() > limit) {
+                entries.pollLastEntry();
+            }
+            return true;
+        });
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Aggregates the raw and block entries the same way {@link org.thingsboard.server.dao.sqlts.ts.TsKvAggregationRepository} does.
+     * The raw rows are aggregated by the database and the blocks are decoded one at a time, skipping the values overwritten by raw rows,
+     * so only one block and the aggregates of the intervals are kept in memory.
+     */
+    public List<TsKvEntity> findAggregated(UUID entityId, int key, String strKey, long startTs, long endTs, long interval, Aggregation aggregation) {
+        long alignedEndTs = startTs + ((endTs - startTs + interval - 1) / interval) * interval;
+        TreeMap<Long, TsIntervalAggregate> intervals = blockRepository.findRawAggregates(entityId, key, startTs, alignedEndTs, interval);
+        blockRepository.findBlocks(entityId, key, startTs - blockDuration, alignedEndTs, true, (blockTs, data) -> {
+            long fromTs = Math.max(blockTs, startTs);
+            long toTs = Math.min(blockTs + blockDuration, alignedEndTs);
+            Set<Long> rawTimestamps = blockRepository.findRawTimestamps(entityId, key, fromTs, toTs);
+            for (TsKvEntry entry : TsBlockCodec.decode(data, strKey)) {
+                if (entry.getTs() >= fromTs && entry.getTs() < toTs && !rawTimestamps.contains(entry.getTs())) {
+                    intervals.computeIfAbsent((entry.getTs() - startTs) / interval, i -> new TsIntervalAggregate()).add(entry);
+                }
+            }
+            return true;
+        });
+
+        List<TsKvEntity> result = new ArrayList<>(intervals.size());
+        intervals.forEach((i, intervalAggregate) -> {
+            TsKvEntity entity = intervalAggregate.toEntity(aggregation);
+            if (entity.isNotEmpty()) {
+                entity.setEntityId(entityId);
+                entity.setKey(key);
+                entity.setStrKey(strKey);
+                entity.setTs(startTs + i * interval + interval / 2);
+                result.add(entity);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Removes the entries of [startTs, endTs) from the blocks. The raw rows are removed by the caller.
+     */
+    public void remove(UUID entityId, int key, long startTs, long endTs) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<Long, byte[]> blocks = new TreeMap<>();
+            blockRepository.findBlocks(entityId, key, startTs - blockDuration, endTs, true, (blockTs, data) -> {
+                blocks.put(blockTs, data);
+                return true;
+            });
+            blocks.forEach((blockTs, data) -> {
+                List<TsKvEntry> remaining = new ArrayList<>();
+                if (blockTs < startTs || blockTs + blockDuration > endTs) {
+                    for (TsKvEntry entry : TsBlockCodec.decode(data, "")) {
+                        if (entry.getTs() < startTs || entry.getTs() >= endTs) {
+                            remaining.add(entry);
+                        }
+                    }
+                }
+                blockRepository.saveBlock(entityId, key, blockTs, remaining.size(), TsBlockCodec.encode(remaining));
+            });
+        });
+    }
+
+    public void cleanup(long systemTtl) {
+        try {
+            log.info("Total timeseries blocks removed by TTL: [{}]", blockRepository.cleanup(systemTtl, blockDuration));
+        } catch (DataAccessException e) {
+            log.error("Failed to cleanup timeseries blocks by TTL", e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.block;
+
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
+
+/**
+ * Aggregates of a single query interval, accumulated from the decoded block entries and the aggregates of the raw rows
+ * computed by the database. The result has the same semantics as {@link org.thingsboard.server.dao.sqlts.ts.TsKvAggregationRepository}.
+ */
+class TsIntervalAggregate {
+    long booleanCount;
+    long strCount;
+    long jsonCount;
+    long longCount;
+    long doubleCount;
+    long longSum;
+    double doubleSum;
+    Long longMin;
+    Long longMax;
+    Double doubleMin;
+    Double doubleMax;
+    String strMin;
+    String strMax;
+
+    void add(TsKvEntry entry) {
+        switch (entry.getDataType()) {
+            case BOOLEAN:
+                booleanCount++;
+                break;
+            case JSON:
+                jsonCount++;
+                break;
+            case STRING:
+                strCount++;
+                String strValue = entry.getStrValue().orElse("");
+                strMin = strMin == null || strValue.compareTo(strMin) < 0 ? strValue : strMin;
+                strMax = strMax == null || strValue.compareTo(strMax) > 0 ? strValue : strMax;
+                break;
+            case LONG:
+                long longValue = entry.getLongValue().orElse(0L);
+                longCount++;
+                longSum += longValue;
+                longMin = longMin == null ? longValue : Math.min(longMin, longValue);
+                longMax = longMax == null ? longValue : Math.max(longMax, longValue);
+                break;
+            case DOUBLE:
+                double doubleValue = entry.getDoubleValue().orElse(0.0);
+                doubleCount++;
+                doubleSum += doubleValue;
+                doubleMin = doubleMin == null ? doubleValue : Math.min(doubleMin, doubleValue);
+                doubleMax = doubleMax == null ? doubleValue : Math.max(doubleMax, doubleValue);
+                break;
+        }
+    }
+
+    TsKvEntity toEntity(Aggregation aggregation) {
+        switch (aggregation) {
+            case COUNT:
+                return new TsKvEntity(booleanCount, strCount, longCount, doubleCount, jsonCount);
+            case AVG:
+            case SUM:
+                return new TsKvEntity(longSum, doubleSum, longCount, doubleCount, aggregation.name());
+            case MIN:
+                return strMin != null ? new TsKvEntity(strMin) : new TsKvEntity(longMin, doubleMin, longCount, doubleCount, aggregation.name());
+            case MAX:
+                return strMax != null ? new TsKvEntity(strMax) : new TsKvEntity(longMax, doubleMax, longCount, doubleCount, aggregation.name());
+            default:
+                throw new IllegalArgumentException("Not supported aggregation type: " + aggregation);
+        }
+    }
+}
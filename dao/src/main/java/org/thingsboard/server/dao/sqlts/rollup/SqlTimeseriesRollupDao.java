@@ -0,0 +1,221 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.rollup;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.DeleteTsKvQuery;
+import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.dao.DaoUtil;
+import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
+import org.thingsboard.server.dao.sql.ScheduledLogExecutorComponent;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueParams;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueWrapper;
+import org.thingsboard.server.dao.sqlts.BaseAbstractSqlTimeseriesDao;
+import org.thingsboard.server.dao.timeseries.TimeseriesRollupDao;
+import org.thingsboard.server.dao.util.SqlTsDao;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Maintains minute/hour/day (configurable) aggregates of the saved timeseries in the ts_rollup table and serves
+ * the aggregation queries aligned to one of the granularities from it.
+ * The planner picks the coarsest granularity that divides both the query start and the interval, so the query reads
+ * at most (interval / granularity) rows per interval instead of every raw data point.
+ * <p>
+ * The saved data points only mark their buckets of the finest granularity as dirty. The dirty buckets of a batch are
+ * recalculated from the raw data, and each coarser granularity is recalculated from the previous one if it is a multiple of it,
+ * so re-saving an existing data point replaces its value instead of counting it again.
+ * Each batch therefore reads the raw data points of every touched finest bucket and up to (granularity / previous granularity)
+ * rollup rows for every touched coarser bucket. A longer {@code batch_max_delay} merges more saves into the same dirty buckets.
+ * <p>
+ * Only the data saved since the rollups were enabled is aggregated, so the queries starting before the valid since timestamp
+ * keep reading the raw data. Unless {@code sql.ts_rollup.valid_since_ts} is set, it is the time of the first start with the rollups
+ * enabled, rounded up to the finest granularity and stored in the ts_rollup_state table.
+ */
+@Component
+@Slf4j
+@SqlTsDao
+@ConditionalOnProperty(prefix = "sql.ts_rollup", value = "enabled", havingValue = "true")
+public class SqlTimeseriesRollupDao extends BaseAbstractSqlTimeseriesDao implements TimeseriesRollupDao {
+
+    @Autowired
+    private TsRollupRepository rollupRepository;
+
+    @Autowired
+    private ScheduledLogExecutorComponent logExecutor;
+
+    @Autowired
+    private StatsFactory statsFactory;
+
+    @Value("${sql.ts_rollup.granularities:60000,3600000,86400000}")
+    private long[] granularities;
+
+    static final String VALID_SINCE_TS_STATE = "validSinceTs";
+
+    @Value("${sql.ts_rollup.valid_since_ts:#{null}}")
+    private Long validSinceTsProperty;
+
+    private long validSinceTs;
+
+    @Value("${sql.ts_rollup.batch_size:10000}")
+    private int batchSize;
+
+    @Value("${sql.ts_rollup.batch_max_delay:100}")
+    private long maxDelay;
+
+    @Value("${sql.ts_rollup.stats_print_interval_ms:10000}")
+    private long statsPrintIntervalMs;
+
+    @Value("${sql.ts_rollup.batch_threads:3}")
+    private int batchThreads;
+
+    @Value("${sql.ts.compression.enabled:false}")
+    private boolean compressionEnabled;
+
+    private TbSqlBlockingQueueWrapper<TsRollupBucket> rollupQueue;
+
+    @PostConstruct
+    protected void init() {
+        if (compressionEnabled) {
+            // the buckets are rebuilt from the ts_kv rows, which the compaction moves to the compressed blocks
+            throw new IllegalStateException("Timeseries rollups can't be used together with the compressed timeseries blocks (sql.ts.compression.enabled)");
+        }
+        granularities = Arrays.stream(granularities).filter(granularity -> granularity > 0).sorted().toArray();
+        validSinceTs = validSinceTsProperty != null ? validSinceTsProperty : getOrSaveActivationTs();
+        TbSqlBlockingQueueParams params = TbSqlBlockingQueueParams.builder()
+                .logName("TS Rollup")
+                .batchSize(batchSize)
+                .maxDelay(maxDelay)
+                .statsPrintIntervalMs(statsPrintIntervalMs)
+                .statsNamePrefix("ts.rollup")
+                .batchSortEnabled(false)
+                .build();
+        rollupQueue = new TbSqlBlockingQueueWrapper<>(params, entity -> entity.getEntityId().hashCode(), batchThreads, statsFactory);
+        rollupQueue.init(logExecutor, this::rebuildDirtyBuckets, TsRollupBucket.PRIMARY_KEY_COMPARATOR);
+        log.info("Timeseries rollups enabled with granularities {} ms, valid since {}", granularities, validSinceTs);
+    }
+
+    @PreDestroy
+    protected void destroy() {
+        if (rollupQueue != null) {
+            rollupQueue.destroy();
+        }
+    }
+
+    @Override
+    public ListenableFuture<Void> save(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry) {
+        if (tsKvEntry.getTs() < 0 || tsKvEntry.getValue() == null || granularities.length == 0) {
+            return Futures.immediateFuture(null);
+        }
+        Integer keyId = getOrSaveKeyId(tsKvEntry.getKey());
+        return rollupQueue.add(TsRollupBucket.of(entityId.getId(), keyId, granularities[0], tsKvEntry.getTs()));
+    }
+
+    @Override
+    public ListenableFuture<List<TsKvEntry>> findAllAsync(TenantId tenantId, EntityId entityId, ReadTsKvQuery query) {
+        long granularity = getGranularity(query);
+        if (granularity == 0) {
+            return Futures.immediateFuture(null);
+        }
+        Integer keyId = getOrSaveKeyId(query.getKey());
+        return service.submit(() -> {
+            List<TsKvEntity> tsKvEntities = rollupRepository.findAggregated(entityId.getId(), keyId, granularity,
+                    query.getStartTs(), query.getEndTs(), query.getInterval(), query.getAggregation());
+            if (tsKvEntities == null) {
+                return null;
+            }
+            tsKvEntities.forEach(tsKvEntity -> tsKvEntity.setStrKey(query.getKey()));
+            return DaoUtil.convertDataList(tsKvEntities);
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> remove(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query) {
+        Integer keyId = getOrSaveKeyId(query.getKey());
+        return service.submit(() -> {
+            for (long granularity : granularities) {
+                rollupRepository.rebuild(entityId.getId(), keyId, granularity, query.getStartTs(), query.getEndTs());
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void cleanup(long systemTtl) {
+        log.info("Going to cleanup timeseries rollups using ttl: {}s", systemTtl);
+        try {
+            log.info("Total timeseries rollups removed by TTL: [{}]", rollupRepository.cleanup(systemTtl));
+        } catch (DataAccessException e) {
+            log.error("Failed to cleanup timeseries rollups by TTL", e);
+        }
+    }
+
+    private long getOrSaveActivationTs() {
+        long ts = System.currentTimeMillis();
+        if (granularities.length > 0) {
+            ts += Math.floorMod(-ts, granularities[0]);
+        }
+        return rollupRepository.getOrSaveState(VALID_SINCE_TS_STATE, ts);
+    }
+
+    long getGranularity(ReadTsKvQuery query) {
+        if (query.getAggregation() == null || query.getAggregation() == Aggregation.NONE || query.getStartTs() < Math.max(validSinceTs, 0)) {
+            return 0;
+        }
+        for (int i = granularities.length - 1; i >= 0; i--) {
+            long granularity = granularities[i];
+            if (query.getInterval() >= granularity && query.getInterval() % granularity == 0 && query.getStartTs() % granularity == 0) {
+                return granularity;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Recalculates the distinct buckets of the finest granularity and then the buckets of the coarser granularities containing them.
+     */
+    void rebuildDirtyBuckets(List<TsRollupBucket> dirtyBuckets) {
+        Collection<TsRollupBucket> buckets = dirtyBuckets;
+        long previousGranularity = 0;
+        for (long granularity : granularities) {
+            Set<TsRollupBucket> granularityBuckets = new TreeSet<>(TsRollupBucket.PRIMARY_KEY_COMPARATOR);
+            buckets.forEach(bucket -> granularityBuckets.add(TsRollupBucket.of(bucket.getEntityId(), bucket.getKey(), granularity, bucket.getTs())));
+            long sourceGranularity = previousGranularity > 0 && granularity % previousGranularity == 0 ? previousGranularity : 0;
+            rollupRepository.rebuild(new ArrayList<>(granularityBuckets), sourceGranularity);
+            buckets = granularityBuckets;
+            previousGranularity = granularity;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.rollup;
+
+import lombok.Data;
+
+import java.util.Comparator;
+import java.util.UUID;
+
+/**
+ * Identifies a single time bucket of the rollup granularity of an entity key, which is recalculated after the data is saved into it.
+ */
+@Data
+public class TsRollupBucket {
+
+    public static final Comparator<TsRollupBucket> PRIMARY_KEY_COMPARATOR = Comparator.comparing(TsRollupBucket::getEntityId)
+            .thenComparingInt(TsRollupBucket::getKey)
+            .thenComparingLong(TsRollupBucket::getGranularity)
+            .thenComparingLong(TsRollupBucket::getTs);
+
+    private final UUID entityId;
+    private final int key;
+    private final long granularity;
+    private final long ts;
+
+    public static TsRollupBucket of(UUID entityId, int key, long granularity, long ts) {
+        return new TsRollupBucket(entityId, key, granularity, ts - ts % granularity);
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.rollup;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
+import org.thingsboard.server.dao.model.ModelConstants;
+import org.thingsboard.server.dao.sqlts.TsTableCleanup;
+import org.thingsboard.server.dao.util.SqlTsDao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Reads and rebuilds the ts_rollup buckets. Query intervals are assembled from the buckets of a single granularity
+ * the same way {@link org.thingsboard.server.dao.sqlts.ts.TsKvAggregationRepository} assembles them from the raw rows.
+ * Buckets are always recalculated from the stored data rather than incremented, so re-saving a data point does not count it twice.
+ */
+@SqlTsDao
+@Repository
+public class TsRollupRepository {
+
+    private static final String INSERT_STATE_QUERY = "INSERT INTO ts_rollup_state (name, long_v) VALUES (?, ?)";
+
+    private static final String FIND_STATE_QUERY = "SELECT long_v FROM ts_rollup_state WHERE name = ?";
+
+    private static final String FIND_AGGREGATED_QUERY = "SELECT b.bucket, SUM(b.bool_cnt), SUM(b.str_cnt), SUM(b.json_cnt), SUM(b.long_cnt), SUM(b.dbl_cnt), " +
+            "SUM(b.long_sum), SUM(b.dbl_sum), MIN(b.long_min), MAX(b.long_max), MIN(b.dbl_min), MAX(b.dbl_max) " +
+            "FROM (SELECT (r.ts - ?) / ? AS bucket, r.bool_cnt, r.str_cnt, r.json_cnt, r.long_cnt, r.dbl_cnt, r.long_sum, r.dbl_sum, " +
+            "r.long_min, r.long_max, r.dbl_min, r.dbl_max FROM ts_rollup r " +
+            "WHERE r.entity_id = ? AND r.key = ? AND r.granularity = ? AND r.ts >= ? AND r.ts < ?) b " +
+            "GROUP BY b.bucket ORDER BY b.bucket";
+
+    private static final String DELETE_QUERY = "DELETE FROM ts_rollup WHERE entity_id = ? AND key = ? AND granularity = ? AND ts >= ? AND ts < ?";
+
+    private static final String REBUILD_QUERY = "INSERT INTO ts_rollup (entity_id, key, granularity, ts, bool_cnt, str_cnt, json_cnt, long_cnt, dbl_cnt, " +
+            "long_sum, dbl_sum, long_min, long_max, dbl_min, dbl_max) " +
+            "SELECT b.entity_id, b.key, b.granularity, b.bucket_ts, SUM(CASE WHEN b.bool_v IS NULL THEN 0 ELSE 1 END), " +
+            "SUM(CASE WHEN b.str_v IS NULL THEN 0 ELSE 1 END), SUM(CASE WHEN b.json_v IS NULL THEN 0 ELSE 1 END), " +
+            "SUM(CASE WHEN b.long_v IS NULL THEN 0 ELSE 1 END), SUM(CASE WHEN b.dbl_v IS NULL THEN 0 ELSE 1 END), " +
+            "SUM(COALESCE(b.long_v, 0)), SUM(COALESCE(b.dbl_v, 0.0)), MIN(b.long_v), MAX(b.long_v), MIN(b.dbl_v), MAX(b.dbl_v) " +
+            "FROM (SELECT tskv.entity_id, tskv.key, CAST(? AS BIGINT) AS granularity, (tskv.ts / ?) * ? AS bucket_ts, " +
+            "tskv.bool_v, tskv.str_v, tskv.long_v, tskv.dbl_v, tskv.json_v " +
+            "FROM ts_kv tskv WHERE tskv.entity_id = ? AND tskv.key = ? AND tskv.ts >= ? AND tskv.ts < ?) b " +
+            "GROUP BY b.entity_id, b.key, b.granularity, b.bucket_ts";
+
+    private static final String REBUILD_FROM_ROLLUPS_QUERY = "INSERT INTO ts_rollup (entity_id, key, granularity, ts, bool_cnt, str_cnt, json_cnt, long_cnt, dbl_cnt, " +
+            "long_sum, dbl_sum, long_min, long_max, dbl_min, dbl_max) " +
+            "SELECT b.entity_id, b.key, b.granularity, b.bucket_ts, SUM(b.bool_cnt), SUM(b.str_cnt), SUM(b.json_cnt), SUM(b.long_cnt), SUM(b.dbl_cnt), " +
+            "SUM(b.long_sum), SUM(b.dbl_sum), MIN(b.long_min), MAX(b.long_max), MIN(b.dbl_min), MAX(b.dbl_max) " +
+            "FROM (SELECT r.entity_id, r.key, CAST(? AS BIGINT) AS granularity, (r.ts / ?) * ? AS bucket_ts, r.bool_cnt, r.str_cnt, r.json_cnt, " +
+            "r.long_cnt, r.dbl_cnt, r.long_sum, r.dbl_sum, r.long_min, r.long_max, r.dbl_min, r.dbl_max " +
+            "FROM ts_rollup r WHERE r.entity_id = ? AND r.key = ? AND r.granularity = ? AND r.ts >= ? AND r.ts < ?) b " +
+            "GROUP BY b.entity_id, b.key, b.granularity, b.bucket_ts";
+
+    // the tables and the procedure are created by schema-ts-psql.sql and the 3.3.3 upgrade script
+    private static final String CLEANUP_QUERY = "call cleanup_ts_table_by_ttl('ts_rollup', 'ts', 0, ?, ?, ?)";
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    protected TransactionTemplate transactionTemplate;
+
+    /**
+     * Stores the value if the state with this name does not exist yet and returns the stored value.
+     */
+    public long getOrSaveState(String name, long value) {
+        try {
+            jdbcTemplate.update(INSERT_STATE_QUERY, name, value);
+        } catch (DuplicateKeyException e) {
+            // saved before or by another node
+        }
+        return jdbcTemplate.queryForObject(FIND_STATE_QUERY, Long.class, name);
+    }
+
+    /**
+     * Returns one entity per non-empty interval, or null if MIN/MAX is requested for an interval with string values,
+     * since only numeric values are rolled up.
+     */
+    public List<TsKvEntity> findAggregated(UUID entityId, int entityKey, long granularity, long startTs, long endTs, long interval, Aggregation aggregation) {
+        long alignedEndTs = startTs + ((endTs - startTs + interval - 1) / interval) * interval;
+        List<TsKvEntity> result = new ArrayList<>();
+        boolean[] unsupported = new boolean[1];
+        jdbcTemplate.query(FIND_AGGREGATED_QUERY, rs -> {
+            if (unsupported[0]) {
+                return;
+            }
+            TsKvEntity entity = toEntity(rs, aggregation);
+            if (entity == null) {
+                unsupported[0] = true;
+            } else if (entity.isNotEmpty()) {
+                entity.setEntityId(entityId);
+                entity.setKey(entityKey);
+                entity.setTs(startTs + rs.getLong(1) * interval + interval / 2);
+                result.add(entity);
+            }
+        }, startTs, interval, entityId, entityKey, granularity, startTs, alignedEndTs);
+        return unsupported[0] ? null : result;
+    }
+
+    /**
+     * Recalculates the buckets overlapping [startTs, endTs) from the raw ts_kv rows. Negative timestamps are not rolled up.
+     */
+    public void rebuild(UUID entityId, int entityKey, long granularity, long startTs, long endTs) {
+        long alignedStartTs = Math.max(startTs, 0) - Math.max(startTs, 0) % granularity;
+        long alignedEndTs = endTs > Long.MAX_VALUE - granularity ? Long.MAX_VALUE : endTs + Math.floorMod(-endTs, granularity);
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(DELETE_QUERY, entityId, entityKey, granularity, alignedStartTs, alignedEndTs);
+            jdbcTemplate.update(REBUILD_QUERY, granularity, granularity, granularity, entityId, entityKey, alignedStartTs, alignedEndTs);
+        });
+    }
+
+    /**
+     * Recalculates the buckets from the raw ts_kv rows, or from the buckets of the finer source granularity if it is positive.
+     */
+    public void rebuild(List<TsRollupBucket> buckets, long sourceGranularity) {
+        List<Object[]> deleteArgs = new ArrayList<>(buckets.size());
+        List<Object[]> rebuildArgs = new ArrayList<>(buckets.size());
+        for (TsRollupBucket bucket : buckets) {
+            long granularity = bucket.getGranularity();
+            long endTs = bucket.getTs() + granularity;
+            deleteArgs.add(new Object[]{bucket.getEntityId(), bucket.getKey(), granularity, bucket.getTs(), endTs});
+            rebuildArgs.add(sourceGranularity > 0 ?
+                    new Object[]{granularity, granularity, granularity, bucket.getEntityId(), bucket.getKey(), sourceGranularity, bucket.getTs(), endTs} :
+                    new Object[]{granularity, granularity, granularity, bucket.getEntityId(), bucket.getKey(), bucket.getTs(), endTs});
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(DELETE_QUERY, deleteArgs);
+            jdbcTemplate.batchUpdate(sourceGranularity > 0 ? REBUILD_FROM_ROLLUPS_QUERY : REBUILD_QUERY, rebuildArgs);
+        });
+    }
+
+    /**
+     * Removes the buckets that started before the TTL of the tenant or customer of the entity, or the system TTL otherwise.
+     */
+    public long cleanup(long systemTtl) {
+        return TsTableCleanup.cleanup(jdbcTemplate, CLEANUP_QUERY, ModelConstants.NULL_UUID, systemTtl, 0L);
+    }
+
+    private static TsKvEntity toEntity(ResultSet rs, Aggregation aggregation) throws SQLException {
+        long longCount = rs.getLong(5);
+        long doubleCount = rs.getLong(6);
+        switch (aggregation) {
+            case COUNT:
+                return new TsKvEntity(rs.getLong(2), rs.getLong(3), longCount, doubleCount, rs.getLong(4));
+            case AVG:
+            case SUM:
+                return new TsKvEntity(rs.getLong(7), rs.getDouble(8), longCount, doubleCount, aggregation.name());
+            case MIN:
+            case MAX:
+                if (rs.getLong(3) > 0) {
+                    return null;
+                }
+                boolean max = aggregation == Aggregation.MAX;
+                return new TsKvEntity(getLong(rs, max ? 10 : 9), getDouble(rs, max ? 12 : 11), longCount, doubleCount, aggregation.name());
+            default:
+                throw new IllegalArgumentException("Not supported aggregation type: " + aggregation);
+        }
+    }
+
+    private static Long getLong(ResultSet rs, int column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Double getDouble(ResultSet rs, int column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? null : value;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.ts;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
+import org.thingsboard.server.dao.util.SqlTsDao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Aggregates timeseries of a single entity key into fixed size intervals with one query.
+ * Rows are bucketed by (ts - startTs) / interval and processed as they are fetched, so the whole
+ * time range is covered by one round trip instead of one query per interval.
+ */
+@SqlTsDao
+@Repository
+public class TsKvAggregationRepository {
+
+    private static final String BUCKET_SUB_QUERY = "(SELECT (tskv.ts - ?) / ? AS bucket, tskv.bool_v, tskv.str_v, tskv.long_v, tskv.dbl_v, tskv.json_v " +
+            "FROM ts_kv tskv WHERE tskv.entity_id = ? AND tskv.key = ? AND tskv.ts >= ? AND tskv.ts < ?) b";
+
+    private static final String GROUP_BY_BUCKET = " GROUP BY b.bucket ORDER BY b.bucket";
+
+    private static final String FIND_AVG_OR_SUM_QUERY = "SELECT b.bucket, SUM(COALESCE(b.long_v, 0)), SUM(COALESCE(b.dbl_v, 0.0)), " +
+            "SUM(CASE WHEN b.long_v IS NULL THEN 0 ELSE 1 END), SUM(CASE WHEN b.dbl_v IS NULL THEN 0 ELSE 1 END) " +
+            "FROM " + BUCKET_SUB_QUERY + GROUP_BY_BUCKET;
+
+    private static final String FIND_MAX_QUERY = "SELECT b.bucket, MAX(COALESCE(b.long_v, -9223372036854775807)), MAX(COALESCE(b.dbl_v, -1.79769E+308)), " +
+            "SUM(CASE WHEN b.long_v IS NULL THEN 0 ELSE 1 END), SUM(CASE WHEN b.dbl_v IS NULL THEN 0 ELSE 1 END), " +
+            "MAX(b.str_v) FROM " + BUCKET_SUB_QUERY + GROUP_BY_BUCKET;
+
+    private static final String FIND_MIN_QUERY = "SELECT b.bucket, MIN(COALESCE(b.long_v, 9223372036854775807)), MIN(COALESCE(b.dbl_v, 1.79769E+308)), " +
+            "SUM(CASE WHEN b.long_v IS NULL THEN 0 ELSE 1 END), SUM(CASE WHEN b.dbl_v IS NULL THEN 0 ELSE 1 END), " +
+            "MIN(b.str_v) FROM " + BUCKET_SUB_QUERY + GROUP_BY_BUCKET;
+
+    private static final String FIND_COUNT_QUERY = "SELECT b.bucket, SUM(CASE WHEN b.bool_v IS NULL THEN 0 ELSE 1 END), " +
+            "SUM(CASE WHEN b.str_v IS NULL THEN 0 ELSE 1 END), SUM(CASE WHEN b.long_v IS NULL THEN 0 ELSE 1 END), " +
+            "SUM(CASE WHEN b.dbl_v IS NULL THEN 0 ELSE 1 END), SUM(CASE WHEN b.json_v IS NULL THEN 0 ELSE 1 END) " +
+            "FROM " + BUCKET_SUB_QUERY + GROUP_BY_BUCKET;
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
+    /**
+     * Returns one entity per non-empty interval. The interval timestamp is set to the middle of the interval,
+     * the same way as the per-interval aggregation does.
+     */
+    public List<TsKvEntity> findAggregated(UUID entityId, int entityKey, long startTs, long endTs, long interval, Aggregation aggregation) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Aggregation interval should be positive: " + interval);
+        }
+        long alignedEndTs = startTs + ((endTs - startTs + interval - 1) / interval) * interval;
+        List<TsKvEntity> result = new ArrayList<>();
+        jdbcTemplate.query(getQuery(aggregation), (RowCallbackHandler) rs -> {
+            long bucketStartTs = startTs + rs.getLong(1) * interval;
+            TsKvEntity entity = toEntity(rs, aggregation);
+            if (entity.isNotEmpty()) {
+                entity.setEntityId(entityId);
+                entity.setKey(entityKey);
+                entity.setTs(bucketStartTs + interval / 2);
+                result.add(entity);
+            }
+        }, startTs, interval, entityId, entityKey, startTs, alignedEndTs);
+        return result;
+    }
+
+    private static String getQuery(Aggregation aggregation) {
+        switch (aggregation) {
+            case AVG:
+            case SUM:
+                return FIND_AVG_OR_SUM_QUERY;
+            case MAX:
+                return FIND_MAX_QUERY;
+            case MIN:
+                return FIND_MIN_QUERY;
+            case COUNT:
+                return FIND_COUNT_QUERY;
+            default:
+                throw new IllegalArgumentException("Not supported aggregation type: " + aggregation);
+        }
+    }
+
+    private static TsKvEntity toEntity(ResultSet rs, Aggregation aggregation) throws SQLException {
+        switch (aggregation) {
+            case COUNT:
+                return new TsKvEntity(getLong(rs, 2), getLong(rs, 3), getLong(rs, 4), getLong(rs, 5), getLong(rs, 6));
+            case MIN:
+            case MAX:
+                String strValue = rs.getString(6);
+                if (strValue != null) {
+                    return new TsKvEntity(strValue);
+                }
+                return new TsKvEntity(getLong(rs, 2), getDouble(rs, 3), getLong(rs, 4), getLong(rs, 5), aggregation.name());
+            default:
+                return new TsKvEntity(getLong(rs, 2), getDouble(rs, 3), getLong(rs, 4), getLong(rs, 5), aggregation.name());
+        }
+    }
+
+    private static Long getLong(ResultSet rs, int column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Double getDouble(ResultSet rs, int column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? null : value;
+    }
+}
@@ -17,6 +17,7 @@ package org.thingsboard.server.dao.timeseries;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -44,7 +45,10 @@ import org.thingsboard.server.dao.service.Validator;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
@@ -86,6 +90,15 @@ public class BaseTimeseriesService implements TimeseriesService {
     @Autowired
     private EntityViewService entityViewService;
 
+    @Autowired(required = false)
+    private TsLatestCacheWrapper tsLatestCache;
+
+    @Autowired(required = false)
+    private TsChunkCacheWrapper tsChunkCache;
+
+    @Autowired(required = false)
+    private TimeseriesRollupDao timeseriesRollupDao;
+
     @Override
     public ListenableFuture<List<TsKvEntry>> findAll(TenantId tenantId, EntityId entityId, List<ReadTsKvQuery> queries) {
         validate(entityId);
@@ -98,9 +111,31 @@ public class BaseTimeseriesService implements TimeseriesService {
                     queries.stream()
                             .filter(query -> keys.isEmpty() || keys.contains(query.getKey()))
                             .collect(Collectors.toList());
-            return timeseriesDao.findAllAsync(tenantId, entityView.getEntityId(), updateQueriesForEntityView(entityView, filteredQueries));
+            return findAllAsync(tenantId, entityView.getEntityId(), updateQueriesForEntityView(entityView, filteredQueries));
+        }
+        return findAllAsync(tenantId, entityId, queries);
+    }
+
+    private ListenableFuture<List<TsKvEntry>> findAllAsync(TenantId tenantId, EntityId entityId, List<ReadTsKvQuery> queries) {
+        if (timeseriesRollupDao == null) {
+            return findAllRawAsync(tenantId, entityId, queries);
         }
-        return timeseriesDao.findAllAsync(tenantId, entityId, queries);
+        List<ListenableFuture<List<TsKvEntry>>> futures = queries.stream()
+                .map(query -> Futures.transformAsync(timeseriesRollupDao.findAllAsync(tenantId, entityId, query),
+                        rollups -> rollups != null ? Futures.immediateFuture(rollups) : findAllRawAsync(tenantId, entityId, Collections.singletonList(query)),
+                        MoreExecutors.directExecutor()))
+                .collect(Collectors.toList());
+        return Futures.transform(Futures.allAsList(futures), results -> results.stream()
+                .filter(Objects::nonNull)
+                .flatMap(List::stream)
+                .collect(Collectors.toList()), MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<List<TsKvEntry>> findAllRawAsync(TenantId tenantId, EntityId entityId, List<ReadTsKvQuery> queries) {
+        if (tsChunkCache == null) {
+            return timeseriesDao.findAllAsync(tenantId, entityId, queries);
+        }
+        return tsChunkCache.findAllAsync(tenantId, entityId, queries);
     }
 
     @Override
@@ -108,14 +143,39 @@ public class BaseTimeseriesService implements TimeseriesService {
         validate(entityId);
         List<ListenableFuture<TsKvEntry>> futures = Lists.newArrayListWithExpectedSize(keys.size());
         keys.forEach(key -> Validator.validateString(key, "Incorrect key " + key));
-        keys.forEach(key -> futures.add(timeseriesLatestDao.findLatest(tenantId, entityId, key)));
+        keys.forEach(key -> futures.add(findLatest(tenantId, entityId, key)));
         return Futures.allAsList(futures);
     }
 
+    private ListenableFuture<TsKvEntry> findLatest(TenantId tenantId, EntityId entityId, String key) {
+        if (tsLatestCache == null) {
+            return timeseriesLatestDao.findLatest(tenantId, entityId, key);
+        }
+        TsKvEntry cachedEntry = tsLatestCache.get(entityId, key);
+        if (cachedEntry != null) {
+            return Futures.immediateFuture(cachedEntry);
+        }
+        return Futures.transform(timeseriesLatestDao.findLatest(tenantId, entityId, key), entry -> {
+            if (isCacheable(entry)) {
+                tsLatestCache.putIfAbsent(entityId, entry);
+            }
+            return entry;
+        }, tsLatestCache.getCacheExecutor());
+    }
+
     @Override
     public ListenableFuture<List<TsKvEntry>> findAllLatest(TenantId tenantId, EntityId entityId) {
         validate(entityId);
-        return timeseriesLatestDao.findAllLatest(tenantId, entityId);
+        ListenableFuture<List<TsKvEntry>> future = timeseriesLatestDao.findAllLatest(tenantId, entityId);
+        if (tsLatestCache == null) {
+            return future;
+        }
+        return Futures.transform(future, entries -> {
+            if (entries != null) {
+                entries.stream().filter(this::isCacheable).forEach(entry -> tsLatestCache.putIfAbsent(entityId, entry));
+            }
+            return entries;
+        }, tsLatestCache.getCacheExecutor());
     }
 
     @Override
@@ -131,6 +191,9 @@ public class BaseTimeseriesService implements TimeseriesService {
     @Override
     public void cleanup(long systemTtl) {
         timeseriesDao.cleanup(systemTtl);
+        if (timeseriesRollupDao != null) {
+            timeseriesRollupDao.cleanup(systemTtl);
+        }
     }
 
     @Override
@@ -161,15 +224,27 @@ public class BaseTimeseriesService implements TimeseriesService {
             if (tsKvEntry == null) {
                 throw new IncorrectParameterException("Key value entry can't be null");
             }
-            if (saveLatest) {
-                saveAndRegisterFutures(tenantId, futures, entityId, tsKvEntry, ttl);
-            } else {
-                saveWithoutLatestAndRegisterFutures(tenantId, futures, entityId, tsKvEntry, ttl);
+            doSaveAndRegisterFuturesFor(tenantId, futures, entityId, tsKvEntry, ttl);
+        }
+        if (saveLatest) {
+            for (TsKvEntry latestEntry : getLatestEntries(tsKvEntries)) {
+                futures.add(Futures.transform(saveLatest(tenantId, entityId, latestEntry), v -> 0, MoreExecutors.directExecutor()));
             }
         }
         return Futures.transform(Futures.allAsList(futures), SUM_ALL_INTEGERS, MoreExecutors.directExecutor());
     }
 
+    /**
+     * Only the entry with the greatest timestamp of each key is saved as the latest value, e.g. for batches of several messages of the same device.
+     */
+    private static Collection<TsKvEntry> getLatestEntries(List<TsKvEntry> tsKvEntries) {
+        Map<String, TsKvEntry> latestEntries = new LinkedHashMap<>();
+        for (TsKvEntry tsKvEntry : tsKvEntries) {
+            latestEntries.merge(tsKvEntry.getKey(), tsKvEntry, (previous, current) -> current.getTs() >= previous.getTs() ? current : previous);
+        }
+        return latestEntries.values();
+    }
+
     @Override
     public ListenableFuture<List<Void>> saveLatest(TenantId tenantId, EntityId entityId, List<TsKvEntry> tsKvEntries) {
         List<ListenableFuture<Void>> futures = Lists.newArrayListWithExpectedSize(tsKvEntries.size());
@@ -177,18 +252,47 @@ public class BaseTimeseriesService implements TimeseriesService {
             if (tsKvEntry == null) {
                 throw new IncorrectParameterException("Key value entry can't be null");
             }
-            futures.add(timeseriesLatestDao.saveLatest(tenantId, entityId, tsKvEntry));
+            futures.add(saveLatest(tenantId, entityId, tsKvEntry));
         }
         return Futures.allAsList(futures);
     }
 
-    private void saveAndRegisterFutures(TenantId tenantId, List<ListenableFuture<Integer>> futures, EntityId entityId, TsKvEntry tsKvEntry, long ttl) {
-        doSaveAndRegisterFuturesFor(tenantId, futures, entityId, tsKvEntry, ttl);
-        futures.add(Futures.transform(timeseriesLatestDao.saveLatest(tenantId, entityId, tsKvEntry), v -> 0, MoreExecutors.directExecutor()));
+    private ListenableFuture<Void> saveLatest(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry) {
+        ListenableFuture<Void> future = timeseriesLatestDao.saveLatest(tenantId, entityId, tsKvEntry);
+        if (tsLatestCache != null) {
+            Futures.addCallback(future, new FutureCallback<>() {
+                @Override
+                public void onSuccess(@Nullable Void result) {
+                    if (isCacheable(tsKvEntry)) {
+                        tsLatestCache.putIfNewer(entityId, tsKvEntry);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    tsLatestCache.evict(entityId, tsKvEntry.getKey());
+                }
+            }, tsLatestCache.getCacheExecutor());
+        }
+        return future;
     }
 
-    private void saveWithoutLatestAndRegisterFutures(TenantId tenantId, List<ListenableFuture<Integer>> futures, EntityId entityId, TsKvEntry tsKvEntry, long ttl) {
+    private boolean isCacheable(TsKvEntry entry) {
+        // entries without value are returned by the dao for missing keys with the current timestamp, so they are not cached
+        return entry != null && entry.getValue() != null;
+    }
+
+    private ListenableFuture<TsKvLatestRemovingResult> removeLatest(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query) {
+        ListenableFuture<TsKvLatestRemovingResult> future = timeseriesLatestDao.removeLatest(tenantId, entityId, query);
+        if (tsLatestCache != null) {
+            future.addListener(() -> tsLatestCache.evict(entityId, query.getKey()), tsLatestCache.getCacheExecutor());
+        }
+        return future;
+    }
+
+    private void saveAndRegisterFutures(TenantId tenantId, List<ListenableFuture<Integer>> futures, EntityId entityId, TsKvEntry tsKvEntry, long ttl) {
         doSaveAndRegisterFuturesFor(tenantId, futures, entityId, tsKvEntry, ttl);
+        futures.add(Futures.transform(saveLatest(tenantId, entityId, tsKvEntry), v -> 0, MoreExecutors.directExecutor()));
     }
 
     private void doSaveAndRegisterFuturesFor(TenantId tenantId, List<ListenableFuture<Integer>> futures, EntityId entityId, TsKvEntry tsKvEntry, long ttl) {
@@ -196,7 +300,25 @@ public class BaseTimeseriesService implements TimeseriesService {
             throw new IncorrectParameterException("Telemetry data can't be stored for entity view. Read only");
         }
         futures.add(timeseriesDao.savePartition(tenantId, entityId, tsKvEntry.getTs(), tsKvEntry.getKey()));
-        futures.add(timeseriesDao.save(tenantId, entityId, tsKvEntry, ttl));
+        ListenableFuture<Integer> future = timeseriesDao.save(tenantId, entityId, tsKvEntry, ttl);
+        if (tsChunkCache != null) {
+            future.addListener(() -> tsChunkCache.invalidate(entityId, tsKvEntry.getKey(), tsKvEntry.getTs()), MoreExecutors.directExecutor());
+        }
+        if (timeseriesRollupDao != null) {
+            // rollups are best effort and don't delay the acknowledgement of the raw data
+            Futures.addCallback(future, new FutureCallback<>() {
+                @Override
+                public void onSuccess(@Nullable Integer result) {
+                    timeseriesRollupDao.save(tenantId, entityId, tsKvEntry);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    log.trace("[{}][{}] Skipping rollup of the failed timeseries save", entityId, tsKvEntry.getKey(), t);
+                }
+            }, MoreExecutors.directExecutor());
+        }
+        futures.add(future);
     }
 
     private List<ReadTsKvQuery> updateQueriesForEntityView(EntityView entityView, List<ReadTsKvQuery> queries) {
@@ -235,7 +357,7 @@ public class BaseTimeseriesService implements TimeseriesService {
         List<ListenableFuture<TsKvLatestRemovingResult>> futures = Lists.newArrayListWithExpectedSize(keys.size());
         for (String key : keys) {
             DeleteTsKvQuery query = new BaseDeleteTsKvQuery(key, 0, System.currentTimeMillis(), false);
-            futures.add(timeseriesLatestDao.removeLatest(tenantId, entityId, query));
+            futures.add(removeLatest(tenantId, entityId, query));
         }
         return Futures.allAsList(futures);
     }
@@ -254,8 +376,15 @@ public class BaseTimeseriesService implements TimeseriesService {
     }
 
     private void deleteAndRegisterFutures(TenantId tenantId, List<ListenableFuture<TsKvLatestRemovingResult>> futures, EntityId entityId, DeleteTsKvQuery query) {
-        futures.add(Futures.transform(timeseriesDao.remove(tenantId, entityId, query), v -> null, MoreExecutors.directExecutor()));
-        futures.add(timeseriesLatestDao.removeLatest(tenantId, entityId, query));
+        ListenableFuture<Void> removeFuture = timeseriesDao.remove(tenantId, entityId, query);
+        if (timeseriesRollupDao != null) {
+            removeFuture = Futures.transformAsync(removeFuture, v -> timeseriesRollupDao.remove(tenantId, entityId, query), MoreExecutors.directExecutor());
+        }
+        if (tsChunkCache != null) {
+            removeFuture.addListener(() -> tsChunkCache.invalidate(entityId, query.getKey(), query.getStartTs(), query.getEndTs()), MoreExecutors.directExecutor());
+        }
+        futures.add(Futures.transform(removeFuture, v -> null, MoreExecutors.directExecutor()));
+        futures.add(removeLatest(tenantId, entityId, query));
         futures.add(Futures.transform(timeseriesDao.removePartition(tenantId, entityId, query), v -> null, MoreExecutors.directExecutor()));
     }
 
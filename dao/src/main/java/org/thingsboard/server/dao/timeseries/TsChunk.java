@@ -0,0 +1,224 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.timeseries;
+
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.BooleanDataEntry;
+import org.thingsboard.server.common.data.kv.DataType;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.JsonDataEntry;
+import org.thingsboard.server.common.data.kv.KvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.StringDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable column oriented copy of the timeseries of one key within one time chunk.
+ * Timestamps and long values are stored as variable length deltas, the other values in typed arrays.
+ */
+public class TsChunk {
+
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final DataType[] DATA_TYPES = DataType.values();
+
+    static final TsChunk OVERSIZED = new TsChunk(null, 0, new byte[0], new byte[0], new byte[0], new double[0], new boolean[0], new String[0], true);
+
+    private final String key;
+    private final int size;
+    private final byte[] timestamps;
+    private final byte[] types;
+    private final byte[] longValues;
+    private final double[] doubleValues;
+    private final boolean[] boolValues;
+    private final String[] strValues;
+    private final boolean oversized;
+
+    private TsChunk(String key, int size, byte[] timestamps, byte[] types, byte[] longValues, double[] doubleValues,
+                    boolean[] boolValues, String[] strValues, boolean oversized) {
+        this.key = key;
+        this.size = size;
+        this.timestamps = timestamps;
+        this.types = types;
+        this.longValues = longValues;
+        this.doubleValues = doubleValues;
+        this.boolValues = boolValues;
+        this.strValues = strValues;
+        this.oversized = oversized;
+    }
+
+    /**
+     * Builds the chunk from the entries of the same key sorted by timestamp in ascending order.
+     */
+    public static TsChunk of(String key, List<TsKvEntry> entries) {
+        int size = entries.size();
+        VarLongWriter timestamps = new VarLongWriter(size * 2);
+        VarLongWriter longs = new VarLongWriter(16);
+        byte[] types = new byte[size];
+        double[] doubles = new double[size];
+        boolean[] bools = new boolean[size];
+        String[] strings = new String[size];
+        int doubleCount = 0;
+        int boolCount = 0;
+        int strCount = 0;
+        long prevTs = 0;
+        long prevLong = 0;
+        for (int i = 0; i < size; i++) {
+            TsKvEntry entry = entries.get(i);
+            timestamps.write(entry.getTs() - prevTs);
+            prevTs = entry.getTs();
+            DataType type = entry.getDataType();
+            types[i] = (byte) type.ordinal();
+            switch (type) {
+                case BOOLEAN:
+                    bools[boolCount++] = entry.getBooleanValue().orElse(false);
+                    break;
+                case LONG:
+                    long value = entry.getLongValue().orElse(0L);
+                    longs.write(value - prevLong);
+                    prevLong = value;
+                    break;
+                case DOUBLE:
+                    doubles[doubleCount++] = entry.getDoubleValue().orElse(0.0);
+                    break;
+                case STRING:
+                    strings[strCount++] = entry.getStrValue().orElse(null);
+                    break;
+                case JSON:
+                    strings[strCount++] = entry.getJsonValue().orElse(null);
+                    break;
+            }
+        }
+        return new TsChunk(key, size, timestamps.toByteArray(), types, longs.toByteArray(), Arrays.copyOf(doubles, doubleCount),
+                Arrays.copyOf(bools, boolCount), Arrays.copyOf(strings, strCount), false);
+    }
+
+    public boolean isOversized() {
+        return oversized;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Decodes the entries within [startTs, endTs) in ascending order.
+     */
+    public List<TsKvEntry> getEntries(long startTs, long endTs) {
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+        List<TsKvEntry> result = new ArrayList<>();
+        VarLongReader tsReader = new VarLongReader(timestamps);
+        VarLongReader longReader = new VarLongReader(longValues);
+        int doubleIdx = 0;
+        int boolIdx = 0;
+        int strIdx = 0;
+        long ts = 0;
+        long longValue = 0;
+        for (int i = 0; i < size; i++) {
+            ts += tsReader.read();
+            DataType type = DATA_TYPES[types[i]];
+            KvEntry kvEntry;
+            switch (type) {
+                case BOOLEAN:
+                    kvEntry = new BooleanDataEntry(key, boolValues[boolIdx++]);
+                    break;
+                case LONG:
+                    longValue += longReader.read();
+                    kvEntry = new LongDataEntry(key, longValue);
+                    break;
+                case DOUBLE:
+                    kvEntry = new DoubleDataEntry(key, doubleValues[doubleIdx++]);
+                    break;
+                case JSON:
+                    kvEntry = new JsonDataEntry(key, strValues[strIdx++]);
+                    break;
+                default:
+                    kvEntry = new StringDataEntry(key, strValues[strIdx++]);
+            }
+            if (ts >= endTs) {
+                break;
+            }
+            if (ts >= startTs) {
+                result.add(new BasicTsKvEntry(ts, kvEntry));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Approximate heap size of the chunk used as the cache weight.
+     */
+    public int getSizeInBytes() {
+        int strings = 0;
+        for (String str : strValues) {
+            strings += OBJECT_OVERHEAD * 2 + (str != null ? str.length() * 2 : 0);
+        }
+        return OBJECT_OVERHEAD * 8 + timestamps.length + types.length + longValues.length
+                + doubleValues.length * Double.BYTES + boolValues.length + strings;
+    }
+
+    private static class VarLongWriter {
+        private byte[] buffer;
+        private int length;
+
+        VarLongWriter(int capacity) {
+            this.buffer = new byte[Math.max(capacity, 16)];
+        }
+
+        void write(long value) {
+            long zigZag = (value << 1) ^ (value >> 63);
+            if (length + 10 > buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            while ((zigZag & ~0x7FL) != 0) {
+                buffer[length++] = (byte) ((zigZag & 0x7F) | 0x80);
+                zigZag >>>= 7;
+            }
+            buffer[length++] = (byte) zigZag;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+
+    private static class VarLongReader {
+        private final byte[] buffer;
+        private int position;
+
+        VarLongReader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        long read() {
+            long zigZag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer[position++];
+                zigZag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigZag >>> 1) ^ -(zigZag & 1);
+        }
+    }
+}
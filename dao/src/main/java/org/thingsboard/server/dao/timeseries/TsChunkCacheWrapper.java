@@ -0,0 +1,260 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.timeseries;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.BaseReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local cache of the closed time chunks of raw (not aggregated) timeseries queries.
+ * A chunk is closed when its end is older than the configured delay, so repeated queries of the same window are served
+ * from memory and only the open tail of the range is read from the database. Chunks are evicted by their size in bytes.
+ * Writes into closed chunks done through this node evict them, writes done by other nodes become visible after the TTL.
+ */
+@Service
+@ConditionalOnProperty(prefix = "cache.ts_chunks", value = "enabled", havingValue = "true")
+@Slf4j
+public class TsChunkCacheWrapper {
+    private static final String STATS_NAME = "tsChunks.cache";
+    private static final String ASC_ORDER = "ASC";
+
+    private final TimeseriesDao timeseriesDao;
+    private final DefaultCounter hitCounter;
+    private final DefaultCounter missCounter;
+    // incremented on every write into a closed chunk, so chunks loaded concurrently with such write are not cached
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Value("${cache.ts_chunks.chunk_duration_ms:3600000}")
+    private long chunkDurationMs;
+    @Value("${cache.ts_chunks.closed_after_ms:300000}")
+    private long closedAfterMs;
+    @Value("${cache.ts_chunks.max_size_in_mb:256}")
+    private long maxSizeInMb;
+    @Value("${cache.ts_chunks.max_rows_per_chunk:10000}")
+    private int maxRowsPerChunk;
+    @Value("${cache.ts_chunks.max_chunks_per_query:744}")
+    private int maxChunksPerQuery;
+    @Value("${cache.ts_chunks.ttl_in_sec:3600}")
+    private long ttlInSec;
+
+    private Cache<TsChunkCacheKey, TsChunk> chunks;
+
+    public TsChunkCacheWrapper(TimeseriesDao timeseriesDao, StatsFactory statsFactory) {
+        this.timeseriesDao = timeseriesDao;
+        this.hitCounter = statsFactory.createDefaultCounter(STATS_NAME, "result", "hit");
+        this.missCounter = statsFactory.createDefaultCounter(STATS_NAME, "result", "miss");
+    }
+
+    @PostConstruct
+    public void init() {
+        chunks = Caffeine.newBuilder()
+                .maximumWeight(maxSizeInMb * 1024 * 1024)
+                .weigher((TsChunkCacheKey key, TsChunk chunk) -> chunk.getSizeInBytes())
+                .expireAfterWrite(ttlInSec, TimeUnit.SECONDS)
+                .build();
+    }
+
+    public ListenableFuture<List<TsKvEntry>> findAllAsync(TenantId tenantId, EntityId entityId, List<ReadTsKvQuery> queries) {
+        List<ReadTsKvQuery> notCached = new ArrayList<>();
+        List<ListenableFuture<List<TsKvEntry>>> futures = new ArrayList<>();
+        long closedTs = getClosedTs();
+        for (ReadTsKvQuery query : queries) {
+            if (isCacheable(query, closedTs)) {
+                futures.add(findAllAsync(tenantId, entityId, query, closedTs));
+            } else {
+                notCached.add(query);
+            }
+        }
+        if (!notCached.isEmpty()) {
+            futures.add(timeseriesDao.findAllAsync(tenantId, entityId, notCached));
+        }
+        if (futures.size() == 1) {
+            return futures.get(0);
+        }
+        return Futures.transform(Futures.allAsList(futures), results -> {
+            List<TsKvEntry> result = new ArrayList<>();
+            results.forEach(result::addAll);
+            return result;
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Evicts the chunk of the written value if it is closed already.
+     */
+    public void invalidate(EntityId entityId, String key, long ts) {
+        long chunkTs = toChunkTs(ts);
+        if (chunkTs < getClosedTs()) {
+            invalidations.incrementAndGet();
+            chunks.invalidate(new TsChunkCacheKey(entityId, key, chunkTs));
+        }
+    }
+
+    public void invalidate(EntityId entityId, String key, long startTs, long endTs) {
+        long closedTs = getClosedTs();
+        if (toChunkTs(startTs) < closedTs) {
+            invalidations.incrementAndGet();
+            for (long chunkTs = toChunkTs(startTs); chunkTs < Math.min(endTs, closedTs); chunkTs += chunkDurationMs) {
+                chunks.invalidate(new TsChunkCacheKey(entityId, key, chunkTs));
+            }
+        }
+    }
+
+    private boolean isCacheable(ReadTsKvQuery query, long closedTs) {
+        if (query.getAggregation() != Aggregation.NONE) {
+            return false;
+        }
+        long firstChunkTs = toChunkTs(query.getStartTs());
+        long chunksEndTs = Math.min(closedTs, query.getEndTs());
+        return firstChunkTs < chunksEndTs && (chunksEndTs - firstChunkTs) / chunkDurationMs <= maxChunksPerQuery;
+    }
+
+    /**
+     * Reads the closed chunks one by one in the order of the query and stops as soon as the limit is reached,
+     * so a query with a small limit over a long range loads only the chunks it returns values from.
+     */
+    private ListenableFuture<List<TsKvEntry>> findAllAsync(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, long closedTs) {
+        // the closed part ends at the chunk boundary or at the end of the query if it is earlier
+        long chunksEndTs = Math.min(closedTs, query.getEndTs());
+        List<TsKvEntry> result = new ArrayList<>();
+        if (ASC_ORDER.equalsIgnoreCase(query.getOrder())) {
+            return Futures.transformAsync(collectChunks(tenantId, entityId, query, chunksEndTs, toChunkTs(query.getStartTs()), true, result), collected -> {
+                if (!collected) {
+                    return timeseriesDao.findAllAsync(tenantId, entityId, Collections.singletonList(query));
+                }
+                if (result.size() >= query.getLimit() || chunksEndTs >= query.getEndTs()) {
+                    return Futures.immediateFuture(limit(result, query.getLimit()));
+                }
+                return Futures.transform(findTail(tenantId, entityId, query, chunksEndTs, query.getLimit() - result.size()), tail -> {
+                    result.addAll(tail);
+                    return result;
+                }, MoreExecutors.directExecutor());
+            }, MoreExecutors.directExecutor());
+        }
+        ListenableFuture<List<TsKvEntry>> tailFuture = chunksEndTs < query.getEndTs() ?
+                findTail(tenantId, entityId, query, chunksEndTs, query.getLimit()) : Futures.immediateFuture(Collections.emptyList());
+        return Futures.transformAsync(tailFuture, tail -> {
+            if (tail.size() >= query.getLimit()) {
+                return Futures.immediateFuture(tail);
+            }
+            result.addAll(tail);
+            return Futures.transformAsync(collectChunks(tenantId, entityId, query, chunksEndTs, toChunkTs(chunksEndTs - 1), false, result), collected -> collected ?
+                    Futures.immediateFuture(limit(result, query.getLimit())) :
+                    timeseriesDao.findAllAsync(tenantId, entityId, Collections.singletonList(query)), MoreExecutors.directExecutor());
+        }, MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<List<TsKvEntry>> findTail(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, long chunksEndTs, int limit) {
+        return timeseriesDao.findAllAsync(tenantId, entityId, Collections.singletonList(
+                new BaseReadTsKvQuery(query.getKey(), chunksEndTs, query.getEndTs(), limit, query.getOrder())));
+    }
+
+    /**
+     * Adds the entries of the chunks starting from the given one to the result in the order of the query until the limit is reached.
+     * Cached chunks are added in place, the chunk loads are chained one after another.
+     * Returns false if a chunk is oversized, so the query has to be read from the database.
+     */
+    private ListenableFuture<Boolean> collectChunks(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, long chunksEndTs,
+                                                    long chunkTs, boolean asc, List<TsKvEntry> result) {
+        long firstChunkTs = toChunkTs(query.getStartTs());
+        long step = asc ? chunkDurationMs : -chunkDurationMs;
+        for (; chunkTs >= firstChunkTs && chunkTs < chunksEndTs && result.size() < query.getLimit(); chunkTs += step) {
+            ListenableFuture<TsChunk> chunkFuture = getChunk(tenantId, entityId, query.getKey(), chunkTs);
+            if (!chunkFuture.isDone()) {
+                long nextChunkTs = chunkTs + step;
+                return Futures.transformAsync(chunkFuture, chunk -> addEntries(chunk, query, chunksEndTs, asc, result) ?
+                                collectChunks(tenantId, entityId, query, chunksEndTs, nextChunkTs, asc, result) : Futures.immediateFuture(false),
+                        MoreExecutors.directExecutor());
+            }
+            try {
+                if (!addEntries(Futures.getDone(chunkFuture), query, chunksEndTs, asc, result)) {
+                    return Futures.immediateFuture(false);
+                }
+            } catch (ExecutionException e) {
+                return Futures.immediateFailedFuture(e.getCause());
+            }
+        }
+        return Futures.immediateFuture(true);
+    }
+
+    private static boolean addEntries(TsChunk chunk, ReadTsKvQuery query, long chunksEndTs, boolean asc, List<TsKvEntry> result) {
+        if (chunk.isOversized()) {
+            return false;
+        }
+        List<TsKvEntry> entries = chunk.getEntries(query.getStartTs(), chunksEndTs);
+        if (asc) {
+            result.addAll(entries);
+        } else {
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                result.add(entries.get(i));
+            }
+        }
+        return true;
+    }
+
+    private static List<TsKvEntry> limit(List<TsKvEntry> entries, int limit) {
+        return entries.size() > limit ? new ArrayList<>(entries.subList(0, limit)) : entries;
+    }
+
+    private ListenableFuture<TsChunk> getChunk(TenantId tenantId, EntityId entityId, String key, long chunkTs) {
+        TsChunkCacheKey cacheKey = new TsChunkCacheKey(entityId, key, chunkTs);
+        TsChunk chunk = chunks.getIfPresent(cacheKey);
+        if (chunk != null) {
+            hitCounter.increment();
+            return Futures.immediateFuture(chunk);
+        }
+        missCounter.increment();
+        long invalidationsBeforeLoad = invalidations.get();
+        ReadTsKvQuery chunkQuery = new BaseReadTsKvQuery(key, chunkTs, chunkTs + chunkDurationMs, maxRowsPerChunk + 1, ASC_ORDER);
+        return Futures.transform(timeseriesDao.findAllAsync(tenantId, entityId, Collections.singletonList(chunkQuery)), entries -> {
+            TsChunk loaded = entries.size() > maxRowsPerChunk ? TsChunk.OVERSIZED : TsChunk.of(key, entries);
+            if (invalidations.get() == invalidationsBeforeLoad) {
+                chunks.put(cacheKey, loaded);
+            }
+            return loaded;
+        }, MoreExecutors.directExecutor());
+    }
+
+    private long getClosedTs() {
+        return toChunkTs(System.currentTimeMillis() - closedAfterMs);
+    }
+
+    private long toChunkTs(long ts) {
+        return ts - Math.floorMod(ts, chunkDurationMs);
+    }
+}
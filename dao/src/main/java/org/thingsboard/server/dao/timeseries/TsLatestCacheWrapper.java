@@ -0,0 +1,167 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.timeseries;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.dao.cache.CacheExecutorService;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+import static org.thingsboard.server.common.data.CacheConstants.TS_LATEST_CACHE;
+
+/**
+ * Write-through cache of the latest timeseries values keyed by entity and key.
+ * Size bound and eviction are taken from the cache provider configuration ('caffeine.specs.tsLatest' for the local cache).
+ */
+@Service
+@ConditionalOnProperty(prefix = "cache.ts_latest", value = "enabled", havingValue = "true")
+@Slf4j
+public class TsLatestCacheWrapper {
+    private static final String STATS_NAME = "tsLatest.cache";
+    public static final String LOCAL_CACHE_TYPE = "caffeine";
+
+    private final Cache tsLatestCache;
+    private final CacheExecutorService cacheExecutorService;
+    private final DefaultCounter hitCounter;
+    private final DefaultCounter missCounter;
+
+    @Value("${cache.type}")
+    private String cacheType;
+
+    @Value("${sql.ts_latest.update_by_latest_ts:true}")
+    private boolean updateByLatestTs;
+
+    @Getter
+    private Executor cacheExecutor;
+
+    public TsLatestCacheWrapper(CacheManager cacheManager, StatsFactory statsFactory, CacheExecutorService cacheExecutorService) {
+        this.tsLatestCache = cacheManager.getCache(TS_LATEST_CACHE);
+        this.cacheExecutorService = cacheExecutorService;
+        this.hitCounter = statsFactory.createDefaultCounter(STATS_NAME, "result", "hit");
+        this.missCounter = statsFactory.createDefaultCounter(STATS_NAME, "result", "miss");
+    }
+
+    @PostConstruct
+    public void init() {
+        this.cacheExecutor = getExecutor(cacheType, cacheExecutorService);
+    }
+
+    /**
+     * Callbacks of the local cache are executed in the caller thread, while the remote cache IO is moved to the dedicated thread pool.
+     */
+    Executor getExecutor(String cacheType, CacheExecutorService cacheExecutorService) {
+        if (StringUtils.isEmpty(cacheType) || LOCAL_CACHE_TYPE.equals(cacheType)) {
+            return MoreExecutors.directExecutor();
+        }
+        return cacheExecutorService;
+    }
+
+    public TsKvEntry get(EntityId entityId, String key) {
+        TsLatestCacheKey cacheKey = new TsLatestCacheKey(entityId, key);
+        try {
+            Cache.ValueWrapper valueWrapper = tsLatestCache.get(cacheKey);
+            if (valueWrapper != null) {
+                hitCounter.increment();
+                return (TsKvEntry) valueWrapper.get();
+            }
+        } catch (Exception e) {
+            log.debug("Failed to retrieve element from cache for key {}. Reason - {}.", cacheKey, e.getMessage());
+        }
+        missCounter.increment();
+        return null;
+    }
+
+    public void put(EntityId entityId, TsKvEntry entry) {
+        TsLatestCacheKey cacheKey = new TsLatestCacheKey(entityId, entry.getKey());
+        try {
+            tsLatestCache.put(cacheKey, entry);
+        } catch (Exception e) {
+            log.debug("Failed to put element to cache for key {}. Reason - {}.", cacheKey, e.getMessage());
+        }
+    }
+
+    /**
+     * Puts the entry loaded from the database unless the cache already has a value, which was written by a concurrent save.
+     */
+    public void putIfAbsent(EntityId entityId, TsKvEntry entry) {
+        TsLatestCacheKey cacheKey = new TsLatestCacheKey(entityId, entry.getKey());
+        try {
+            tsLatestCache.putIfAbsent(cacheKey, entry);
+        } catch (Exception e) {
+            log.debug("Failed to put element to cache for key {}. Reason - {}.", cacheKey, e.getMessage());
+        }
+    }
+
+    /**
+     * Puts the saved entry. Like the latest dao with 'sql.ts_latest.update_by_latest_ts', a cached entry with a newer timestamp is kept.
+     * The comparison is atomic for the local caches and best effort for the remote ones.
+     */
+    public void putIfNewer(EntityId entityId, TsKvEntry entry) {
+        if (!updateByLatestTs) {
+            put(entityId, entry);
+            return;
+        }
+        TsLatestCacheKey cacheKey = new TsLatestCacheKey(entityId, entry.getKey());
+        try {
+            ConcurrentMap<Object, Object> localCache = getLocalCacheMap();
+            if (localCache != null) {
+                localCache.compute(cacheKey, (k, cached) -> cached instanceof TsKvEntry && ((TsKvEntry) cached).getTs() > entry.getTs() ? cached : entry);
+            } else {
+                Cache.ValueWrapper valueWrapper = tsLatestCache.get(cacheKey);
+                TsKvEntry cached = valueWrapper != null ? (TsKvEntry) valueWrapper.get() : null;
+                if (cached == null || cached.getTs() <= entry.getTs()) {
+                    tsLatestCache.put(cacheKey, entry);
+                }
+            }
+        } catch (Exception e) {
+            log.debug("Failed to put element to cache for key {}. Reason - {}.", cacheKey, e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ConcurrentMap<Object, Object> getLocalCacheMap() {
+        Object nativeCache = tsLatestCache.getNativeCache();
+        if (nativeCache instanceof com.github.benmanes.caffeine.cache.Cache) {
+            return ((com.github.benmanes.caffeine.cache.Cache<Object, Object>) nativeCache).asMap();
+        } else if (nativeCache instanceof ConcurrentMap) {
+            return (ConcurrentMap<Object, Object>) nativeCache;
+        }
+        return null;
+    }
+
+    public void evict(EntityId entityId, String key) {
+        TsLatestCacheKey cacheKey = new TsLatestCacheKey(entityId, key);
+        try {
+            tsLatestCache.evict(cacheKey);
+        } catch (Exception e) {
+            log.debug("Failed to evict element from cache for key {}. Reason - {}.", cacheKey, e.getMessage());
+        }
+    }
+}
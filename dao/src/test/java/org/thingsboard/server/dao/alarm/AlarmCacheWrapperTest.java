@@ -0,0 +1,212 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.alarm;
+
+import com.google.common.util.concurrent.Futures;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.alarm.Alarm;
+import org.thingsboard.server.common.data.alarm.AlarmSeverity;
+import org.thingsboard.server.common.data.alarm.AlarmStatus;
+import org.thingsboard.server.common.data.alarm.EntityAlarm;
+import org.thingsboard.server.common.data.id.AlarmId;
+import org.thingsboard.server.common.data.id.AssetId;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.relation.EntityRelation;
+import org.thingsboard.server.common.data.relation.EntityRelationsQuery;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.dao.cache.CacheExecutorService;
+import org.thingsboard.server.dao.entity.EntityService;
+import org.thingsboard.server.dao.relation.RelationService;
+import org.thingsboard.server.dao.service.DataValidator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AlarmCacheWrapperTest {
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+
+    private final Map<UUID, Alarm> savedAlarms = new ConcurrentHashMap<>();
+
+    private AlarmDao alarmDao;
+    private AlarmCacheWrapper alarmCache;
+    private RelationService relationService;
+    private BaseAlarmService alarmService;
+    private AtomicInteger hits;
+
+    @Before
+    public void before() {
+        hits = new AtomicInteger();
+        StatsFactory statsFactory = mock(StatsFactory.class);
+        when(statsFactory.createDefaultCounter(anyString(), eq("result"), eq("hit"))).thenReturn(new DefaultCounter(hits, mock(Counter.class)));
+        when(statsFactory.createDefaultCounter(anyString(), eq("result"), eq("miss"))).thenReturn(new DefaultCounter(new AtomicInteger(), mock(Counter.class)));
+        when(statsFactory.createTimer(anyString(), any())).thenReturn(mock(Timer.class));
+
+        alarmCache = new AlarmCacheWrapper(new ConcurrentMapCacheManager(), statsFactory, mock(CacheExecutorService.class));
+        ReflectionTestUtils.setField(alarmCache, "cacheType", AlarmCacheWrapper.LOCAL_CACHE_TYPE);
+        alarmCache.init();
+
+        alarmDao = mock(AlarmDao.class);
+        when(alarmDao.findLatestByOriginatorAndType(any(), any(), anyString())).thenAnswer(invocation -> Futures.immediateFuture(
+                savedAlarms.values().stream()
+                        .filter(alarm -> alarm.getOriginator().equals(invocation.getArgument(1)) && alarm.getType().equals(invocation.getArgument(2)))
+                        .max(Comparator.comparingLong(Alarm::getCreatedTime))
+                        .map(Alarm::new).orElse(null)));
+        when(alarmDao.findAlarmByIdAsync(any(), any())).thenAnswer(invocation -> {
+            Alarm alarm = savedAlarms.get(invocation.<UUID>getArgument(1));
+            return Futures.immediateFuture(alarm != null ? new Alarm(alarm) : null);
+        });
+        when(alarmDao.save(any(), any())).thenAnswer(invocation -> {
+            Alarm alarm = new Alarm(invocation.<Alarm>getArgument(1));
+            if (alarm.getId() == null) {
+                alarm.setId(new AlarmId(UUID.randomUUID()));
+                alarm.setCreatedTime(System.nanoTime());
+            }
+            savedAlarms.put(alarm.getUuidId(), alarm);
+            return new Alarm(alarm);
+        });
+        relationService = mock(RelationService.class);
+
+        alarmService = new BaseAlarmService();
+        ReflectionTestUtils.setField(alarmService, "alarmDao", alarmDao);
+        ReflectionTestUtils.setField(alarmService, "entityService", mock(EntityService.class));
+        ReflectionTestUtils.setField(alarmService, "alarmDataValidator", mock(DataValidator.class));
+        ReflectionTestUtils.setField(alarmService, "relationService", relationService);
+        ReflectionTestUtils.setField(alarmService, "statsFactory", statsFactory);
+        ReflectionTestUtils.setField(alarmService, "alarmCache", alarmCache);
+        alarmService.startExecutor();
+    }
+
+    @After
+    public void after() {
+        alarmService.stopExecutor();
+    }
+
+    @Test
+    public void testActiveAlarmIsServedFromCache() {
+        AlarmOperationResult created = alarmService.createOrUpdateAlarm(newAlarm(AlarmSeverity.MAJOR));
+        assertTrue(created.isCreated());
+
+        AlarmOperationResult updated = alarmService.createOrUpdateAlarm(newAlarm(AlarmSeverity.CRITICAL));
+        assertFalse(updated.isCreated());
+        assertEquals(created.getAlarm().getId(), updated.getAlarm().getId());
+        assertEquals(AlarmSeverity.CRITICAL, updated.getAlarm().getSeverity());
+
+        verify(alarmDao, times(1)).findLatestByOriginatorAndType(tenantId, deviceId, "High Temperature");
+        verify(alarmDao, never()).findAlarmByIdAsync(any(), any());
+        assertEquals(1, hits.get());
+    }
+
+    @Test
+    public void testClearedAlarmIsEvictedAndLeadsToNewAlarm() throws Exception {
+        Alarm created = alarmService.createOrUpdateAlarm(newAlarm(AlarmSeverity.MAJOR)).getAlarm();
+        assertTrue(alarmService.clearAlarm(tenantId, created.getId(), null, System.currentTimeMillis()).get().isSuccessful());
+
+        AlarmOperationResult result = alarmService.createOrUpdateAlarm(newAlarm(AlarmSeverity.MAJOR));
+
+        assertTrue(result.isCreated());
+        assertNotEquals(created.getId(), result.getAlarm().getId());
+        verify(alarmDao, times(2)).findLatestByOriginatorAndType(tenantId, deviceId, "High Temperature");
+        assertEquals(0, hits.get());
+    }
+
+    @Test
+    public void testAlarmClearedThroughAnotherNodeIsEvictedById() {
+        Alarm created = alarmService.createOrUpdateAlarm(newAlarm(AlarmSeverity.MAJOR)).getAlarm();
+        // cleared through another node, which broadcasts the alarm id
+        savedAlarms.get(created.getUuidId()).setStatus(AlarmStatus.CLEARED_UNACK);
+        alarmCache.evict(created.getId());
+
+        AlarmOperationResult result = alarmService.createOrUpdateAlarm(newAlarm(AlarmSeverity.CRITICAL));
+
+        assertTrue(result.isCreated());
+        assertNotEquals(created.getId(), result.getAlarm().getId());
+        assertEquals(AlarmStatus.CLEARED_UNACK, savedAlarms.get(created.getUuidId()).getStatus());
+    }
+
+    @Test
+    public void testStoredStateIsMergedAfterCacheIsCleared() {
+        Alarm created = alarmService.createOrUpdateAlarm(newAlarm(AlarmSeverity.MAJOR)).getAlarm();
+        // acknowledged through another node while the partition was owned by it
+        savedAlarms.get(created.getUuidId()).setStatus(AlarmStatus.ACTIVE_ACK);
+        savedAlarms.get(created.getUuidId()).setAckTs(100L);
+        alarmCache.clear();
+
+        Alarm update = newAlarm(AlarmSeverity.CRITICAL);
+        update.setStatus(AlarmStatus.ACTIVE_ACK);
+        AlarmOperationResult result = alarmService.createOrUpdateAlarm(update);
+
+        assertFalse(result.isCreated());
+        assertEquals(created.getId(), result.getAlarm().getId());
+        assertEquals(100L, result.getAlarm().getAckTs());
+    }
+
+    @Test
+    public void testPropagatedEntityAlarmRecordsAreSavedInBatch() throws Exception {
+        AssetId firstAsset = new AssetId(UUID.randomUUID());
+        AssetId secondAsset = new AssetId(UUID.randomUUID());
+        when(relationService.findByQuery(eq(tenantId), any(EntityRelationsQuery.class))).thenReturn(Futures.immediateFuture(Arrays.asList(
+                new EntityRelation(firstAsset, deviceId, EntityRelation.CONTAINS_TYPE),
+                new EntityRelation(secondAsset, deviceId, EntityRelation.CONTAINS_TYPE))));
+        Alarm alarm = newAlarm(AlarmSeverity.MAJOR);
+        alarm.setPropagate(true);
+
+        AlarmOperationResult result = alarmService.createOrUpdateAlarm(alarm);
+
+        assertEquals(Collections.singletonList(deviceId), result.getPropagatedEntitiesList());
+        assertEquals(Arrays.asList(firstAsset, secondAsset), result.getRelatedEntitiesFuture().get());
+        verify(alarmDao, times(2)).createEntityAlarmRecords(anyList());
+        verify(alarmDao, times(0)).createEntityAlarmRecord(any(EntityAlarm.class));
+    }
+
+    private Alarm newAlarm(AlarmSeverity severity) {
+        Alarm alarm = new Alarm();
+        alarm.setTenantId(tenantId);
+        alarm.setOriginator(deviceId);
+        alarm.setType("High Temperature");
+        alarm.setSeverity(severity);
+        alarm.setStatus(AlarmStatus.ACTIVE_UNACK);
+        return alarm;
+    }
+}
@@ -128,6 +128,7 @@ public abstract class BaseAlarmServiceTest extends AbstractServiceTest {
                 .startTs(ts).build();
 
         AlarmOperationResult result = alarmService.createOrUpdateAlarm(alarm);
+        result.getRelatedEntitiesFuture().get();
         Alarm created = result.getAlarm();
 
         // Check child relation
@@ -153,6 +154,7 @@ public abstract class BaseAlarmServiceTest extends AbstractServiceTest {
 
         created.setPropagate(true);
         result = alarmService.createOrUpdateAlarm(created);
+        result.getRelatedEntitiesFuture().get();
         created = result.getAlarm();
 
         // Check child relation
@@ -242,6 +244,7 @@ public abstract class BaseAlarmServiceTest extends AbstractServiceTest {
                 .severity(AlarmSeverity.CRITICAL).status(AlarmStatus.ACTIVE_UNACK)
                 .startTs(ts).build();
         AlarmOperationResult result = alarmService.createOrUpdateAlarm(tenantAlarm);
+        result.getRelatedEntitiesFuture().get();
         tenantAlarm = result.getAlarm();
 
         Alarm deviceAlarm = Alarm.builder().tenantId(tenantId)
@@ -251,6 +254,7 @@ public abstract class BaseAlarmServiceTest extends AbstractServiceTest {
                 .severity(AlarmSeverity.CRITICAL).status(AlarmStatus.ACTIVE_UNACK)
                 .startTs(ts).build();
         result = alarmService.createOrUpdateAlarm(deviceAlarm);
+        result.getRelatedEntitiesFuture().get();
         deviceAlarm = result.getAlarm();
 
         AlarmDataPageLink pageLink = new AlarmDataPageLink();
@@ -318,6 +322,7 @@ public abstract class BaseAlarmServiceTest extends AbstractServiceTest {
                 .severity(AlarmSeverity.CRITICAL).status(AlarmStatus.ACTIVE_UNACK)
                 .startTs(ts).build();
         AlarmOperationResult result = alarmService.createOrUpdateAlarm(tenantAlarm);
+        result.getRelatedEntitiesFuture().get();
         tenantAlarm = result.getAlarm();
 
         Alarm customerAlarm = Alarm.builder().tenantId(tenantId)
@@ -327,6 +332,7 @@ public abstract class BaseAlarmServiceTest extends AbstractServiceTest {
                 .severity(AlarmSeverity.CRITICAL).status(AlarmStatus.ACTIVE_UNACK)
                 .startTs(ts).build();
         result = alarmService.createOrUpdateAlarm(customerAlarm);
+        result.getRelatedEntitiesFuture().get();
         customerAlarm = result.getAlarm();
 
         AlarmDataPageLink pageLink = new AlarmDataPageLink();
@@ -645,6 +651,7 @@ public abstract class BaseAlarmServiceTest extends AbstractServiceTest {
                 .startTs(ts).build();
 
         AlarmOperationResult result = alarmService.createOrUpdateAlarm(alarm);
+        result.getRelatedEntitiesFuture().get();
         Alarm created = result.getAlarm();
 
         PageData<AlarmInfo> alarms = alarmService.findAlarms(tenantId, AlarmQuery.builder()
@@ -158,6 +158,23 @@ public abstract class BaseTimeseriesServiceTest extends AbstractServiceTest {
         Assert.assertEquals(toTsEntry(TS - 1, stringKvEntry), entries.get(0));
     }
 
+    @Test
+    public void testFindLatestOfBatchWithSeveralEntriesOfKey() throws Exception {
+        DeviceId deviceId = new DeviceId(Uuids.timeBased());
+        TsKvEntry newest = toTsEntry(TS, new StringDataEntry(STRING_KEY, "newest"));
+        TsKvEntry older = toTsEntry(TS - 1, new StringDataEntry(STRING_KEY, "older"));
+
+        tsService.save(tenantId, deviceId, List.of(newest, older), 0).get(MAX_TIMEOUT, TimeUnit.SECONDS);
+
+        List<TsKvEntry> entries = tsService.findLatest(tenantId, deviceId, Collections.singleton(STRING_KEY)).get(MAX_TIMEOUT, TimeUnit.SECONDS);
+        Assert.assertEquals(1, entries.size());
+        Assert.assertEquals(newest, entries.get(0));
+
+        List<ReadTsKvQuery> queries = Collections.singletonList(new BaseReadTsKvQuery(STRING_KEY, TS - 1, TS + 1, 0, 1000, Aggregation.NONE, "ASC"));
+        entries = tsService.findAll(tenantId, deviceId, queries).get(MAX_TIMEOUT, TimeUnit.SECONDS);
+        Assert.assertEquals(List.of(older, newest), entries);
+    }
+
     @Test
     public void testFindByQueryAscOrder() throws Exception {
         DeviceId deviceId = new DeviceId(Uuids.timeBased());
@@ -0,0 +1,90 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.block;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+@Slf4j
+public class TsBlockCodecTest {
+
+    private static final long START_TS = 1_600_000_000_000L;
+
+    @Test
+    public void testRegularDoublesRoundTrip() {
+        List<TsKvEntry> entries = new ArrayList<>();
+        Random random = new Random(42);
+        double temperature = 20.0;
+        for (int i = 0; i < 8640; i++) {
+            temperature += Math.round(random.nextGaussian() * 10) / 100.0;
+            entries.add(new BasicTsKvEntry(START_TS + i * 10_000L + (i % 7 == 0 ? random.nextInt(50) : 0), new DoubleDataEntry("temperature", temperature)));
+        }
+        byte[] data = assertRoundTrip(entries);
+        // uuid, key, ts and double columns without the row header, the same as one ts_kv row stores at least
+        int rawSize = entries.size() * (16 + 4 + 8 + 8);
+        log.info("{} double points: {} bytes compressed, {} bytes raw, {} bits per point", entries.size(), data.length, rawSize,
+                String.format("%.2f", data.length * 8.0 / entries.size()));
+    }
+
+    @Test
+    public void testCountersAndMixedValuesRoundTrip() {
+        List<TsKvEntry> entries = new ArrayList<>();
+        long counter = 0;
+        for (int i = 0; i < 1000; i++) {
+            counter += i % 10 == 0 ? 17 : 5;
+            if (i % 3 == 0) {
+                entries.add(new BasicTsKvEntry(START_TS + i * 1000L, new DoubleDataEntry("value", i * 0.1)));
+            } else {
+                entries.add(new BasicTsKvEntry(START_TS + i * 1000L, new LongDataEntry("value", counter)));
+            }
+        }
+        assertRoundTrip(entries);
+    }
+
+    @Test
+    public void testExtremeValuesRoundTrip() {
+        List<TsKvEntry> entries = new ArrayList<>();
+        entries.add(new BasicTsKvEntry(0L, new LongDataEntry("value", Long.MIN_VALUE)));
+        entries.add(new BasicTsKvEntry(1L, new LongDataEntry("value", Long.MAX_VALUE)));
+        entries.add(new BasicTsKvEntry(Long.MAX_VALUE / 2, new LongDataEntry("value", 0L)));
+        entries.add(new BasicTsKvEntry(Long.MAX_VALUE - 1, new DoubleDataEntry("value", Double.NaN)));
+        entries.add(new BasicTsKvEntry(Long.MAX_VALUE, new DoubleDataEntry("value", -Double.MAX_VALUE)));
+        assertRoundTrip(entries);
+        assertRoundTrip(new ArrayList<>());
+    }
+
+    private byte[] assertRoundTrip(List<TsKvEntry> entries) {
+        byte[] data = TsBlockCodec.encode(entries);
+        List<TsKvEntry> decoded = TsBlockCodec.decode(data, entries.isEmpty() ? "" : entries.get(0).getKey());
+        assertEquals(entries.size(), decoded.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(entries.get(i).getTs(), decoded.get(i).getTs());
+            assertEquals(entries.get(i).getDataType(), decoded.get(i).getDataType());
+            assertEquals(entries.get(i).getValue(), decoded.get(i).getValue());
+        }
+        return data;
+    }
+}
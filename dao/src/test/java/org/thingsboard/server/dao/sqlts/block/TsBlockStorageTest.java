@@ -0,0 +1,259 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.block;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.BaseReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueWrapper;
+import org.thingsboard.server.dao.sqlts.ts.TsKvAggregationRepository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@Slf4j
+public class TsBlockStorageTest {
+
+    private static final int KEY = 1;
+    private static final String STR_KEY = "temperature";
+    private static final long BLOCK_DURATION = TimeUnit.HOURS.toMillis(6);
+    private static final long START_TS = 1_600_000_000_000L - 1_600_000_000_000L % BLOCK_DURATION;
+    private static final long END_TS = START_TS + TimeUnit.DAYS.toMillis(3);
+    private static final long DATA_POINT_STEP = TimeUnit.SECONDS.toMillis(30);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TsBlockRepository blockRepository;
+    private TsBlockStorage blockStorage;
+    private TsKvAggregationRepository aggregationRepository;
+    private UUID entityId;
+    private int rawRows;
+
+    @Before
+    public void before() {
+        dataSource = new SingleConnectionDataSource("jdbc:hsqldb:mem:tsBlocks;sql.syntax_pgs=true", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE ts_kv (entity_id UUID NOT NULL, key INT NOT NULL, ts BIGINT NOT NULL, bool_v BOOLEAN, " +
+                "str_v VARCHAR(10000000), long_v BIGINT, dbl_v DOUBLE PRECISION, json_v VARCHAR(10000000), " +
+                "CONSTRAINT ts_kv_pkey PRIMARY KEY (entity_id, key, ts))");
+        jdbcTemplate.execute("CREATE TABLE ts_block (entity_id UUID NOT NULL, key INT NOT NULL, block_ts BIGINT NOT NULL, cnt INT NOT NULL, " +
+                "data BYTEA NOT NULL, CONSTRAINT ts_block_pkey PRIMARY KEY (entity_id, key, block_ts))");
+        blockRepository = new TsBlockRepository();
+        ReflectionTestUtils.setField(blockRepository, "jdbcTemplate", jdbcTemplate);
+        blockStorage = new TsBlockStorage();
+        ReflectionTestUtils.setField(blockStorage, "blockRepository", blockRepository);
+        ReflectionTestUtils.setField(blockStorage, "transactionTemplate", new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+        ReflectionTestUtils.setField(blockStorage, "blockDuration", BLOCK_DURATION);
+        aggregationRepository = new TsKvAggregationRepository();
+        ReflectionTestUtils.setField(aggregationRepository, "jdbcTemplate", jdbcTemplate);
+
+        entityId = UUID.randomUUID();
+        List<Object[]> rows = new ArrayList<>();
+        long i = 0;
+        for (long ts = START_TS; ts < END_TS; ts += DATA_POINT_STEP, i++) {
+            String strValue = i % 500 == 0 ? "state " + i : null;
+            Long longValue = strValue == null && i % 4 == 0 ? i % 100 : null;
+            Double doubleValue = strValue == null && longValue == null ? 20 + (i % 60) / 4.0 : null;
+            rows.add(new Object[]{entityId, KEY, ts, strValue, longValue, doubleValue});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO ts_kv (entity_id, key, ts, str_v, long_v, dbl_v) VALUES (?, ?, ?, ?, ?, ?)", rows);
+        rawRows = rows.size();
+    }
+
+    @After
+    public void after() {
+        jdbcTemplate.execute("DROP TABLE ts_kv");
+        jdbcTemplate.execute("DROP TABLE ts_block");
+        dataSource.destroy();
+    }
+
+    @Test
+    public void testCompactedDataIsReadTransparently() {
+        List<List<TsKvEntity>> expectedAggregates = findAllAggregated(aggregationRepository);
+        List<TsKvEntry> expectedAsc = findRaw(START_TS + 1000, END_TS - 1000, 5000, "ASC");
+        List<TsKvEntry> expectedDesc = findRaw(START_TS + HOUR, START_TS + 30 * HOUR, 100, "DESC");
+
+        compactAll();
+
+        long remainingRows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ts_kv", Long.class);
+        assertEquals(rawRows / 500 + 1, remainingRows);
+        assertEquals(expectedAggregates.size(), findAllAggregated(null).size());
+        List<List<TsKvEntity>> actualAggregates = findAllAggregated(null);
+        for (int i = 0; i < expectedAggregates.size(); i++) {
+            assertEntitiesEqual(expectedAggregates.get(i), actualAggregates.get(i));
+        }
+        assertEntriesEqual(expectedAsc, findMerged(START_TS + 1000, END_TS - 1000, 5000, "ASC"));
+        assertEntriesEqual(expectedDesc, findMerged(START_TS + HOUR, START_TS + 30 * HOUR, 100, "DESC"));
+    }
+
+    @Test
+    public void testRawRowsTakePrecedenceAndRemoveSplitsBlocks() {
+        compactAll();
+        long overwrittenTs = START_TS + 2 * HOUR;
+        jdbcTemplate.update("INSERT INTO ts_kv (entity_id, key, ts, long_v) VALUES (?, ?, ?, ?)", entityId, KEY, overwrittenTs, 12345L);
+
+        List<TsKvEntry> entries = findMerged(overwrittenTs, overwrittenTs + 1, 10, "ASC");
+        assertEquals(1, entries.size());
+        assertEquals(12345L, entries.get(0).getLongValue().get().longValue());
+        // the overwritten block value is not aggregated together with the raw row
+        assertEquals(1L, blockStorage.findAggregated(entityId, KEY, STR_KEY, overwrittenTs, overwrittenTs + 1, 1, Aggregation.COUNT)
+                .get(0).getLongValue().longValue());
+        assertEquals(12345L, blockStorage.findAggregated(entityId, KEY, STR_KEY, overwrittenTs, overwrittenTs + 1, 1, Aggregation.SUM)
+                .get(0).getLongValue().longValue());
+
+        // compacting the late row again merges it into the existing block
+        blockStorage.compact(Collections.singletonList(new TsBlockKey(entityId, KEY, START_TS)));
+        assertEquals(12345L, findMerged(overwrittenTs, overwrittenTs + 1, 10, "ASC").get(0).getLongValue().get().longValue());
+
+        long removeStartTs = START_TS + 5 * HOUR;
+        long removeEndTs = START_TS + 13 * HOUR;
+        jdbcTemplate.update("DELETE FROM ts_kv WHERE entity_id = ? AND key = ? AND ts >= ? AND ts < ?", entityId, KEY, removeStartTs, removeEndTs);
+        blockStorage.remove(entityId, KEY, removeStartTs, removeEndTs);
+
+        assertTrue(findMerged(removeStartTs, removeEndTs, 10000, "ASC").isEmpty());
+        assertEquals(HOUR / DATA_POINT_STEP, findMerged(removeStartTs - HOUR, removeStartTs, 10000, "ASC").size());
+        assertEquals(HOUR / DATA_POINT_STEP, findMerged(removeEndTs, removeEndTs + HOUR, 10000, "ASC").size());
+    }
+
+    @Test
+    public void testClosedBlocksAreScannedOncePerWindow() {
+        TsBlockRepository repository = spy(blockRepository);
+        @SuppressWarnings("unchecked")
+        TbSqlBlockingQueueWrapper<TsBlockKey> compactionQueue = mock(TbSqlBlockingQueueWrapper.class);
+        ReflectionTestUtils.setField(blockStorage, "blockRepository", repository);
+        ReflectionTestUtils.setField(blockStorage, "compactionQueue", compactionQueue);
+        ReflectionTestUtils.setField(blockStorage, "closedAfter", HOUR);
+        ReflectionTestUtils.setField(blockStorage, "lookback", System.currentTimeMillis() - START_TS);
+        ReflectionTestUtils.setField(blockStorage, "maxBlocksPerRun", 5);
+
+        // the first runs find more candidates than the limit, so the scan is repeated
+        blockStorage.scheduleCompaction();
+        blockStorage.scheduleCompaction();
+        verify(compactionQueue, times(10)).add(any());
+        blockStorage.compact(blockRepository.findCompactionCandidates(BLOCK_DURATION, 0, END_TS, 1000));
+
+        blockStorage.scheduleCompaction();
+        blockStorage.scheduleCompaction();
+        blockStorage.scheduleCompaction();
+        verify(repository, times(3)).findCompactionCandidates(anyLong(), anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    public void testStorageSizeAndReadLatencyBenchmark() {
+        long rawBytes = jdbcTemplate.queryForObject("SELECT SUM(16 + 4 + 8 + COALESCE(OCTET_LENGTH(str_v), 0) + " +
+                "CASE WHEN long_v IS NULL THEN 0 ELSE 8 END + CASE WHEN dbl_v IS NULL THEN 0 ELSE 8 END) FROM ts_kv", Long.class);
+        int rounds = 5;
+        long rawTime = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            findRaw(START_TS, END_TS, Integer.MAX_VALUE, "ASC");
+            rawTime += System.nanoTime() - start;
+        }
+
+        compactAll();
+
+        long blockBytes = jdbcTemplate.queryForObject("SELECT SUM(16 + 4 + 8 + 4 + OCTET_LENGTH(data)) FROM ts_block", Long.class);
+        long blockTime = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            List<TsKvEntry> entries = findMerged(START_TS, END_TS, Integer.MAX_VALUE, "ASC");
+            blockTime += System.nanoTime() - start;
+            assertEquals(rawRows, entries.size());
+        }
+        log.info("Storage of {} points without row overhead: raw rows - {} bytes, blocks - {} bytes ({}x)", rawRows, rawBytes, blockBytes,
+                String.format("%.1f", (double) rawBytes / blockBytes));
+        log.info("Read of {} points, average of {} rounds: raw rows - {} ms, blocks - {} ms", rawRows, rounds,
+                TimeUnit.NANOSECONDS.toMillis(rawTime / rounds), TimeUnit.NANOSECONDS.toMillis(blockTime / rounds));
+    }
+
+    private void compactAll() {
+        List<TsBlockKey> candidates = blockRepository.findCompactionCandidates(BLOCK_DURATION, 0, END_TS, 1000);
+        assertEquals((END_TS - START_TS) / BLOCK_DURATION, candidates.size());
+        blockStorage.compact(candidates);
+    }
+
+    private List<List<TsKvEntity>> findAllAggregated(TsKvAggregationRepository repository) {
+        List<List<TsKvEntity>> result = new ArrayList<>();
+        for (Aggregation aggregation : new Aggregation[]{Aggregation.AVG, Aggregation.SUM, Aggregation.MIN, Aggregation.MAX, Aggregation.COUNT}) {
+            for (long interval : new long[]{HOUR, 7 * HOUR + 1}) {
+                result.add(repository != null ?
+                        repository.findAggregated(entityId, KEY, START_TS + 1, END_TS, interval, aggregation) :
+                        blockStorage.findAggregated(entityId, KEY, STR_KEY, START_TS + 1, END_TS, interval, aggregation));
+            }
+        }
+        return result;
+    }
+
+    private List<TsKvEntry> findRaw(long startTs, long endTs, int limit, String order) {
+        Comparator<TsKvEntry> comparator = Comparator.comparingLong(TsKvEntry::getTs);
+        return blockRepository.findRaw(entityId, KEY, STR_KEY, startTs, endTs).stream()
+                .sorted("ASC".equals(order) ? comparator : comparator.reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private List<TsKvEntry> findMerged(long startTs, long endTs, int limit, String order) {
+        ReadTsKvQuery query = new BaseReadTsKvQuery(STR_KEY, startTs, endTs, 0, limit, Aggregation.NONE, order);
+        return blockStorage.findAllWithLimit(entityId, KEY, query, findRaw(startTs, endTs, limit, order));
+    }
+
+    private static void assertEntitiesEqual(List<TsKvEntity> expected, List<TsKvEntity> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTs(), actual.get(i).getTs());
+            assertEquals(expected.get(i).getStrValue(), actual.get(i).getStrValue());
+            assertEquals(expected.get(i).getLongValue(), actual.get(i).getLongValue());
+            if (expected.get(i).getDoubleValue() != null) {
+                assertEquals(expected.get(i).getDoubleValue(), actual.get(i).getDoubleValue(), 0.0001);
+            }
+        }
+    }
+
+    private static void assertEntriesEqual(List<TsKvEntry> expected, List<TsKvEntry> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTs(), actual.get(i).getTs());
+            assertEquals(expected.get(i).getValue(), actual.get(i).getValue());
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.rollup;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
+import org.thingsboard.server.dao.sqlts.ts.TsKvAggregationRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TsRollupRepositoryTest {
+
+    private static final int KEY = 1;
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long START_TS = 1_600_000_000_000L - 1_600_000_000_000L % TimeUnit.DAYS.toMillis(1);
+    private static final long END_TS = START_TS + TimeUnit.DAYS.toMillis(2);
+    private static final long DATA_POINT_STEP = TimeUnit.SECONDS.toMillis(15);
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TsRollupRepository rollupRepository;
+    private SqlTimeseriesRollupDao rollupDao;
+    private TsKvAggregationRepository aggregationRepository;
+    private UUID entityId;
+
+    @Before
+    public void before() {
+        dataSource = new SingleConnectionDataSource("jdbc:hsqldb:mem:tsRollup;sql.syntax_pgs=true", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE ts_kv (entity_id UUID NOT NULL, key INT NOT NULL, ts BIGINT NOT NULL, bool_v BOOLEAN, " +
+                "str_v VARCHAR(10000000), long_v BIGINT, dbl_v DOUBLE PRECISION, json_v VARCHAR(10000000), " +
+                "CONSTRAINT ts_kv_pkey PRIMARY KEY (entity_id, key, ts))");
+        jdbcTemplate.execute("CREATE TABLE ts_rollup (entity_id UUID NOT NULL, key INT NOT NULL, granularity BIGINT NOT NULL, ts BIGINT NOT NULL, " +
+                "bool_cnt BIGINT NOT NULL, str_cnt BIGINT NOT NULL, json_cnt BIGINT NOT NULL, long_cnt BIGINT NOT NULL, dbl_cnt BIGINT NOT NULL, " +
+                "long_sum BIGINT NOT NULL, dbl_sum DOUBLE PRECISION NOT NULL, long_min BIGINT, long_max BIGINT, dbl_min DOUBLE PRECISION, dbl_max DOUBLE PRECISION, " +
+                "CONSTRAINT ts_rollup_pkey PRIMARY KEY (entity_id, key, granularity, ts))");
+        jdbcTemplate.execute("CREATE TABLE ts_rollup_state (name VARCHAR(255) NOT NULL, long_v BIGINT NOT NULL, CONSTRAINT ts_rollup_state_pkey PRIMARY KEY (name))");
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        rollupRepository = new TsRollupRepository();
+        ReflectionTestUtils.setField(rollupRepository, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(rollupRepository, "transactionTemplate", transactionTemplate);
+        rollupDao = new SqlTimeseriesRollupDao();
+        ReflectionTestUtils.setField(rollupDao, "rollupRepository", rollupRepository);
+        ReflectionTestUtils.setField(rollupDao, "granularities", new long[]{MINUTE, HOUR});
+        aggregationRepository = new TsKvAggregationRepository();
+        ReflectionTestUtils.setField(aggregationRepository, "jdbcTemplate", jdbcTemplate);
+
+        entityId = UUID.randomUUID();
+        List<Object[]> rows = new ArrayList<>();
+        List<TsKvEntry> entries = new ArrayList<>();
+        long i = 0;
+        for (long ts = START_TS; ts < END_TS; ts += DATA_POINT_STEP, i++) {
+            // leave every 5th hour empty to check that empty intervals are skipped
+            if ((ts - START_TS) / HOUR % 5 == 4) {
+                continue;
+            }
+            Long longValue = i % 3 == 0 ? null : i % 1000 - 300;
+            Double doubleValue = i % 3 == 0 ? i % 700 - 200.25 : null;
+            rows.add(new Object[]{entityId, KEY, ts, longValue, doubleValue});
+            entries.add(new BasicTsKvEntry(ts, longValue != null ? new LongDataEntry("key", longValue) : new DoubleDataEntry("key", doubleValue)));
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO ts_kv (entity_id, key, ts, long_v, dbl_v) VALUES (?, ?, ?, ?, ?)", rows);
+
+        // save in two overlapping halves to check that the stored buckets are recalculated with the new data
+        int half = entries.size() / 2 + 7;
+        saveRollups(entries.subList(0, half));
+        saveRollups(entries.subList(half, entries.size()));
+    }
+
+    @After
+    public void after() {
+        jdbcTemplate.execute("DROP TABLE ts_kv");
+        jdbcTemplate.execute("DROP TABLE ts_rollup");
+        jdbcTemplate.execute("DROP TABLE ts_rollup_state");
+        dataSource.destroy();
+    }
+
+    @Test
+    public void testRollupsMatchRawAggregation() {
+        for (Aggregation aggregation : new Aggregation[]{Aggregation.AVG, Aggregation.SUM, Aggregation.MIN, Aggregation.MAX, Aggregation.COUNT}) {
+            assertMatchesRaw(MINUTE, HOUR, aggregation);
+            assertMatchesRaw(HOUR, HOUR, aggregation);
+            assertMatchesRaw(HOUR, 3 * HOUR, aggregation);
+            assertMatchesRaw(MINUTE, 5 * MINUTE, aggregation);
+        }
+    }
+
+    @Test
+    public void testRebuildAfterRawDataRemoval() {
+        long removeStartTs = START_TS + 90 * MINUTE + 20_000;
+        long removeEndTs = START_TS + 7 * HOUR;
+        jdbcTemplate.update("DELETE FROM ts_kv WHERE entity_id = ? AND key = ? AND ts >= ? AND ts < ?", entityId, KEY, removeStartTs, removeEndTs);
+        rollupRepository.rebuild(entityId, KEY, MINUTE, removeStartTs, removeEndTs);
+        rollupRepository.rebuild(entityId, KEY, HOUR, removeStartTs, removeEndTs);
+
+        assertMatchesRaw(MINUTE, MINUTE, Aggregation.COUNT);
+        assertMatchesRaw(MINUTE, HOUR, Aggregation.SUM);
+        assertMatchesRaw(HOUR, HOUR, Aggregation.MAX);
+    }
+
+    @Test
+    public void testValidSinceTsIsKeptFromFirstStart() {
+        assertEquals(START_TS, rollupRepository.getOrSaveState(SqlTimeseriesRollupDao.VALID_SINCE_TS_STATE, START_TS));
+        assertEquals(START_TS, rollupRepository.getOrSaveState(SqlTimeseriesRollupDao.VALID_SINCE_TS_STATE, END_TS));
+    }
+
+    @Test
+    public void testResavedTimestampIsNotCountedTwice() {
+        long ts = START_TS + 30 * MINUTE;
+        jdbcTemplate.update("UPDATE ts_kv SET long_v = ?, dbl_v = NULL WHERE entity_id = ? AND key = ? AND ts = ?", 100_000L, entityId, KEY, ts);
+        saveRollups(List.of(new BasicTsKvEntry(ts, new LongDataEntry("key", 100_000L))));
+        jdbcTemplate.update("UPDATE ts_kv SET long_v = ?, dbl_v = NULL WHERE entity_id = ? AND key = ? AND ts = ?", -100_000L, entityId, KEY, ts);
+        saveRollups(List.of(new BasicTsKvEntry(ts, new LongDataEntry("key", -100_000L))));
+
+        for (Aggregation aggregation : new Aggregation[]{Aggregation.COUNT, Aggregation.SUM, Aggregation.MIN, Aggregation.MAX}) {
+            assertMatchesRaw(MINUTE, MINUTE, aggregation);
+            assertMatchesRaw(HOUR, HOUR, aggregation);
+        }
+    }
+
+    @Test
+    public void testMinMaxOfStringValuesIsNotServed() {
+        jdbcTemplate.update("INSERT INTO ts_rollup (entity_id, key, granularity, ts, bool_cnt, str_cnt, json_cnt, long_cnt, dbl_cnt, long_sum, dbl_sum) " +
+                "VALUES (?, ?, ?, ?, 0, 1, 0, 0, 0, 0, 0.0)", entityId, KEY + 1, HOUR, START_TS);
+
+        assertNull(rollupRepository.findAggregated(entityId, KEY + 1, HOUR, START_TS, END_TS, HOUR, Aggregation.MAX));
+        assertEquals(1L, rollupRepository.findAggregated(entityId, KEY + 1, HOUR, START_TS, END_TS, HOUR, Aggregation.COUNT)
+                .get(0).getLongValue().longValue());
+    }
+
+    private void assertMatchesRaw(long granularity, long interval, Aggregation aggregation) {
+        List<TsKvEntity> raw = aggregationRepository.findAggregated(entityId, KEY, START_TS, END_TS, interval, aggregation);
+        List<TsKvEntity> rollups = rollupRepository.findAggregated(entityId, KEY, granularity, START_TS, END_TS, interval, aggregation);
+        String message = aggregation + " by " + granularity + " for " + interval;
+        assertEquals(message, raw.size(), rollups.size());
+        for (int i = 0; i < raw.size(); i++) {
+            assertEquals(message, raw.get(i).getTs(), rollups.get(i).getTs());
+            assertEquals(message, raw.get(i).getLongValue(), rollups.get(i).getLongValue());
+            if (raw.get(i).getDoubleValue() == null) {
+                assertNull(message, rollups.get(i).getDoubleValue());
+            } else {
+                assertEquals(message, raw.get(i).getDoubleValue(), rollups.get(i).getDoubleValue(), 0.0001);
+            }
+        }
+    }
+
+    private void saveRollups(List<TsKvEntry> entries) {
+        List<TsRollupBucket> buckets = new ArrayList<>();
+        for (TsKvEntry entry : entries) {
+            buckets.add(TsRollupBucket.of(entityId, KEY, MINUTE, entry.getTs()));
+        }
+        rollupDao.rebuildDirtyBuckets(buckets);
+    }
+}
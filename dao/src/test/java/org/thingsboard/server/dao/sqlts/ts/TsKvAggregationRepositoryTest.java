@@ -0,0 +1,149 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.ts;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+@Slf4j
+public class TsKvAggregationRepositoryTest {
+
+    private static final int KEY = 1;
+    private static final long START_TS = 1_600_000_000_000L;
+    private static final long DATA_POINT_STEP = TimeUnit.MINUTES.toMillis(1);
+    private static final long INTERVAL = TimeUnit.HOURS.toMillis(1);
+    private static final long END_TS = START_TS + TimeUnit.DAYS.toMillis(30);
+
+    private static final String CHUNK_AVG_QUERY = "SELECT SUM(COALESCE(tskv.long_v, 0)), SUM(COALESCE(tskv.dbl_v, 0.0)), " +
+            "SUM(CASE WHEN tskv.long_v IS NULL THEN 0 ELSE 1 END), SUM(CASE WHEN tskv.dbl_v IS NULL THEN 0 ELSE 1 END) " +
+            "FROM ts_kv tskv WHERE tskv.entity_id = ? AND tskv.key = ? AND tskv.ts >= ? AND tskv.ts < ?";
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TsKvAggregationRepository repository;
+    private UUID entityId;
+
+    @Before
+    public void before() {
+        dataSource = new SingleConnectionDataSource("jdbc:hsqldb:mem:tsKvAggregation;sql.syntax_pgs=true", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE ts_kv (entity_id UUID NOT NULL, key INT NOT NULL, ts BIGINT NOT NULL, bool_v BOOLEAN, " +
+                "str_v VARCHAR(10000000), long_v BIGINT, dbl_v DOUBLE PRECISION, json_v VARCHAR(10000000), " +
+                "CONSTRAINT ts_kv_pkey PRIMARY KEY (entity_id, key, ts))");
+        repository = new TsKvAggregationRepository();
+        ReflectionTestUtils.setField(repository, "jdbcTemplate", jdbcTemplate);
+
+        entityId = UUID.randomUUID();
+        List<Object[]> rows = new ArrayList<>();
+        long i = 0;
+        for (long ts = START_TS; ts < END_TS; ts += DATA_POINT_STEP, i++) {
+            // leave every 5th hour empty to check that empty intervals are skipped
+            if ((ts - START_TS) / INTERVAL % 5 == 4) {
+                continue;
+            }
+            Long longValue = i % 2 == 0 ? i : null;
+            Double doubleValue = i % 2 == 0 ? null : i + 0.5;
+            rows.add(new Object[]{entityId, KEY, ts, longValue, doubleValue});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO ts_kv (entity_id, key, ts, long_v, dbl_v) VALUES (?, ?, ?, ?, ?)", rows);
+    }
+
+    @After
+    public void after() {
+        jdbcTemplate.execute("DROP TABLE ts_kv");
+        dataSource.destroy();
+    }
+
+    @Test
+    public void testSingleQueryMatchesPerIntervalQueries() {
+        for (Aggregation aggregation : new Aggregation[]{Aggregation.AVG, Aggregation.SUM, Aggregation.MIN, Aggregation.MAX, Aggregation.COUNT}) {
+            List<TsKvEntity> result = repository.findAggregated(entityId, KEY, START_TS, END_TS, INTERVAL, aggregation);
+            assertEquals(30 * 24 * 4 / 5, result.size());
+            TsKvEntity first = result.get(0);
+            assertEquals(START_TS + INTERVAL / 2, first.getTs().longValue());
+            switch (aggregation) {
+                case AVG:
+                    assertEquals(29.75, first.getDoubleValue(), 0.0001);
+                    break;
+                case SUM:
+                    assertEquals(1785.0, first.getDoubleValue(), 0.0001);
+                    break;
+                case MIN:
+                    assertEquals(0.0, first.getDoubleValue(), 0.0001);
+                    break;
+                case MAX:
+                    assertEquals(59.5, first.getDoubleValue(), 0.0001);
+                    break;
+                case COUNT:
+                    assertEquals(60L, first.getLongValue().longValue());
+                    break;
+            }
+        }
+    }
+
+    @Test
+    public void testIncompleteLastIntervalIsAggregatedWhole() {
+        List<TsKvEntity> result = repository.findAggregated(entityId, KEY, START_TS, START_TS + INTERVAL + 1, INTERVAL, Aggregation.COUNT);
+        assertEquals(2, result.size());
+        assertEquals(60L, result.get(1).getLongValue().longValue());
+    }
+
+    @Test
+    public void testAggregationBenchmark() {
+        int rounds = 5;
+        for (int round = 0; round < rounds; round++) {
+            long chunkedStart = System.nanoTime();
+            int queries = 0;
+            List<TsKvEntity> chunked = new ArrayList<>();
+            for (long stepTs = START_TS; stepTs < END_TS; stepTs += INTERVAL) {
+                TsKvEntity entity = jdbcTemplate.queryForObject(CHUNK_AVG_QUERY, (rs, rowNum) -> new TsKvEntity(
+                        rs.getObject(1) != null ? rs.getLong(1) : null, rs.getObject(2) != null ? rs.getDouble(2) : null,
+                        rs.getObject(3) != null ? rs.getLong(3) : null, rs.getObject(4) != null ? rs.getLong(4) : null, "AVG"),
+                        entityId, KEY, stepTs, stepTs + INTERVAL);
+                queries++;
+                if (entity != null && entity.isNotEmpty()) {
+                    chunked.add(entity);
+                }
+            }
+            long chunkedTime = System.nanoTime() - chunkedStart;
+
+            long singleStart = System.nanoTime();
+            List<TsKvEntity> single = repository.findAggregated(entityId, KEY, START_TS, END_TS, INTERVAL, Aggregation.AVG);
+            long singleTime = System.nanoTime() - singleStart;
+
+            assertEquals(chunked.size(), single.size());
+            for (int i = 0; i < chunked.size(); i++) {
+                assertEquals(chunked.get(i).getDoubleValue(), single.get(i).getDoubleValue(), 0.0001);
+            }
+            log.info("Round {}: per interval - {} queries, {} ms; single query - 1 query, {} ms", round, queries,
+                    TimeUnit.NANOSECONDS.toMillis(chunkedTime), TimeUnit.NANOSECONDS.toMillis(singleTime));
+        }
+    }
+}
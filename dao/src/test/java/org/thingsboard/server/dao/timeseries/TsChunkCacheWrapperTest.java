@@ -0,0 +1,188 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.timeseries;
+
+import com.google.common.util.concurrent.Futures;
+import io.micrometer.core.instrument.Counter;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.BaseReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.BooleanDataEntry;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.JsonDataEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.StringDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TsChunkCacheWrapperTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final String KEY = "temperature";
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+
+    private final List<TsKvEntry> stored = new ArrayList<>();
+    private final AtomicInteger daoQueries = new AtomicInteger();
+    private AtomicInteger hits;
+    private AtomicInteger misses;
+    private TsChunkCacheWrapper cache;
+    private long now;
+
+    @Before
+    public void before() {
+        hits = new AtomicInteger();
+        misses = new AtomicInteger();
+        StatsFactory statsFactory = mock(StatsFactory.class);
+        when(statsFactory.createDefaultCounter(anyString(), eq("result"), eq("hit"))).thenReturn(new DefaultCounter(hits, mock(Counter.class)));
+        when(statsFactory.createDefaultCounter(anyString(), eq("result"), eq("miss"))).thenReturn(new DefaultCounter(misses, mock(Counter.class)));
+
+        TimeseriesDao timeseriesDao = mock(TimeseriesDao.class);
+        when(timeseriesDao.findAllAsync(any(), any(), anyList())).thenAnswer(invocation -> {
+            List<ReadTsKvQuery> queries = invocation.getArgument(2);
+            List<TsKvEntry> result = new ArrayList<>();
+            queries.forEach(query -> result.addAll(find(query)));
+            return Futures.immediateFuture(result);
+        });
+
+        cache = new TsChunkCacheWrapper(timeseriesDao, statsFactory);
+        ReflectionTestUtils.setField(cache, "chunkDurationMs", HOUR);
+        ReflectionTestUtils.setField(cache, "closedAfterMs", TimeUnit.MINUTES.toMillis(5));
+        ReflectionTestUtils.setField(cache, "maxSizeInMb", 16L);
+        ReflectionTestUtils.setField(cache, "maxRowsPerChunk", 1000);
+        ReflectionTestUtils.setField(cache, "maxChunksPerQuery", 100);
+        ReflectionTestUtils.setField(cache, "ttlInSec", 3600L);
+        cache.init();
+
+        now = System.currentTimeMillis();
+        for (long ts = now - TimeUnit.HOURS.toMillis(24); ts < now; ts += TimeUnit.MINUTES.toMillis(1)) {
+            stored.add(new BasicTsKvEntry(ts, new DoubleDataEntry(KEY, ts / 1000.0)));
+        }
+    }
+
+    @Test
+    public void testRepeatedQueryIsServedFromChunks() throws Exception {
+        ReadTsKvQuery query = new BaseReadTsKvQuery(KEY, now - TimeUnit.HOURS.toMillis(24), now, 10000, "DESC");
+
+        List<TsKvEntry> expected = find(query);
+        List<TsKvEntry> first = cache.findAllAsync(tenantId, deviceId, Collections.singletonList(query)).get();
+        int queriesAfterFirst = daoQueries.get();
+        List<TsKvEntry> second = cache.findAllAsync(tenantId, deviceId, Collections.singletonList(query)).get();
+
+        assertEquals(expected, first);
+        assertEquals(expected, second);
+        // only the open tail is read from the database on the second query
+        assertEquals(queriesAfterFirst + 1, daoQueries.get());
+        // all closed chunks loaded by the first query are hit by the second one
+        assertEquals(queriesAfterFirst - 2, misses.get());
+        assertEquals(misses.get(), hits.get());
+    }
+
+    @Test
+    public void testLimitAndOrderAreApplied() throws Exception {
+        ReadTsKvQuery asc = new BaseReadTsKvQuery(KEY, now - TimeUnit.HOURS.toMillis(10), now - TimeUnit.HOURS.toMillis(2), 30, "ASC");
+        ReadTsKvQuery desc = new BaseReadTsKvQuery(KEY, now - TimeUnit.HOURS.toMillis(10), now, 30, "DESC");
+
+        assertEquals(find(asc), cache.findAllAsync(tenantId, deviceId, Collections.singletonList(asc)).get());
+        List<TsKvEntry> expected = find(desc);
+        int queries = daoQueries.get();
+        assertEquals(expected, cache.findAllAsync(tenantId, deviceId, Collections.singletonList(desc)).get());
+        // the latest 30 values are in the open tail, so no chunks are loaded
+        assertEquals(queries + 1, daoQueries.get());
+    }
+
+    @Test
+    public void testColdQueryWithLimitLoadsOnlyRequiredChunks() throws Exception {
+        ReadTsKvQuery desc = new BaseReadTsKvQuery(KEY, now - TimeUnit.HOURS.toMillis(24), now - TimeUnit.HOURS.toMillis(3), 30, "DESC");
+        assertEquals(find(desc), cache.findAllAsync(tenantId, deviceId, Collections.singletonList(desc)).get());
+        // the newest chunk may hold less than 30 values, so at most one more chunk is loaded
+        assertTrue(misses.get() <= 2);
+
+        misses.set(0);
+        ReadTsKvQuery asc = new BaseReadTsKvQuery(KEY, now - TimeUnit.HOURS.toMillis(24), now, 30, "ASC");
+        assertEquals(find(asc), cache.findAllAsync(tenantId, deviceId, Collections.singletonList(asc)).get());
+        assertTrue(misses.get() <= 2);
+    }
+
+    @Test
+    public void testAscQueryReadsTailAfterChunks() throws Exception {
+        ReadTsKvQuery query = new BaseReadTsKvQuery(KEY, now - TimeUnit.HOURS.toMillis(2), now, 10000, "ASC");
+        assertEquals(find(query), cache.findAllAsync(tenantId, deviceId, Collections.singletonList(query)).get());
+    }
+
+    @Test
+    public void testWriteIntoClosedChunkEvictsIt() throws Exception {
+        ReadTsKvQuery query = new BaseReadTsKvQuery(KEY, now - TimeUnit.HOURS.toMillis(6), now, 10000, "ASC");
+        cache.findAllAsync(tenantId, deviceId, Collections.singletonList(query)).get();
+
+        TsKvEntry late = new BasicTsKvEntry(now - TimeUnit.HOURS.toMillis(5) + 1, new LongDataEntry(KEY, 42L));
+        stored.add(late);
+        cache.invalidate(deviceId, KEY, late.getTs());
+
+        List<TsKvEntry> result = cache.findAllAsync(tenantId, deviceId, Collections.singletonList(query)).get();
+        assertEquals(find(query), result);
+    }
+
+    @Test
+    public void testChunkEncodingKeepsTypesAndValues() {
+        List<TsKvEntry> entries = List.of(
+                new BasicTsKvEntry(1000L, new BooleanDataEntry(KEY, true)),
+                new BasicTsKvEntry(1500L, new LongDataEntry(KEY, -5L)),
+                new BasicTsKvEntry(2000L, new LongDataEntry(KEY, Long.MAX_VALUE)),
+                new BasicTsKvEntry(2500L, new DoubleDataEntry(KEY, 3.14)),
+                new BasicTsKvEntry(3000L, new StringDataEntry(KEY, "on")),
+                new BasicTsKvEntry(3500L, new JsonDataEntry(KEY, "{\"a\":1}")));
+        TsChunk chunk = TsChunk.of(KEY, entries);
+
+        assertEquals(entries, chunk.getEntries(0, Long.MAX_VALUE));
+        assertEquals(entries.subList(1, 4), chunk.getEntries(1500L, 3000L));
+    }
+
+    private List<TsKvEntry> find(ReadTsKvQuery query) {
+        daoQueries.incrementAndGet();
+        Comparator<TsKvEntry> comparator = Comparator.comparingLong(TsKvEntry::getTs);
+        return stored.stream()
+                .filter(entry -> entry.getTs() >= query.getStartTs() && entry.getTs() < query.getEndTs())
+                .sorted("ASC".equals(query.getOrder()) ? comparator : comparator.reversed())
+                .limit(query.getLimit())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.timeseries;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.micrometer.core.instrument.Counter;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.BaseDeleteTsKvQuery;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.StringDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.data.kv.TsKvLatestRemovingResult;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.dao.cache.CacheExecutorService;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TsLatestCacheWrapperTest {
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+
+    private TimeseriesLatestDao timeseriesLatestDao;
+    private TsLatestCacheWrapper cacheWrapper;
+    private BaseTimeseriesService timeseriesService;
+    private AtomicInteger hits;
+    private AtomicInteger misses;
+
+    @Before
+    public void before() {
+        hits = new AtomicInteger();
+        misses = new AtomicInteger();
+        StatsFactory statsFactory = mock(StatsFactory.class);
+        when(statsFactory.createDefaultCounter(anyString(), eq("result"), eq("hit"))).thenReturn(new DefaultCounter(hits, mock(Counter.class)));
+        when(statsFactory.createDefaultCounter(anyString(), eq("result"), eq("miss"))).thenReturn(new DefaultCounter(misses, mock(Counter.class)));
+
+        cacheWrapper = new TsLatestCacheWrapper(new ConcurrentMapCacheManager(), statsFactory, mock(CacheExecutorService.class));
+        ReflectionTestUtils.setField(cacheWrapper, "cacheType", TsLatestCacheWrapper.LOCAL_CACHE_TYPE);
+        ReflectionTestUtils.setField(cacheWrapper, "updateByLatestTs", true);
+        cacheWrapper.init();
+
+        timeseriesLatestDao = mock(TimeseriesLatestDao.class);
+        timeseriesService = new BaseTimeseriesService();
+        ReflectionTestUtils.setField(timeseriesService, "timeseriesLatestDao", timeseriesLatestDao);
+        ReflectionTestUtils.setField(timeseriesService, "tsLatestCache", cacheWrapper);
+    }
+
+    @Test
+    public void testFindLatestIsServedFromCacheAfterFirstRead() throws Exception {
+        TsKvEntry entry = new BasicTsKvEntry(42L, new LongDataEntry("temperature", 25L));
+        when(timeseriesLatestDao.findLatest(tenantId, deviceId, "temperature")).thenReturn(Futures.immediateFuture(entry));
+
+        for (int i = 0; i < 3; i++) {
+            List<TsKvEntry> result = timeseriesService.findLatest(tenantId, deviceId, Collections.singletonList("temperature")).get();
+            assertEquals(entry, result.get(0));
+        }
+
+        verify(timeseriesLatestDao, times(1)).findLatest(tenantId, deviceId, "temperature");
+        assertEquals(2, hits.get());
+        assertEquals(1, misses.get());
+    }
+
+    @Test
+    public void testSaveLatestWritesThroughToCache() throws Exception {
+        TsKvEntry entry = new BasicTsKvEntry(42L, new StringDataEntry("state", "on"));
+        when(timeseriesLatestDao.saveLatest(tenantId, deviceId, entry)).thenReturn(Futures.immediateFuture(null));
+
+        timeseriesService.saveLatest(tenantId, deviceId, Collections.singletonList(entry)).get();
+        List<TsKvEntry> result = timeseriesService.findLatest(tenantId, deviceId, Collections.singletonList("state")).get();
+
+        assertEquals(entry, result.get(0));
+        verify(timeseriesLatestDao, times(0)).findLatest(any(), any(), anyString());
+    }
+
+    @Test
+    public void testRemoveLatestEvictsCachedValue() throws Exception {
+        TsKvEntry entry = new BasicTsKvEntry(42L, new StringDataEntry("state", "on"));
+        when(timeseriesLatestDao.saveLatest(tenantId, deviceId, entry)).thenReturn(Futures.immediateFuture(null));
+        when(timeseriesLatestDao.removeLatest(eq(tenantId), eq(deviceId), any(BaseDeleteTsKvQuery.class)))
+                .thenReturn(Futures.immediateFuture(new TsKvLatestRemovingResult("state", true)));
+
+        timeseriesService.saveLatest(tenantId, deviceId, Collections.singletonList(entry)).get();
+        timeseriesService.removeLatest(tenantId, deviceId, Collections.singletonList("state")).get();
+
+        assertNull(cacheWrapper.get(deviceId, "state"));
+    }
+
+    @Test
+    public void testMissingValuesAreNotCached() throws Exception {
+        TsKvEntry missing = new BasicTsKvEntry(42L, new StringDataEntry("unknown", null));
+        when(timeseriesLatestDao.findLatest(tenantId, deviceId, "unknown")).thenReturn(Futures.immediateFuture(missing));
+
+        timeseriesService.findLatest(tenantId, deviceId, Collections.singletonList("unknown")).get();
+        timeseriesService.findLatest(tenantId, deviceId, Collections.singletonList("unknown")).get();
+
+        verify(timeseriesLatestDao, times(2)).findLatest(tenantId, deviceId, "unknown");
+    }
+
+    @Test
+    public void testSlowReadDoesNotReplaceNewerSave() throws Exception {
+        TsKvEntry stored = new BasicTsKvEntry(42L, new StringDataEntry("state", "off"));
+        TsKvEntry saved = new BasicTsKvEntry(43L, new StringDataEntry("state", "on"));
+        SettableFuture<TsKvEntry> readFuture = SettableFuture.create();
+        when(timeseriesLatestDao.findLatest(tenantId, deviceId, "state")).thenReturn(readFuture);
+        when(timeseriesLatestDao.saveLatest(tenantId, deviceId, saved)).thenReturn(Futures.immediateFuture(null));
+
+        ListenableFuture<List<TsKvEntry>> read = timeseriesService.findLatest(tenantId, deviceId, Collections.singletonList("state"));
+        timeseriesService.saveLatest(tenantId, deviceId, Collections.singletonList(saved)).get();
+        readFuture.set(stored);
+
+        assertEquals(stored, read.get().get(0));
+        assertEquals(saved, cacheWrapper.get(deviceId, "state"));
+    }
+
+    @Test
+    public void testOlderSaveDoesNotReplaceNewerEntry() throws Exception {
+        TsKvEntry newer = new BasicTsKvEntry(43L, new StringDataEntry("state", "on"));
+        TsKvEntry older = new BasicTsKvEntry(42L, new StringDataEntry("state", "off"));
+        when(timeseriesLatestDao.saveLatest(eq(tenantId), eq(deviceId), any())).thenReturn(Futures.immediateFuture(null));
+
+        timeseriesService.saveLatest(tenantId, deviceId, Collections.singletonList(newer)).get();
+        timeseriesService.saveLatest(tenantId, deviceId, Collections.singletonList(older)).get();
+
+        assertEquals(newer, cacheWrapper.get(deviceId, "state"));
+    }
+}
@@ -64,6 +64,8 @@ JsInvokeMessageProcessor.prototype.onJsInvokeMessage = function (message) {
             this.processCompileRequest(requestId, responseTopic, headers, request.compileRequest);
         } else if (request.invokeRequest) {
             this.processInvokeRequest(requestId, responseTopic, headers, request.invokeRequest);
+        } else if (request.invokeBatchRequest) {
+            this.processInvokeBatchRequest(requestId, responseTopic, headers, request.invokeBatchRequest);
         } else if (request.releaseRequest) {
             this.processReleaseRequest(requestId, responseTopic, headers, request.releaseRequest);
         } else {
@@ -119,35 +121,16 @@ JsInvokeMessageProcessor.prototype.processCompileRequest = function (requestId,
 JsInvokeMessageProcessor.prototype.processInvokeRequest = function (requestId, responseTopic, headers, invokeRequest) {
     var scriptId = getScriptId(invokeRequest);
     logger.debug('[%s] Processing invoke request, scriptId: [%s]', requestId, scriptId);
-    this.executedScriptsCounter++;
-    if (this.executedScriptsCounter % statFrequency == 0) {
-        const nowMs = performance.now();
-        const msSinceLastStat = nowMs - this.lastStatTime;
-        const requestsPerSec = msSinceLastStat == 0 ? statFrequency : statFrequency / msSinceLastStat * 1000;
-        this.lastStatTime = nowMs;
-        logger.info('STAT[%s]: requests [%s], took [%s]ms, request/s [%s]', this.executedScriptsCounter, statFrequency, msSinceLastStat, requestsPerSec);
-    }
+    this.countExecutedScripts(1);
 
     if (this.executedScriptsCounter % scriptBodyTraceFrequency == 0) {
         logger.info('[%s] Executing script body: [%s]', scriptId, invokeRequest.scriptBody);
     }
     this.getOrCompileScript(scriptId, invokeRequest.scriptBody).then(
         (script) => {
-            this.executor.executeScript(script, invokeRequest.args, invokeRequest.timeout).then(
-                (result) => {
-                    var invokeResponse = createInvokeResponse(result, true);
-                    logger.debug('[%s] Sending success invoke response, scriptId: [%s]', requestId, scriptId);
-                    this.sendResponse(requestId, responseTopic, headers, scriptId, null, invokeResponse);
-                },
-                (err) => {
-                    var errorCode;
-                    if (err.message.includes('Script execution timed out')) {
-                        errorCode = TIMEOUT_ERROR;
-                    } else {
-                        errorCode = RUNTIME_ERROR;
-                    }
-                    var invokeResponse = createInvokeResponse("", false, errorCode, err);
-                    logger.debug('[%s] Sending failed invoke response, scriptId: [%s], errorCode: [%s]', requestId, scriptId, errorCode);
+            this.executeScript(script, invokeRequest.args, invokeRequest.timeout).then(
+                (invokeResponse) => {
+                    logger.debug('[%s] Sending invoke response, scriptId: [%s], success: [%s]', requestId, scriptId, invokeResponse.success);
                     this.sendResponse(requestId, responseTopic, headers, scriptId, null, invokeResponse);
                 }
             )
@@ -160,6 +143,59 @@ JsInvokeMessageProcessor.prototype.processInvokeRequest = function (requestId, r
     );
 }
 
+JsInvokeMessageProcessor.prototype.processInvokeBatchRequest = function (requestId, responseTopic, headers, invokeBatchRequest) {
+    var scriptId = getScriptId(invokeBatchRequest);
+    var invocations = invokeBatchRequest.invocations || [];
+    logger.debug('[%s] Processing invoke batch request, scriptId: [%s], size: [%s]', requestId, scriptId, invocations.length);
+    this.countExecutedScripts(invocations.length);
+
+    this.getOrCompileScript(scriptId, invokeBatchRequest.scriptBody).then(
+        (script) => {
+            Promise.all(invocations.map((invocation) => this.executeScript(script, invocation.args, invokeBatchRequest.timeout))).then(
+                (results) => {
+                    logger.debug('[%s] Sending invoke batch response, scriptId: [%s]', requestId, scriptId);
+                    this.sendResponse(requestId, responseTopic, headers, scriptId, null, null, null, {results: results});
+                }
+            )
+        },
+        (err) => {
+            var results = invocations.map(() => createInvokeResponse("", false, COMPILATION_ERROR, err));
+            logger.debug('[%s] Sending failed invoke batch response, scriptId: [%s], errorCode: [%s]', requestId, scriptId, COMPILATION_ERROR);
+            this.sendResponse(requestId, responseTopic, headers, scriptId, null, null, null, {results: results});
+        }
+    );
+}
+
+JsInvokeMessageProcessor.prototype.executeScript = function (script, args, timeout) {
+    return this.executor.executeScript(script, args, timeout).then(
+        (result) => {
+            return createInvokeResponse(result, true);
+        },
+        (err) => {
+            var errorCode;
+            if (err.message.includes('Script execution timed out')) {
+                errorCode = TIMEOUT_ERROR;
+            } else {
+                errorCode = RUNTIME_ERROR;
+            }
+            return createInvokeResponse("", false, errorCode, err);
+        }
+    );
+}
+
+JsInvokeMessageProcessor.prototype.countExecutedScripts = function (count) {
+    for (var i = 0; i < count; i++) {
+        this.executedScriptsCounter++;
+        if (this.executedScriptsCounter % statFrequency == 0) {
+            const nowMs = performance.now();
+            const msSinceLastStat = nowMs - this.lastStatTime;
+            const requestsPerSec = msSinceLastStat == 0 ? statFrequency : statFrequency / msSinceLastStat * 1000;
+            this.lastStatTime = nowMs;
+            logger.info('STAT[%s]: requests [%s], took [%s]ms, request/s [%s]', this.executedScriptsCounter, statFrequency, msSinceLastStat, requestsPerSec);
+        }
+    }
+}
+
 JsInvokeMessageProcessor.prototype.processReleaseRequest = function (requestId, responseTopic, headers, releaseRequest) {
     var scriptId = getScriptId(releaseRequest);
     logger.debug('[%s] Processing release request, scriptId: [%s]', requestId, scriptId);
@@ -175,9 +211,9 @@ JsInvokeMessageProcessor.prototype.processReleaseRequest = function (requestId,
     this.sendResponse(requestId, responseTopic, headers, scriptId, null, null, releaseResponse);
 }
 
-JsInvokeMessageProcessor.prototype.sendResponse = function (requestId, responseTopic, headers, scriptId, compileResponse, invokeResponse, releaseResponse) {
+JsInvokeMessageProcessor.prototype.sendResponse = function (requestId, responseTopic, headers, scriptId, compileResponse, invokeResponse, releaseResponse, invokeBatchResponse) {
     var tStartSending = performance.now();
-    var remoteResponse = createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse);
+    var remoteResponse = createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse, invokeBatchResponse);
     var rawResponse = Buffer.from(JSON.stringify(remoteResponse), 'utf8');
     logger.debug('[%s] Sending response to queue, scriptId: [%s]', requestId, scriptId);
     this.producer.send(responseTopic, scriptId, rawResponse, headers).then(
@@ -227,14 +263,15 @@ JsInvokeMessageProcessor.prototype.cacheScript = function (scriptId, script) {
     logger.info("scriptMap size is [%s]", this.scriptMap.size);
 }
 
-function createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse) {
+function createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse, invokeBatchResponse) {
     const requestIdBits = Utils.UUIDToBits(requestId);
     return {
         requestIdMSB: requestIdBits[0],
         requestIdLSB: requestIdBits[1],
         compileResponse: compileResponse,
         invokeResponse: invokeResponse,
-        releaseResponse: releaseResponse
+        releaseResponse: releaseResponse,
+        invokeBatchResponse: invokeBatchResponse
     };
 }
 
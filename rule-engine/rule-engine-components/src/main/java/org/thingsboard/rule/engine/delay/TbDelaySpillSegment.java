@@ -0,0 +1,109 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.delay;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only local file with serialized pending messages. Not thread safe.
+ */
+@Slf4j
+class TbDelaySpillSegment implements AutoCloseable {
+
+    private static final int HEADER_SIZE = Integer.BYTES;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+    private long writePosition;
+    private int liveRecords;
+
+    TbDelaySpillSegment(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    long write(byte[] data) throws IOException {
+        long offset = writePosition;
+        header.clear();
+        header.putInt(data.length).flip();
+        writeFully(header, offset);
+        writeFully(ByteBuffer.wrap(data), offset + HEADER_SIZE);
+        writePosition = offset + HEADER_SIZE + data.length;
+        liveRecords++;
+        return offset;
+    }
+
+    byte[] read(long offset) throws IOException {
+        header.clear();
+        readFully(header, offset);
+        header.flip();
+        ByteBuffer data = ByteBuffer.allocate(header.getInt());
+        readFully(data, offset + HEADER_SIZE);
+        liveRecords--;
+        return data.array();
+    }
+
+    void reset() throws IOException {
+        channel.truncate(0);
+        writePosition = 0;
+        liveRecords = 0;
+    }
+
+    int getLiveRecords() {
+        return liveRecords;
+    }
+
+    long getSize() {
+        return writePosition;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("[{}] Failed to delete spill segment", path, e);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of spill segment: " + path);
+            }
+            position += read;
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.delay;
+
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.queue.TbMsgCallback;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Stores pending messages in a sequence of local file segments.
+ * A segment is deleted once all messages written to it are read back. Not thread safe.
+ */
+@Slf4j
+class TbDelaySpillStore implements AutoCloseable {
+
+    private final Path directory;
+    private final String prefix;
+    private final long maxSegmentSize;
+    private final Set<TbDelaySpillSegment> segments = new LinkedHashSet<>();
+
+    private TbDelaySpillSegment current;
+    private int segmentCounter;
+    private int size;
+
+    TbDelaySpillStore(Path directory, String prefix, long maxSegmentSize) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.prefix = prefix;
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    SpilledMsg write(TbMsg msg) throws IOException {
+        if (current == null || current.getSize() >= maxSegmentSize) {
+            rollSegment();
+        }
+        long offset = current.write(TbMsg.toByteArray(msg));
+        size++;
+        return new SpilledMsg(current, offset, msg.getQueueName(), msg.getId(), msg.getOriginator());
+    }
+
+    TbMsg read(SpilledMsg spilledMsg) throws IOException {
+        TbDelaySpillSegment segment = spilledMsg.segment;
+        try {
+            return TbMsg.fromBytes(spilledMsg.queueName, segment.read(spilledMsg.offset), TbMsgCallback.EMPTY);
+        } finally {
+            size--;
+            if (segment.getLiveRecords() == 0) {
+                if (segment == current) {
+                    segment.reset();
+                } else {
+                    segments.remove(segment);
+                    segment.close();
+                }
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getSegmentsCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() {
+        segments.forEach(TbDelaySpillSegment::close);
+        segments.clear();
+        current = null;
+        size = 0;
+    }
+
+    private void rollSegment() throws IOException {
+        if (current != null && current.getLiveRecords() == 0) {
+            current.reset();
+            return;
+        }
+        current = new TbDelaySpillSegment(directory.resolve(prefix + "-" + (segmentCounter++) + ".spill"));
+        segments.add(current);
+    }
+
+    static class SpilledMsg {
+        private final TbDelaySpillSegment segment;
+        private final long offset;
+        private final String queueName;
+        // kept in memory to report the message if it can not be read back
+        final UUID msgId;
+        final EntityId originator;
+
+        private SpilledMsg(TbDelaySpillSegment segment, long offset, String queueName, UUID msgId, EntityId originator) {
+            this.segment = segment;
+            this.offset = offset;
+            this.queueName = queueName;
+            this.msgId = msgId;
+            this.originator = originator;
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.delay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel that tracks pending values without scheduling a separate task per value.
+ * Not thread safe: expected to be used from the rule node actor only.
+ */
+class TbDelayTimerWheel<T> {
+
+    private final long tickDurationMs;
+    private final long startTime;
+    private final List<Entry<T>>[] buckets;
+    private final int mask;
+
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    TbDelayTimerWheel(int ticksPerWheel, long tickDurationMs, long startTime) {
+        if (tickDurationMs <= 0) {
+            throw new IllegalArgumentException("Tick duration should be positive: " + tickDurationMs);
+        }
+        int wheelSize = normalizeTicksPerWheel(ticksPerWheel);
+        this.tickDurationMs = tickDurationMs;
+        this.startTime = startTime;
+        this.buckets = new List[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.mask = wheelSize - 1;
+    }
+
+    void add(long deadlineTs, T value) {
+        long deadlineTick = Math.max(toTick(deadlineTs + tickDurationMs - 1), currentTick);
+        buckets[(int) (deadlineTick & mask)].add(new Entry<>(deadlineTick, value));
+        size++;
+    }
+
+    /**
+     * Releases all values with deadline before or at the specified time.
+     *
+     * @return number of released values
+     */
+    int advance(long now, Consumer<T> consumer) {
+        long targetTick = toTick(now);
+        if (targetTick < currentTick) {
+            return 0;
+        }
+        int released = 0;
+        long bucketsToVisit = Math.min(targetTick - currentTick + 1, buckets.length);
+        for (long tick = currentTick; tick < currentTick + bucketsToVisit; tick++) {
+            released += expire(buckets[(int) (tick & mask)], targetTick, consumer);
+        }
+        currentTick = targetTick + 1;
+        size -= released;
+        return released;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear(Consumer<T> consumer) {
+        for (List<Entry<T>> bucket : buckets) {
+            for (Entry<T> entry : bucket) {
+                consumer.accept(entry.value);
+            }
+            bucket.clear();
+        }
+        size = 0;
+    }
+
+    private int expire(List<Entry<T>> bucket, long targetTick, Consumer<T> consumer) {
+        int released = 0;
+        int retained = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            Entry<T> entry = bucket.get(i);
+            if (entry.deadlineTick <= targetTick) {
+                consumer.accept(entry.value);
+                released++;
+            } else {
+                bucket.set(retained++, entry);
+            }
+        }
+        if (released > 0) {
+            bucket.subList(retained, bucket.size()).clear();
+        }
+        return released;
+    }
+
+    private long toTick(long ts) {
+        return Math.max(ts - startTime, 0) / tickDurationMs;
+    }
+
+    private static int normalizeTicksPerWheel(int ticksPerWheel) {
+        if (ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("Ticks per wheel should be positive: " + ticksPerWheel);
+        }
+        int normalized = 1;
+        while (normalized < ticksPerWheel) {
+            normalized <<= 1;
+        }
+        return normalized;
+    }
+
+    private static class Entry<T> {
+        private final long deadlineTick;
+        private final T value;
+
+        private Entry(long deadlineTick, T value) {
+            this.deadlineTick = deadlineTick;
+            this.value = value;
+        }
+    }
+
+}
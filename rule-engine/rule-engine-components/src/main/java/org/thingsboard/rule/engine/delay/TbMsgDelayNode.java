@@ -28,6 +28,8 @@ import org.thingsboard.server.common.msg.TbMsg;
 import org.thingsboard.server.common.msg.TbMsgMetaData;
 import org.thingsboard.server.common.msg.queue.ServiceQueue;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -53,23 +55,63 @@ import static org.thingsboard.rule.engine.api.TbRelationTypes.SUCCESS;
 public class TbMsgDelayNode implements TbNode {
 
     private static final String TB_MSG_DELAY_NODE_MSG = "TbMsgDelayNodeMsg";
+    private static final String TB_MSG_DELAY_NODE_TICK_MSG = "TbMsgDelayNodeTickMsg";
+    private static final String TB_MSG_DELAY_NODE_LOST_MSG = "TbMsgDelayNodeLostMsg";
 
     private TbMsgDelayNodeConfiguration config;
     private Map<UUID, TbMsg> pendingMsgs;
+    private TbDelayTimerWheel<Object> timerWheel;
+    private TbDelaySpillStore spillStore;
+    private int heapPendingMsgs;
+    private boolean tickScheduled;
 
     @Override
     public void init(TbContext ctx, TbNodeConfiguration configuration) throws TbNodeException {
         this.config = TbNodeUtils.convert(configuration, TbMsgDelayNodeConfiguration.class);
-        this.pendingMsgs = new HashMap<>();
+        if (config.isUseTimerWheel()) {
+            if (config.getTickDurationMs() <= 0 || config.getTicksPerWheel() <= 0 || config.getTicksPerWheel() > (1 << 20)) {
+                throw new TbNodeException("Tick duration and ticks per wheel should be positive and ticks per wheel should not exceed " + (1 << 20));
+            }
+            if (config.getMaxHeapPendingMsgs() > 0 && config.getSpillSegmentSizeInMb() <= 0) {
+                throw new TbNodeException("Spill segment size should be positive");
+            }
+            this.timerWheel = new TbDelayTimerWheel<>(config.getTicksPerWheel(), config.getTickDurationMs(), System.currentTimeMillis());
+            if (config.getMaxHeapPendingMsgs() > 0) {
+                try {
+                    String directory = config.getSpillDirectory() != null ? config.getSpillDirectory() : System.getProperty("java.io.tmpdir");
+                    this.spillStore = new TbDelaySpillStore(Paths.get(directory), "tb-delay-" + ctx.getSelfId().getId(),
+                            config.getSpillSegmentSizeInMb() * 1024L * 1024L);
+                } catch (IOException e) {
+                    throw new TbNodeException(e);
+                }
+            }
+        } else {
+            this.pendingMsgs = new HashMap<>();
+        }
     }
 
     @Override
     public void onMsg(TbContext ctx, TbMsg msg) {
-        if (msg.getType().equals(TB_MSG_DELAY_NODE_MSG)) {
-            TbMsg pendingMsg = pendingMsgs.remove(UUID.fromString(msg.getData()));
+        if (msg.getType().equals(TB_MSG_DELAY_NODE_TICK_MSG)) {
+            tickScheduled = false;
+            if (timerWheel != null) {
+                timerWheel.advance(System.currentTimeMillis(), pending -> release(ctx, pending));
+                scheduleTick(ctx);
+            }
+        } else if (msg.getType().equals(TB_MSG_DELAY_NODE_MSG)) {
+            TbMsg pendingMsg = pendingMsgs != null ? pendingMsgs.remove(UUID.fromString(msg.getData())) : null;
             if (pendingMsg != null) {
                 ctx.enqueueForTellNext(pendingMsg, SUCCESS);
             }
+        } else if (timerWheel != null) {
+            if (timerWheel.size() < config.getMaxPendingMsgs()) {
+                long deadline = System.currentTimeMillis() + getDelay(msg);
+                timerWheel.add(deadline, toPending(msg));
+                scheduleTick(ctx);
+                ctx.ack(msg);
+            } else {
+                ctx.tellFailure(msg, new RuntimeException("Max limit of pending messages reached!"));
+            }
         } else {
             if (pendingMsgs.size() < config.getMaxPendingMsgs()) {
                 pendingMsgs.put(msg.getId(), msg);
@@ -82,6 +124,45 @@ public class TbMsgDelayNode implements TbNode {
         }
     }
 
+    private Object toPending(TbMsg msg) {
+        if (spillStore != null && heapPendingMsgs >= config.getMaxHeapPendingMsgs()) {
+            try {
+                return spillStore.write(msg);
+            } catch (IOException e) {
+                log.warn("Failed to spill pending message [{}] to disk, keeping it in memory", msg.getId(), e);
+            }
+        }
+        heapPendingMsgs++;
+        return msg;
+    }
+
+    private void release(TbContext ctx, Object pending) {
+        if (pending instanceof TbMsg) {
+            heapPendingMsgs--;
+            ctx.enqueueForTellNext((TbMsg) pending, SUCCESS);
+        } else {
+            TbDelaySpillStore.SpilledMsg spilledMsg = (TbDelaySpillStore.SpilledMsg) pending;
+            try {
+                ctx.enqueueForTellNext(spillStore.read(spilledMsg), SUCCESS);
+            } catch (IOException e) {
+                log.error("[{}] Failed to read pending message from spill store", spilledMsg.msgId, e);
+                // the original message is already acked, so report the loss with a placeholder that keeps its id and originator
+                TbMsgMetaData metaData = new TbMsgMetaData();
+                metaData.putValue("lostMsgId", spilledMsg.msgId.toString());
+                TbMsg lostMsg = ctx.newMsg(ServiceQueue.MAIN, TB_MSG_DELAY_NODE_LOST_MSG, spilledMsg.originator, metaData, "");
+                ctx.tellFailure(lostMsg, e);
+            }
+        }
+    }
+
+    private void scheduleTick(TbContext ctx) {
+        if (!tickScheduled && !timerWheel.isEmpty()) {
+            TbMsg tickMsg = ctx.newMsg(ServiceQueue.MAIN, TB_MSG_DELAY_NODE_TICK_MSG, ctx.getSelfId(), new TbMsgMetaData(), "");
+            ctx.tellSelf(tickMsg, config.getTickDurationMs());
+            tickScheduled = true;
+        }
+    }
+
     private long getDelay(TbMsg msg) {
         int periodInSeconds;
         if (config.isUseMetadataPeriodInSecondsPatterns()) {
@@ -102,6 +183,16 @@ public class TbMsgDelayNode implements TbNode {
 
     @Override
     public void destroy() {
-        pendingMsgs.clear();
+        if (pendingMsgs != null) {
+            pendingMsgs.clear();
+        }
+        if (timerWheel != null) {
+            timerWheel.clear(pending -> {
+            });
+            heapPendingMsgs = 0;
+        }
+        if (spillStore != null) {
+            spillStore.close();
+        }
     }
 }
@@ -26,6 +26,12 @@ public class TbMsgDelayNodeConfiguration implements NodeConfiguration<TbMsgDelay
     private int maxPendingMsgs;
     private String periodInSecondsPattern;
     private boolean useMetadataPeriodInSecondsPatterns;
+    private boolean useTimerWheel;
+    private long tickDurationMs;
+    private int ticksPerWheel;
+    private int maxHeapPendingMsgs;
+    private String spillDirectory;
+    private int spillSegmentSizeInMb;
 
     @Override
     public TbMsgDelayNodeConfiguration defaultConfiguration() {
@@ -33,6 +39,11 @@ public class TbMsgDelayNodeConfiguration implements NodeConfiguration<TbMsgDelay
         configuration.setPeriodInSeconds(60);
         configuration.setMaxPendingMsgs(1000);
         configuration.setUseMetadataPeriodInSecondsPatterns(false);
+        configuration.setUseTimerWheel(false);
+        configuration.setTickDurationMs(100);
+        configuration.setTicksPerWheel(512);
+        configuration.setMaxHeapPendingMsgs(0);
+        configuration.setSpillSegmentSizeInMb(64);
         return configuration;
     }
 }
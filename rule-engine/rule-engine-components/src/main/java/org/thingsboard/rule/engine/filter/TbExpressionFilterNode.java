@@ -0,0 +1,65 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.filter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.rule.engine.api.RuleNode;
+import org.thingsboard.rule.engine.api.TbContext;
+import org.thingsboard.rule.engine.api.TbNode;
+import org.thingsboard.rule.engine.api.TbNodeConfiguration;
+import org.thingsboard.rule.engine.api.TbNodeException;
+import org.thingsboard.rule.engine.api.util.TbNodeUtils;
+import org.thingsboard.server.common.data.plugin.ComponentType;
+import org.thingsboard.server.common.msg.TbMsg;
+
+@Slf4j
+@RuleNode(
+        type = ComponentType.FILTER,
+        name = "expression", relationTypes = {"True", "False"},
+        configClazz = TbExpressionFilterNodeConfiguration.class,
+        nodeDescription = "Filter incoming messages using expression",
+        nodeDetails = "Evaluate incoming Message with configured expression without invoking the JS executor. " +
+                "If <b>True</b> - send Message via <b>True</b> chain, otherwise <b>False</b> chain is used." +
+                "Message payload can be accessed via <code>msg</code> property. For example <code>msg.temperature < 10</code><br/>" +
+                "Message metadata can be accessed via <code>metadata</code> property. For example <code>metadata.customerName == 'John'</code><br/>" +
+                "Message type can be accessed via <code>msgType</code> property.",
+        configDirective = "tbFilterNodeExpressionConfig")
+public class TbExpressionFilterNode implements TbNode {
+
+    private TbMsgExpression expression;
+
+    @Override
+    public void init(TbContext ctx, TbNodeConfiguration configuration) throws TbNodeException {
+        TbExpressionFilterNodeConfiguration config = TbNodeUtils.convert(configuration, TbExpressionFilterNodeConfiguration.class);
+        this.expression = new TbMsgExpression(config.getExpression());
+    }
+
+    @Override
+    public void onMsg(TbContext ctx, TbMsg msg) {
+        boolean result;
+        try {
+            result = expression.evaluateFilter(msg);
+        } catch (Exception e) {
+            ctx.tellFailure(msg, e);
+            return;
+        }
+        ctx.tellNext(msg, result ? "True" : "False");
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
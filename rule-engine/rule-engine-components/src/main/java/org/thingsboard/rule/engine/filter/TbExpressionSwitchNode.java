@@ -0,0 +1,69 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.filter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.rule.engine.api.RuleNode;
+import org.thingsboard.rule.engine.api.TbContext;
+import org.thingsboard.rule.engine.api.TbNode;
+import org.thingsboard.rule.engine.api.TbNodeConfiguration;
+import org.thingsboard.rule.engine.api.TbNodeException;
+import org.thingsboard.rule.engine.api.util.TbNodeUtils;
+import org.thingsboard.server.common.data.plugin.ComponentType;
+import org.thingsboard.server.common.msg.TbMsg;
+
+import java.util.Set;
+
+@Slf4j
+@RuleNode(
+        type = ComponentType.FILTER,
+        name = "expression switch", customRelations = true,
+        relationTypes = {},
+        configClazz = TbExpressionSwitchNodeConfiguration.class,
+        nodeDescription = "Route incoming Message to one or multiple output chains using expression",
+        nodeDetails = "Node evaluates configured expression without invoking the JS executor. " +
+                "Expression should return the name or the list of names of next Chains where Message should be routed. " +
+                "If list is empty - message not routed to next Node. " +
+                "Message payload can be accessed via <code>msg</code> property. For example <code>msg.temperature < 10 ? 'cold' : 'warm'</code><br/>" +
+                "Message metadata can be accessed via <code>metadata</code> property. For example <code>metadata.customerName == 'John'</code><br/>" +
+                "Message type can be accessed via <code>msgType</code> property.",
+        configDirective = "tbFilterNodeExpressionConfig")
+public class TbExpressionSwitchNode implements TbNode {
+
+    private TbMsgExpression expression;
+
+    @Override
+    public void init(TbContext ctx, TbNodeConfiguration configuration) throws TbNodeException {
+        TbExpressionSwitchNodeConfiguration config = TbNodeUtils.convert(configuration, TbExpressionSwitchNodeConfiguration.class);
+        this.expression = new TbMsgExpression(config.getExpression());
+    }
+
+    @Override
+    public void onMsg(TbContext ctx, TbMsg msg) {
+        Set<String> nextRelations;
+        try {
+            nextRelations = expression.evaluateSwitch(msg);
+        } catch (Exception e) {
+            ctx.tellFailure(msg, e);
+            return;
+        }
+        ctx.tellNext(msg, nextRelations);
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
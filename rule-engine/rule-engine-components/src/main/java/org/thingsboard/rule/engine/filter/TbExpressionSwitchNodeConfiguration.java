@@ -0,0 +1,32 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.filter;
+
+import lombok.Data;
+import org.thingsboard.rule.engine.api.NodeConfiguration;
+
+@Data
+public class TbExpressionSwitchNodeConfiguration implements NodeConfiguration<TbExpressionSwitchNodeConfiguration> {
+
+    private String expression;
+
+    @Override
+    public TbExpressionSwitchNodeConfiguration defaultConfiguration() {
+        TbExpressionSwitchNodeConfiguration configuration = new TbExpressionSwitchNodeConfiguration();
+        configuration.setExpression("msgType == 'POST_TELEMETRY_REQUEST' ? {'two'} : {'one', 'nine'}");
+        return configuration;
+    }
+}
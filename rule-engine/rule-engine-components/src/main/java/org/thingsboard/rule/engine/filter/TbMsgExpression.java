@@ -0,0 +1,160 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.filter;
+
+import org.springframework.context.expression.MapAccessor;
+import org.springframework.expression.AccessException;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.ParseException;
+import org.springframework.expression.TypedValue;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.ast.PropertyOrFieldReference;
+import org.springframework.expression.spel.ast.VariableReference;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.SimpleEvaluationContext;
+import org.springframework.util.StringUtils;
+import org.thingsboard.common.util.JacksonUtil;
+import org.thingsboard.rule.engine.api.TbNodeException;
+import org.thingsboard.server.common.msg.TbMsg;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Expression over the message evaluated in the rule engine thread, without a round trip to the JS executor.
+ * The expression is parsed once and compiled to bytecode after the first evaluations whenever the value types allow it.
+ * Message payload, metadata and type are available as <code>msg</code>, <code>metadata</code> and <code>msgType</code>,
+ * for example <code>msg.temperature > 30 and metadata.deviceType == 'thermostat'</code>.
+ * Missing fields are evaluated as <code>null</code>. Type references, constructors and bean references are not supported.
+ */
+public class TbMsgExpression {
+
+    public static final String MSG = "msg";
+    public static final String METADATA = "metadata";
+    public static final String MSG_TYPE = "msgType";
+
+    private static final ExpressionParser PARSER = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, TbMsgExpression.class.getClassLoader()));
+
+    private static final EvaluationContext CONTEXT = SimpleEvaluationContext
+            .forPropertyAccessors(new NullSafeMapAccessor())
+            .withInstanceMethods()
+            .build();
+
+    private final Expression expression;
+    // the message payload is parsed from JSON only for the expressions that read it
+    private final boolean msgReferenced;
+
+    public TbMsgExpression(String expression) throws TbNodeException {
+        if (StringUtils.isEmpty(expression)) {
+            throw new TbNodeException("Expression is not set!");
+        }
+        try {
+            this.expression = PARSER.parseExpression(expression);
+        } catch (ParseException e) {
+            throw new TbNodeException("Failed to parse expression: " + e.getMessage());
+        }
+        this.msgReferenced = references(((SpelExpression) this.expression).getAST(), MSG);
+    }
+
+    boolean isMsgReferenced() {
+        return msgReferenced;
+    }
+
+    public boolean evaluateFilter(TbMsg msg) {
+        return Boolean.TRUE.equals(expression.getValue(CONTEXT, toRoot(msg, msgReferenced), Boolean.class));
+    }
+
+    public Set<String> evaluateSwitch(TbMsg msg) {
+        Object result = expression.getValue(CONTEXT, toRoot(msg, msgReferenced));
+        if (result == null) {
+            return Collections.emptySet();
+        } else if (result instanceof Collection) {
+            Set<String> relations = new LinkedHashSet<>();
+            for (Object relation : (Collection<?>) result) {
+                relations.add(String.valueOf(relation));
+            }
+            return relations;
+        } else if (result instanceof Object[]) {
+            Set<String> relations = new LinkedHashSet<>();
+            for (Object relation : (Object[]) result) {
+                relations.add(String.valueOf(relation));
+            }
+            return relations;
+        } else {
+            return Collections.singleton(result.toString());
+        }
+    }
+
+    private static Map<String, Object> toRoot(TbMsg msg, boolean msgReferenced) {
+        Map<String, Object> root = new HashMap<>(4);
+        if (msgReferenced) {
+            root.put(MSG, toData(msg.getData()));
+        }
+        root.put(METADATA, msg.getMetaData().getData());
+        root.put(MSG_TYPE, msg.getType());
+        return root;
+    }
+
+    private static Object toData(String data) {
+        if (StringUtils.isEmpty(data)) {
+            return Collections.emptyMap();
+        }
+        return JacksonUtil.fromString(data, Object.class);
+    }
+
+    private static boolean references(SpelNode node, String name) {
+        if (node instanceof PropertyOrFieldReference && name.equals(((PropertyOrFieldReference) node).getName())) {
+            return true;
+        }
+        // #root['msg'] may read any of the root entries
+        if (node instanceof VariableReference && ("#root".equals(node.toStringAST()) || "#this".equals(node.toStringAST()))) {
+            return true;
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            if (references(node.getChild(i), name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same as {@link MapAccessor} but resolves missing keys to null instead of failing the evaluation,
+     * so that the expressions behave like the JS scripts for optional fields.
+     */
+    private static class NullSafeMapAccessor extends MapAccessor {
+
+        @Override
+        public boolean canRead(EvaluationContext context, Object target, String name) {
+            return target instanceof Map;
+        }
+
+        @Override
+        public TypedValue read(EvaluationContext context, Object target, String name) throws AccessException {
+            return new TypedValue(((Map<?, ?>) target).get(name));
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package org.thingsboard.rule.engine.telemetry;
 
 import com.google.gson.JsonParser;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.thingsboard.rule.engine.api.RuleNode;
@@ -24,6 +25,7 @@ import org.thingsboard.rule.engine.api.TbNode;
 import org.thingsboard.rule.engine.api.TbNodeConfiguration;
 import org.thingsboard.rule.engine.api.TbNodeException;
 import org.thingsboard.rule.engine.api.util.TbNodeUtils;
+import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.kv.AttributeKvEntry;
 import org.thingsboard.server.common.data.plugin.ComponentType;
 import org.thingsboard.server.common.msg.TbMsg;
@@ -31,6 +33,9 @@ import org.thingsboard.server.common.msg.session.SessionMsgType;
 import org.thingsboard.server.common.transport.adaptor.JsonConverter;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @Slf4j
@@ -39,14 +44,22 @@ import java.util.Set;
         name = "save attributes",
         configClazz = TbMsgAttributesNodeConfiguration.class,
         nodeDescription = "Saves attributes data",
-        nodeDetails = "Saves entity attributes based on configurable scope parameter. Expects messages with 'POST_ATTRIBUTES_REQUEST' message type",
+        nodeDetails = "Saves entity attributes based on configurable scope parameter. Expects messages with 'POST_ATTRIBUTES_REQUEST' message type. " +
+                "Set 'batchIntervalMs' to buffer the messages of busy entities for up to the given interval and save them with one call. " +
+                "Only the last value of each attribute in the batch is saved and the messages are acknowledged once the batch is saved. " +
+                "Keep 'batchIntervalMs' below the pack processing timeout of the rule engine queue (2000 ms by default), " +
+                "otherwise the buffered messages are not acknowledged in time and the pack is reprocessed according to the queue strategy.",
         uiResources = {"static/rulenode/rulenode-core-config.js"},
         configDirective = "tbActionNodeAttributesConfig",
         icon = "file_upload"
 )
 public class TbMsgAttributesNode implements TbNode {
 
+    private static final String TB_MSG_ATTRIBUTES_NODE_FLUSH_MSG = "TbMsgAttributesNodeFlushMsg";
+
     private TbMsgAttributesNodeConfiguration config;
+    private TbContext ctx;
+    private TbMsgBatcher<BatchKey, AttributeKvEntry> batcher;
 
     @Override
     public void init(TbContext ctx, TbNodeConfiguration configuration) throws TbNodeException {
@@ -54,10 +67,18 @@ public class TbMsgAttributesNode implements TbNode {
         if (config.getNotifyDevice() == null) {
             config.setNotifyDevice(true);
         }
+        this.ctx = ctx;
+        if (config.getBatchIntervalMs() > 0) {
+            this.batcher = new TbMsgBatcher<>(TB_MSG_ATTRIBUTES_NODE_FLUSH_MSG, config.getBatchIntervalMs(), config.getMaxBatchSize(), this::saveBatch);
+        }
     }
 
     @Override
     public void onMsg(TbContext ctx, TbMsg msg) {
+        if (batcher != null && batcher.isTickMsg(msg)) {
+            batcher.onTick(ctx);
+            return;
+        }
         if (!msg.getType().equals(SessionMsgType.POST_ATTRIBUTES_REQUEST.name())) {
             ctx.tellFailure(msg, new IllegalArgumentException("Unsupported msg type: " + msg.getType()));
             return;
@@ -65,18 +86,45 @@ public class TbMsgAttributesNode implements TbNode {
         String src = msg.getData();
         Set<AttributeKvEntry> attributes = JsonConverter.convertToAttributes(new JsonParser().parse(src));
         String notifyDeviceStr = msg.getMetaData().getValue("notifyDevice");
-        ctx.getTelemetryService().saveAndNotify(
-                ctx.getTenantId(),
-                msg.getOriginator(),
-                config.getScope(),
-                new ArrayList<>(attributes),
-                config.getNotifyDevice() || StringUtils.isEmpty(notifyDeviceStr) || Boolean.parseBoolean(notifyDeviceStr),
-                new TelemetryNodeCallback(ctx, msg)
-        );
+        boolean notifyDevice = config.getNotifyDevice() || StringUtils.isEmpty(notifyDeviceStr) || Boolean.parseBoolean(notifyDeviceStr);
+        if (batcher != null) {
+            batcher.add(ctx, new BatchKey(msg.getOriginator(), notifyDevice), msg, new ArrayList<>(attributes));
+        } else {
+            ctx.getTelemetryService().saveAndNotify(
+                    ctx.getTenantId(),
+                    msg.getOriginator(),
+                    config.getScope(),
+                    new ArrayList<>(attributes),
+                    notifyDevice,
+                    new TelemetryNodeCallback(ctx, msg)
+            );
+        }
+    }
+
+    private void saveBatch(BatchKey key, TbMsgBatcher.Batch<AttributeKvEntry> batch) {
+        List<AttributeKvEntry> attributes = batch.getEntries();
+        if (batch.size() > 1) {
+            // the values of the later messages win
+            Map<String, AttributeKvEntry> uniqueAttributes = new LinkedHashMap<>();
+            for (AttributeKvEntry attribute : attributes) {
+                uniqueAttributes.put(attribute.getKey(), attribute);
+            }
+            attributes = new ArrayList<>(uniqueAttributes.values());
+        }
+        ctx.getTelemetryService().saveAndNotify(ctx.getTenantId(), key.getOriginator(), config.getScope(), attributes, key.isNotifyDevice(), batch.callback(ctx));
     }
 
     @Override
     public void destroy() {
+        if (batcher != null) {
+            batcher.flush(ctx);
+        }
+    }
+
+    @Data
+    private static class BatchKey {
+        private final EntityId originator;
+        private final boolean notifyDevice;
     }
 
 }
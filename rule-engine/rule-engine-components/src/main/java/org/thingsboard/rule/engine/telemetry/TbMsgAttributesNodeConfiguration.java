@@ -26,11 +26,17 @@ public class TbMsgAttributesNodeConfiguration implements NodeConfiguration<TbMsg
 
     private Boolean notifyDevice;
 
+    private long batchIntervalMs;
+
+    private int maxBatchSize;
+
     @Override
     public TbMsgAttributesNodeConfiguration defaultConfiguration() {
         TbMsgAttributesNodeConfiguration configuration = new TbMsgAttributesNodeConfiguration();
         configuration.setScope(DataConstants.SERVER_SCOPE);
         configuration.setNotifyDevice(false);
+        configuration.setBatchIntervalMs(0L);
+        configuration.setMaxBatchSize(100);
         return configuration;
     }
 }
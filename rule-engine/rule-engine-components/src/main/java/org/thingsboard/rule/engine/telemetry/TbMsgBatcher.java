@@ -0,0 +1,153 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.telemetry;
+
+import com.google.common.util.concurrent.FutureCallback;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.rule.engine.api.TbContext;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.msg.queue.ServiceQueue;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Buffers the writes of the telemetry nodes per batch key (originator and save parameters).
+ * The first message of an idle entity is saved right away. Once the entity sends more than one message per interval,
+ * the next messages are collected and saved together on the next tick or as soon as the batch is full.
+ * The messages of a batch are acknowledged when the merged save completes.
+ * Not thread safe, all the methods are called from the rule node actor.
+ */
+@Slf4j
+class TbMsgBatcher<K, E> {
+
+    private final String tickMsgType;
+    private final long intervalMs;
+    private final int maxBatchSize;
+    private final BiConsumer<K, Batch<E>> saveFunction;
+
+    private final Map<K, Batch<E>> batches = new LinkedHashMap<>();
+    private final Map<K, Long> lastSaveTs = new HashMap<>();
+    private boolean tickScheduled;
+
+    TbMsgBatcher(String tickMsgType, long intervalMs, int maxBatchSize, BiConsumer<K, Batch<E>> saveFunction) {
+        this.tickMsgType = tickMsgType;
+        this.intervalMs = intervalMs;
+        this.maxBatchSize = maxBatchSize > 0 ? maxBatchSize : Integer.MAX_VALUE;
+        this.saveFunction = saveFunction;
+    }
+
+    boolean isTickMsg(TbMsg msg) {
+        return tickMsgType.equals(msg.getType());
+    }
+
+    void add(TbContext ctx, K key, TbMsg msg, List<E> entries) {
+        long ts = System.currentTimeMillis();
+        Batch<E> batch = batches.get(key);
+        if (batch == null) {
+            Long lastTs = lastSaveTs.get(key);
+            batch = new Batch<>();
+            if (lastTs == null || ts - lastTs >= intervalMs) {
+                batch.add(msg, entries);
+                save(ctx, key, batch, ts);
+                scheduleTick(ctx);
+                return;
+            }
+            batches.put(key, batch);
+        }
+        batch.add(msg, entries);
+        if (batch.size() >= maxBatchSize) {
+            batches.remove(key);
+            save(ctx, key, batch, ts);
+        }
+        scheduleTick(ctx);
+    }
+
+    void onTick(TbContext ctx) {
+        tickScheduled = false;
+        flush(ctx);
+        long ts = System.currentTimeMillis();
+        lastSaveTs.values().removeIf(lastTs -> ts - lastTs >= intervalMs);
+        scheduleTick(ctx);
+    }
+
+    void flush(TbContext ctx) {
+        long ts = System.currentTimeMillis();
+        batches.forEach((key, batch) -> save(ctx, key, batch, ts));
+        batches.clear();
+    }
+
+    private void save(TbContext ctx, K key, Batch<E> batch, long ts) {
+        lastSaveTs.put(key, ts);
+        try {
+            saveFunction.accept(key, batch);
+        } catch (Exception e) {
+            log.warn("[{}] Failed to save batch of {} messages", key, batch.size(), e);
+            batch.getMsgs().forEach(msg -> ctx.tellFailure(msg, e));
+        }
+    }
+
+    private void scheduleTick(TbContext ctx) {
+        if (!tickScheduled && !lastSaveTs.isEmpty()) {
+            TbMsg tickMsg = ctx.newMsg(ServiceQueue.MAIN, tickMsgType, ctx.getSelfId(), new TbMsgMetaData(), "");
+            ctx.tellSelf(tickMsg, intervalMs);
+            tickScheduled = true;
+        }
+    }
+
+    @Getter
+    static class Batch<E> {
+        private final List<TbMsg> msgs = new ArrayList<>();
+        private final List<E> entries = new ArrayList<>();
+
+        private void add(TbMsg msg, List<E> msgEntries) {
+            msgs.add(msg);
+            entries.addAll(msgEntries);
+        }
+
+        int size() {
+            return msgs.size();
+        }
+
+        FutureCallback<Void> callback(TbContext ctx) {
+            return msgs.size() == 1 ? new TelemetryNodeCallback(ctx, msgs.get(0)) : new BatchCallback(ctx, msgs);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class BatchCallback implements FutureCallback<Void> {
+        private final TbContext ctx;
+        private final List<TbMsg> msgs;
+
+        @Override
+        public void onSuccess(@Nullable Void result) {
+            msgs.forEach(ctx::tellSuccess);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            msgs.forEach(msg -> ctx.tellFailure(msg, t));
+        }
+    }
+}
@@ -15,7 +15,9 @@
  */
 package org.thingsboard.rule.engine.telemetry;
 
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.gson.JsonParser;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.StringUtils;
 import org.thingsboard.rule.engine.api.RuleNode;
@@ -25,6 +27,8 @@ import org.thingsboard.rule.engine.api.TbNodeConfiguration;
 import org.thingsboard.rule.engine.api.TbNodeException;
 import org.thingsboard.rule.engine.api.util.TbNodeUtils;
 import org.thingsboard.server.common.data.TenantProfile;
+import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
 import org.thingsboard.server.common.data.kv.KvEntry;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
@@ -35,6 +39,7 @@ import org.thingsboard.server.common.transport.adaptor.JsonConverter;
 import org.thingsboard.server.common.data.tenant.profile.DefaultTenantProfileConfiguration;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -55,16 +60,24 @@ import java.util.concurrent.TimeUnit;
                 "In the case of sequential processing, the platform guarantees that the messages are processed in the order of their submission to the queue. " +
                 "However, the timestamp of the messages originated by multiple devices/servers may be unsynchronized long before they are pushed to the queue. " +
                 "The DB layer has certain optimizations to ignore the updates of the \"attributes\" and \"latest values\" tables if the new record has a timestamp that is older than the previous record. " +
-                "So, to make sure that all the messages will be processed correctly, one should enable this parameter for sequential message processing scenarios.",
+                "So, to make sure that all the messages will be processed correctly, one should enable this parameter for sequential message processing scenarios.\n" +
+                "<br/>" +
+                "Set 'batchIntervalMs' to buffer the messages of busy entities for up to the given interval and save them with one call. " +
+                "Values with the same key and timestamp are deduplicated and the messages are acknowledged once the batch is saved. " +
+                "Keep 'batchIntervalMs' below the pack processing timeout of the rule engine queue (2000 ms by default), " +
+                "otherwise the buffered messages are not acknowledged in time and the pack is reprocessed according to the queue strategy.",
         uiResources = {"static/rulenode/rulenode-core-config.js"},
         configDirective = "tbActionNodeTimeseriesConfig",
         icon = "file_upload"
 )
 public class TbMsgTimeseriesNode implements TbNode {
 
+    private static final String TB_MSG_TIMESERIES_NODE_FLUSH_MSG = "TbMsgTimeseriesNodeFlushMsg";
+
     private TbMsgTimeseriesNodeConfiguration config;
     private TbContext ctx;
     private long tenantProfileDefaultStorageTtl;
+    private TbMsgBatcher<BatchKey, TsKvEntry> batcher;
 
     @Override
     public void init(TbContext ctx, TbNodeConfiguration configuration) throws TbNodeException {
@@ -72,6 +85,9 @@ public class TbMsgTimeseriesNode implements TbNode {
         this.ctx = ctx;
         ctx.addTenantProfileListener(this::onTenantProfileUpdate);
         onTenantProfileUpdate(ctx.getTenantProfile());
+        if (config.getBatchIntervalMs() > 0) {
+            this.batcher = new TbMsgBatcher<>(TB_MSG_TIMESERIES_NODE_FLUSH_MSG, config.getBatchIntervalMs(), config.getMaxBatchSize(), this::saveBatch);
+        }
     }
 
     void onTenantProfileUpdate(TenantProfile tenantProfile) {
@@ -81,6 +97,10 @@ public class TbMsgTimeseriesNode implements TbNode {
 
     @Override
     public void onMsg(TbContext ctx, TbMsg msg) {
+        if (batcher != null && batcher.isTickMsg(msg)) {
+            batcher.onTick(ctx);
+            return;
+        }
         if (!msg.getType().equals(SessionMsgType.POST_TELEMETRY_REQUEST.name())) {
             ctx.tellFailure(msg, new IllegalArgumentException("Unsupported msg type: " + msg.getType()));
             return;
@@ -103,10 +123,31 @@ public class TbMsgTimeseriesNode implements TbNode {
         if (ttl == 0L) {
             ttl = tenantProfileDefaultStorageTtl;
         }
+        if (batcher != null) {
+            batcher.add(ctx, new BatchKey(msg.getOriginator(), msg.getCustomerId(), ttl), msg, tsKvEntryList);
+        } else {
+            save(msg.getCustomerId(), msg.getOriginator(), tsKvEntryList, ttl, new TelemetryNodeCallback(ctx, msg));
+        }
+    }
+
+    private void saveBatch(BatchKey key, TbMsgBatcher.Batch<TsKvEntry> batch) {
+        List<TsKvEntry> entries = batch.getEntries();
+        if (batch.size() > 1) {
+            // the values of the later messages win for the same key and timestamp
+            Map<String, TsKvEntry> uniqueEntries = new LinkedHashMap<>();
+            for (TsKvEntry entry : entries) {
+                uniqueEntries.put(entry.getKey() + "_" + entry.getTs(), entry);
+            }
+            entries = new ArrayList<>(uniqueEntries.values());
+        }
+        save(key.getCustomerId(), key.getOriginator(), entries, key.getTtl(), batch.callback(ctx));
+    }
+
+    private void save(CustomerId customerId, EntityId originator, List<TsKvEntry> tsKvEntryList, long ttl, FutureCallback<Void> callback) {
         if (config.isSkipLatestPersistence()) {
-            ctx.getTelemetryService().saveWithoutLatestAndNotify(ctx.getTenantId(), msg.getCustomerId(), msg.getOriginator(), tsKvEntryList, ttl, new TelemetryNodeCallback(ctx, msg));
+            ctx.getTelemetryService().saveWithoutLatestAndNotify(ctx.getTenantId(), customerId, originator, tsKvEntryList, ttl, callback);
         } else {
-            ctx.getTelemetryService().saveAndNotify(ctx.getTenantId(), msg.getCustomerId(), msg.getOriginator(), tsKvEntryList, ttl, new TelemetryNodeCallback(ctx, msg));
+            ctx.getTelemetryService().saveAndNotify(ctx.getTenantId(), customerId, originator, tsKvEntryList, ttl, callback);
         }
     }
 
@@ -116,7 +157,17 @@ public class TbMsgTimeseriesNode implements TbNode {
 
     @Override
     public void destroy() {
+        if (batcher != null) {
+            batcher.flush(ctx);
+        }
         ctx.removeListeners();
     }
 
+    @Data
+    private static class BatchKey {
+        private final EntityId originator;
+        private final CustomerId customerId;
+        private final long ttl;
+    }
+
 }
@@ -24,6 +24,8 @@ public class TbMsgTimeseriesNodeConfiguration implements NodeConfiguration<TbMsg
     private long defaultTTL;
     private boolean skipLatestPersistence;
     private boolean useServerTs;
+    private long batchIntervalMs;
+    private int maxBatchSize;
 
     @Override
     public TbMsgTimeseriesNodeConfiguration defaultConfiguration() {
@@ -31,6 +33,8 @@ public class TbMsgTimeseriesNodeConfiguration implements NodeConfiguration<TbMsg
         configuration.setDefaultTTL(0L);
         configuration.setSkipLatestPersistence(false);
         configuration.setUseServerTs(false);
+        configuration.setBatchIntervalMs(0L);
+        configuration.setMaxBatchSize(100);
         return configuration;
     }
 }
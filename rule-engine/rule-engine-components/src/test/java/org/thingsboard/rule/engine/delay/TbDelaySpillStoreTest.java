@@ -0,0 +1,80 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.delay;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TbDelaySpillStoreTest {
+
+    private Path directory;
+    private TbDelaySpillStore store;
+
+    @Before
+    public void before() throws IOException {
+        directory = Files.createTempDirectory("tb-delay-test");
+        store = new TbDelaySpillStore(directory, "test", 1024);
+    }
+
+    @After
+    public void after() throws IOException {
+        store.close();
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    public void givenSpilledMsgs_whenRead_thenRestoredAndSegmentsDeleted() throws IOException {
+        TbMsgMetaData metaData = new TbMsgMetaData();
+        metaData.putValue("key", "value");
+        List<TbMsg> msgs = new ArrayList<>();
+        List<TbDelaySpillStore.SpilledMsg> spilled = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            TbMsg msg = TbMsg.newMsg("POST_TELEMETRY_REQUEST", new DeviceId(UUID.randomUUID()), metaData, "{\"temperature\":" + i + "}");
+            msgs.add(msg);
+            spilled.add(store.write(msg));
+        }
+        assertEquals(50, store.size());
+        assertTrue(store.getSegmentsCount() > 1);
+
+        for (int i = 0; i < msgs.size(); i++) {
+            TbMsg restored = store.read(spilled.get(i));
+            assertEquals(msgs.get(i).getId(), restored.getId());
+            assertEquals(msgs.get(i).getData(), restored.getData());
+            assertEquals("value", restored.getMetaData().getValue("key"));
+        }
+        assertEquals(0, store.size());
+        assertEquals(1, store.getSegmentsCount());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.delay;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TbDelayTimerWheelTest {
+
+    @Test
+    public void givenValues_whenAdvance_thenReleasedOnlyAfterDeadline() {
+        TbDelayTimerWheel<Integer> wheel = new TbDelayTimerWheel<>(8, 10, 0);
+        wheel.add(25, 1);
+        wheel.add(15, 2);
+        wheel.add(1000, 3);
+
+        List<Integer> released = new ArrayList<>();
+        assertEquals(0, wheel.advance(14, released::add));
+        assertEquals(1, wheel.advance(20, released::add));
+        assertEquals(List.of(2), released);
+        assertEquals(1, wheel.advance(30, released::add));
+        assertEquals(List.of(2, 1), released);
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    public void givenDeadlineSeveralRoundsAhead_whenAdvance_thenNotReleasedEarly() {
+        TbDelayTimerWheel<Integer> wheel = new TbDelayTimerWheel<>(4, 10, 0);
+        wheel.add(100, 1);
+
+        List<Integer> released = new ArrayList<>();
+        for (long now = 0; now < 100; now += 10) {
+            wheel.advance(now, released::add);
+            assertTrue(released.isEmpty());
+        }
+        wheel.advance(100, released::add);
+        assertEquals(List.of(1), released);
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    public void givenLongPause_whenAdvance_thenAllDueValuesReleasedInOneBatch() {
+        TbDelayTimerWheel<Integer> wheel = new TbDelayTimerWheel<>(16, 10, 0);
+        for (int i = 0; i < 100; i++) {
+            wheel.add(i * 7L, i);
+        }
+        wheel.add(100_000, 100);
+
+        List<Integer> released = new ArrayList<>();
+        assertEquals(100, wheel.advance(50_000, released::add));
+        assertEquals(100, released.size());
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    public void givenDeadlineInThePast_whenAdvance_thenReleasedOnNextTick() {
+        TbDelayTimerWheel<Integer> wheel = new TbDelayTimerWheel<>(8, 10, 0);
+        wheel.advance(100, v -> {
+        });
+        wheel.add(50, 1);
+
+        List<Integer> released = new ArrayList<>();
+        wheel.advance(110, released::add);
+        assertEquals(List.of(1), released);
+    }
+
+}
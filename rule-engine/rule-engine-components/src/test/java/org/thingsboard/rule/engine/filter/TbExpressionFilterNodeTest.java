@@ -0,0 +1,132 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.filter;
+
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.common.util.JacksonUtil;
+import org.thingsboard.rule.engine.api.TbContext;
+import org.thingsboard.rule.engine.api.TbNodeConfiguration;
+import org.thingsboard.rule.engine.api.TbNodeException;
+import org.thingsboard.server.common.data.id.RuleChainId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgDataType;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.same;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TbExpressionFilterNodeTest {
+
+    private TbExpressionFilterNode node;
+
+    @Mock
+    private TbContext ctx;
+
+    private final RuleChainId ruleChainId = new RuleChainId(Uuids.timeBased());
+    private final RuleNodeId ruleNodeId = new RuleNodeId(Uuids.timeBased());
+
+    @Test
+    public void payloadConditionCanBeTrue() throws TbNodeException {
+        initWithExpression("msg.temperature > 30 and msg.humidity < 50.5");
+        TbMsg msg = newMsg(new TbMsgMetaData(), "{\"temperature\": 31, \"humidity\": 40.2}");
+
+        node.onMsg(ctx, msg);
+        verify(ctx).tellNext(msg, "True");
+    }
+
+    @Test
+    public void metadataConditionCanBeFalse() throws TbNodeException {
+        initWithExpression("metadata.deviceType == 'thermostat' and msgType == 'POST_TELEMETRY_REQUEST'");
+        TbMsgMetaData metaData = new TbMsgMetaData();
+        metaData.putValue("deviceType", "meter");
+        TbMsg msg = newMsg(metaData, "{}");
+
+        node.onMsg(ctx, msg);
+        verify(ctx).tellNext(msg, "False");
+    }
+
+    @Test
+    public void payloadIsNotParsedWhenNotReferenced() throws TbNodeException {
+        initWithExpression("metadata.deviceType == 'thermostat'");
+        TbMsgMetaData metaData = new TbMsgMetaData();
+        metaData.putValue("deviceType", "thermostat");
+        TbMsg msg = newMsg(metaData, "not a json");
+
+        node.onMsg(ctx, msg);
+        verify(ctx).tellNext(msg, "True");
+    }
+
+    @Test
+    public void payloadReferencesAreDetected() throws TbNodeException {
+        assertTrue(new TbMsgExpression("msg.temperature > 30").isMsgReferenced());
+        assertTrue(new TbMsgExpression("metadata.deviceType == 'thermostat' and {1, msg?.temperature}.size() > 1").isMsgReferenced());
+        assertTrue(new TbMsgExpression("#root['msg'] != null").isMsgReferenced());
+        assertFalse(new TbMsgExpression("metadata.deviceType == 'thermostat' and msgType == 'POST_TELEMETRY_REQUEST'").isMsgReferenced());
+    }
+
+    @Test
+    public void missingFieldIsEvaluatedAsNull() throws TbNodeException {
+        initWithExpression("msg.temperature > 30 or msg.nested?.value == null");
+        TbMsg msg = newMsg(new TbMsgMetaData(), "{\"humidity\": 40}");
+
+        for (int i = 0; i < 3; i++) {
+            node.onMsg(ctx, msg);
+        }
+        verify(ctx, times(3)).tellNext(msg, "True");
+    }
+
+    @Test
+    public void typeReferencesAreNotAllowed() throws TbNodeException {
+        initWithExpression("T(java.lang.System).exit(1) == null");
+        TbMsg msg = newMsg(new TbMsgMetaData(), "{}");
+
+        node.onMsg(ctx, msg);
+        ArgumentCaptor<Throwable> captor = ArgumentCaptor.forClass(Throwable.class);
+        verify(ctx).tellFailure(same(msg), captor.capture());
+        assertNotNull(captor.getValue());
+        verify(ctx, never()).tellNext(any(), anyString());
+    }
+
+    @Test(expected = TbNodeException.class)
+    public void invalidExpressionFailsInit() throws TbNodeException {
+        initWithExpression("msg.temperature >");
+    }
+
+    private void initWithExpression(String expression) throws TbNodeException {
+        TbExpressionFilterNodeConfiguration config = new TbExpressionFilterNodeConfiguration();
+        config.setExpression(expression);
+        node = new TbExpressionFilterNode();
+        node.init(ctx, new TbNodeConfiguration(JacksonUtil.valueToTree(config)));
+    }
+
+    private TbMsg newMsg(TbMsgMetaData metaData, String data) {
+        return TbMsg.newMsg("POST_TELEMETRY_REQUEST", null, metaData, TbMsgDataType.JSON, data, ruleChainId, ruleNodeId);
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.filter;
+
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.google.common.collect.Sets;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.common.util.JacksonUtil;
+import org.thingsboard.rule.engine.api.TbContext;
+import org.thingsboard.rule.engine.api.TbNodeConfiguration;
+import org.thingsboard.rule.engine.api.TbNodeException;
+import org.thingsboard.server.common.data.id.RuleChainId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgDataType;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+
+import java.util.Collections;
+
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TbExpressionSwitchNodeTest {
+
+    private TbExpressionSwitchNode node;
+
+    @Mock
+    private TbContext ctx;
+
+    private final RuleChainId ruleChainId = new RuleChainId(Uuids.timeBased());
+    private final RuleNodeId ruleNodeId = new RuleNodeId(Uuids.timeBased());
+
+    @Test
+    public void listResultRoutesToAllRelations() throws TbNodeException {
+        initWithExpression("msgType == 'POST_TELEMETRY_REQUEST' ? {'one', 'nine'} : {'two'}");
+        TbMsg msg = newMsg("{}");
+
+        node.onMsg(ctx, msg);
+        verify(ctx).tellNext(msg, Sets.newHashSet("one", "nine"));
+    }
+
+    @Test
+    public void stringResultRoutesToSingleRelation() throws TbNodeException {
+        initWithExpression("msg.temperature < 10 ? 'cold' : 'warm'");
+        TbMsg msg = newMsg("{\"temperature\": 5}");
+
+        node.onMsg(ctx, msg);
+        verify(ctx).tellNext(msg, Collections.singleton("cold"));
+    }
+
+    @Test
+    public void nullResultIsNotRouted() throws TbNodeException {
+        initWithExpression("msg.temperature > 100 ? 'alarm' : null");
+        TbMsg msg = newMsg("{\"temperature\": 5}");
+
+        node.onMsg(ctx, msg);
+        verify(ctx).tellNext(msg, Collections.emptySet());
+    }
+
+    private void initWithExpression(String expression) throws TbNodeException {
+        TbExpressionSwitchNodeConfiguration config = new TbExpressionSwitchNodeConfiguration();
+        config.setExpression(expression);
+        node = new TbExpressionSwitchNode();
+        node.init(ctx, new TbNodeConfiguration(JacksonUtil.valueToTree(config)));
+    }
+
+    private TbMsg newMsg(String data) {
+        return TbMsg.newMsg("POST_TELEMETRY_REQUEST", null, new TbMsgMetaData(), TbMsgDataType.JSON, data, ruleChainId, ruleNodeId);
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.telemetry;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.FutureCallback;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.rule.engine.api.RuleEngineTelemetryService;
+import org.thingsboard.rule.engine.api.TbContext;
+import org.thingsboard.rule.engine.api.TbNodeConfiguration;
+import org.thingsboard.rule.engine.api.TbNodeException;
+import org.thingsboard.server.common.data.DataConstants;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.AttributeKvEntry;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.msg.session.SessionMsgType;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TbMsgAttributesNodeTest {
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+    private final RuleNodeId ruleNodeId = new RuleNodeId(UUID.randomUUID());
+
+    @Mock
+    private TbContext ctx;
+    @Mock
+    private RuleEngineTelemetryService telemetryService;
+    @Captor
+    private ArgumentCaptor<TbMsg> tickCaptor;
+    @Captor
+    private ArgumentCaptor<List<AttributeKvEntry>> attributesCaptor;
+    @Captor
+    private ArgumentCaptor<FutureCallback<Void>> callbackCaptor;
+
+    private TbMsgAttributesNode node;
+
+    @Before
+    public void before() throws TbNodeException {
+        when(ctx.getTenantId()).thenReturn(tenantId);
+        when(ctx.getTelemetryService()).thenReturn(telemetryService);
+        when(ctx.getSelfId()).thenReturn(ruleNodeId);
+        when(ctx.newMsg(anyString(), anyString(), any(EntityId.class), any(TbMsgMetaData.class), anyString()))
+                .thenAnswer(invocation -> TbMsg.newMsg(invocation.<String>getArgument(1), invocation.<EntityId>getArgument(2),
+                        invocation.<TbMsgMetaData>getArgument(3), invocation.<String>getArgument(4)));
+
+        TbMsgAttributesNodeConfiguration config = new TbMsgAttributesNodeConfiguration().defaultConfiguration();
+        config.setBatchIntervalMs(60000L);
+        config.setMaxBatchSize(3);
+        node = new TbMsgAttributesNode();
+        node.init(ctx, new TbNodeConfiguration(new ObjectMapper().valueToTree(config)));
+    }
+
+    @Test
+    public void givenBusyEntity_whenTick_thenLastValuesSavedWithOneCall() {
+        TbMsg first = attributesMsg("{\"firmware\":\"1.0\"}");
+        node.onMsg(ctx, first);
+        verify(telemetryService, times(1)).saveAndNotify(eq(tenantId), eq(deviceId), anyString(), anyList(), anyBoolean(), any());
+
+        TbMsg second = attributesMsg("{\"firmware\":\"1.1\",\"mode\":\"eco\"}");
+        TbMsg third = attributesMsg("{\"firmware\":\"1.2\"}");
+        node.onMsg(ctx, second);
+        node.onMsg(ctx, third);
+        verify(telemetryService, times(1)).saveAndNotify(eq(tenantId), eq(deviceId), anyString(), anyList(), anyBoolean(), any());
+
+        verify(ctx).tellSelf(tickCaptor.capture(), eq(60000L));
+        node.onMsg(ctx, tickCaptor.getValue());
+
+        verify(telemetryService, times(2)).saveAndNotify(eq(tenantId), eq(deviceId), eq(DataConstants.SERVER_SCOPE),
+                attributesCaptor.capture(), anyBoolean(), callbackCaptor.capture());
+        Map<String, String> attributes = attributesCaptor.getValue().stream()
+                .collect(Collectors.toMap(AttributeKvEntry::getKey, AttributeKvEntry::getValueAsString));
+        assertEquals(2, attributes.size());
+        assertEquals("1.2", attributes.get("firmware"));
+        assertEquals("eco", attributes.get("mode"));
+
+        verify(ctx, never()).tellSuccess(second);
+        callbackCaptor.getValue().onSuccess(null);
+        verify(ctx).tellSuccess(second);
+        verify(ctx).tellSuccess(third);
+        verify(ctx, never()).tellSuccess(first);
+    }
+
+    @Test
+    public void givenBatchSaveFailure_whenCallback_thenAllMessagesOfBatchFailed() {
+        node.onMsg(ctx, attributesMsg("{\"firmware\":\"1.0\"}"));
+        TbMsg second = attributesMsg("{\"firmware\":\"1.1\"}");
+        TbMsg third = attributesMsg("{\"mode\":\"eco\"}");
+        node.onMsg(ctx, second);
+        node.onMsg(ctx, third);
+        verify(ctx).tellSelf(tickCaptor.capture(), eq(60000L));
+        node.onMsg(ctx, tickCaptor.getValue());
+
+        verify(telemetryService, times(2)).saveAndNotify(eq(tenantId), eq(deviceId), anyString(), anyList(), anyBoolean(), callbackCaptor.capture());
+        RuntimeException error = new RuntimeException("Failed to save attributes");
+        callbackCaptor.getValue().onFailure(error);
+        verify(ctx).tellFailure(second, error);
+        verify(ctx).tellFailure(third, error);
+        verify(ctx, never()).tellSuccess(any());
+    }
+
+    @Test
+    public void givenFullBatch_whenMsg_thenSavedWithoutTick() {
+        node.onMsg(ctx, attributesMsg("{\"firmware\":\"1.0\"}"));
+        for (int i = 0; i < 3; i++) {
+            node.onMsg(ctx, attributesMsg("{\"counter\":" + i + "}"));
+        }
+
+        verify(telemetryService, times(2)).saveAndNotify(eq(tenantId), eq(deviceId), anyString(), attributesCaptor.capture(), anyBoolean(), any());
+        List<AttributeKvEntry> attributes = attributesCaptor.getValue();
+        assertEquals(1, attributes.size());
+        assertEquals(2L, attributes.get(0).getLongValue().get().longValue());
+        verify(ctx, times(1)).tellSelf(any(), eq(60000L));
+    }
+
+    private TbMsg attributesMsg(String data) {
+        return TbMsg.newMsg(SessionMsgType.POST_ATTRIBUTES_REQUEST.name(), deviceId, new TbMsgMetaData(), data);
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.telemetry;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.FutureCallback;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.rule.engine.api.RuleEngineTelemetryService;
+import org.thingsboard.rule.engine.api.TbContext;
+import org.thingsboard.rule.engine.api.TbNodeConfiguration;
+import org.thingsboard.rule.engine.api.TbNodeException;
+import org.thingsboard.server.common.data.TenantProfile;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.data.tenant.profile.DefaultTenantProfileConfiguration;
+import org.thingsboard.server.common.data.tenant.profile.TenantProfileData;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.msg.session.SessionMsgType;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TbMsgTimeseriesNodeTest {
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+    private final RuleNodeId ruleNodeId = new RuleNodeId(UUID.randomUUID());
+
+    @Mock
+    private TbContext ctx;
+    @Mock
+    private RuleEngineTelemetryService telemetryService;
+    @Captor
+    private ArgumentCaptor<TbMsg> tickCaptor;
+    @Captor
+    private ArgumentCaptor<List<TsKvEntry>> entriesCaptor;
+    @Captor
+    private ArgumentCaptor<FutureCallback<Void>> callbackCaptor;
+
+    private TbMsgTimeseriesNode node;
+
+    @Before
+    public void before() throws TbNodeException {
+        TenantProfileData profileData = new TenantProfileData();
+        profileData.setConfiguration(new DefaultTenantProfileConfiguration());
+        TenantProfile tenantProfile = new TenantProfile();
+        tenantProfile.setProfileData(profileData);
+        when(ctx.getTenantProfile()).thenReturn(tenantProfile);
+        when(ctx.getTenantId()).thenReturn(tenantId);
+        when(ctx.getTelemetryService()).thenReturn(telemetryService);
+        when(ctx.getSelfId()).thenReturn(ruleNodeId);
+        when(ctx.newMsg(anyString(), anyString(), any(EntityId.class), any(TbMsgMetaData.class), anyString()))
+                .thenAnswer(invocation -> TbMsg.newMsg(invocation.<String>getArgument(1), invocation.<EntityId>getArgument(2),
+                        invocation.<TbMsgMetaData>getArgument(3), invocation.<String>getArgument(4)));
+
+        TbMsgTimeseriesNodeConfiguration config = new TbMsgTimeseriesNodeConfiguration().defaultConfiguration();
+        config.setBatchIntervalMs(60000L);
+        config.setMaxBatchSize(3);
+        node = new TbMsgTimeseriesNode();
+        node.init(ctx, new TbNodeConfiguration(new ObjectMapper().valueToTree(config)));
+    }
+
+    @Test
+    public void givenBusyEntity_whenTick_thenMessagesSavedWithOneCall() {
+        TbMsg first = telemetryMsg(1000L, "{\"temperature\":20}");
+        node.onMsg(ctx, first);
+        verify(telemetryService, times(1)).saveAndNotify(eq(tenantId), any(), eq(deviceId), any(), anyLong(), any());
+
+        TbMsg second = telemetryMsg(2000L, "{\"temperature\":21}");
+        TbMsg duplicate = telemetryMsg(2000L, "{\"temperature\":22,\"humidity\":50}");
+        node.onMsg(ctx, second);
+        node.onMsg(ctx, duplicate);
+        verify(telemetryService, times(1)).saveAndNotify(eq(tenantId), any(), eq(deviceId), any(), anyLong(), any());
+
+        verify(ctx).tellSelf(tickCaptor.capture(), eq(60000L));
+        node.onMsg(ctx, tickCaptor.getValue());
+
+        verify(telemetryService, times(2)).saveAndNotify(eq(tenantId), any(), eq(deviceId), entriesCaptor.capture(), anyLong(), callbackCaptor.capture());
+        List<TsKvEntry> entries = entriesCaptor.getValue();
+        assertEquals(2, entries.size());
+        assertEquals("temperature", entries.get(0).getKey());
+        assertEquals(22L, entries.get(0).getLongValue().get().longValue());
+        assertEquals("humidity", entries.get(1).getKey());
+
+        verify(ctx, never()).tellSuccess(second);
+        callbackCaptor.getValue().onSuccess(null);
+        verify(ctx).tellSuccess(second);
+        verify(ctx).tellSuccess(duplicate);
+        verify(ctx, never()).tellSuccess(first);
+    }
+
+    @Test
+    public void givenFullBatch_whenMsg_thenSavedWithoutTick() {
+        node.onMsg(ctx, telemetryMsg(1000L, "{\"temperature\":20}"));
+        for (int i = 0; i < 3; i++) {
+            node.onMsg(ctx, telemetryMsg(2000L + i, "{\"temperature\":20}"));
+        }
+
+        verify(telemetryService, times(2)).saveAndNotify(eq(tenantId), any(), eq(deviceId), entriesCaptor.capture(), anyLong(), any());
+        assertEquals(3, entriesCaptor.getValue().size());
+        verify(ctx, times(1)).tellSelf(any(), anyLong());
+    }
+
+    private TbMsg telemetryMsg(long ts, String data) {
+        TbMsgMetaData metaData = new TbMsgMetaData();
+        metaData.putValue("ts", Long.toString(ts));
+        return TbMsg.newMsg(SessionMsgType.POST_TELEMETRY_REQUEST.name(), deviceId, metaData, data);
+    }
+}
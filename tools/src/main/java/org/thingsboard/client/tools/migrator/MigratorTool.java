@@ -24,6 +24,9 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MigratorTool {
 
@@ -37,9 +40,11 @@ public class MigratorTool {
             File partitionsSaveDir = null;
             File latestSaveDir = null;
 
+            int threads = cmd.getOptionValue("threads") != null ?
+                    Integer.parseInt(cmd.getOptionValue("threads")) : Runtime.getRuntime().availableProcessors();
+
             RelatedEntitiesParser allEntityIdsAndTypes =
                     new RelatedEntitiesParser(new File(cmd.getOptionValue("relatedEntities")));
-            DictionaryParser dictionaryParser = new DictionaryParser(allTelemetrySource);
 
             if(cmd.getOptionValue("latestTelemetryOut") != null) {
                 latestSaveDir = new File(cmd.getOptionValue("latestTelemetryOut"));
@@ -49,7 +54,16 @@ public class MigratorTool {
                 partitionsSaveDir = new File(cmd.getOptionValue("partitionsOut"));
             }
 
-            new PgCaMigrator(allTelemetrySource, tsSaveDir, partitionsSaveDir, latestSaveDir, allEntityIdsAndTypes, dictionaryParser, castEnable).migrate();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try (PgDumpFile dumpFile = new PgDumpFile(allTelemetrySource)) {
+                List<PgDumpFile.Block> blocks = dumpFile.findBlocks(executor);
+                DictionaryParser dictionaryParser = new DictionaryParser(dumpFile, blocks);
+
+                new PgCaMigrator(dumpFile, blocks, executor, threads, tsSaveDir, partitionsSaveDir, latestSaveDir,
+                        allEntityIdsAndTypes, dictionaryParser, castEnable).migrate();
+            } finally {
+                executor.shutdownNow();
+            }
 
         } catch (Throwable th) {
             th.printStackTrace();
@@ -85,6 +99,10 @@ public class MigratorTool {
         relatedOpt.setRequired(true);
         options.addOption(relatedOpt);
 
+        Option threadsOpt = new Option("threads", "threads", true, "number of threads that parse the dump and write SSTables, defaults to the number of cores");
+        threadsOpt.setRequired(false);
+        options.addOption(threadsOpt);
+
         HelpFormatter formatter = new HelpFormatter();
         CommandLineParser parser = new BasicParser();
 
@@ -17,9 +17,6 @@ package org.thingsboard.client.tools.migrator;
 
 import com.google.common.collect.Lists;
 import org.apache.cassandra.io.sstable.CQLSSTableWriter;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.LineIterator;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 
 import java.io.File;
@@ -29,155 +26,195 @@ import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
+/**
+ * Converts the ts_kv and ts_kv_latest blocks of the dump into SSTables.
+ * The blocks are split into memory mapped segments that are parsed by all threads concurrently,
+ * every thread writes its rows with its own SSTable writer for the output table.
+ */
 public class PgCaMigrator {
 
-    private final long LOG_BATCH = 1000000;
-    private final long rowPerFile = 1000000;
+    private static final long LOG_BATCH = 1000000;
+    private static final long ROWS_PER_FILE = 1000000;
 
-    private long linesTsMigrated = 0;
-    private long linesLatestMigrated = 0;
-    private long castErrors = 0;
-    private long castedOk = 0;
+    private static final String TS_TABLE = "public.ts_kv";
+    private static final String LATEST_TABLE = "public.ts_kv_latest";
 
-    private long currentWriterCount = 1;
+    private static final int TS_STR_INDEX = 6;
+    private static final int TS_DBL_INDEX = 8;
+    private static final int LATEST_STR_INDEX = 5;
+    private static final int LATEST_DBL_INDEX = 7;
 
-    private final File sourceFile;
+    private final AtomicLong linesTsMigrated = new AtomicLong();
+    private final AtomicLong linesLatestMigrated = new AtomicLong();
+    private final AtomicLong castErrors = new AtomicLong();
+    private final AtomicLong castedOk = new AtomicLong();
+
+    private final PgDumpFile dumpFile;
+    private final List<PgDumpFile.Block> blocks;
+    private final ExecutorService executor;
+    private final int threads;
     private final boolean castStringIfPossible;
 
     private final RelatedEntitiesParser entityIdsAndTypes;
     private final DictionaryParser keyParser;
-    private CQLSSTableWriter currentTsWriter;
-    private CQLSSTableWriter currentPartitionsWriter;
-    private CQLSSTableWriter currentTsLatestWriter;
-    private final Set<String> partitions = new HashSet<>();
-
-    private File outTsDir;
-    private File outTsLatestDir;
-
-    public PgCaMigrator(File sourceFile,
-                                File ourTsDir,
-                                File outTsPartitionDir,
-                                File outTsLatestDir,
-                                RelatedEntitiesParser allEntityIdsAndTypes,
-                                DictionaryParser dictionaryParser,
-                                boolean castStringsIfPossible) {
-        this.sourceFile = sourceFile;
+    private final Set<String> partitions = ConcurrentHashMap.newKeySet();
+
+    private final File outTsDir;
+    private final File outTsPartitionDir;
+    private final File outTsLatestDir;
+
+    public PgCaMigrator(PgDumpFile dumpFile,
+                        List<PgDumpFile.Block> blocks,
+                        ExecutorService executor,
+                        int threads,
+                        File ourTsDir,
+                        File outTsPartitionDir,
+                        File outTsLatestDir,
+                        RelatedEntitiesParser allEntityIdsAndTypes,
+                        DictionaryParser dictionaryParser,
+                        boolean castStringsIfPossible) {
+        this.dumpFile = dumpFile;
+        this.blocks = blocks;
+        this.executor = executor;
+        this.threads = threads;
         this.entityIdsAndTypes = allEntityIdsAndTypes;
         this.keyParser = dictionaryParser;
         this.castStringIfPossible = castStringsIfPossible;
-        if(outTsLatestDir != null) {
-            this.currentTsLatestWriter = WriterBuilder.getLatestWriter(outTsLatestDir);
-            this.outTsLatestDir = outTsLatestDir;
-        }
-        if(ourTsDir != null) {
-            this.currentTsWriter = WriterBuilder.getTsWriter(ourTsDir);
-            this.currentPartitionsWriter = WriterBuilder.getPartitionWriter(outTsPartitionDir);
-            this.outTsDir = ourTsDir;
-        }
+        this.outTsDir = ourTsDir;
+        this.outTsPartitionDir = outTsPartitionDir;
+        this.outTsLatestDir = outTsLatestDir;
     }
 
-    public void migrate() throws IOException {
-        boolean isTsDone = false;
-        boolean isLatestDone = false;
-        String line;
-        LineIterator iterator = FileUtils.lineIterator(this.sourceFile);
-
-        try {
-            while(iterator.hasNext()) {
-                line = iterator.nextLine();
-                if(!isLatestDone && isBlockLatestStarted(line)) {
-                    System.out.println("START TO MIGRATE LATEST");
-                    long start = System.currentTimeMillis();
-                    processBlock(iterator, currentTsLatestWriter, outTsLatestDir, this::toValuesLatest);
-                    System.out.println("TOTAL LINES MIGRATED: " + linesLatestMigrated + ", FORMING OF SSL FOR LATEST TS FINISHED WITH TIME: " + (System.currentTimeMillis() - start) + " ms.");
-                    isLatestDone = true;
-                }
+    public void migrate() throws Exception {
+        if (outTsLatestDir != null) {
+            System.out.println("START TO MIGRATE LATEST");
+            long start = System.currentTimeMillis();
+            migrateTable(LATEST_TABLE, () -> WriterBuilder.getLatestWriter(outTsLatestDir), this::toValuesLatest, LATEST_STR_INDEX, LATEST_DBL_INDEX);
+            System.out.println("TOTAL LINES MIGRATED: " + linesLatestMigrated.get() + ", FORMING OF SSL FOR LATEST TS FINISHED WITH TIME: " + (System.currentTimeMillis() - start) + " ms.");
+        }
 
-                if(!isTsDone && isBlockTsStarted(line)) {
-                    System.out.println("START TO MIGRATE TS");
-                    long start = System.currentTimeMillis();
-                    processBlock(iterator, currentTsWriter, outTsDir, this::toValuesTs);
-                    System.out.println("TOTAL LINES MIGRATED: " + linesTsMigrated + ", FORMING OF SSL FOR TS FINISHED WITH TIME: " + (System.currentTimeMillis() - start) + " ms.");
-                    isTsDone = true;
-                }
-            }
+        if (outTsDir != null) {
+            System.out.println("START TO MIGRATE TS");
+            long start = System.currentTimeMillis();
+            migrateTable(TS_TABLE, () -> WriterBuilder.getTsWriter(outTsDir), this::toValuesTs, TS_STR_INDEX, TS_DBL_INDEX);
+            System.out.println("TOTAL LINES MIGRATED: " + linesTsMigrated.get() + ", FORMING OF SSL FOR TS FINISHED WITH TIME: " + (System.currentTimeMillis() - start) + " ms.");
 
             System.out.println("Partitions collected " + partitions.size());
             long startTs = System.currentTimeMillis();
-            for (String partition : partitions) {
-                String[] split = partition.split("\\|");
-                List<Object> values = Lists.newArrayList();
-                values.add(split[0]);
-                values.add(UUID.fromString(split[1]));
-                values.add(split[2]);
-                values.add(Long.parseLong(split[3]));
-                currentPartitionsWriter.addRow(values);
+            CQLSSTableWriter partitionsWriter = WriterBuilder.getPartitionWriter(outTsPartitionDir);
+            try {
+                for (String partition : partitions) {
+                    String[] split = partition.split("\\|");
+                    List<Object> values = Lists.newArrayList();
+                    values.add(split[0]);
+                    values.add(UUID.fromString(split[1]));
+                    values.add(split[2]);
+                    values.add(Long.parseLong(split[3]));
+                    partitionsWriter.addRow(values);
+                }
+            } finally {
+                partitionsWriter.close();
             }
-
             System.out.println(new Date() + " Migrated partitions " + partitions.size() + " in " + (System.currentTimeMillis() - startTs));
+        }
 
-            System.out.println();
-            System.out.println("Finished migrate Telemetry");
+        System.out.println();
+        System.out.println("Finished migrate Telemetry");
+    }
 
-        } finally {
-            iterator.close();
-            currentTsLatestWriter.close();
-            currentTsWriter.close();
-            currentPartitionsWriter.close();
+    private void migrateTable(String table, Supplier<CQLSSTableWriter> writerFactory, Function<TsKvRow, List<Object>> function,
+                              int strIndex, int dblIndex) throws Exception {
+        Queue<PgDumpFile.Segment> segments = new ConcurrentLinkedQueue<>();
+        for (PgDumpFile.Block block : blocks) {
+            // the dump made with --load-via-partition-root has a separate block for each partition
+            if (block.isTable(table)) {
+                segments.addAll(dumpFile.split(block.getStart(), block.getEnd()));
+            }
+        }
+        System.out.println(new Date() + " " + table + " data is split into " + segments.size() + " segments");
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                processSegments(segments, writerFactory, function, strIndex, dblIndex);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
         }
     }
 
-    private void logLinesProcessed(long lines) {
-        if (lines % LOG_BATCH == 0) {
-            System.out.println(new Date() + " lines processed = " + lines + " in, castOk " + castedOk + "  castErr " + castErrors);
+    private void processSegments(Queue<PgDumpFile.Segment> segments, Supplier<CQLSSTableWriter> writerFactory,
+                                 Function<TsKvRow, List<Object>> function, int strIndex, int dblIndex) throws IOException {
+        TsKvRow row = new TsKvRow();
+        RotatingWriter writer = new RotatingWriter(writerFactory);
+        try {
+            PgDumpFile.Segment segment;
+            while ((segment = segments.poll()) != null) {
+                dumpFile.forEachLine(segment, (buffer, from, to) -> {
+                    try {
+                        row.parse(buffer, from, to);
+                        List<Object> values = function.apply(row);
+                        writer.addRow(castStringIfPossible ? castToNumericIfPossible(values, strIndex, dblIndex) : values);
+                    } catch (Exception ex) {
+                        System.out.println(ex.getMessage() + " -> " + PgDumpFile.decode(buffer, from, to));
+                    }
+                });
+            }
+        } finally {
+            writer.close();
         }
     }
 
     private void logLinesMigrated(long lines) {
-        if(lines % LOG_BATCH == 0) {
-            System.out.println(new Date() + " lines migrated = " + lines + " in, castOk " + castedOk + "  castErr " + castErrors);
+        if (lines % LOG_BATCH == 0) {
+            System.out.println(new Date() + " lines migrated = " + lines + " in, castOk " + castedOk.get() + "  castErr " + castErrors.get());
         }
     }
 
-    private void addTypeIdKey(List<Object> result, List<String> raw) {
-        result.add(entityIdsAndTypes.getEntityType(raw.get(0)));
-        result.add(UUID.fromString(raw.get(0)));
-        result.add(keyParser.getKeyByKeyId(raw.get(1)));
+    private void addTypeIdKey(List<Object> result, TsKvRow raw) {
+        result.add(entityIdsAndTypes.getEntityType(raw.getEntityId()));
+        result.add(raw.getEntityId());
+        result.add(keyParser.getKeyByKeyId(raw.getKeyId()));
     }
 
-    private void addPartitions(List<Object> result, List<String> raw) {
-        long ts = Long.parseLong(raw.get(2));
+    private void addPartitions(List<Object> result, TsKvRow raw) {
+        long ts = raw.getTs();
         long partition = toPartitionTs(ts);
         result.add(partition);
         result.add(ts);
     }
 
-    private void addTimeseries(List<Object> result, List<String> raw) {
-        result.add(Long.parseLong(raw.get(2)));
+    private void addTimeseries(List<Object> result, TsKvRow raw) {
+        result.add(raw.getTs());
     }
 
-    private void addValues(List<Object> result, List<String> raw) {
-        result.add(raw.get(3).equals("\\N") ? null : raw.get(3).equals("t") ? Boolean.TRUE : Boolean.FALSE);
-        result.add(raw.get(4).equals("\\N") ? null : raw.get(4));
-        result.add(raw.get(5).equals("\\N") ? null : Long.parseLong(raw.get(5)));
-        result.add(raw.get(6).equals("\\N") ? null : Double.parseDouble(raw.get(6)));
-        result.add(raw.get(7).equals("\\N") ? null : raw.get(7));
+    private void addValues(List<Object> result, TsKvRow raw) {
+        result.add(raw.getBoolValue());
+        result.add(raw.getStrValue());
+        result.add(raw.getLongValue());
+        result.add(raw.getDoubleValue());
+        result.add(raw.getJsonValue());
     }
 
-    private List<Object> toValuesTs(List<String> raw) {
+    private List<Object> toValuesTs(TsKvRow raw) {
+        logLinesMigrated(linesTsMigrated.getAndIncrement());
 
-        logLinesMigrated(linesTsMigrated++);
-
-        List<Object> result = new ArrayList<>();
+        List<Object> result = new ArrayList<>(10);
 
         addTypeIdKey(result, raw);
         addPartitions(result, raw);
@@ -188,9 +225,9 @@ public class PgCaMigrator {
         return result;
     }
 
-    private List<Object> toValuesLatest(List<String> raw) {
-        logLinesMigrated(linesLatestMigrated++);
-        List<Object> result = new ArrayList<>();
+    private List<Object> toValuesLatest(TsKvRow raw) {
+        logLinesMigrated(linesLatestMigrated.getAndIncrement());
+        List<Object> result = new ArrayList<>(9);
 
         addTypeIdKey(result, raw);
         addTimeseries(result, raw);
@@ -209,74 +246,49 @@ public class PgCaMigrator {
         partitions.add(key);
     }
 
-    private void processBlock(LineIterator iterator, CQLSSTableWriter writer, File outDir, Function<List<String>, List<Object>> function) {
-        String currentLine;
-        long linesProcessed = 0;
-        while(iterator.hasNext()) {
-            logLinesProcessed(linesProcessed++);
-            currentLine = iterator.nextLine();
-            if(isBlockFinished(currentLine)) {
-                return;
-            }
-
-            try {
-                List<String> raw = Arrays.stream(currentLine.trim().split("\t"))
-                        .map(String::trim)
-                        .collect(Collectors.toList());
-                List<Object> values = function.apply(raw);
-
-                if (this.currentWriterCount == 0) {
-                    System.out.println(new Date() + " close writer " + new Date());
-                    writer.close();
-                    writer = WriterBuilder.getLatestWriter(outDir);
-                }
-
-                if (this.castStringIfPossible) {
-                    writer.addRow(castToNumericIfPossible(values));
-                } else {
-                    writer.addRow(values);
-                }
-
-                currentWriterCount++;
-                if (currentWriterCount >= rowPerFile) {
-                    currentWriterCount = 0;
-                }
-            } catch (Exception ex) {
-                System.out.println(ex.getMessage() + " -> " + currentLine);
-            }
-        }
-    }
-
-    private List<Object> castToNumericIfPossible(List<Object> values) {
+    private List<Object> castToNumericIfPossible(List<Object> values, int strIndex, int dblIndex) {
         try {
-            if (values.get(6) != null && NumberUtils.isNumber(values.get(6).toString())) {
-                Double casted = NumberUtils.createDouble(values.get(6).toString());
+            if (values.get(strIndex) != null && NumberUtils.isNumber(values.get(strIndex).toString())) {
+                Double casted = NumberUtils.createDouble(values.get(strIndex).toString());
                 List<Object> numeric = Lists.newArrayList();
                 numeric.addAll(values);
-                numeric.set(6, null);
-                numeric.set(8, casted);
-                castedOk++;
+                numeric.set(strIndex, null);
+                numeric.set(dblIndex, casted);
+                castedOk.incrementAndGet();
                 return numeric;
             }
         } catch (Throwable th) {
-            castErrors++;
+            castErrors.incrementAndGet();
         }
-
-        processPartitions(values);
-
         return values;
     }
 
-    private boolean isBlockFinished(String line) {
-        return StringUtils.isBlank(line) || line.equals("\\.");
-    }
+    private static class RotatingWriter {
+        private final Supplier<CQLSSTableWriter> writerFactory;
+        private CQLSSTableWriter writer;
+        private long rows;
 
-    private boolean isBlockTsStarted(String line) {
-        return line.startsWith("COPY public.ts_kv (");
-    }
+        RotatingWriter(Supplier<CQLSSTableWriter> writerFactory) {
+            this.writerFactory = writerFactory;
+        }
 
-    private boolean isBlockLatestStarted(String line) {
-        return line.startsWith("COPY public.ts_kv_latest (");
-    }
+        void addRow(List<Object> values) throws Exception {
+            if (writer == null) {
+                writer = writerFactory.get();
+            }
+            writer.addRow(values);
+            if (++rows >= ROWS_PER_FILE) {
+                System.out.println(new Date() + " close writer");
+                close();
+                rows = 0;
+            }
+        }
 
+        void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        }
+    }
 }
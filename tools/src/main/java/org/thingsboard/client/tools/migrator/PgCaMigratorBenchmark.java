@@ -0,0 +1,220 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.client.tools.migrator;
+
+import com.datastax.driver.core.utils.UUIDs;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.LineIterator;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Generates a ts_kv dump file and compares the line by line parsing with the segmented parallel parsing,
+ * then runs the whole migration of the generated dump into SSTables.
+ * Usage: PgCaMigratorBenchmark [rows] [threads] [work dir]
+ */
+public class PgCaMigratorBenchmark {
+
+    private static final int DEVICES = 1000;
+    private static final int KEYS = 10;
+
+    public static void main(String[] args) throws Exception {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 5_000_000L;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        File workDir = args.length > 2 ? new File(args[2]) : Files.createTempDirectory("pg-ca-migrator").toFile();
+
+        File dump = new File(workDir, "ts_kv_all.dmp");
+        File related = new File(workDir, "related_entities.dmp");
+        List<UUID> devices = generateRelated(related);
+        long start = System.currentTimeMillis();
+        generateDump(dump, devices, rows);
+        System.out.println("Generated " + rows + " rows, " + dump.length() / (1024 * 1024) + " MB in " + (System.currentTimeMillis() - start) + " ms");
+
+        start = System.currentTimeMillis();
+        long parsed = parseLineByLine(dump);
+        System.out.println("Line iterator and split: " + parsed + " rows in " + (System.currentTimeMillis() - start) + " ms");
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (PgDumpFile dumpFile = new PgDumpFile(dump)) {
+            start = System.currentTimeMillis();
+            List<PgDumpFile.Block> blocks = dumpFile.findBlocks(executor);
+            parsed = parseSegments(dumpFile, blocks, executor, threads);
+            System.out.println("Memory mapped segments, " + threads + " threads: " + parsed + " rows in " + (System.currentTimeMillis() - start) + " ms");
+
+            File tsDir = mkdir(workDir, "ts");
+            File partitionsDir = mkdir(workDir, "ts_partition");
+            File latestDir = mkdir(workDir, "ts_latest");
+            start = System.currentTimeMillis();
+            new PgCaMigrator(dumpFile, blocks, executor, threads, tsDir, partitionsDir, latestDir,
+                    new RelatedEntitiesParser(related), new DictionaryParser(dumpFile, blocks), false).migrate();
+            System.out.println("Migration into SSTables, " + threads + " threads: " + (System.currentTimeMillis() - start) + " ms, SSTables size "
+                    + FileUtils.sizeOfDirectory(tsDir) / (1024 * 1024) + " MB");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static long parseLineByLine(File dump) throws IOException {
+        long parsed = 0;
+        boolean tsBlock = false;
+        LineIterator iterator = FileUtils.lineIterator(dump);
+        try {
+            while (iterator.hasNext()) {
+                String line = iterator.nextLine();
+                if (!tsBlock) {
+                    tsBlock = line.startsWith("COPY public.ts_kv (");
+                    continue;
+                }
+                if (line.equals("\\.")) {
+                    break;
+                }
+                List<String> raw = Arrays.stream(line.trim().split("\t"))
+                        .map(String::trim)
+                        .collect(Collectors.toList());
+                List<Object> values = new ArrayList<>();
+                values.add(UUID.fromString(raw.get(0)));
+                values.add(raw.get(1));
+                values.add(Long.parseLong(raw.get(2)));
+                values.add(raw.get(3).equals("\\N") ? null : raw.get(3).equals("t") ? Boolean.TRUE : Boolean.FALSE);
+                values.add(raw.get(4).equals("\\N") ? null : raw.get(4));
+                values.add(raw.get(5).equals("\\N") ? null : Long.parseLong(raw.get(5)));
+                values.add(raw.get(6).equals("\\N") ? null : Double.parseDouble(raw.get(6)));
+                values.add(raw.get(7).equals("\\N") ? null : raw.get(7));
+                if (values.size() == 8) {
+                    parsed++;
+                }
+            }
+        } finally {
+            iterator.close();
+        }
+        return parsed;
+    }
+
+    private static long parseSegments(PgDumpFile dumpFile, List<PgDumpFile.Block> blocks, ExecutorService executor, int threads) throws Exception {
+        Queue<PgDumpFile.Segment> segments = new ConcurrentLinkedQueue<>();
+        for (PgDumpFile.Block block : blocks) {
+            if (block.isTable("public.ts_kv")) {
+                segments.addAll(dumpFile.split(block.getStart(), block.getEnd()));
+            }
+        }
+        AtomicLong parsed = new AtomicLong();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                TsKvRow row = new TsKvRow();
+                long count = 0;
+                PgDumpFile.Segment segment;
+                while ((segment = segments.poll()) != null) {
+                    long[] segmentCount = new long[1];
+                    dumpFile.forEachLine(segment, (buffer, from, to) -> {
+                        row.parse(buffer, from, to);
+                        segmentCount[0]++;
+                    });
+                    count += segmentCount[0];
+                }
+                parsed.addAndGet(count);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        return parsed.get();
+    }
+
+    private static List<UUID> generateRelated(File file) throws IOException {
+        List<UUID> devices = new ArrayList<>();
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("COPY public.device (id, name) FROM stdin;\n");
+            for (int i = 0; i < DEVICES; i++) {
+                UUID id = UUIDs.timeBased();
+                devices.add(id);
+                writer.write(id + "\tDevice " + i + "\n");
+            }
+            writer.write("\\.\n\n");
+        }
+        return devices;
+    }
+
+    private static void generateDump(File file, List<UUID> devices, long rows) throws IOException {
+        Random random = new Random(42);
+        long startTs = 1_600_000_000_000L;
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("COPY public.ts_kv_dictionary (key, key_id) FROM stdin;\n");
+            for (int key = 0; key < KEYS; key++) {
+                writer.write("key" + key + "\t" + key + "\n");
+            }
+            writer.write("\\.\n\n");
+
+            writer.write("COPY public.ts_kv (entity_id, key, ts, bool_v, str_v, long_v, dbl_v, json_v) FROM stdin;\n");
+            for (long i = 0; i < rows; i++) {
+                writeRow(writer, random, devices.get((int) (i % DEVICES)), (int) (i % KEYS), startTs + i * 1000);
+            }
+            writer.write("\\.\n\n");
+
+            writer.write("COPY public.ts_kv_latest (entity_id, key, ts, bool_v, str_v, long_v, dbl_v, json_v) FROM stdin;\n");
+            for (int device = 0; device < DEVICES; device++) {
+                for (int key = 0; key < KEYS; key++) {
+                    writeRow(writer, random, devices.get(device), key, startTs + rows * 1000);
+                }
+            }
+            writer.write("\\.\n\n");
+        }
+    }
+
+    private static void writeRow(BufferedWriter writer, Random random, UUID entityId, int key, long ts) throws IOException {
+        String bool = "\\N";
+        String str = "\\N";
+        String lng = "\\N";
+        String dbl = "\\N";
+        switch (key % 4) {
+            case 0:
+                bool = random.nextBoolean() ? "t" : "f";
+                break;
+            case 1:
+                str = "value\\t" + random.nextInt(1000);
+                break;
+            case 2:
+                lng = Long.toString(random.nextInt());
+                break;
+            default:
+                dbl = Double.toString(random.nextDouble() * 100);
+        }
+        writer.write(entityId + "\t" + key + "\t" + ts + "\t" + bool + "\t" + str + "\t" + lng + "\t" + dbl + "\t\\N\n");
+    }
+
+    private static File mkdir(File parent, String name) {
+        File dir = new File(parent, name);
+        dir.mkdirs();
+        return dir;
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.client.tools.migrator;
+
+import lombok.Data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the plain text pg_dump file through memory mapped segments.
+ * Segments are aligned to line boundaries, so every segment can be processed by its own thread.
+ */
+public class PgDumpFile implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 32 * 1024 * 1024;
+
+    private static final byte[] COPY_PREFIX = "COPY ".getBytes(StandardCharsets.US_ASCII);
+    private static final int LINE_SEARCH_BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final FileChannel channel;
+    private final long size;
+    private final int segmentSize;
+
+    public PgDumpFile(File file) throws IOException {
+        this(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public PgDumpFile(File file, int segmentSize) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.segmentSize = segmentSize;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Finds the data ranges of all COPY blocks. Markers are searched in all segments of the file in parallel.
+     */
+    public List<Block> findBlocks(ExecutorService executor) throws Exception {
+        List<Future<List<Marker>>> futures = new ArrayList<>();
+        for (Segment segment : split(0, size)) {
+            futures.add(executor.submit(() -> findMarkers(segment)));
+        }
+        List<Marker> markers = new ArrayList<>();
+        for (Future<List<Marker>> future : futures) {
+            markers.addAll(future.get());
+        }
+        markers.sort(Comparator.comparingLong(Marker::getLineStart));
+
+        List<Block> blocks = new ArrayList<>();
+        Marker header = null;
+        for (Marker marker : markers) {
+            if (marker.getHeader() != null) {
+                header = marker;
+            } else if (header != null) {
+                blocks.add(new Block(header.getHeader(), header.getLineEnd(), marker.getLineStart()));
+                header = null;
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Splits the range into segments of about the segment size. Each segment starts at the beginning of a line
+     * and ends right after the line feed, except for the last segment of the file.
+     */
+    public List<Segment> split(long start, long end) throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        long segmentStart = start;
+        while (segmentStart < end) {
+            long segmentEnd = segmentStart + segmentSize >= end ? end : Math.min(nextLineStart(segmentStart + segmentSize), end);
+            segments.add(new Segment(segmentStart, segmentEnd));
+            segmentStart = segmentEnd;
+        }
+        return segments;
+    }
+
+    public void forEachLine(Segment segment, LineHandler handler) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, segment.getStart(), segment.getEnd() - segment.getStart());
+        int limit = buffer.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = indexOf(buffer, (byte) '\n', lineStart, limit);
+            int next = lineEnd + 1;
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            handler.handle(buffer, lineStart, lineEnd);
+            lineStart = next;
+        }
+    }
+
+    private List<Marker> findMarkers(Segment segment) throws IOException {
+        List<Marker> markers = new ArrayList<>();
+        forEachLine(segment, (buffer, from, to) -> {
+            byte first = from < to ? buffer.get(from) : 0;
+            if (first == 'C' && startsWith(buffer, from, to, COPY_PREFIX)) {
+                markers.add(new Marker(segment.getStart() + from, segment.getStart() + to + 1, decode(buffer, from, to)));
+            } else if (first == '\\' && to - from == 2 && buffer.get(from + 1) == '.') {
+                markers.add(new Marker(segment.getStart() + from, segment.getStart() + to + 1, null));
+            }
+        });
+        return markers;
+    }
+
+    private long nextLineStart(long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(LINE_SEARCH_BUFFER_SIZE);
+        long current = position;
+        while (current < size) {
+            buffer.clear();
+            int read = channel.read(buffer, current);
+            if (read <= 0) {
+                break;
+            }
+            int index = indexOf(buffer, (byte) '\n', 0, read);
+            if (index < read) {
+                return current + index + 1;
+            }
+            current += read;
+        }
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    static int indexOf(ByteBuffer buffer, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    static String decode(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buffer.duplicate().position(from).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(from + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public interface LineHandler {
+
+        /**
+         * Handles the line located in the [from, to) range of the buffer, without the line separator.
+         */
+        void handle(ByteBuffer buffer, int from, int to) throws IOException;
+
+    }
+
+    @Data
+    public static class Segment {
+        private final long start;
+        private final long end;
+    }
+
+    @Data
+    public static class Block {
+        private final String header;
+        private final long start;
+        private final long end;
+
+        public boolean isTable(String table) {
+            return header.startsWith("COPY " + table + " ");
+        }
+    }
+
+    @Data
+    private static class Marker {
+        private final long lineStart;
+        private final long lineEnd;
+        private final String header;
+    }
+}
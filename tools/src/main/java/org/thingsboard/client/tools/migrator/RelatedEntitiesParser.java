@@ -24,9 +24,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 public class RelatedEntitiesParser {
-    private final Map<String, String> allEntityIdsAndTypes = new HashMap<>();
+    private final Map<UUID, String> allEntityIdsAndTypes = new HashMap<>();
     
     private final Map<String, EntityType> tableNameAndEntityType = Map.ofEntries(
             Map.entry("COPY public.alarm ", EntityType.ALARM),
@@ -50,7 +51,7 @@ public class RelatedEntitiesParser {
         processAllTables(FileUtils.lineIterator(source));
     }
 
-    public String getEntityType(String uuid) {
+    public String getEntityType(UUID uuid) {
         return this.allEntityIdsAndTypes.get(uuid);
     }
 
@@ -81,7 +82,7 @@ public class RelatedEntitiesParser {
             if(isBlockFinished(currentLine)) {
                 return;
             }
-            allEntityIdsAndTypes.put(currentLine.split("\t")[0], entityType.name());
+            allEntityIdsAndTypes.put(UUID.fromString(currentLine.split("\t")[0]), entityType.name());
         }
     }
 }
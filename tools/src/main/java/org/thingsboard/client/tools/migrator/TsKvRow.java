@@ -0,0 +1,167 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.client.tools.migrator;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Parses the ts_kv and ts_kv_latest rows of the pg_dump text format directly from the bytes of the line:
+ * entity_id, key, ts, bool_v, str_v, long_v, dbl_v, json_v separated by tabs, with \N for nulls.
+ * The instance is reused for the lines of one thread and must not be shared.
+ */
+@Getter
+public class TsKvRow {
+
+    private static final int COLUMNS = 8;
+
+    private final int[] fieldStarts = new int[COLUMNS];
+    private final int[] fieldEnds = new int[COLUMNS];
+
+    private UUID entityId;
+    private int keyId;
+    private long ts;
+    private Boolean boolValue;
+    private String strValue;
+    private Long longValue;
+    private Double doubleValue;
+    private String jsonValue;
+
+    public void parse(ByteBuffer buffer, int from, int to) {
+        int field = 0;
+        int fieldStart = from;
+        for (int i = from; i < to && field < COLUMNS - 1; i++) {
+            if (buffer.get(i) == '\t') {
+                fieldStarts[field] = fieldStart;
+                fieldEnds[field] = i;
+                field++;
+                fieldStart = i + 1;
+            }
+        }
+        if (field != COLUMNS - 1) {
+            throw new IllegalArgumentException("Expected " + COLUMNS + " columns but found " + (field + 1));
+        }
+        fieldStarts[field] = fieldStart;
+        fieldEnds[field] = to;
+
+        entityId = parseUuid(buffer, fieldStarts[0], fieldEnds[0]);
+        keyId = (int) parseLong(buffer, fieldStarts[1], fieldEnds[1]);
+        ts = parseLong(buffer, fieldStarts[2], fieldEnds[2]);
+        boolValue = isNull(buffer, 3) ? null : buffer.get(fieldStarts[3]) == 't';
+        strValue = isNull(buffer, 4) ? null : parseText(buffer, fieldStarts[4], fieldEnds[4]);
+        longValue = isNull(buffer, 5) ? null : parseLong(buffer, fieldStarts[5], fieldEnds[5]);
+        doubleValue = isNull(buffer, 6) ? null : Double.parseDouble(parseAscii(buffer, fieldStarts[6], fieldEnds[6]));
+        jsonValue = isNull(buffer, 7) ? null : parseText(buffer, fieldStarts[7], fieldEnds[7]);
+    }
+
+    private boolean isNull(ByteBuffer buffer, int field) {
+        return fieldEnds[field] - fieldStarts[field] == 2 && buffer.get(fieldStarts[field]) == '\\' && buffer.get(fieldStarts[field] + 1) == 'N';
+    }
+
+    static long parseLong(ByteBuffer buffer, int from, int to) {
+        if (from >= to) {
+            throw new NumberFormatException("Empty number");
+        }
+        boolean negative = buffer.get(from) == '-';
+        long result = 0;
+        for (int i = negative ? from + 1 : from; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid number: " + parseAscii(buffer, from, to));
+            }
+            result = result * 10 - digit;
+        }
+        return negative ? result : -result;
+    }
+
+    static UUID parseUuid(ByteBuffer buffer, int from, int to) {
+        if (to - from != 36) {
+            throw new IllegalArgumentException("Invalid UUID: " + parseAscii(buffer, from, to));
+        }
+        long msb = 0;
+        long lsb = 0;
+        int digits = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == '-') {
+                continue;
+            }
+            long value = Character.digit(b, 16);
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid UUID: " + parseAscii(buffer, from, to));
+            }
+            if (digits < 16) {
+                msb = (msb << 4) | value;
+            } else {
+                lsb = (lsb << 4) | value;
+            }
+            digits++;
+        }
+        if (digits != 32) {
+            throw new IllegalArgumentException("Invalid UUID: " + parseAscii(buffer, from, to));
+        }
+        return new UUID(msb, lsb);
+    }
+
+    static String parseAscii(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = from; i < to; i++) {
+            bytes[i - from] = buffer.get(i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Decodes the UTF-8 text and the backslash escapes used by the COPY text format.
+     */
+    static String parseText(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == '\\' && i + 1 < to) {
+                byte escaped = buffer.get(++i);
+                switch (escaped) {
+                    case 'n':
+                        b = '\n';
+                        break;
+                    case 't':
+                        b = '\t';
+                        break;
+                    case 'r':
+                        b = '\r';
+                        break;
+                    case 'b':
+                        b = '\b';
+                        break;
+                    case 'f':
+                        b = '\f';
+                        break;
+                    case 'v':
+                        b = 0x0B;
+                        break;
+                    default:
+                        b = escaped;
+                }
+            }
+            bytes[length++] = b;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
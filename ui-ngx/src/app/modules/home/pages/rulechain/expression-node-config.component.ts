@@ -0,0 +1,46 @@
+///
+/// Copyright © 2016-2022 The Thingsboard Authors
+///
+/// Licensed under the Apache License, Version 2.0 (the "License");
+/// you may not use this file except in compliance with the License.
+/// You may obtain a copy of the License at
+///
+///     http://www.apache.org/licenses/LICENSE-2.0
+///
+/// Unless required by applicable law or agreed to in writing, software
+/// distributed under the License is distributed on an "AS IS" BASIS,
+/// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+/// See the License for the specific language governing permissions and
+/// limitations under the License.
+///
+
+import { Component } from '@angular/core';
+import { FormBuilder, FormGroup, Validators } from '@angular/forms';
+import { Store } from '@ngrx/store';
+import { AppState } from '@core/core.state';
+import { RuleNodeConfiguration, RuleNodeConfigurationComponent } from '@shared/models/rule-node.models';
+
+// the configuration of the expression filter and switch nodes, which are not part of the rulenode-core-config bundle
+@Component({
+  selector: 'tb-filter-node-expression-config',
+  templateUrl: './expression-node-config.component.html'
+})
+export class ExpressionNodeConfigComponent extends RuleNodeConfigurationComponent {
+
+  expressionConfigForm: FormGroup;
+
+  constructor(protected store: Store<AppState>,
+              private fb: FormBuilder) {
+    super(store);
+  }
+
+  protected configForm(): FormGroup {
+    return this.expressionConfigForm;
+  }
+
+  protected onConfigurationSet(configuration: RuleNodeConfiguration) {
+    this.expressionConfigForm = this.fb.group({
+      expression: [configuration ? configuration.expression : null, [Validators.required]]
+    });
+  }
+}
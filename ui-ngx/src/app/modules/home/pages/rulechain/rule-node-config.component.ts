@@ -17,11 +17,13 @@
 import {
   AfterViewInit,
   Component,
+  ComponentFactoryResolver,
   ComponentRef,
   forwardRef,
   Input,
   OnDestroy,
   OnInit,
+  Type,
   ViewChild,
   ViewContainerRef
 } from '@angular/core';
@@ -38,6 +40,12 @@ import { TranslateService } from '@ngx-translate/core';
 import { JsonObjectEditComponent } from '@shared/components/json-object-edit.component';
 import { deepClone } from '@core/utils';
 import { RuleChainType } from '@shared/models/rule-chain.models';
+import { ExpressionNodeConfigComponent } from './expression-node-config.component';
+
+// configuration directives of the rule nodes that are shipped with the UI instead of the node ui resources
+const builtInConfigComponents: {[directive: string]: Type<IRuleNodeConfigurationComponent>} = {
+  tbFilterNodeExpressionConfig: ExpressionNodeConfigComponent
+};
 
 @Component({
   selector: 'tb-rule-node-config',
@@ -107,6 +115,7 @@ export class RuleNodeConfigComponent implements ControlValueAccessor, OnInit, On
 
   constructor(private translate: TranslateService,
               private ruleChainService: RuleChainService,
+              private componentFactoryResolver: ComponentFactoryResolver,
               private fb: FormBuilder) {
     this.ruleNodeConfigFormGroup = this.fb.group({
       configuration: [null, Validators.required]
@@ -189,7 +198,10 @@ export class RuleNodeConfigComponent implements ControlValueAccessor, OnInit, On
         this.changeSubscription = null;
       }
       this.definedConfigContainer.clear();
-      const factory = this.ruleChainService.getRuleNodeConfigFactory(this.nodeDefinition.configDirective);
+      let factory = this.ruleChainService.getRuleNodeConfigFactory(this.nodeDefinition.configDirective);
+      if (!factory && builtInConfigComponents[this.nodeDefinition.configDirective]) {
+        factory = this.componentFactoryResolver.resolveComponentFactory(builtInConfigComponents[this.nodeDefinition.configDirective]);
+      }
       this.definedConfigComponentRef = this.definedConfigContainer.createComponent(factory);
       this.definedConfigComponent = this.definedConfigComponentRef.instance;
       this.definedConfigComponent.ruleNodeId = this.ruleNodeId;
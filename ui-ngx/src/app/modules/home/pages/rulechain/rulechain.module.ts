@@ -32,6 +32,7 @@ import { RuleNodeDetailsComponent } from './rule-node-details.component';
 import { RuleNodeLinkComponent } from './rule-node-link.component';
 import { LinkLabelsComponent } from '@home/pages/rulechain/link-labels.component';
 import { RuleNodeConfigComponent } from './rule-node-config.component';
+import { ExpressionNodeConfigComponent } from './expression-node-config.component';
 
 @NgModule({
   declarations: [
@@ -41,6 +42,7 @@ import { RuleNodeConfigComponent } from './rule-node-config.component';
     RuleNodeComponent,
     RuleNodeDetailsComponent,
     RuleNodeConfigComponent,
+    ExpressionNodeConfigComponent,
     LinkLabelsComponent,
     RuleNodeLinkComponent,
     AddRuleNodeLinkDialogComponent,
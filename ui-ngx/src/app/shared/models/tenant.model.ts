@@ -54,6 +54,8 @@ export interface DefaultTenantProfileConfiguration {
   defaultStorageTtlDays: number;
   alarmsTtlDays: number;
   rpcTtlDays: number;
+
+  actorDispatcherPoolSize: number;
 }
 
 export type TenantProfileConfigurations = DefaultTenantProfileConfiguration;
@@ -87,7 +89,8 @@ export function createTenantProfileConfiguration(type: TenantProfileType): Tenan
           maxCreatedAlarms: 0,
           defaultStorageTtlDays: 0,
           alarmsTtlDays: 0,
-          rpcTtlDays: 0
+          rpcTtlDays: 0,
+          actorDispatcherPoolSize: 0
         };
         configuration = {...defaultConfiguration, type: TenantProfileType.DEFAULT};
         break;